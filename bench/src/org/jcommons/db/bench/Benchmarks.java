@@ -0,0 +1,37 @@
+package org.jcommons.db.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the benchmarks of this project with the GC profiler, so every result shows the bytes allocated per cell
+ * (<code>gc.alloc.rate.norm</code>) next to the cells converted per second.
+ *
+ * The project requires the Eclipse classpath variable <code>JMH_HOME</code> pointing to a directory with the JMH 1.37
+ * jars, see <code>.classpath</code>. Run this class with the usual JMH options, e.g. <code>ConverterBenchmark.toDate
+ * -p quality=dirty</code> to run a single benchmark on dirty data only. Without a pattern all benchmarks are run.
+ */
+public final class Benchmarks
+{
+  /** hide sole constructor */
+  private Benchmarks() {
+  }
+
+  /**
+   * Run the benchmarks.
+   *
+   * @param args the JMH command line options
+   * @throws CommandLineOptionException if the options cannot be parsed
+   * @throws RunnerException if a benchmark fails
+   */
+  public static void main(final String[] args)
+    throws CommandLineOptionException, RunnerException
+  {
+    CommandLineOptions line = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(line).addProfiler(GCProfiler.class);
+    if (line.getIncludes().isEmpty()) options.include(Benchmarks.class.getPackage().getName() + ".*Benchmark");
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,217 @@
+package org.jcommons.db.bench;
+
+import java.io.*;
+import java.util.*;
+
+import org.jcommons.db.bench.Dataset.Kind;
+
+/**
+ * Generates a book of CSV files together with the tables it is loaded into.
+ *
+ * Every sheet has an integer primary key <code>id</code> and one column per given kind of values, the first of them
+ * mandatory and the others nullable, so the loader inserts and updates every sheet. The sheets form chains of the
+ * given foreign key depth: within a chain every sheet references the sheet before by a mandatory
+ * <code>parent_id</code>, so the loader has to load the chain in sequence while the chains can be loaded in parallel.
+ */
+public class BookGenerator
+{
+  private int sheets = 8;
+  private int rows = 10000;
+  private int depth = 2;
+  private List<Kind> kinds = Arrays.asList(Kind.values());
+  private boolean dirty = false;
+
+  /** @return the number of sheets */
+  public int getSheets() {
+    return sheets;
+  }
+
+  /**
+   * @param sheets the number of sheets of the book
+   * @return this to allow chaining
+   */
+  public BookGenerator setSheets(final int sheets) {
+    this.sheets = Math.max(1, sheets);
+    return this;
+  }
+
+  /** @return the number of rows of every sheet */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * @param rows the number of rows of every sheet
+   * @return this to allow chaining
+   */
+  public BookGenerator setRows(final int rows) {
+    this.rows = Math.max(1, rows);
+    return this;
+  }
+
+  /** @return the number of foreign keys in a chain of sheets */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * @param depth the number of foreign keys in a chain of sheets, 0 for independent sheets
+   * @return this to allow chaining
+   */
+  public BookGenerator setDepth(final int depth) {
+    this.depth = Math.max(0, depth);
+    return this;
+  }
+
+  /** @return the kinds of values of the columns of every sheet */
+  public List<Kind> getKinds() {
+    return kinds;
+  }
+
+  /**
+   * @param kinds the kinds of values of the columns of every sheet, at least one
+   * @return this to allow chaining
+   */
+  public BookGenerator setKinds(final List<Kind> kinds) {
+    if (kinds.isEmpty()) throw new IllegalArgumentException("A sheet requires at least one column");
+    this.kinds = new ArrayList<Kind>(kinds);
+    return this;
+  }
+
+  /** @return true if every tenth value of the nullable columns is spoiled */
+  public boolean isDirty() {
+    return dirty;
+  }
+
+  /**
+   * @param dirty true to spoil every tenth value of the nullable columns
+   * @return this to allow chaining
+   */
+  public BookGenerator setDirty(final boolean dirty) {
+    this.dirty = dirty;
+    return this;
+  }
+
+  /**
+   * @param sheet the index of the sheet
+   * @return the name of the sheet and its table
+   */
+  public String getTable(final int sheet) {
+    return String.format("bench_%03d", sheet);
+  }
+
+  /**
+   * @param sheet the index of the sheet
+   * @return true if the sheet references the sheet before
+   */
+  private boolean hasParent(final int sheet) {
+    return depth > 0 && sheet % (depth + 1) != 0;
+  }
+
+  /** @return the number of rows of all sheets */
+  public long getTotalRows() {
+    return (long) sheets * rows;
+  }
+
+  /**
+   * @param cached true to keep the rows on disk, e.g. for a file database
+   * @return the statements that create all tables, masters first
+   */
+  public List<String> getCreateSql(final boolean cached) {
+    List<String> statements = new ArrayList<String>();
+    for (int sheet = 0; sheet < sheets; ++sheet) {
+      StringBuilder sql = new StringBuilder(cached ? "create cached table " : "create table ");
+      sql.append(getTable(sheet)).append(" ( id integer not null primary key");
+      if (hasParent(sheet)) sql.append(", parent_id integer not null");
+      for (int column = 0; column < kinds.size(); ++column) {
+        sql.append(", c").append(column).append(' ').append(type(kinds.get(column)));
+        if (column == 0) sql.append(" not null");
+      }
+      if (hasParent(sheet)) {
+        sql.append(", constraint fk_").append(getTable(sheet)).append(" foreign key (parent_id) references ");
+        sql.append(getTable(sheet - 1)).append(" (id)");
+      }
+      statements.add(sql.append(" )").toString());
+    }
+    return statements;
+  }
+
+  /** @return the statements that drop all tables, details first */
+  public List<String> getDropSql() {
+    List<String> statements = new ArrayList<String>();
+    for (int sheet = sheets - 1; sheet >= 0; --sheet) {
+      statements.add("drop table " + getTable(sheet) + " if exists");
+    }
+    return statements;
+  }
+
+  /**
+   * @param kind the kind of values
+   * @return the SQL type of a column of this kind
+   */
+  private static String type(final Kind kind) {
+    switch (kind) {
+      case NUMBER:
+        return "decimal(12,2)";
+      case DATE:
+        return "date";
+      case TIMESTAMP:
+        return "timestamp";
+      default:
+        return "varchar(40)";
+    }
+  }
+
+  /**
+   * Write the CSV files of all sheets.
+   *
+   * @param directory the directory to write the files into, must exist
+   * @return the files in the sequence of the sheets
+   * @throws IOException if a file cannot be written
+   */
+  public List<File> write(final File directory)
+    throws IOException
+  {
+    List<String[]> values = new ArrayList<String[]>();
+    for (int column = 0; column < kinds.size(); ++column) {
+      values.add(Dataset.values(kinds.get(column), dirty && column > 0, true, rows));
+    }
+
+    List<File> files = new ArrayList<File>();
+    Random random = new Random(rows);
+    for (int sheet = 0; sheet < sheets; ++sheet) {
+      File file = new File(directory, getTable(sheet) + ".csv");
+      Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+      try {
+        output.write("id");
+        if (hasParent(sheet)) output.write(",parent_id");
+        for (int column = 0; column < kinds.size(); ++column) {
+          output.write(",c" + column);
+        }
+        output.write("\n");
+
+        for (int row = 0; row < rows; ++row) {
+          output.write(String.valueOf(row + 1));
+          if (hasParent(sheet)) output.write("," + (random.nextInt(rows) + 1));
+          for (String[] column : values) {
+            // rotate the values, so the sheets do not share all rows
+            output.write(",\"");
+            output.write(column[(row + sheet) % rows].replace("\"", "\"\""));
+            output.write("\"");
+          }
+          output.write("\n");
+        }
+      } finally {
+        output.close();
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return sheets + " sheets of " + rows + " rows, depth " + depth + ", columns " + kinds + (dirty ? ", dirty" : "");
+  }
+}
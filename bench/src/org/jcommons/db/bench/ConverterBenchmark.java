@@ -0,0 +1,178 @@
+package org.jcommons.db.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jcommons.db.bench.Dataset.Kind;
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.converter.*;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of converting a single cell by the converters of the loader.
+ *
+ * Every invocation converts {@link Dataset#SIZE} cells, so the reported throughput is cells per second. Run with the
+ * GC profiler to see the bytes allocated per cell, see {@link Benchmarks}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark
+{
+  /** clean or dirty values */
+  @Param({"clean", "dirty"})
+  public String quality;
+
+  /** few distinct values or all distinct */
+  @Param({"low", "high"})
+  public String cardinality;
+
+  private final MetaColumn number = Dataset.column(Kind.NUMBER);
+  private final MetaColumn date = Dataset.column(Kind.DATE);
+  private final MetaColumn timestamp = Dataset.column(Kind.TIMESTAMP);
+  private final MetaColumn string = Dataset.column(Kind.STRING);
+
+  private final ToNumber toNumber = new ToNumber();
+  private final ToDate toDate = new ToDate();
+  private final ToTimestamp toTimestamp = new ToTimestamp();
+  private final ToString toText = new ToString();
+  private final PrimitiveValue primitive = new PrimitiveValue();
+
+  private String[] numbers;
+  private String[] dates;
+  private String[] timestamps;
+  private String[] strings;
+  private ToPrimitive toPrimitiveNumber;
+  private ToPrimitive toPrimitiveDate;
+  private ViolationLog violations;
+
+  /** generate the values of all columns */
+  @Setup(Level.Trial)
+  public void generate() {
+    boolean dirty = "dirty".equals(quality);
+    boolean high = "high".equals(cardinality);
+    numbers = Dataset.values(Kind.NUMBER, dirty, high);
+    dates = Dataset.values(Kind.DATE, dirty, high);
+    timestamps = Dataset.values(Kind.TIMESTAMP, dirty, high);
+    strings = Dataset.values(Kind.STRING, dirty, high);
+  }
+
+  /** start every iteration with new column converters and an empty violation log, as every sheet does */
+  @Setup(Level.Iteration)
+  public void reset() {
+    toPrimitiveNumber = ValueFactory.createPrimitive(number);
+    toPrimitiveDate = ValueFactory.createPrimitive(date);
+    violations = new ViolationLog();
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void valueFactory(final Blackhole sink) {
+    for (String value : numbers) {
+      sink.consume(ValueFactory.valueOf(number, value, violations));
+    }
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void toNumber(final Blackhole sink) {
+    for (String value : numbers) {
+      sink.consume(toNumber.valueOf(number, value, violations));
+    }
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void toPrimitiveNumber(final Blackhole sink) {
+    for (String value : numbers) {
+      sink.consume(toPrimitiveNumber.valueOf(number, value, 0, value.length(), primitive));
+      sink.consume(primitive.getLong());
+    }
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void toDate(final Blackhole sink) {
+    for (String value : dates) {
+      sink.consume(toDate.valueOf(date, value, violations));
+    }
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void toPrimitiveDate(final Blackhole sink) {
+    for (String value : dates) {
+      sink.consume(toPrimitiveDate.valueOf(date, value, 0, value.length(), primitive));
+      sink.consume(primitive.getLong());
+    }
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void toTimestamp(final Blackhole sink) {
+    for (String value : timestamps) {
+      sink.consume(toTimestamp.valueOf(timestamp, value, violations));
+    }
+  }
+
+  /**
+   * @param sink consumes the converted values
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void toString(final Blackhole sink) {
+    for (String value : strings) {
+      sink.consume(toText.valueOf(string, value, violations));
+    }
+  }
+
+  /**
+   * Look up the meta type once it is known, as every converter call does.
+   *
+   * @param sink consumes the meta types
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void metaType(final Blackhole sink) {
+    for (int index = 0; index < Dataset.SIZE; ++index) {
+      sink.consume(timestamp.getMetaType());
+    }
+  }
+
+  /**
+   * Determine the meta type from the Java type, as the first lookup of every column does.
+   *
+   * @param sink consumes the meta types
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void metaTypeResolved(final Blackhole sink) {
+    String type = timestamp.getType();
+    for (int index = 0; index < Dataset.SIZE; ++index) {
+      timestamp.setType(type);
+      sink.consume(timestamp.getMetaType());
+    }
+  }
+}
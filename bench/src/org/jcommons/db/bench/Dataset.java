@@ -0,0 +1,157 @@
+package org.jcommons.db.bench;
+
+import java.sql.Types;
+import java.util.Random;
+
+import org.jcommons.db.column.MetaColumn;
+
+/**
+ * Generates the raw cell values the benchmarks convert, reproducible by a fixed seed.
+ *
+ * Clean values are well formed, dirty values contain blanks, padding, invalid and too large values in every tenth
+ * cell. Low cardinality values repeat a few distinct values, e.g. codes and status dates, high cardinality values are
+ * distinct, e.g. keys and time stamps.
+ */
+public final class Dataset
+{
+  /** the number of values converted by every benchmark invocation */
+  public static final int SIZE = 4096;
+
+  /** the number of distinct values of a low cardinality column */
+  public static final int DISTINCT = 16;
+
+  /** kind of values of a column */
+  public enum Kind
+  {
+    /** decimal numbers with two fraction digits */
+    NUMBER,
+    /** days like 2012-06-30 */
+    DATE,
+    /** time stamps like 2012-06-30 12:34:56 */
+    TIMESTAMP,
+    /** names and codes */
+    STRING
+  }
+
+  /** hide sole constructor */
+  private Dataset() {
+  }
+
+  /**
+   * Generate the values of a column.
+   *
+   * @param kind the kind of values
+   * @param dirty true to spoil every tenth value
+   * @param high true for distinct values, false to repeat a few values only
+   * @return the raw values
+   */
+  public static String[] values(final Kind kind, final boolean dirty, final boolean high) {
+    return values(kind, dirty, high, SIZE);
+  }
+
+  /**
+   * Generate the given number of values of a column.
+   *
+   * @param kind the kind of values
+   * @param dirty true to spoil every tenth value
+   * @param high true for distinct values, false to repeat a few values only
+   * @param size the number of values
+   * @return the raw values
+   */
+  public static String[] values(final Kind kind, final boolean dirty, final boolean high, final int size) {
+    Random random = new Random(kind.ordinal() * 31 + (dirty ? 2 : 0) + (high ? 1 : 0));
+    String[] values = new String[size];
+    for (int index = 0; index < size; ++index) {
+      int seed = high ? (int) ((index * 7919L + random.nextInt(7919)) % Integer.MAX_VALUE) : random.nextInt(DISTINCT);
+      values[index] = dirty && index % 10 == 9 ? spoil(kind, seed) : value(kind, seed);
+    }
+    return values;
+  }
+
+  /**
+   * @param kind the kind of value
+   * @param seed the number the value is derived from
+   * @return a well formed value
+   */
+  private static String value(final Kind kind, final int seed) {
+    switch (kind) {
+      case NUMBER:
+        return (seed / 100) + "." + pad(seed % 100);
+      case DATE:
+        return day(seed);
+      case TIMESTAMP:
+        return day(seed / 86400) + " " + pad(seed / 3600 % 24) + ":" + pad(seed / 60 % 60) + ":" + pad(seed % 60);
+      default:
+        return "name " + seed;
+    }
+  }
+
+  /**
+   * @param kind the kind of value
+   * @param seed the number the value is derived from
+   * @return a blank, padded, invalid or too large value
+   */
+  private static String spoil(final Kind kind, final int seed) {
+    switch (seed % 4) {
+      case 0:
+        return "";
+      case 1:
+        return "  " + value(kind, seed) + " ";
+      case 2:
+        return kind == Kind.STRING ? "n/a" : "n/a " + seed;
+      default:
+        return kind == Kind.NUMBER ? "123456789012345678901234567890" : value(kind, seed) + "x";
+    }
+  }
+
+  /**
+   * @param days the number of days after 2000-01-01, at most about 30 years
+   * @return the day in ISO layout
+   */
+  private static String day(final int days) {
+    int day = Math.abs(days) % (30 * 336);
+    return (2000 + day / 336) + "-" + pad(day / 28 % 12 + 1) + "-" + pad(day % 28 + 1);
+  }
+
+  /**
+   * @param number a number between 0 and 99
+   * @return the number with two digits
+   */
+  private static String pad(final int number) {
+    return number < 10 ? "0" + number : String.valueOf(number);
+  }
+
+  /**
+   * Create the meta data of a column of the given kind.
+   *
+   * @param kind the kind of values
+   * @return the meta data of a nullable column
+   */
+  public static MetaColumn column(final Kind kind) {
+    MetaColumn meta = new MetaColumn();
+    meta.setName(kind.name());
+    meta.setTable("BENCH");
+    meta.setNullable(true);
+    switch (kind) {
+      case NUMBER:
+        meta.setType(java.math.BigDecimal.class.getName());
+        meta.setSqlType(Types.DECIMAL);
+        meta.setPrecision(12);
+        meta.setFraction(2);
+        break;
+      case DATE:
+        meta.setType(java.sql.Date.class.getName());
+        meta.setSqlType(Types.DATE);
+        break;
+      case TIMESTAMP:
+        meta.setType(java.sql.Timestamp.class.getName());
+        meta.setSqlType(Types.TIMESTAMP);
+        break;
+      default:
+        meta.setType(String.class.getName());
+        meta.setSqlType(Types.VARCHAR);
+        meta.setSize(40);
+    }
+    return meta;
+  }
+}
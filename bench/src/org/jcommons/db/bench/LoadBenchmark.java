@@ -0,0 +1,371 @@
+package org.jcommons.db.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.*;
+import java.sql.*;
+import java.util.*;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbutils.DbUtils;
+import org.jcommons.db.bench.Dataset.Kind;
+import org.jcommons.db.load.DatabaseLoader;
+import org.jcommons.db.load.RetryPolicy;
+import org.jcommons.db.load.report.LoadReport;
+import org.jcommons.db.load.report.PassReport;
+import org.jcommons.io.sheet.Book;
+import org.jcommons.io.text.reader.csv.CsvBookReader;
+
+/**
+ * Measures the throughput of whole books loaded by the {@link DatabaseLoader} into HSQLDB.
+ *
+ * A book is generated by the {@link BookGenerator} once and loaded by every loader mode into an in-memory database and
+ * a file database with cached tables. Every run starts with freshly created tables and reads the book again, the
+ * reading is not measured. The rows sent per second and the peak of the used heap sampled during every measured run
+ * are reported, so a new loader mode proves its gain against the existing ones on the same book. A run whose
+ * verification fails ends the benchmark.
+ *
+ * The options are given as <code>name=value</code>, e.g.
+ * <code>sheets=16 rows=50000 depth=3 kinds=NUMBER,STRING modes=serial,parallel databases=mem runs=5</code>:
+ * <ul>
+ * <li><code>sheets</code>, <code>rows</code>, <code>depth</code>, <code>kinds</code> and <code>dirty</code> define
+ * the book, see {@link BookGenerator}</li>
+ * <li><code>modes</code> selects the loader modes, see {@link Mode}</li>
+ * <li><code>databases</code> selects <code>mem</code> and/or <code>file</code></li>
+ * <li><code>warmup</code> and <code>runs</code> define the number of runs ignored and measured</li>
+ * <li><code>workers</code> defines the sheets loaded in parallel by the parallel modes</li>
+ * </ul>
+ */
+public final class LoadBenchmark
+{
+  /** the loader modes that are compared */
+  public enum Mode
+  {
+    /** one sheet after the other */
+    SERIAL {
+      @Override
+      void configure(final DatabaseLoader loader, final int workers) {
+        loader.setWorkers(1);
+      }
+    },
+    /** sheets loaded in parallel by the given number of workers */
+    PARALLEL {
+      @Override
+      void configure(final DatabaseLoader loader, final int workers) {
+        loader.setWorkers(workers);
+      }
+    },
+    /** sheets loaded in parallel, every batch committed on its own to be retried */
+    RETRY {
+      @Override
+      void configure(final DatabaseLoader loader, final int workers) {
+        loader.setWorkers(workers).setRetryPolicy(new RetryPolicy());
+      }
+    },
+    /** one sheet after the other, every sheet loaded from a columnar copy of its cells */
+    COLUMNAR {
+      @Override
+      void configure(final DatabaseLoader loader, final int workers) {
+        loader.setWorkers(1).setColumnar(true);
+      }
+    },
+    /** one sheet after the other, the tables are verified afterwards */
+    VERIFY {
+      @Override
+      void configure(final DatabaseLoader loader, final int workers) {
+        loader.setWorkers(1).setVerify(true);
+      }
+    };
+
+    /**
+     * Set up the loader for this mode.
+     *
+     * @param loader the loader to set up
+     * @param workers the number of workers of parallel modes
+     */
+    abstract void configure(DatabaseLoader loader, int workers);
+  }
+
+  private final BookGenerator generator = new BookGenerator();
+  private final List<Mode> modes = new ArrayList<Mode>(Arrays.asList(Mode.values()));
+  private final List<String> databases = new ArrayList<String>(Arrays.asList("mem", "file"));
+  private int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+  private int warmup = 1;
+  private int runs = 3;
+
+  /**
+   * Apply the given options.
+   *
+   * @param args the options as <code>name=value</code>
+   */
+  private LoadBenchmark(final String[] args) {
+    for (String arg : args) {
+      int split = arg.indexOf('=');
+      if (split <= 0) throw new IllegalArgumentException("Option " + arg + " is not given as name=value");
+      String name = arg.substring(0, split).trim().toLowerCase();
+      String value = arg.substring(split + 1).trim();
+
+      if ("sheets".equals(name)) {
+        generator.setSheets(Integer.parseInt(value));
+      } else if ("rows".equals(name)) {
+        generator.setRows(Integer.parseInt(value));
+      } else if ("depth".equals(name)) {
+        generator.setDepth(Integer.parseInt(value));
+      } else if ("dirty".equals(name)) {
+        generator.setDirty(Boolean.parseBoolean(value));
+      } else if ("kinds".equals(name)) {
+        List<Kind> kinds = new ArrayList<Kind>();
+        for (String kind : value.split(",")) {
+          kinds.add(Kind.valueOf(kind.trim().toUpperCase()));
+        }
+        generator.setKinds(kinds);
+      } else if ("modes".equals(name)) {
+        modes.clear();
+        for (String mode : value.split(",")) {
+          modes.add(Mode.valueOf(mode.trim().toUpperCase()));
+        }
+      } else if ("databases".equals(name)) {
+        databases.clear();
+        databases.addAll(Arrays.asList(value.toLowerCase().split(",")));
+      } else if ("workers".equals(name)) {
+        workers = Math.max(1, Integer.parseInt(value));
+      } else if ("warmup".equals(name)) {
+        warmup = Math.max(0, Integer.parseInt(value));
+      } else if ("runs".equals(name)) {
+        runs = Math.max(1, Integer.parseInt(value));
+      } else {
+        throw new IllegalArgumentException("Unknown option " + name);
+      }
+    }
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args the options as <code>name=value</code>
+   * @throws Exception if the book cannot be generated or loaded
+   */
+  public static void main(final String[] args)
+    throws Exception
+  {
+    new LoadBenchmark(args).run();
+  }
+
+  /**
+   * Generate the book and load it in every combination of database and loader mode.
+   *
+   * @throws Exception if the book cannot be generated or loaded
+   */
+  private void run()
+    throws Exception
+  {
+    File directory = createDirectory("book");
+    try {
+      List<File> files = generator.write(directory);
+      System.out.println("Book: " + generator + ", " + generator.getTotalRows() + " rows");
+      System.out.println(String.format("%-6s %-9s %12s %10s %12s %12s", "db", "mode", "rows", "ms", "rows/s",
+          "peak heap MB"));
+
+      for (String database : databases) {
+        for (Mode mode : modes) {
+          for (int run = 0; run < warmup + runs; ++run) {
+            Result result = load(database, mode, files);
+            if (run < warmup) continue;
+            System.out.println(String.format("%-6s %-9s %12d %10d %12d %12d", database, mode.name().toLowerCase(),
+                result.rows, result.millis, result.getThroughput(), result.peakHeap >> 20));
+            if (run == warmup + runs - 1 && result.slowest != null) {
+              System.out.println("       slowest pass " + result.slowest + " within "
+                  + result.slowest.getElapsedTime() + " ms");
+            }
+          }
+        }
+      }
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /**
+   * Load the book once into fresh tables.
+   *
+   * @param database the kind of database, <code>mem</code> or <code>file</code>
+   * @param mode the loader mode
+   * @param files the CSV files of the book
+   * @return the measures of the run
+   * @throws Exception if the book cannot be loaded
+   */
+  private Result load(final String database, final Mode mode, final List<File> files)
+    throws Exception
+  {
+    boolean file = "file".equals(database);
+    File store = file ? createDirectory("db") : null;
+    BasicDataSource dataSource = new BasicDataSource();
+    dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+    dataSource.setUrl(file ? "jdbc:hsqldb:file:" + new File(store, "bench").getPath() : "jdbc:hsqldb:mem:bench");
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    dataSource.setMaxActive(workers + 2);
+    try {
+      execute(dataSource, generator.getDropSql());
+      execute(dataSource, generator.getCreateSql(file));
+
+      CsvBookReader reader = new CsvBookReader();
+      for (File csv : files) {
+        reader.addFile(csv);
+      }
+      Book book = reader.read();
+
+      DatabaseLoader loader = new DatabaseLoader().setDataSource(dataSource);
+      mode.configure(loader, workers);
+
+      System.gc();
+      HeapSampler sampler = new HeapSampler();
+      sampler.start();
+      long start = System.nanoTime();
+      LoadReport report;
+      try {
+        report = loader.load(book);
+      } finally {
+        sampler.finish();
+      }
+      Result result = new Result();
+      result.millis = Math.max(1L, (System.nanoTime() - start) / 1000000L);
+      result.peakHeap = sampler.getPeak();
+      result.rows = report.getRows();
+      result.slowest = report.getSlowest();
+      if (!loader.getVerification().isEmpty()) {
+        throw new IllegalStateException("Verification of " + database + " " + mode.name().toLowerCase() + " failed: "
+            + loader.getVerification().getText());
+      }
+      return result;
+    } finally {
+      execute(dataSource, generator.getDropSql());
+      if (file) execute(dataSource, Arrays.asList("shutdown"));
+      dataSource.close();
+      if (store != null) delete(store);
+    }
+  }
+
+  /**
+   * @param dataSource the database
+   * @param statements the statements to execute one after the other
+   * @throws SQLException if a statement fails
+   */
+  private static void execute(final BasicDataSource dataSource, final List<String> statements)
+    throws SQLException
+  {
+    Connection connection = dataSource.getConnection();
+    Statement statement = null;
+    try {
+      statement = connection.createStatement();
+      for (String sql : statements) {
+        statement.execute(sql);
+      }
+    } finally {
+      DbUtils.closeQuietly(statement);
+      DbUtils.closeQuietly(connection);
+    }
+  }
+
+  /**
+   * @param prefix the prefix of the directory name
+   * @return a new empty temporary directory
+   * @throws IOException if the directory cannot be created
+   */
+  private static File createDirectory(final String prefix)
+    throws IOException
+  {
+    File directory = File.createTempFile(prefix, "");
+    if (!directory.delete() || !directory.mkdir()) throw new IOException("Cannot create " + directory);
+    return directory;
+  }
+
+  /**
+   * @param file the file or directory to delete with all its content
+   */
+  private static void delete(final File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (!file.delete()) file.deleteOnExit();
+  }
+
+  /**
+   * Samples the used heap as a whole while a run is measured.
+   *
+   * The peaks of the single heap pools are not reached at the same time, so their sum would overstate the peak. The
+   * sampled peak misses spikes shorter than the interval instead.
+   */
+  private static final class HeapSampler
+    extends Thread
+  {
+    /** the milliseconds between two samples */
+    private static final long INTERVAL = 5L;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private volatile boolean running = true;
+    private long peak = 0L;
+
+    /** create a daemon thread, so a failing run cannot keep the benchmark alive */
+    HeapSampler() {
+      super("heap sampler");
+      setDaemon(true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      while (running) {
+        sample();
+        try {
+          Thread.sleep(INTERVAL);
+        } catch (InterruptedException ex) {
+          return;
+        }
+      }
+    }
+
+    /** take a single sample */
+    private synchronized void sample() {
+      peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * Stop sampling and take a last sample.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the sampler
+     */
+    void finish()
+      throws InterruptedException
+    {
+      running = false;
+      interrupt();
+      join();
+      sample();
+    }
+
+    /** @return the highest used heap in bytes */
+    synchronized long getPeak() {
+      return peak;
+    }
+  }
+
+  /**
+   * The measures of a single run.
+   */
+  private static final class Result
+  {
+    private long rows;
+    private long millis;
+    private long peakHeap;
+    private PassReport slowest;
+
+    /** @return the rows sent to the database per second */
+    long getThroughput() {
+      return rows * 1000L / millis;
+    }
+  }
+}
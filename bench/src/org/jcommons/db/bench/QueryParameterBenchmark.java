@@ -0,0 +1,98 @@
+package org.jcommons.db.bench;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.jcommons.db.bench.Dataset.Kind;
+import org.jcommons.db.load.sheet.QueryParameter;
+import org.jcommons.io.sheet.Book;
+import org.jcommons.io.sheet.Sheet;
+import org.jcommons.io.text.reader.csv.CsvBookReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of turning a row of a sheet into statement parameters by {@link QueryParameter#row(Sheet, int)}.
+ *
+ * The sheet is read from a generated CSV file with one column of every kind, so the throughput is rows per second
+ * with four cells each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParameterBenchmark
+{
+  /** clean or dirty values */
+  @Param({"clean", "dirty"})
+  public String quality;
+
+  /** few distinct values or all distinct */
+  @Param({"low", "high"})
+  public String cardinality;
+
+  private Sheet sheet;
+  private QueryParameter parameter;
+
+  /**
+   * Read the generated rows into a sheet and map every column to a parameter.
+   *
+   * @throws IOException if the CSV file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void generate()
+    throws IOException
+  {
+    boolean dirty = "dirty".equals(quality);
+    boolean high = "high".equals(cardinality);
+    Kind[] kinds = Kind.values();
+    String[][] columns = new String[kinds.length][];
+    for (Kind kind : kinds) {
+      columns[kind.ordinal()] = Dataset.values(kind, dirty, high);
+    }
+
+    File directory = File.createTempFile("bench", "");
+    if (!directory.delete() || !directory.mkdir()) throw new IOException("Cannot create " + directory);
+    File file = new File(directory, "bench.csv");
+    Writer output = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      for (Kind kind : kinds) {
+        output.write(kind.ordinal() == 0 ? "" : ",");
+        output.write(kind.name().toLowerCase());
+      }
+      output.write("\n");
+      for (int row = 0; row < Dataset.SIZE; ++row) {
+        for (Kind kind : kinds) {
+          output.write(kind.ordinal() == 0 ? "\"" : ",\"");
+          output.write(columns[kind.ordinal()][row].replace("\"", "\"\""));
+          output.write("\"");
+        }
+        output.write("\n");
+      }
+    } finally {
+      output.close();
+    }
+
+    Book book = new CsvBookReader().addFile(file).read();
+    sheet = book.getSheets().get(0);
+    if (!file.delete() || !directory.delete()) file.deleteOnExit();
+
+    parameter = new QueryParameter();
+    for (Kind kind : kinds) {
+      parameter.add(Dataset.column(kind), kind.ordinal() + 1);
+    }
+  }
+
+  /**
+   * @param sink consumes the parameters of all rows
+   */
+  @Benchmark
+  @OperationsPerInvocation(Dataset.SIZE)
+  public void row(final Blackhole sink) {
+    for (int row = 0; row < Dataset.SIZE; ++row) {
+      sink.consume(parameter.row(sheet, row));
+    }
+  }
+}
@@ -2,8 +2,8 @@ package org.jcommons.db.column;
 
 import org.apache.commons.lang.StringUtils;
 import org.jcommons.db.column.converter.ValueFactory;
+import org.jcommons.db.column.validation.ViolationLog;
 import org.jcommons.message.Message;
-import org.jcommons.message.Messages;
 
 /**
  * Abstract notion of a database column value.
@@ -21,7 +21,7 @@ public class Column
 {
   private MetaColumn meta;
   private String value;
-  private Message message = null;
+  private ViolationLog violations = null;
 
   /** @return the meta column describing this column */
   public MetaColumn getMeta() {
@@ -41,7 +41,7 @@ public class Column
    */
   public Column setMeta(final MetaColumn metaColumn) {
     this.meta = metaColumn;
-    message = null;
+    violations = null;
     return this;
   }
 
@@ -53,20 +53,20 @@ public class Column
    */
   public Column setValue(final String value) {
     this.value = value;
-    message = null;
+    violations = null;
     return this;
   }
 
   /** @return the current value as an object in the type of the column, null if the value is not given or invalid */
   public Object getObject() {
     // every time we do a conversion we clear the messages so we get the latest validation errors
-    if (message == null) {
-      message = new Messages();
+    if (violations == null) {
+      violations = new ViolationLog();
     } else {
-      message.clear();
+      violations.clear();
     }
 
-    return ValueFactory.valueOf(getMeta(), getValue(), message);
+    return ValueFactory.valueOf(getMeta(), getValue(), violations);
   }
 
   /**
@@ -76,8 +76,8 @@ public class Column
    *         <code>null</code>, otherwise false
    */
   public boolean isValid() {
-    Message validations = validate();
-    return !(validations.isError() || validations.isWarning());
+    if (violations == null) getObject();
+    return violations.isEmpty();
   }
 
   /** @return true if the value is empty or the column is unknown */
@@ -87,12 +87,12 @@ public class Column
     return StringUtils.isBlank(getValue()) || getMeta() == null;
   }
 
-  /** @return the validation messages for this object */
+  /** @return the validation messages for this object, only formatted on request */
   public Message validate() {
-    if (message == null) {
+    if (violations == null) {
       getObject();
     }
 
-    return message;
+    return violations.getMessages();
   }
 }
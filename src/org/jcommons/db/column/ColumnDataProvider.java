@@ -3,6 +3,9 @@ package org.jcommons.db.column;
 import java.util.*;
 
 import org.apache.commons.lang.StringUtils;
+import org.jcommons.db.column.converter.ValueFactory;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.jcommons.db.load.source.RowSource;
 import org.jcommons.io.data.DataProvider;
 import org.jcommons.lang.string.NamedString;
 import org.jcommons.message.*;
@@ -23,7 +26,7 @@ public class ColumnDataProvider
   private String[] values;
   private final Map<String, Integer> indices;
 
-  private final Message validations;
+  private final ViolationLog validations;
 
   private static final String COLUMN_REQUIRED = "Table \"${table}\" requires values for column \"${column}\".";
   private static final String COLUMN_MISSING = "Table \"${table}\" has no column \"${column}\".";
@@ -37,7 +40,7 @@ public class ColumnDataProvider
     headers = null;
     indices = new HashMap<String, Integer>();
     values = new String[0];
-    validations = new Messages();
+    validations = new ViolationLog();
   }
 
   /** {@inheritDoc} */
@@ -98,14 +101,11 @@ public class ColumnDataProvider
   /** {@inheritDoc} */
   @Override
   public Object getValueAt(final int index) {
-    validate();
     Column[] columns = getColumns();
     if (index >= 0 && index < columns.length && values != null && index < values.length) {
-      Column column = columns[index];
-      column.setValue(values[index]);
-      Object object = column.getObject();
-      validations.add(column.validate());
-      return object;
+      // violations are only recorded here, they are formatted once someone asks for them
+      MetaColumn meta = columns[index].getMeta();
+      if (meta != null) return ValueFactory.valueOf(meta, values[index], validations);
     }
     return null;
   }
@@ -195,6 +195,26 @@ public class ColumnDataProvider
     }
   }
 
+  /**
+   * Take over the values of a single row of the given source, columns are mapped by their header names.
+   *
+   * @param source the values of a sheet, e.g. a columnar source
+   * @param row the row index of the values to take over
+   */
+  public void setValues(final RowSource source, final int row) {
+    validations.clear();
+    Arrays.fill(this.values, null);
+
+    List<String> names = source.getColumns();
+    for (int column = 0; column < names.size(); ++column) {
+      Integer index = indices.get(names.get(column));
+      if (index != null && index < this.values.length) {
+        CharSequence value = source.getValue(column, row);
+        this.values[index] = value == null ? null : value.toString();
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void setValues(final String[] values) {
@@ -243,14 +263,13 @@ public class ColumnDataProvider
    * @return the list of error messages, should contain no faults for a successful conversion
    */
   public Message validate() {
-    if (validations.isEmpty()) {
-      // the data is validated on the fly during conversion, so we need to fill this data only if no validations has
-      // been performed in the meantime
-      validations.add(validateTable());
-    }
+    // the data is validated on the fly during conversion, the table is validated on request
+    Messages messages = new Messages();
+    messages.add(validateTable());
 
     // only return the validations for the current moment
-    return validations;
+    messages.add(validations.getMessages());
+    return messages;
   }
 
   /** @return current conversion columns for the current columns and meta-data, never <code>null</code> */
@@ -261,6 +280,7 @@ public class ColumnDataProvider
         for (int index = 0; index < getHeaders().length; ++index) {
           Column column = new Column();
           column.setMeta(getMetaColumn(getHeaders()[index]));
+          columns[index] = column;
         }
       } else {
         columns = new Column[0];
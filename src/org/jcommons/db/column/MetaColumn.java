@@ -2,6 +2,9 @@ package org.jcommons.db.column;
 
 import static org.jcommons.lang.string.StringBuilderUtils.appendIfNotEmpty;
 
+import java.io.File;
+import java.sql.Types;
+
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -17,6 +20,7 @@ public class MetaColumn
   private Integer size;
   private Integer precision;
   private Integer fraction;
+  private int sqlType = Types.OTHER;
 
   private boolean nullable;
   private boolean primary = false;
@@ -24,6 +28,7 @@ public class MetaColumn
   private String label;
   private String schema;
   private String table;
+  private File lobDirectory;
 
   /** @return the column name */
   public String getName() {
@@ -55,15 +60,21 @@ public class MetaColumn
     // not determined yet? can only change if the type is changed
     if (metaType == null) {
       if (isTimestamp()) {
-        return MetaType.TIMESTAMP;
+        metaType = MetaType.TIMESTAMP;
       } else if (isDate()) {
-        return MetaType.DATE;
+        metaType = MetaType.DATE;
+      } else if (isClob()) {
+        metaType = MetaType.CLOB;
+      } else if (isBlob()) {
+        metaType = MetaType.BLOB;
       } else if (isNumeric()) {
-        return MetaType.NUMBER;
-      } else if (!"ANY".equalsIgnoreCase(getSimpleType())) { return MetaType.STRING; }
+        metaType = MetaType.NUMBER;
+      } else if (!"ANY".equalsIgnoreCase(getSimpleType())) {
+        metaType = MetaType.STRING;
+      }
     }
 
-    return null;
+    return metaType;
   }
 
   /**
@@ -76,6 +87,20 @@ public class MetaColumn
     this.metaType = null;
   }
 
+  /** @return the SQL type of the column as defined in {@link Types}, {@link Types#OTHER} if not known */
+  public int getSqlType() {
+    return sqlType;
+  }
+
+  /**
+   * Define the SQL type of this column, required to bind <code>null</code> values.
+   *
+   * @param sqlType the SQL type as defined in {@link Types}
+   */
+  public void setSqlType(final int sqlType) {
+    this.sqlType = sqlType;
+  }
+
   /*** @return the size of the column, this is the string length for numeric values */
   public Integer getSize() {
     return size;
@@ -90,15 +115,15 @@ public class MetaColumn
     this.size = size;
   }
 
-  /** @return the amount of digits of the integral part if it is a numeric value, mostly 0 */
+  /** @return the total amount of significant digits if it is a numeric value, including the fraction digits */
   public Integer getPrecision() {
     return precision;
   }
 
   /**
-   * Define the integral part of a numeric value.
+   * Define the precision of a numeric value.
    *
-   * @param precision the amount of digits that form the integral part without the mantissa
+   * @param precision the total amount of digits including the mantissa, e.g. 6 for <code>decimal(6,2)</code>
    */
   public void setPrecision(final Integer precision) {
     this.precision = precision;
@@ -193,6 +218,20 @@ public class MetaColumn
     this.table = table;
   }
 
+  /** @return the directory file references of large objects are read from, <code>null</code> if not allowed */
+  public File getLobDirectory() {
+    return lobDirectory;
+  }
+
+  /**
+   * Allow the cells of a large object column to reference files below the given directory.
+   *
+   * @param lobDirectory the directory relative file references are resolved against, <code>null</code> to reject them
+   */
+  public void setLobDirectory(final File lobDirectory) {
+    this.lobDirectory = lobDirectory;
+  }
+
   /** @return true if this column can contain date details, can be day, time or time stamp */
   public boolean isDate() {
     String type = getSimpleType();
@@ -205,6 +244,20 @@ public class MetaColumn
     return "timestamp".equalsIgnoreCase(type);
   }
 
+  /** @return true if the column holds large texts that are streamed into the database */
+  public boolean isClob() {
+    if (sqlType == Types.CLOB || sqlType == Types.NCLOB) return true;
+    if (sqlType == Types.LONGVARCHAR || sqlType == Types.LONGNVARCHAR) return true;
+    return "java.sql.Clob".equals(getType()) || "java.sql.NClob".equals(getType());
+  }
+
+  /** @return true if the column holds binary data that is streamed into the database */
+  public boolean isBlob() {
+    if (sqlType == Types.BLOB || sqlType == Types.LONGVARBINARY) return true;
+    if (sqlType == Types.BINARY || sqlType == Types.VARBINARY) return true;
+    return "java.sql.Blob".equals(getType()) || "[B".equals(getType());
+  }
+
   /** @return true if the column can contain numeric data */
   public boolean isNumeric() {
     if (StringUtils.isNotBlank(getType())) {
@@ -218,6 +271,19 @@ public class MetaColumn
     return false;
   }
 
+  /** @return true if the column holds whole numbers only, e.g. integers or longs */
+  public boolean isIntegral() {
+    String type = getType();
+    return "java.lang.Integer".equals(type) || "java.lang.Long".equals(type) || "java.lang.Short".equals(type)
+        || "java.lang.Byte".equals(type) || "java.math.BigInteger".equals(type);
+  }
+
+  /** @return true if the column holds approximate floating point numbers, e.g. doubles or floats */
+  public boolean isFloating() {
+    String type = getType();
+    return "java.lang.Double".equals(type) || "java.lang.Float".equals(type);
+  }
+
   /** {@inheritDoc} */
   @Override
   public int hashCode() {
@@ -14,5 +14,9 @@ public enum MetaType
   /** a string type */
   STRING,
   /** a date type with time part */
-  TIMESTAMP;
+  TIMESTAMP,
+  /** a character large object that is streamed into the database */
+  CLOB,
+  /** a binary large object that is streamed into the database */
+  BLOB;
 }
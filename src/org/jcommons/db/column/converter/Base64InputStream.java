@@ -0,0 +1,135 @@
+package org.jcommons.db.column.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes base64 encoded characters while they are read, so the decoded content is never held as a whole.
+ *
+ * White space between the characters is ignored, padding characters end the content.
+ */
+public class Base64InputStream
+  extends InputStream
+{
+  private static final byte[] DIGITS = new byte[128];
+
+  static {
+    java.util.Arrays.fill(DIGITS, (byte) -1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int index = 0; index < alphabet.length(); ++index) {
+      DIGITS[alphabet.charAt(index)] = (byte) index;
+    }
+    // accept the URL safe alphabet as well
+    DIGITS['-'] = 62;
+    DIGITS['_'] = 63;
+  }
+
+  private final CharSequence text;
+  private final int end;
+  private int position;
+
+  private final int[] pending = new int[3];
+  private int available = 0;
+  private int next = 0;
+  private boolean done = false;
+
+  /**
+   * Create a stream that decodes the given region.
+   *
+   * @param text the base64 encoded characters, never null
+   * @param start the index of the first encoded character
+   * @param end the index after the last encoded character
+   */
+  public Base64InputStream(final CharSequence text, final int start, final int end) {
+    this.text = text;
+    this.end = end;
+    this.position = start;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read()
+    throws IOException
+  {
+    if (next >= available && !fill()) return -1;
+    return pending[next++];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read(final byte[] buffer, final int offset, final int length)
+    throws IOException
+  {
+    if (length == 0) return 0;
+
+    int count = 0;
+    while (count < length) {
+      if (next >= available && !fill()) break;
+      buffer[offset + count++] = (byte) pending[next++];
+    }
+    return count == 0 ? -1 : count;
+  }
+
+  /**
+   * Decode the next group of four characters.
+   *
+   * @return true if at least one byte was decoded, false at the end of the content
+   * @throws IOException if the content contains characters outside of the base64 alphabet
+   */
+  private boolean fill()
+    throws IOException
+  {
+    next = 0;
+    available = 0;
+    if (done) return false;
+
+    int bits = 0;
+    int digits = 0;
+    while (digits < 4 && position < end) {
+      char c = text.charAt(position++);
+      if (c <= ' ') continue;
+      if (c == '=') {
+        done = true;
+        break;
+      }
+
+      int digit = c < DIGITS.length ? DIGITS[c] : -1;
+      if (digit < 0) throw new IOException("Invalid base64 character '" + c + "' at position " + (position - 1));
+      bits = (bits << 6) | digit;
+      ++digits;
+    }
+
+    if (digits < 4) done = true;
+    if (digits == 1) throw new IOException("Truncated base64 content at position " + position);
+    if (digits < 2) return false;
+
+    bits <<= 6 * (4 - digits);
+    available = digits - 1;
+    pending[0] = (bits >> 16) & 0xff;
+    pending[1] = (bits >> 8) & 0xff;
+    pending[2] = bits & 0xff;
+    return true;
+  }
+
+  /**
+   * Calculate the number of decoded bytes without decoding the content.
+   *
+   * @param text the base64 encoded characters, never null
+   * @param start the index of the first encoded character
+   * @param end the index after the last encoded character
+   * @return the number of decoded bytes or -1 if the content is not valid base64
+   */
+  public static long decodedLength(final CharSequence text, final int start, final int end) {
+    long digits = 0;
+    for (int index = start; index < end; ++index) {
+      char c = text.charAt(index);
+      if (c <= ' ') continue;
+      if (c == '=') break;
+      if (c >= DIGITS.length || DIGITS[c] < 0) return -1;
+      ++digits;
+    }
+
+    if (digits % 4 == 1) return -1;
+    return digits / 4 * 3 + Math.max(0, digits % 4 - 1);
+  }
+}
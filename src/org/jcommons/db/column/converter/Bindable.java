@@ -0,0 +1,20 @@
+package org.jcommons.db.column.converter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * converted value that knows best how to bind itself to a statement, e.g. by streaming its content
+ */
+public interface Bindable
+{
+  /**
+   * Bind this value to the given statement.
+   *
+   * @param statement the statement to bind the value to, never null
+   * @param index the JDBC parameter index starting with 1
+   * @throws SQLException if the value cannot be bound
+   */
+  void bind(PreparedStatement statement, int index)
+    throws SQLException;
+}
@@ -0,0 +1,86 @@
+package org.jcommons.db.column.converter;
+
+import java.io.Reader;
+
+/**
+ * Reader over a character sequence that does not copy the characters into a new string.
+ */
+public class CharSequenceReader
+  extends Reader
+{
+  private final CharSequence text;
+  private final int end;
+  private int position;
+  private int mark;
+
+  /**
+   * Create a reader over the given region.
+   *
+   * @param text the characters to read, never null
+   * @param start the index of the first character to read
+   * @param end the index after the last character to read
+   */
+  public CharSequenceReader(final CharSequence text, final int start, final int end) {
+    this.text = text;
+    this.end = end;
+    this.position = start;
+    this.mark = start;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read() {
+    return position < end ? text.charAt(position++) : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read(final char[] buffer, final int offset, final int length) {
+    if (length == 0) return 0;
+    if (position >= end) return -1;
+
+    int count = Math.min(length, end - position);
+    for (int index = 0; index < count; ++index) {
+      buffer[offset + index] = text.charAt(position++);
+    }
+    return count;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long skip(final long count) {
+    int skipped = (int) Math.min(Math.max(0, count), end - position);
+    position += skipped;
+    return skipped;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean ready() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean markSupported() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void mark(final int limit) {
+    mark = position;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void reset() {
+    position = mark;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    position = end;
+  }
+}
@@ -0,0 +1,223 @@
+package org.jcommons.db.column.converter;
+
+import org.jcommons.db.column.validation.Violation;
+
+/**
+ * Bounded memo of the conversion results of a single column that switches itself off for high cardinality columns.
+ *
+ * During a probation period every distinct raw value is remembered together with its converted value and the
+ * outcome of the validation. If the column shows too many distinct values the memo is dropped and never used again,
+ * otherwise it keeps serving repeated values until its hit ratio drops. The raw values are compared by content, so
+ * looking up a value does not create any objects. A memo is not thread-safe and must only be used by one column.
+ *
+ * The cached values are shared between all rows with the same raw value, so they must not be modified.
+ */
+public final class ConversionMemo
+{
+  /** default maximum number of distinct values that are remembered */
+  public static final int CAPACITY = 4096;
+  /** default number of lookups after which the cardinality is judged */
+  public static final int PROBATION = 16384;
+
+  private final int capacity;
+  private final int probation;
+
+  private String[] keys;
+  private int[] hashes;
+  private Object[] values;
+  private Violation[] violations;
+  private boolean[] faults;
+  private int mask;
+  private int size = 0;
+
+  private boolean enabled = true;
+  private long lookups = 0;
+  private long hits = 0;
+  private int windowLookups = 0;
+  private int windowHits = 0;
+
+  /** create a memo with the default capacity and probation period */
+  public ConversionMemo() {
+    this(CAPACITY, PROBATION);
+  }
+
+  /**
+   * Create a memo.
+   *
+   * @param capacity the maximum number of distinct values that are remembered
+   * @param probation the number of lookups after which the memo is dropped if more than a quarter of the values were
+   *          distinct, also the size of the window in which the hit ratio must stay above one half
+   */
+  public ConversionMemo(final int capacity, final int probation) {
+    this.capacity = Math.max(1, capacity);
+    this.probation = Math.max(1, probation);
+
+    int slots = Integer.highestOneBit(this.capacity) << 2;
+    keys = new String[slots];
+    hashes = new int[slots];
+    values = new Object[slots];
+    violations = new Violation[slots];
+    faults = new boolean[slots];
+    mask = slots - 1;
+  }
+
+  /** @return true if the memo is still in use, false if it has been switched off for this column */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** @return the number of distinct values that are remembered */
+  public int size() {
+    return size;
+  }
+
+  /** @return the number of lookups so far */
+  public long getLookups() {
+    return lookups;
+  }
+
+  /** @return the number of lookups that found a remembered value */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Look up a raw value.
+   *
+   * @param text the raw value, never null
+   * @return the slot of the remembered value or -1 if the value is not known or the memo is switched off
+   */
+  public int find(final CharSequence text) {
+    if (!enabled) return -1;
+
+    ++lookups;
+    ++windowLookups;
+    judge();
+    if (!enabled) return -1;
+
+    int hash = hash(text);
+    int slot = hash & mask;
+    while (keys[slot] != null) {
+      if (hashes[slot] == hash && equal(keys[slot], text)) {
+        ++hits;
+        ++windowHits;
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /** switch the memo off if the column turns out to have a high cardinality */
+  private void judge() {
+    if (lookups <= probation) {
+      if (lookups == probation && size > probation / 4) disable();
+      if (lookups == probation) {
+        windowLookups = 0;
+        windowHits = 0;
+      }
+    } else if (windowLookups >= probation) {
+      if (windowHits * 2 < windowLookups) disable();
+      windowLookups = 0;
+      windowHits = 0;
+    }
+  }
+
+  /**
+   * Remember the conversion result of a raw value that was not found before.
+   *
+   * @param text the raw value, never null
+   * @param value the converted value, can be <code>null</code>
+   * @param violation the violation reported for the value, <code>null</code> if none
+   * @param fault true if the value was lost during conversion
+   */
+  public void put(final CharSequence text, final Object value, final Violation violation, final boolean fault) {
+    if (!enabled) return;
+    if (size >= capacity) {
+      // still learning but already full, so the column has far too many distinct values
+      if (lookups < probation) disable();
+      return;
+    }
+
+    int hash = hash(text);
+    int slot = hash & mask;
+    while (keys[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+
+    keys[slot] = text.toString();
+    hashes[slot] = hash;
+    values[slot] = value;
+    violations[slot] = violation;
+    faults[slot] = fault;
+    ++size;
+  }
+
+  /**
+   * @param slot the slot returned by {@link #find(CharSequence)}
+   * @return the converted value
+   */
+  public Object getValue(final int slot) {
+    return values[slot];
+  }
+
+  /**
+   * @param slot the slot returned by {@link #find(CharSequence)}
+   * @return the violation reported for the value, <code>null</code> if none
+   */
+  public Violation getViolation(final int slot) {
+    return violations[slot];
+  }
+
+  /**
+   * @param slot the slot returned by {@link #find(CharSequence)}
+   * @return true if the value was lost during conversion
+   */
+  public boolean isFault(final int slot) {
+    return faults[slot];
+  }
+
+  /** switch the memo off and release the remembered values */
+  private void disable() {
+    enabled = false;
+    keys = null;
+    hashes = null;
+    values = null;
+    violations = null;
+    faults = null;
+    size = 0;
+  }
+
+  /**
+   * @param text the characters to hash, never null
+   * @return the hash code of the content, compatible to {@link String#hashCode()} but spread
+   */
+  private static int hash(final CharSequence text) {
+    int hash = 0;
+    for (int index = 0; index < text.length(); ++index) {
+      hash = 31 * hash + text.charAt(index);
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * @param key the remembered value
+   * @param text the looked up characters
+   * @return true if both have the same content
+   */
+  private static boolean equal(final String key, final CharSequence text) {
+    if (key.length() != text.length()) return false;
+    for (int index = 0; index < key.length(); ++index) {
+      if (key.charAt(index) != text.charAt(index)) return false;
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder(enabled ? "memo " : "memo disabled ");
+    text.append(size).append(" values, ").append(hits).append(" of ").append(lookups).append(" hits");
+    return text.toString();
+  }
+}
@@ -0,0 +1,459 @@
+package org.jcommons.db.column.converter;
+
+import java.util.*;
+
+/**
+ * A fixed date layout compiled from sample values that parses dates and time stamps without creating objects.
+ *
+ * A layout is a sequence of digit fields, each preceded by a literal separator, e.g. <code>dd.MM.yyyy HH:mm</code>.
+ * Layouts are inferred from the values of a column, the layout shared by the majority of all samples wins. A time may
+ * be followed by a zone designator, either <code>Z</code> for UTC or an offset like <code>+02:00</code>,
+ * <code>-0500</code> or <code>+01</code>, which is parsed into {@link #OFFSET}.
+ *
+ * Unless a sample has a day beyond 12 the order of day and month is only guessed, such a layout is ambiguous and must
+ * be confirmed by a value before it is trusted, see {@link #isAmbiguous()} and {@link #swap()}.
+ */
+public final class DateLayout
+{
+  /** index of the year in the parsed fields */
+  public static final int YEAR = 0;
+  /** index of the month in the parsed fields, starting with 1 for January */
+  public static final int MONTH = 1;
+  /** index of the day of the month in the parsed fields */
+  public static final int DAY = 2;
+  /** index of the hour of the day in the parsed fields */
+  public static final int HOUR = 3;
+  /** index of the minutes in the parsed fields */
+  public static final int MINUTE = 4;
+  /** index of the seconds in the parsed fields */
+  public static final int SECOND = 5;
+  /** index of the nano seconds in the parsed fields */
+  public static final int NANOS = 6;
+  /** index of the offset from UTC in minutes in the parsed fields, {@link #NO_OFFSET} for a local time */
+  public static final int OFFSET = 7;
+  /** the number of parsed fields */
+  public static final int FIELDS = 8;
+  /** the parsed offset of a value without zone designator */
+  public static final int NO_OFFSET = Integer.MIN_VALUE;
+
+  private static final String[] SYMBOLS = { "y", "M", "d", "H", "m", "s", "S" };
+  private static final int[] DAYS = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+  private final int[] fields;
+  private final int[] minWidths;
+  private final int[] maxWidths;
+  private final String[] separators;
+  private final String suffix;
+  private final boolean ambiguous;
+  private final boolean zoned;
+
+  /**
+   * Create a new layout, use {@link #infer(Collection)} to create layouts from sample values.
+   *
+   * @param fields the field index for each digit run
+   * @param minWidths the minimum number of digits for each digit run
+   * @param maxWidths the maximum number of digits for each digit run
+   * @param separators the literal text preceding each digit run
+   * @param suffix the literal text following the last digit run
+   * @param ambiguous true if the order of day and month is guessed
+   * @param zoned true if the values end with a zone designator
+   */
+  private DateLayout(final int[] fields, final int[] minWidths, final int[] maxWidths, final String[] separators,
+                     final String suffix, final boolean ambiguous, final boolean zoned)
+  {
+    this.fields = fields;
+    this.minWidths = minWidths;
+    this.maxWidths = maxWidths;
+    this.separators = separators;
+    this.suffix = suffix;
+    this.ambiguous = ambiguous;
+    this.zoned = zoned;
+  }
+
+  /** @return true if no sample proved the order of day and month, so it is only guessed */
+  public boolean isAmbiguous() {
+    return ambiguous;
+  }
+
+  /** @return true if the values end with a zone designator */
+  public boolean isZoned() {
+    return zoned;
+  }
+
+  /**
+   * Confirm the guessed order of day and month, e.g. once a value parsed a day beyond 12.
+   *
+   * @return the same layout that is no longer ambiguous
+   */
+  public DateLayout confirm() {
+    if (!ambiguous) return this;
+    return new DateLayout(fields, minWidths, maxWidths, separators, suffix, false, zoned);
+  }
+
+  /**
+   * Exchange day and month of a layout that starts with both, e.g. if a value contradicts the order of the layout.
+   *
+   * @return the layout with day and month exchanged that is no longer ambiguous, <code>null</code> if the layout
+   *         starts with the year or is packed
+   */
+  public DateLayout swap() {
+    if (fields.length < 3 || fields[2] != YEAR) return null;
+    int[] swapped = fields.clone();
+    swapped[0] = fields[1];
+    swapped[1] = fields[0];
+    return new DateLayout(swapped, minWidths, maxWidths, separators, suffix, false, zoned);
+  }
+
+  /** @return true if this layout contains a time part */
+  public boolean hasTime() {
+    for (int field : fields) {
+      if (field >= HOUR) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Parse the given region into the date fields.
+   *
+   * @param text the characters to parse, never null
+   * @param from the index of the first character
+   * @param to the index after the last character
+   * @param values receives the parsed values indexed by the field constants, must hold {@link #FIELDS} values
+   * @return true if the region matches this layout and denotes a valid date, otherwise false
+   */
+  public boolean parse(final CharSequence text, final int from, final int to, final int[] values) {
+    values[YEAR] = 0;
+    values[MONTH] = 1;
+    values[DAY] = 1;
+    values[HOUR] = 0;
+    values[MINUTE] = 0;
+    values[SECOND] = 0;
+    values[NANOS] = 0;
+    values[OFFSET] = NO_OFFSET;
+
+    int end = to;
+    if (zoned) {
+      end = zoneStart(text, from, to);
+      if (end < 0) return false;
+      values[OFFSET] = offset(text, end, to);
+      if (values[OFFSET] == NO_OFFSET) return false;
+    }
+
+    int index = from;
+    for (int run = 0; run < fields.length; ++run) {
+      index = match(text, index, end, separators[run]);
+      if (index < 0) return false;
+
+      int value = 0;
+      int count = 0;
+      while (index < end && count < maxWidths[run]) {
+        char c = text.charAt(index);
+        if (c < '0' || c > '9') break;
+        value = value * 10 + (c - '0');
+        ++count;
+        ++index;
+      }
+      if (count < minWidths[run]) return false;
+
+      if (fields[run] == NANOS) {
+        for (; count < 9; ++count) {
+          value *= 10;
+        }
+      }
+      values[fields[run]] = value;
+    }
+
+    index = match(text, index, end, suffix);
+    return index == end && isValid(values);
+  }
+
+  /**
+   * Find the zone designator at the end of a time.
+   *
+   * A <code>Z</code> must follow a digit, an offset must follow a time that contains a colon or a <code>T</code>, so
+   * the day of a date like <code>2012-06-30</code> is not mistaken for an offset.
+   *
+   * @param text the characters to parse
+   * @param from the index of the first character
+   * @param to the index after the last character
+   * @return the index of the zone designator, -1 if there is none
+   */
+  static int zoneStart(final CharSequence text, final int from, final int to) {
+    if (to - from < 2) return -1;
+    if (text.charAt(to - 1) == 'Z') return isDigit(text.charAt(to - 2)) ? to - 1 : -1;
+
+    for (int length : new int[] { 6, 5, 3 }) {
+      int sign = to - length;
+      if (sign <= from || !isDigit(text.charAt(sign - 1))) continue;
+      if (text.charAt(sign) != '+' && text.charAt(sign) != '-') continue;
+      if (offset(text, sign, to) == NO_OFFSET) continue;
+      for (int index = from; index < sign; ++index) {
+        if (text.charAt(index) == ':' || text.charAt(index) == 'T') return sign;
+      }
+      return -1;
+    }
+    return -1;
+  }
+
+  /**
+   * Parse a zone designator.
+   *
+   * @param text the characters to parse
+   * @param from the index of the designator
+   * @param to the index after the designator
+   * @return the offset from UTC in minutes, {@link #NO_OFFSET} if the designator is invalid
+   */
+  private static int offset(final CharSequence text, final int from, final int to) {
+    int length = to - from;
+    if (length == 1) return text.charAt(from) == 'Z' ? 0 : NO_OFFSET;
+    if (length != 3 && length != 5 && length != 6) return NO_OFFSET;
+    if (length == 6 && text.charAt(from + 3) != ':') return NO_OFFSET;
+
+    int[] digits = { from + 1, from + 2, to - 2, to - 1 };
+    int value = 0;
+    for (int position = 0; position < (length == 3 ? 2 : 4); ++position) {
+      char c = text.charAt(digits[position]);
+      if (!isDigit(c)) return NO_OFFSET;
+      value = value * 10 + (c - '0');
+    }
+    int minutes = length == 3 ? value * 60 : value / 100 * 60 + value % 100;
+    if ((length != 3 && value % 100 >= 60) || minutes > 18 * 60) return NO_OFFSET;
+    return text.charAt(from) == '-' ? -minutes : minutes;
+  }
+
+  /**
+   * Match a literal at the given position.
+   *
+   * @param text the characters to parse
+   * @param index the current position
+   * @param to the index after the last character
+   * @param literal the literal to match
+   * @return the position after the literal or -1 if the literal does not match
+   */
+  private static int match(final CharSequence text, final int index, final int to, final String literal) {
+    if (index + literal.length() > to) return -1;
+    for (int offset = 0; offset < literal.length(); ++offset) {
+      if (text.charAt(index + offset) != literal.charAt(offset)) return -1;
+    }
+    return index + literal.length();
+  }
+
+  /**
+   * Check whether the parsed values denote an existing date and time.
+   *
+   * @param values the parsed values
+   * @return true if all values are in range
+   */
+  private static boolean isValid(final int[] values) {
+    int month = values[MONTH];
+    if (month < 1 || month > 12) return false;
+
+    int day = values[DAY];
+    if (day < 1 || day > DAYS[month - 1]) return false;
+    if (month == 2 && day == 29 && !isLeapYear(values[YEAR])) return false;
+
+    return values[HOUR] < 24 && values[MINUTE] < 60 && values[SECOND] < 60;
+  }
+
+  /**
+   * @param year the year to check
+   * @return true if the given year is a leap year in the Gregorian calendar
+   */
+  private static boolean isLeapYear(final int year) {
+    return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+  }
+
+  /**
+   * Calculate the number of days since 1970-01-01 in the proleptic Gregorian calendar.
+   *
+   * @param year the year
+   * @param month the month starting with 1
+   * @param day the day of the month
+   * @return the days since the epoch, negative for earlier dates
+   */
+  public static long toEpochDay(final int year, final int month, final int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Infer the layout shared by the majority of the given samples.
+   *
+   * @param samples the trimmed non-empty sample values of a column
+   * @return the layout matching at least half of the samples or <code>null</code> if there is no such layout
+   */
+  public static DateLayout infer(final Collection<String> samples) {
+    if (samples == null || samples.isEmpty()) return null;
+
+    // group the samples by their separators and zone designator, the digits may vary
+    Map<String, List<String>> shapes = new HashMap<String, List<String>>();
+    List<String> majority = null;
+    boolean zoned = false;
+    for (String sample : samples) {
+      int zone = zoneStart(sample, 0, sample.length());
+      String value = zone < 0 ? sample : sample.substring(0, zone);
+      String shape = value.replaceAll("[0-9]+", "0") + (zone < 0 ? "" : " zoned");
+      List<String> group = shapes.get(shape);
+      if (group == null) {
+        group = new ArrayList<String>();
+        shapes.put(shape, group);
+      }
+      group.add(value);
+      if (majority == null || group.size() > majority.size()) {
+        majority = group;
+        zoned = zone >= 0;
+      }
+    }
+
+    if (majority.size() * 2 < samples.size()) return null;
+    DateLayout layout = compile(majority, zoned);
+    return layout == null || (zoned && !layout.hasTime()) ? null : layout;
+  }
+
+  /**
+   * Compile a layout from samples that all share the same separators.
+   *
+   * @param samples the samples of the same shape without their zone designators, never empty
+   * @param zoned true if the samples end with a zone designator
+   * @return the compiled layout or <code>null</code> if the fields cannot be identified
+   */
+  private static DateLayout compile(final List<String> samples, final boolean zoned) {
+    List<String> separators = new ArrayList<String>();
+    List<int[]> runs = new ArrayList<int[]>();
+    String suffix = split(samples.get(0), separators, null);
+
+    // determine minimum width, maximum width and maximum value of each digit run
+    for (int index = 0; index < separators.size(); ++index) {
+      runs.add(new int[] { Integer.MAX_VALUE, 0, 0 });
+    }
+    for (String sample : samples) {
+      split(sample, null, runs);
+    }
+
+    int count = runs.size();
+    if (count == 1) return compilePacked(runs.get(0), suffix, zoned);
+    if (count < 3 || count > 7) return null;
+
+    int[] fields = new int[count];
+    int[] year = runs.get(0);
+    int[] last = runs.get(2);
+    boolean ambiguous = false;
+    if (year[1] == 4 && year[0] == 4) {
+      fields[0] = YEAR;
+      fields[1] = MONTH;
+      fields[2] = DAY;
+    } else if (last[1] == 4 && last[0] == 4) {
+      // a value beyond 12 proves the order of day and month, samples of both orders contradict each other
+      int first = runs.get(0)[2];
+      int second = runs.get(1)[2];
+      if (first > 12 && second > 12) return null;
+      ambiguous = first <= 12 && second <= 12;
+      boolean monthFirst = second > 12 || (ambiguous && "/".equals(separators.get(1)));
+      fields[2] = YEAR;
+      fields[0] = monthFirst ? MONTH : DAY;
+      fields[1] = monthFirst ? DAY : MONTH;
+    } else {
+      return null;
+    }
+
+    // the time part follows the date in the order hours, minutes, seconds and fraction
+    for (int index = 3; index < count; ++index) {
+      fields[index] = HOUR + index - 3;
+    }
+    if (count == 7 && !(".".equals(separators.get(6)) || ",".equals(separators.get(6)))) return null;
+
+    int[] minWidths = new int[count];
+    int[] maxWidths = new int[count];
+    for (int index = 0; index < count; ++index) {
+      minWidths[index] = fields[index] == YEAR ? 4 : 1;
+      maxWidths[index] = fields[index] == YEAR ? 4 : (fields[index] == NANOS ? 9 : 2);
+    }
+
+    String[] texts = separators.toArray(new String[count]);
+    return new DateLayout(fields, minWidths, maxWidths, texts, suffix, ambiguous, zoned);
+  }
+
+  /**
+   * Compile a layout for packed dates without separators like <code>yyyyMMdd</code> or <code>yyyyMMddHHmmss</code>.
+   *
+   * @param run the statistics of the single digit run
+   * @param suffix the literal text following the digits
+   * @param zoned true if the digits are followed by a zone designator
+   * @return the compiled layout or <code>null</code> if the digits cannot be split into fields
+   */
+  private static DateLayout compilePacked(final int[] run, final String suffix, final boolean zoned) {
+    if (run[0] != run[1] || (run[0] != 8 && run[0] != 12 && run[0] != 14)) return null;
+
+    int count = (run[0] - 8) / 2 + 3;
+    int[] fields = new int[count];
+    int[] widths = new int[count];
+    String[] separators = new String[count];
+    for (int index = 0; index < count; ++index) {
+      fields[index] = index;
+      widths[index] = index == 0 ? 4 : 2;
+      separators[index] = "";
+    }
+    return new DateLayout(fields, widths, widths, separators, suffix, false, zoned);
+  }
+
+  /**
+   * Split a sample into its separators and digit runs.
+   *
+   * @param sample the sample to split
+   * @param separators receives the separator in front of each digit run, can be <code>null</code>
+   * @param runs updates the minimum width, maximum width and maximum value of each digit run, can be <code>null</code>
+   * @return the literal text following the last digit run
+   */
+  private static String split(final String sample, final List<String> separators, final List<int[]> runs) {
+    int index = 0;
+    int run = 0;
+    while (index < sample.length()) {
+      int start = index;
+      while (index < sample.length() && !isDigit(sample.charAt(index))) ++index;
+      if (index == sample.length()) return sample.substring(start);
+      if (separators != null) separators.add(sample.substring(start, index));
+
+      int value = 0;
+      int width = 0;
+      for (; index < sample.length() && isDigit(sample.charAt(index)); ++index, ++width) {
+        if (width < 9) value = value * 10 + (sample.charAt(index) - '0');
+      }
+
+      if (runs != null && run < runs.size()) {
+        int[] statistics = runs.get(run);
+        statistics[0] = Math.min(statistics[0], width);
+        statistics[1] = Math.max(statistics[1], width);
+        statistics[2] = Math.max(statistics[2], value);
+      }
+      ++run;
+    }
+    return "";
+  }
+
+  /**
+   * @param c the character to check
+   * @return true if the character is an ASCII digit
+   */
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    for (int run = 0; run < fields.length; ++run) {
+      text.append(separators[run]);
+      int width = fields[run] == NANOS ? 3 : Math.max(2, minWidths[run]);
+      for (int index = 0; index < width; ++index) {
+        text.append(SYMBOLS[fields[run]]);
+      }
+    }
+    text.append(suffix);
+    return zoned ? text.append("XXX").toString() : text.toString();
+  }
+}
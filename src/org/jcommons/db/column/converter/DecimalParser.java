@@ -0,0 +1,191 @@
+package org.jcommons.db.column.converter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Parses fixed point numbers for <code>DECIMAL(precision, scale)</code> columns in a single pass.
+ *
+ * The digits are read once while the integral and fraction digits are counted, so precision and scale are validated
+ * without converting the number into a string. Values with up to 18 significant digits are returned as unscaled long
+ * and scale, only larger values and exponent notations create a {@link BigDecimal}. Instances hold no state and can
+ * be shared between threads.
+ */
+public final class DecimalParser
+{
+  /** the scale of a column whose number of fraction digits is unknown, all fraction digits are kept */
+  public static final int UNKNOWN_SCALE = -1;
+
+  /** the maximum number of digits that always fit into a long */
+  private static final int LONG_DIGITS = 18;
+
+  private static final long[] POWERS = new long[LONG_DIGITS + 1];
+
+  static {
+    POWERS[0] = 1L;
+    for (int index = 1; index < POWERS.length; ++index) {
+      POWERS[index] = POWERS[index - 1] * 10L;
+    }
+  }
+
+  private final boolean round;
+
+  /** create a parser that rounds surplus fraction digits to the scale of the column */
+  public DecimalParser() {
+    this(true);
+  }
+
+  /**
+   * Create a parser.
+   *
+   * @param round true to round surplus fraction digits half up to the scale of the column, false to keep them and
+   *          leave the rounding to the database
+   */
+  public DecimalParser(final boolean round) {
+    this.round = round;
+  }
+
+  /** @return true if surplus fraction digits are rounded to the scale of the column */
+  public boolean isRound() {
+    return round;
+  }
+
+  /**
+   * Parse the given region into a fixed point number.
+   *
+   * @param text the characters that contain the value, never null
+   * @param from the index of the first non-blank character
+   * @param to the index after the last non-blank character, must be greater than from
+   * @param precision the maximum number of significant digits, 0 if unlimited
+   * @param scale the maximum number of fraction digits, {@link #UNKNOWN_SCALE} to keep all of them
+   * @param target receives the number as {@link PrimitiveValue#DECIMAL} or as {@link BigDecimal} object
+   * @return the status code as defined in {@link ToPrimitive}
+   */
+  public int parse(final CharSequence text, final int from, final int to, final int precision, final int scale,
+                   final PrimitiveValue target)
+  {
+    boolean limited = scale >= 0;
+    int fractionLimit = Math.max(0, scale);
+    int index = from;
+    boolean negative = false;
+    char sign = text.charAt(index);
+    if (sign == '-' || sign == '+') {
+      negative = sign == '-';
+      ++index;
+    }
+
+    long unscaled = 0;
+    int digits = 0;
+    int kept = 0;
+    int dropped = -1;
+    boolean lost = false;
+    boolean seen = false;
+
+    // integral part, leading zeros are not significant
+    for (; index < to; ++index) {
+      char c = text.charAt(index);
+      if (c < '0' || c > '9') break;
+      seen = true;
+      if (digits > 0 || c != '0') {
+        if (++digits > LONG_DIGITS) return parseBig(text, from, to, precision, scale, target);
+        unscaled = unscaled * 10 + (c - '0');
+      }
+    }
+
+    // fraction part, digits beyond the scale are only inspected for rounding
+    if (index < to && text.charAt(index) == '.') {
+      for (++index; index < to; ++index) {
+        char c = text.charAt(index);
+        if (c < '0' || c > '9') break;
+        seen = true;
+        if (!limited || kept < fractionLimit || !round) {
+          ++kept;
+          if (digits > 0 || c != '0') {
+            if (++digits > LONG_DIGITS) return parseBig(text, from, to, precision, scale, target);
+          }
+          unscaled = unscaled * 10 + (c - '0');
+        } else {
+          if (dropped < 0) dropped = c - '0';
+          if (c != '0') lost = true;
+        }
+      }
+    }
+
+    // exponents and alike are left to the big decimal
+    if (index < to) return parseBig(text, from, to, precision, scale, target);
+    if (!seen) {
+      target.setNull();
+      return ToPrimitive.INVALID;
+    }
+
+    if (dropped >= 5) ++unscaled;
+    if (limited && kept > fractionLimit) lost = true;
+
+    if (precision > 0 && integrals(unscaled, kept) > precision - fractionLimit) {
+      target.setNull();
+      return ToPrimitive.OVERFLOW;
+    }
+
+    target.setDecimal(negative ? -unscaled : unscaled, kept);
+    return lost ? ToPrimitive.ROUNDED : ToPrimitive.OK;
+  }
+
+  /**
+   * Count the integral digits of a fixed point number.
+   *
+   * @param unscaled the non-negative unscaled value
+   * @param scale the number of fraction digits in the unscaled value
+   * @return the number of significant integral digits
+   */
+  private static int integrals(final long unscaled, final int scale) {
+    long integral = scale < POWERS.length ? unscaled / POWERS[scale] : 0;
+    int count = 0;
+    while (count < POWERS.length && integral >= POWERS[count]) {
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Slow path for numbers with more than 18 digits or exponents.
+   *
+   * @param text the characters that contain the value
+   * @param from the index of the first non-blank character
+   * @param to the index after the last non-blank character
+   * @param precision the maximum number of significant digits, 0 if unlimited
+   * @param scale the maximum number of fraction digits, {@link #UNKNOWN_SCALE} to keep all of them
+   * @param target receives the converted number
+   * @return the status code as defined in {@link ToPrimitive}
+   */
+  private int parseBig(final CharSequence text, final int from, final int to, final int precision, final int scale,
+                       final PrimitiveValue target)
+  {
+    BigDecimal number;
+    try {
+      number = new BigDecimal(text.subSequence(from, to).toString());
+    } catch (NumberFormatException ex) {
+      target.setNull();
+      return ToPrimitive.INVALID;
+    }
+
+    int status = ToPrimitive.OK;
+    if (scale >= 0 && number.scale() > scale) {
+      BigDecimal rounded = number.setScale(scale, RoundingMode.HALF_UP);
+      if (rounded.compareTo(number) != 0) status = ToPrimitive.ROUNDED;
+      if (round) number = rounded;
+    }
+
+    if (precision > 0 && number.precision() - number.scale() > precision - Math.max(0, scale)) {
+      target.setNull();
+      return ToPrimitive.OVERFLOW;
+    }
+
+    if (number.scale() < 0) number = number.setScale(0);
+    if (number.precision() <= LONG_DIGITS) {
+      target.setDecimal(number.unscaledValue().longValue(), number.scale());
+    } else {
+      target.setObject(number);
+    }
+    return status;
+  }
+}
@@ -0,0 +1,369 @@
+package org.jcommons.db.column.converter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Reference to the content of a large object that is only read while it is bound to a statement.
+ *
+ * A cell can contain the content itself, a reference to a file with the prefix <code>file:</code> or base64 encoded
+ * content with the prefix <code>base64:</code>. Files are opened on first read and closed once they are read
+ * completely, base64 content is decoded while it is read. So the memory used per row does not depend on the size of
+ * the large objects.
+ *
+ * File references are only followed below a directory given explicitly, they must be relative and must not leave
+ * the directory. Content that starts with a prefix literally is escaped by a leading backslash, e.g.
+ * <code>\file:</code> is loaded as <code>file:</code>.
+ */
+public final class LobValue
+  implements Bindable
+{
+  /** prefix of a cell that references a file */
+  public static final String FILE = "file:";
+  /** prefix of a cell that contains base64 encoded content */
+  public static final String BASE64 = "base64:";
+  /** escapes a prefix that is part of the content */
+  public static final char ESCAPE = '\\';
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int BUFFER = 8192;
+
+  /** the content is given literally */
+  private static final int TEXT = 0;
+  /** the content is read from a file */
+  private static final int PATH = 1;
+  /** the content is base64 encoded */
+  private static final int ENCODED = 2;
+
+  private final CharSequence cell;
+  private final int kind;
+  private final int start;
+  private final boolean binary;
+  private final File file;
+  private long length = -1;
+
+  /**
+   * Create a reference.
+   *
+   * @param cell the cell value
+   * @param kind the kind of reference
+   * @param start the index of the first character after the prefix
+   * @param binary true for binary content, false for characters
+   * @param file the referenced file, <code>null</code> if there is none or it is not allowed
+   */
+  private LobValue(final CharSequence cell, final int kind, final int start, final boolean binary, final File file) {
+    this.cell = cell;
+    this.kind = kind;
+    this.start = start;
+    this.binary = binary;
+    this.file = file;
+  }
+
+  /**
+   * Create the reference described by the given cell value, file references are not allowed.
+   *
+   * @param cell the cell value, never null
+   * @param binary true for binary content, false for characters
+   * @return the respective reference
+   */
+  public static LobValue of(final CharSequence cell, final boolean binary) {
+    return of(cell, binary, null);
+  }
+
+  /**
+   * Create the reference described by the given cell value.
+   *
+   * @param cell the cell value, never null
+   * @param binary true for binary content, false for characters
+   * @param directory the directory file references are resolved against, <code>null</code> to reject them
+   * @return the respective reference
+   */
+  public static LobValue of(final CharSequence cell, final boolean binary, final File directory) {
+    if (startsWith(cell, 0, FILE)) {
+      String path = cell.subSequence(FILE.length(), cell.length()).toString().trim();
+      return new LobValue(cell, PATH, FILE.length(), binary, resolve(directory, path));
+    }
+    if (startsWith(cell, 0, BASE64)) return new LobValue(cell, ENCODED, BASE64.length(), binary, null);
+    return new LobValue(cell, TEXT, isEscaped(cell) ? 1 : 0, binary, null);
+  }
+
+  /**
+   * Escape a text, so it is loaded as given even if it starts with a prefix.
+   *
+   * @param text the content of a large object, can be <code>null</code>
+   * @return the text as the cell value of the content
+   */
+  public static String escape(final String text) {
+    if (text == null) return null;
+    int first = 0;
+    while (first < text.length() && text.charAt(first) == ESCAPE) {
+      ++first;
+    }
+    return startsWith(text, first, FILE) || startsWith(text, first, BASE64) ? ESCAPE + text : text;
+  }
+
+  /**
+   * @param cell the cell value
+   * @return true if the cell starts with a backslash that escapes a prefix, possibly escaped again
+   */
+  private static boolean isEscaped(final CharSequence cell) {
+    int first = 0;
+    while (first < cell.length() && cell.charAt(first) == ESCAPE) {
+      ++first;
+    }
+    return first > 0 && (startsWith(cell, first, FILE) || startsWith(cell, first, BASE64));
+  }
+
+  /**
+   * Resolve a file reference against the allowed directory.
+   *
+   * @param directory the directory that contains all referenced files, <code>null</code> if none are allowed
+   * @param path the referenced path
+   * @return the file, <code>null</code> if the path is absolute or leaves the directory
+   */
+  private static File resolve(final File directory, final String path) {
+    if (directory == null || path.length() == 0) return null;
+    if (new File(path).isAbsolute() || path.charAt(0) == '/' || path.charAt(0) == '\\') return null;
+    if (path.length() > 1 && path.charAt(1) == ':') return null;
+    for (String name : path.split("[/\\\\]")) {
+      if ("..".equals(name)) return null;
+    }
+
+    try {
+      // symbolic links may still point elsewhere
+      String root = directory.getCanonicalPath();
+      File file = new File(directory, path).getCanonicalFile();
+      return file.getPath().startsWith(root.endsWith(File.separator) ? root : root + File.separator) ? file : null;
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * @param text the text to inspect
+   * @param offset the index of the first character to compare
+   * @param prefix the prefix to look for
+   * @return true if the text starts with the given prefix at the given index ignoring the case
+   */
+  private static boolean startsWith(final CharSequence text, final int offset, final String prefix) {
+    if (text.length() - offset < prefix.length()) return false;
+    for (int index = 0; index < prefix.length(); ++index) {
+      if (Character.toLowerCase(text.charAt(offset + index)) != prefix.charAt(index)) return false;
+    }
+    return true;
+  }
+
+  /** @return true for binary content, false for characters */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /** @return the referenced file or <code>null</code> if the content is not read from a file or it is not allowed */
+  public File getFile() {
+    return file;
+  }
+
+  /** @return false if the cell references a file that is not allowed, true otherwise */
+  public boolean isAllowed() {
+    return kind != PATH || file != null;
+  }
+
+  /** @return true if the content can be read, that is the file is allowed and exists or the base64 content is valid */
+  public boolean isReadable() {
+    switch (kind) {
+      case PATH:
+        return file != null && file.isFile() && file.canRead();
+      case ENCODED:
+        return Base64InputStream.decodedLength(cell, start, cell.length()) >= 0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Determine the length of the content, in bytes for binary content and in characters otherwise.
+   *
+   * The length of binary content is known without reading it. The number of characters of files and base64 content is
+   * counted by reading the content once.
+   *
+   * @return the length of the content
+   * @throws IOException if the content cannot be read
+   */
+  public long length()
+    throws IOException
+  {
+    if (length >= 0) return length;
+
+    if (kind == TEXT) {
+      length = binary ? toBytes().length : cell.length() - start;
+    } else if (kind == PATH && file == null) {
+      throw new IOException("File reference " + this + " is not allowed");
+    } else if (binary && kind == PATH) {
+      length = file.length();
+    } else if (binary) {
+      length = Base64InputStream.decodedLength(cell, start, cell.length());
+      if (length < 0) throw new IOException("Invalid base64 content");
+    } else {
+      length = count(openReader());
+    }
+    return length;
+  }
+
+  /**
+   * Count the characters of a reader and close it.
+   *
+   * @param reader the reader to count, never null
+   * @return the number of characters
+   * @throws IOException if the reader fails
+   */
+  private static long count(final Reader reader)
+    throws IOException
+  {
+    char[] buffer = new char[BUFFER];
+    long count = 0;
+    try {
+      for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+        count += read;
+      }
+    } finally {
+      reader.close();
+    }
+    return count;
+  }
+
+  /** @return the literal content as UTF-8 bytes */
+  private byte[] toBytes() {
+    return cell.subSequence(start, cell.length()).toString().getBytes(UTF8);
+  }
+
+  /**
+   * Open the binary content, characters are encoded as UTF-8.
+   *
+   * @return a stream that reads the content and closes itself at its end
+   * @throws IOException if the content cannot be opened
+   */
+  public InputStream openStream()
+    throws IOException
+  {
+    switch (kind) {
+      case PATH:
+        if (file == null) throw new IOException("File reference " + this + " is not allowed");
+        return new FileStream(file);
+      case ENCODED:
+        return new Base64InputStream(cell, start, cell.length());
+      default:
+        return new ByteArrayInputStream(toBytes());
+    }
+  }
+
+  /**
+   * Open the character content, binary content is decoded as UTF-8.
+   *
+   * @return a reader that reads the content
+   * @throws IOException if the content cannot be opened
+   */
+  public Reader openReader()
+    throws IOException
+  {
+    if (kind == TEXT) return new CharSequenceReader(cell, start, cell.length());
+    return new BufferedReader(new InputStreamReader(openStream(), UTF8), BUFFER);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void bind(final PreparedStatement statement, final int index)
+    throws SQLException
+  {
+    try {
+      long size = length();
+      if (size > Integer.MAX_VALUE) throw new SQLException("Large object " + this + " exceeds 2GB");
+      if (binary) {
+        statement.setBinaryStream(index, openStream(), (int) size);
+      } else {
+        statement.setCharacterStream(index, openReader(), (int) size);
+      }
+    } catch (IOException ex) {
+      throw new SQLException("Cannot read large object " + this, ex);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    switch (kind) {
+      case PATH:
+        return FILE + cell.subSequence(start, cell.length()).toString().trim();
+      case ENCODED:
+        return BASE64 + " " + (cell.length() - start) + " characters";
+      default:
+        return (cell.length() - start) + " characters";
+    }
+  }
+
+  /** file stream that opens the file on first read and closes it at the end of the file */
+  private static class FileStream
+    extends InputStream
+  {
+    private final File file;
+    private InputStream stream;
+    private boolean closed = false;
+
+    /**
+     * Create the stream.
+     *
+     * @param file the file to read, never null
+     */
+    FileStream(final File file) {
+      this.file = file;
+    }
+
+    /**
+     * @return the open file stream or <code>null</code> if the stream is closed already
+     * @throws IOException if the file cannot be opened
+     */
+    private InputStream stream()
+      throws IOException
+    {
+      if (stream == null && !closed) stream = new BufferedInputStream(new FileInputStream(file), BUFFER);
+      return stream;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read()
+      throws IOException
+    {
+      InputStream in = stream();
+      if (in == null) return -1;
+      int read = in.read();
+      if (read < 0) close();
+      return read;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int count)
+      throws IOException
+    {
+      InputStream in = stream();
+      if (in == null) return -1;
+      int read = in.read(buffer, offset, count);
+      if (read < 0) close();
+      return read;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+      throws IOException
+    {
+      closed = true;
+      if (stream != null) {
+        stream.close();
+        stream = null;
+      }
+    }
+  }
+}
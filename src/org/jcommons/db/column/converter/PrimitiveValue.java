@@ -0,0 +1,166 @@
+package org.jcommons.db.column.converter;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Reusable holder for a converted value that keeps numbers as primitives.
+ *
+ * Wrapper objects are only created on request or if the value cannot be represented as a primitive, so converting
+ * and binding a numeric column does not create any garbage for each cell.
+ */
+public final class PrimitiveValue
+{
+  /** the value is <code>null</code> */
+  public static final int NULL = 0;
+  /** the value is a whole number */
+  public static final int LONG = 1;
+  /** the value is a floating point number */
+  public static final int DOUBLE = 2;
+  /** the value is a fixed point number given as unscaled value and scale */
+  public static final int DECIMAL = 3;
+  /** the value is any other object */
+  public static final int OBJECT = 4;
+
+  private int kind = NULL;
+  private long integral;
+  private int scale;
+  private double real;
+  private Object object;
+
+  /** @return the kind of value that is currently stored */
+  public int getKind() {
+    return kind;
+  }
+
+  /** @return true if the current value is <code>null</code> */
+  public boolean isNull() {
+    return kind == NULL;
+  }
+
+  /** @return the whole number, or the unscaled value of a fixed point number */
+  public long getLong() {
+    return integral;
+  }
+
+  /** @return the floating point number */
+  public double getDouble() {
+    return real;
+  }
+
+  /** @return the scale of a fixed point number, that is the number of fraction digits */
+  public int getScale() {
+    return scale;
+  }
+
+  /** store a <code>null</code> value */
+  public void setNull() {
+    kind = NULL;
+    object = null;
+  }
+
+  /**
+   * Store a whole number.
+   *
+   * @param value the whole number to store
+   */
+  public void setLong(final long value) {
+    kind = LONG;
+    integral = value;
+    object = null;
+  }
+
+  /**
+   * Store a floating point number.
+   *
+   * @param value the floating point number to store
+   */
+  public void setDouble(final double value) {
+    kind = DOUBLE;
+    real = value;
+    object = null;
+  }
+
+  /**
+   * Store a fixed point number.
+   *
+   * @param unscaled the value without decimal point
+   * @param scale the number of fraction digits contained in the unscaled value
+   */
+  public void setDecimal(final long unscaled, final int scale) {
+    kind = DECIMAL;
+    integral = unscaled;
+    this.scale = scale;
+    object = null;
+  }
+
+  /**
+   * Store any object that cannot be represented by a primitive.
+   *
+   * @param value the object to store, <code>null</code> stores a <code>null</code> value
+   */
+  public void setObject(final Object value) {
+    if (value == null) {
+      setNull();
+    } else {
+      kind = OBJECT;
+      object = value;
+    }
+  }
+
+  /** @return the current value as an object, creates a wrapper for primitive values */
+  public Object toObject() {
+    switch (kind) {
+      case LONG:
+        return Long.valueOf(integral);
+      case DOUBLE:
+        return Double.valueOf(real);
+      case DECIMAL:
+        return BigDecimal.valueOf(integral, scale);
+      case OBJECT:
+        return object;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Bind the current value to the given statement using the most specific setter.
+   *
+   * @param statement the statement to bind the value to, never null
+   * @param index the JDBC parameter index starting with 1
+   * @param sqlType the SQL type of the parameter used to bind <code>null</code> values
+   * @throws SQLException if the value cannot be bound
+   */
+  public void bind(final PreparedStatement statement, final int index, final int sqlType)
+    throws SQLException
+  {
+    switch (kind) {
+      case LONG:
+        statement.setLong(index, integral);
+        break;
+      case DOUBLE:
+        statement.setDouble(index, real);
+        break;
+      case DECIMAL:
+        statement.setBigDecimal(index, BigDecimal.valueOf(integral, scale));
+        break;
+      case OBJECT:
+        if (object instanceof Bindable) {
+          ((Bindable) object).bind(statement, index);
+        } else {
+          statement.setObject(index, object);
+        }
+        break;
+      default:
+        statement.setNull(index, sqlType);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.valueOf(toObject());
+  }
+}
@@ -0,0 +1,12 @@
+package org.jcommons.db.column.converter;
+
+/** converts the current object into a reference to the content of a binary large object */
+public class ToBlob
+  extends ToClob
+{
+  /** {@inheritDoc} */
+  @Override
+  protected boolean isBinary() {
+    return true;
+  }
+}
@@ -0,0 +1,30 @@
+package org.jcommons.db.column.converter;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.validation.Validation;
+import org.jcommons.db.column.validation.Violation;
+
+/** converts the current object into a reference to the content of a character large object */
+public class ToClob
+  extends AbstractToValue<LobValue>
+{
+  /** the number of characters of a cell value that are kept if the content cannot be read */
+  private static final int EXCERPT = 64;
+
+  /** @return true if the content is binary, false for characters */
+  protected boolean isBinary() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected LobValue objectOf(final MetaColumn meta, final String value, final Validation validation) {
+    LobValue lob = LobValue.of(value, isBinary(), meta.getLobDirectory());
+    if (!lob.isReadable()) {
+      Violation violation = lob.isAllowed() ? Violation.UNREADABLE : Violation.FORBIDDEN;
+      validation.report(violation, meta, value.length() > EXCERPT ? value.substring(0, EXCERPT) : value);
+      return null;
+    }
+    return lob;
+  }
+}
@@ -1,52 +1,41 @@
 package org.jcommons.db.column.converter;
 
-import org.apache.commons.lang.math.NumberUtils;
 import org.jcommons.db.column.MetaColumn;
-import org.jcommons.message.*;
+import org.jcommons.db.column.validation.Validation;
+import org.jcommons.db.column.validation.Violation;
 
 /** tries to convert the current object into a numeric value */
 public class ToNumber
   extends AbstractToValue<Number>
 {
-  private static final String OVERFLOW = "Value \"${value}\" is too large for ${table}.${column} and will be ignored.";
-  private static final String ROUNDED =
-      "Mantissa of \"${value}\" is too large for ${table}.${column}. Will round value to ${fraction} digits.";
-  private static final String OUTNUMBERED =
-      "\"${value}\" is not a valid number for ${table}.${column} and will be ignored.";
+  private final ToPrimitive parser;
 
-  /** {@inheritDoc} */
-  @Override
-  protected Number objectOf(final MetaColumn meta, final String value, final Message validation) {
-    if (meta.isNumeric()) {
-      Number number = null;
-      try {
-        number = NumberUtils.createNumber(value);
-        number = checkOverflow(meta, number, validation);
-        if (number != null) number = checkMantissa(meta, number, validation);
-        return number;
-      } catch (NumberFormatException nfe) {
-        // will be regarded as null value anyway
-        validation.add(new Fault(message(OUTNUMBERED, meta, value).toString()));
-      }
-    }
-    return null;
+  /** create a converter that rounds fixed point numbers to the scale of the column */
+  public ToNumber() {
+    this(true);
   }
 
-  private Number checkOverflow(final MetaColumn meta, final Number value, final Message validation) {
-    int integral = (Long.valueOf(value.longValue())).toString().length();
-    if (integral > meta.getPrecision()) {
-      validation.add(new Fault(message(OVERFLOW, meta, value).toString()));
-      return null;
-    }
-    return value;
+  /**
+   * Create a converter.
+   *
+   * @param round true to round fixed point numbers to the scale of the column, false to leave it to the database
+   */
+  public ToNumber(final boolean round) {
+    parser = new ToPrimitiveNumber(round);
   }
 
-  private Number checkMantissa(final MetaColumn meta, final Number value, final Message validation) {
-    int length = value.toString().length();
-    // the integral part was already checked, so we don't need to extract the mantissa first
-    if (length > meta.getSize()) {
-      validation.add(new Warning(message(ROUNDED, meta, value).toString()));
+  /** {@inheritDoc} */
+  @Override
+  protected Number objectOf(final MetaColumn meta, final String value, final Validation validation) {
+    if (meta.isNumeric()) {
+      // precision and scale are validated while parsing, no need to convert the number back into a string
+      PrimitiveValue number = new PrimitiveValue();
+      int status = parser.valueOf(meta, value, 0, value.length(), number);
+
+      Violation violation = Violation.ofStatus(status, meta);
+      if (violation != null) validation.report(violation, meta, value);
+      return (Number) number.toObject();
     }
-    return value;
+    return null;
   }
 }
@@ -0,0 +1,37 @@
+package org.jcommons.db.column.converter;
+
+import org.jcommons.db.column.MetaColumn;
+
+/**
+ * internal value converter that parses a region of characters straight into primitive values
+ *
+ * In contrast to {@link ToValue} no objects are created for the converted value and no messages are formatted, the
+ * result is stored in a reusable {@link PrimitiveValue} and the outcome is reported by one of the status codes below.
+ */
+public interface ToPrimitive
+{
+  /** the value was converted successfully */
+  int OK = 0;
+  /** the value is empty and will be stored as <code>null</code> */
+  int EMPTY = 1;
+  /** the value is empty but the column requires a value */
+  int REQUIRED = 2;
+  /** the value cannot be converted and will be stored as <code>null</code> */
+  int INVALID = 3;
+  /** the value is too large for the column and will be stored as <code>null</code> */
+  int OVERFLOW = 4;
+  /** the value was converted but had to be rounded to fit into the column */
+  int ROUNDED = 5;
+
+  /**
+   * Converts the given region of characters into the respective primitive value if possible.
+   *
+   * @param meta the meta column data, never null
+   * @param text the characters that contain the value, can be <code>null</code>
+   * @param start the index of the first character of the value
+   * @param end the index after the last character of the value
+   * @param target the value holder that receives the converted value, never null
+   * @return the status code of the conversion
+   */
+  int valueOf(MetaColumn meta, CharSequence text, int start, int end, PrimitiveValue target);
+}
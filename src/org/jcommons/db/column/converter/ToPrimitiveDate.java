@@ -0,0 +1,223 @@
+package org.jcommons.db.column.converter;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.lang.time.DateUtils;
+
+/**
+ * converts the values of a single date or time stamp column using a layout inferred from the column values
+ *
+ * The first non-empty values of the column are converted the general way and serve as samples. Afterwards the layout
+ * shared by most samples is compiled and used for all further values, only values that do not match this layout are
+ * handed over to the general conversion again. As the layout depends on the column an instance must not be shared
+ * between columns.
+ *
+ * Every value is checked against the order of day and month of the layout. If no sample had a day beyond 12, the
+ * order is only guessed and values keep being converted the general way until the first value with a day beyond 12
+ * either confirms the layout or proves the other order. A value that contradicts a confirmed order reveals a column
+ * that mixes both orders, the layout is dropped and all further values are converted the general way. Values with a
+ * zone designator are converted at the given offset instead of the local time zone.
+ */
+public class ToPrimitiveDate
+  implements ToPrimitive
+{
+  /** default number of values used to infer the layout */
+  public static final int SAMPLES = 32;
+
+  private final int samples;
+  private final TimeZone zone;
+  private final int[] fields = new int[DateLayout.FIELDS];
+
+  private List<String> sampled;
+  private DateLayout layout;
+
+  private int compiled = 0;
+  private int general = 0;
+  private int failed = 0;
+  private boolean contradicted = false;
+
+  /** create a converter that infers the layout from the default number of samples */
+  public ToPrimitiveDate() {
+    this(SAMPLES);
+  }
+
+  /**
+   * Create a converter that infers the layout from the given number of samples.
+   *
+   * @param samples the number of non-empty values to inspect before a layout is compiled
+   */
+  public ToPrimitiveDate(final int samples) {
+    this.samples = Math.max(1, samples);
+    this.zone = TimeZone.getDefault();
+    this.sampled = new ArrayList<String>(this.samples);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int valueOf(final MetaColumn meta, final CharSequence text, final int start, final int end,
+                     final PrimitiveValue target)
+  {
+    int from = start;
+    int to = end;
+    if (text != null) {
+      while (from < to && text.charAt(from) <= ' ') ++from;
+      while (to > from && text.charAt(to - 1) <= ' ') --to;
+    }
+
+    if (text == null || from >= to) {
+      target.setNull();
+      return meta.isNotNullable() ? REQUIRED : EMPTY;
+    }
+
+    if (layout != null && isCompiled(text, from, to)) {
+      ++compiled;
+      target.setObject(toObject(meta));
+      return OK;
+    }
+
+    String value = text.subSequence(from, to).toString();
+    if (sampled != null) {
+      sampled.add(value);
+      if (sampled.size() >= samples) {
+        layout = DateLayout.infer(sampled);
+        sampled = null;
+      }
+    }
+
+    return parse(meta, value, target);
+  }
+
+  /**
+   * Parse the value by the compiled layout and check it against the order of day and month of the layout.
+   *
+   * @param text the characters to parse
+   * @param from the index of the first character
+   * @param to the index after the last character
+   * @return true if the value was parsed into the fields, false if it has to be converted the general way
+   */
+  private boolean isCompiled(final CharSequence text, final int from, final int to) {
+    if (layout.parse(text, from, to, fields)) {
+      // only a day beyond 12 proves a guessed order of day and month
+      if (layout.isAmbiguous() && fields[DateLayout.DAY] > 12) layout = layout.confirm();
+      return !layout.isAmbiguous();
+    }
+
+    DateLayout swapped = layout.swap();
+    if (swapped == null || !swapped.parse(text, from, to, fields) || fields[DateLayout.DAY] <= 12) return false;
+    if (layout.isAmbiguous()) {
+      layout = swapped;
+      return true;
+    }
+
+    // the value contradicts a proven order, so the column mixes both orders
+    layout = null;
+    contradicted = true;
+    return false;
+  }
+
+  /**
+   * Convert the value the general way if it does not match the compiled layout.
+   *
+   * @param meta the meta column data, never null
+   * @param value the trimmed non-empty value
+   * @param target the value holder that receives the converted value
+   * @return the status code of the conversion
+   */
+  private int parse(final MetaColumn meta, final String value, final PrimitiveValue target) {
+    Date date = DateUtils.toTime(value);
+    if (date == null && !meta.isTimestamp()) date = DateUtils.toDay(value);
+
+    if (date == null) {
+      ++failed;
+      target.setNull();
+      return INVALID;
+    }
+
+    ++general;
+    if (meta.isTimestamp()) {
+      target.setObject(new Timestamp(date.getTime()));
+    } else {
+      target.setObject(new java.sql.Date(date.getTime()));
+    }
+    return OK;
+  }
+
+  /**
+   * Create the date or time stamp from the parsed fields in the local time zone or at the parsed offset.
+   *
+   * @param meta the meta column data, never null
+   * @return the respective SQL date or time stamp
+   */
+  private Date toObject(final MetaColumn meta) {
+    long day = DateLayout.toEpochDay(fields[DateLayout.YEAR], fields[DateLayout.MONTH], fields[DateLayout.DAY]);
+    long local = day * 86400000L;
+    int offset = fields[DateLayout.OFFSET];
+
+    if (!meta.isTimestamp() && offset == DateLayout.NO_OFFSET) return new java.sql.Date(toUtc(local));
+
+    local += fields[DateLayout.HOUR] * 3600000L + fields[DateLayout.MINUTE] * 60000L;
+    local += fields[DateLayout.SECOND] * 1000L + fields[DateLayout.NANOS] / 1000000;
+    long instant = offset == DateLayout.NO_OFFSET ? toUtc(local) : local - offset * 60000L;
+
+    if (!meta.isTimestamp()) {
+      // the day of the instant in the local time zone
+      long wall = instant + zone.getOffset(instant);
+      long midnight = wall - ((wall % 86400000L) + 86400000L) % 86400000L;
+      return new java.sql.Date(toUtc(midnight));
+    }
+
+    Timestamp stamp = new Timestamp(instant);
+    stamp.setNanos(fields[DateLayout.NANOS]);
+    return stamp;
+  }
+
+  /**
+   * Convert a local wall clock time into the respective instant.
+   *
+   * @param local the milliseconds since the epoch of the wall clock time
+   * @return the milliseconds since the epoch in UTC
+   */
+  private long toUtc(final long local) {
+    int offset = zone.getOffset(local - zone.getRawOffset());
+    int adjusted = zone.getOffset(local - offset);
+    return local - adjusted;
+  }
+
+  /** @return the inferred layout or <code>null</code> if not enough samples were seen or no layout prevails */
+  public DateLayout getLayout() {
+    return layout;
+  }
+
+  /** @return the number of values converted by the compiled layout */
+  public int getCompiled() {
+    return compiled;
+  }
+
+  /** @return the number of values converted the general way, either as sample or outlier */
+  public int getGeneral() {
+    return general;
+  }
+
+  /** @return true if a value contradicted the order of day and month of the layout, so the layout was dropped */
+  public boolean isContradicted() {
+    return contradicted;
+  }
+
+  /** @return the number of values that could not be converted at all */
+  public int getFailed() {
+    return failed;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("layout ");
+    text.append(layout == null ? "<none>" : layout.toString());
+    text.append(": ").append(compiled).append(" compiled, ").append(general).append(" general, ");
+    text.append(failed).append(" failed");
+    if (contradicted) text.append(", contradicted");
+    return text.toString();
+  }
+}
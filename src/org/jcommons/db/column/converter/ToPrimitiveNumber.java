@@ -0,0 +1,182 @@
+package org.jcommons.db.column.converter;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+
+import org.jcommons.db.column.MetaColumn;
+
+/**
+ * parses numeric values straight from the characters into whole, floating point or fixed point numbers
+ *
+ * Whole and fixed point numbers are validated against precision and scale of the column by a {@link DecimalParser},
+ * floating point numbers in plain decimal notation are parsed in place. All other notations like exponents are
+ * handed over to the JDK parsers.
+ */
+public class ToPrimitiveNumber
+  implements ToPrimitive
+{
+  /** the maximum number of digits that can be converted exactly into a double */
+  private static final int DOUBLE_DIGITS = 15;
+
+  private static final double[] POWERS = new double[23];
+
+  static {
+    POWERS[0] = 1.0;
+    for (int index = 1; index < POWERS.length; ++index) {
+      POWERS[index] = POWERS[index - 1] * 10.0;
+    }
+  }
+
+  private final DecimalParser integrals = new DecimalParser(true);
+  private final DecimalParser decimals;
+
+  /** create a converter that rounds fixed point numbers to the scale of the column */
+  public ToPrimitiveNumber() {
+    this(true);
+  }
+
+  /**
+   * Create a converter.
+   *
+   * @param round true to round fixed point numbers to the scale of the column, false to leave it to the database,
+   *          whole numbers are always rounded
+   */
+  public ToPrimitiveNumber(final boolean round) {
+    decimals = new DecimalParser(round);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int valueOf(final MetaColumn meta, final CharSequence text, final int start, final int end,
+                     final PrimitiveValue target)
+  {
+    int from = start;
+    int to = end;
+    if (text != null) {
+      while (from < to && text.charAt(from) <= ' ') ++from;
+      while (to > from && text.charAt(to - 1) <= ' ') --to;
+    }
+
+    if (text == null || from >= to) {
+      target.setNull();
+      return meta.isNotNullable() ? REQUIRED : EMPTY;
+    }
+
+    if (meta.isFloating()) return floating(text, from, to, target);
+
+    int precision = meta.getPrecision() == null ? 0 : meta.getPrecision();
+    if (meta.isIntegral()) return integral(meta, integrals.parse(text, from, to, precision, 0, target), target);
+
+    // an unknown scale must not cut off the fraction, e.g. of rates given with two to four decimals
+    int scale = meta.getFraction() == null ? DecimalParser.UNKNOWN_SCALE : meta.getFraction();
+    return decimals.parse(text, from, to, precision, scale, target);
+  }
+
+  /**
+   * Turn a fixed point number without fraction into a whole number.
+   *
+   * The precision of a column does not bound the narrow integer types, e.g. an INTEGER reports ten digits, so their
+   * range is checked as well. Otherwise a single value would fail the whole batch in the database.
+   *
+   * @param meta the column of the value
+   * @param status the status of the parsed fixed point number
+   * @param target the value holder containing the fixed point number
+   * @return the status code of the conversion
+   */
+  private int integral(final MetaColumn meta, final int status, final PrimitiveValue target) {
+    if (target.getKind() == PrimitiveValue.DECIMAL) {
+      target.setLong(target.getLong());
+    } else if (target.getKind() == PrimitiveValue.OBJECT) {
+      BigDecimal number = (BigDecimal) target.toObject();
+      try {
+        target.setLong(number.longValueExact());
+      } catch (ArithmeticException ex) {
+        target.setObject(number.toBigInteger());
+      }
+    }
+
+    if (target.isNull() || !isNarrow(meta)) return status;
+    if (target.getKind() == PrimitiveValue.LONG && fits(meta, target.getLong())) return status;
+    target.setNull();
+    return OVERFLOW;
+  }
+
+  /**
+   * @param meta the column of a whole number
+   * @return true if the column holds 32 bit or smaller integers
+   */
+  private static boolean isNarrow(final MetaColumn meta) {
+    int type = meta.getSqlType();
+    return type == Types.INTEGER || type == Types.SMALLINT || type == Types.TINYINT;
+  }
+
+  /**
+   * @param meta the column of a 32 bit or smaller integer
+   * @param value the whole number
+   * @return true if the value is within the range of the column type
+   */
+  private static boolean fits(final MetaColumn meta, final long value) {
+    switch (meta.getSqlType()) {
+      case Types.TINYINT:
+        // signed in some databases, unsigned in others
+        return value >= Byte.MIN_VALUE && value <= 2 * Byte.MAX_VALUE + 1;
+      case Types.SMALLINT:
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+      default:
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Parse a floating point number, plain decimal notation with up to 15 digits is converted exactly in place.
+   *
+   * @param text the characters that contain the value, never null
+   * @param from the index of the first non-blank character
+   * @param to the index after the last non-blank character
+   * @param target the value holder that receives the converted value
+   * @return the status code of the conversion
+   */
+  private int floating(final CharSequence text, final int from, final int to, final PrimitiveValue target) {
+    int index = from;
+    boolean negative = false;
+    char sign = text.charAt(index);
+    if (sign == '-' || sign == '+') {
+      negative = sign == '-';
+      ++index;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int fractions = 0;
+    boolean seen = false;
+    boolean fraction = false;
+
+    for (; index < to; ++index) {
+      char c = text.charAt(index);
+      if (c == '.' && !fraction) {
+        fraction = true;
+        continue;
+      }
+      if (c < '0' || c > '9') break;
+      seen = true;
+      if (fraction) ++fractions;
+      if (digits > 0 || c != '0') ++digits;
+      mantissa = mantissa * 10 + (c - '0');
+      if (digits > DOUBLE_DIGITS) break;
+    }
+
+    if (index == to && seen && fractions < POWERS.length) {
+      double value = mantissa / POWERS[fractions];
+      target.setDouble(negative ? -value : value);
+      return OK;
+    }
+
+    try {
+      target.setDouble(Double.parseDouble(text.subSequence(from, to).toString()));
+      return OK;
+    } catch (NumberFormatException ex) {
+      target.setNull();
+      return INVALID;
+    }
+  }
+}
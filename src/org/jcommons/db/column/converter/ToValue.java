@@ -1,6 +1,7 @@
 package org.jcommons.db.column.converter;
 
 import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.validation.Validation;
 import org.jcommons.message.Message;
 
 /**
@@ -19,4 +20,14 @@ public interface ToValue<T>
    * @return the corresponding object value, can be <code>null</code>
    */
   T valueOf(MetaColumn meta, String value, Message validation);
+
+  /**
+   * Converts a given string value into the respective object if possible.
+   *
+   * @param meta the meta column data
+   * @param value the string value to convert
+   * @param validation receives the violations if the value cannot be converted as given
+   * @return the corresponding object value, can be <code>null</code>
+   */
+  T valueOf(MetaColumn meta, String value, Validation validation);
 }
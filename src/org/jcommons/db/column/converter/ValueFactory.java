@@ -5,6 +5,7 @@ import java.util.Map;
 
 import org.jcommons.db.column.MetaColumn;
 import org.jcommons.db.column.MetaType;
+import org.jcommons.db.column.validation.Validation;
 import org.jcommons.message.Message;
 
 /**
@@ -13,6 +14,7 @@ import org.jcommons.message.Message;
 public final class ValueFactory
 {
   private static Map<MetaType, ToValue<?>> converters = new HashMap<MetaType, ToValue<?>>();
+  private static Map<MetaType, ToPrimitive> primitives = new HashMap<MetaType, ToPrimitive>();
   private static ToValue<Object> toNull = new ToNull();
 
   static {
@@ -20,6 +22,10 @@ public final class ValueFactory
     converters.put(MetaType.TIMESTAMP, new ToTimestamp());
     converters.put(MetaType.NUMBER, new ToNumber());
     converters.put(MetaType.STRING, new ToString());
+    converters.put(MetaType.CLOB, new ToClob());
+    converters.put(MetaType.BLOB, new ToBlob());
+
+    primitives.put(MetaType.NUMBER, new ToPrimitiveNumber());
   }
 
   /** hide sole constructor */
@@ -40,4 +46,57 @@ public final class ValueFactory
 
     return converter.valueOf(meta, value, validation);
   }
+
+  /**
+   * Converts a given string value into the respective object if possible.
+   *
+   * @param meta the meta column data
+   * @param value the string value to convert
+   * @param validation receives the violations if the value cannot be converted as given
+   * @return the corresponding object value, can be <code>null</code>
+   */
+  public static Object valueOf(final MetaColumn meta, final String value, final Validation validation) {
+    ToValue<?> converter = converters.get(meta.getMetaType());
+    if (converter == null) converter = toNull;
+
+    return converter.valueOf(meta, value, validation);
+  }
+
+  /**
+   * Retrieve the converter that converts values of the given column without creating objects.
+   *
+   * @param meta the meta column data
+   * @return the primitive converter or <code>null</code> if values of this column must be converted into objects
+   */
+  public static ToPrimitive primitiveOf(final MetaColumn meta) {
+    if (meta == null) return null;
+    return primitives.get(meta.getMetaType());
+  }
+
+  /**
+   * Create a converter for the values of a single column that converts them without creating temporary objects.
+   *
+   * In contrast to {@link #primitiveOf(MetaColumn)} the returned converter may learn from the values it converts, so
+   * every column requires its own instance.
+   *
+   * @param meta the meta column data
+   * @return the column converter or <code>null</code> if values of this column must be converted the general way
+   */
+  public static ToPrimitive createPrimitive(final MetaColumn meta) {
+    if (meta == null) return null;
+
+    MetaType type = meta.getMetaType();
+    if (type == MetaType.DATE || type == MetaType.TIMESTAMP) return new ToPrimitiveDate();
+    return primitives.get(type);
+  }
+
+  /**
+   * Checks whether a status code of a primitive conversion indicates that the value was lost.
+   *
+   * @param status the status code returned by a {@link ToPrimitive} converter
+   * @return true if the value could not be converted although it was given or is required
+   */
+  public static boolean isFault(final int status) {
+    return status == ToPrimitive.REQUIRED || status == ToPrimitive.INVALID || status == ToPrimitive.OVERFLOW;
+  }
 }
@@ -0,0 +1,31 @@
+package org.jcommons.db.column.validation;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.message.*;
+
+/**
+ * Validation that immediately formats every violation into the given message.
+ *
+ * Only meant for single values, use a {@link ViolationLog} to validate many values.
+ */
+public class MessageValidation
+  implements Validation
+{
+  private final Message message;
+
+  /**
+   * Create a validation that adds to the given message.
+   *
+   * @param message the message to add faults and warnings to, never null
+   */
+  public MessageValidation(final Message message) {
+    this.message = message;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void report(final Violation violation, final MetaColumn meta, final CharSequence value) {
+    String text = violation.format(meta, value);
+    message.add(violation.isFault() ? new Fault(text) : new Warning(text));
+  }
+}
@@ -0,0 +1,18 @@
+package org.jcommons.db.column.validation;
+
+import org.jcommons.db.column.MetaColumn;
+
+/**
+ * Receives the violations found while converting values.
+ */
+public interface Validation
+{
+  /**
+   * Report a value that could not be converted as given.
+   *
+   * @param violation the reason why the value could not be converted, never null
+   * @param meta the meta column of the value, never null
+   * @param value the violating value, can be <code>null</code>
+   */
+  void report(final Violation violation, final MetaColumn meta, final CharSequence value);
+}
@@ -0,0 +1,96 @@
+package org.jcommons.db.column.validation;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.MetaType;
+import org.jcommons.db.column.converter.ToPrimitive;
+import org.jcommons.lang.string.NamedString;
+
+/**
+ * The reasons why a value could not be converted as given.
+ *
+ * Every reason knows its message text and severity, so violations can be recorded as codes and only be formatted if
+ * someone really reads them.
+ */
+public enum Violation
+{
+  /** a mandatory value is missing */
+  REQUIRED(true, "Value for ${table}.${column} is required."),
+  /** a value is not a number */
+  OUTNUMBERED(true, "\"${value}\" is not a valid number for ${table}.${column} and will be ignored."),
+  /** a number has too many integral digits */
+  OVERFLOW(true, "Value \"${value}\" is too large for ${table}.${column} and will be ignored."),
+  /** a number has too many fraction digits */
+  ROUNDED(false, "Mantissa of \"${value}\" is too large for ${table}.${column}. Will round value to ${fraction} digits."),
+  /** a value is not a date */
+  OUTDATED(false, "\"${value}\" is not a valid date for ${table}.${column} and will be ignored."),
+  /** a value is not a time stamp */
+  OUTTIMED(false, "\"${value}\" is not a valid time stamp for ${table}.${column} and will be ignored."),
+  /** a text is too long */
+  TRUNCATED(false, "Value \"${value}\" is too large for ${table}.${column}"
+      + " and will be truncated from ${length} to ${size} characters."),
+  /** the content of a large object cannot be read from the given reference */
+  UNREADABLE(true, "Content for ${table}.${column} cannot be read from \"${value}\" and will be ignored."),
+  /** a large object references a file that is not allowed */
+  FORBIDDEN(true, "Content for ${table}.${column} must not be read from \"${value}\" and will be ignored."),
+  /** there is no converter for the column type */
+  UNSUPPORTED(false, "Cannot import \"${value}\" into ${table}.${column} as I don't know how to do it.");
+
+  private final boolean fault;
+  private final String text;
+
+  /**
+   * Define a violation.
+   *
+   * @param fault true if the value is lost, false if the value is only altered
+   * @param text the message text with place holders for the column and the value
+   */
+  private Violation(final boolean fault, final String text) {
+    this.fault = fault;
+    this.text = text;
+  }
+
+  /** @return true if the value is lost due to this violation, false if it is only altered */
+  public boolean isFault() {
+    return fault;
+  }
+
+  /**
+   * Format the message for a violating value.
+   *
+   * @param meta the meta column of the value, never null
+   * @param value the violating value, can be <code>null</code>
+   * @return the formatted message text
+   */
+  public String format(final MetaColumn meta, final CharSequence value) {
+    NamedString message = NamedString.message(text).with("table", meta.getTable()).with("column", meta.getName());
+    message.with("value", value).with("length", value == null ? 0 : value.length()).with("size", meta.getSize());
+    message.with("precision", meta.getPrecision()).with("fraction", meta.getFraction());
+    return message.toString();
+  }
+
+  /**
+   * Translate the status code of a primitive conversion into the respective violation.
+   *
+   * @param status the status code as returned by {@link ToPrimitive}
+   * @param meta the meta column of the converted value, never null
+   * @return the respective violation or <code>null</code> if the status code does not indicate a violation
+   */
+  public static Violation ofStatus(final int status, final MetaColumn meta) {
+    switch (status) {
+      case ToPrimitive.REQUIRED:
+        return REQUIRED;
+      case ToPrimitive.OVERFLOW:
+        return OVERFLOW;
+      case ToPrimitive.ROUNDED:
+        return ROUNDED;
+      case ToPrimitive.INVALID:
+        MetaType type = meta.getMetaType();
+        if (type == MetaType.NUMBER) return OUTNUMBERED;
+        if (type == MetaType.TIMESTAMP) return OUTTIMED;
+        if (type == MetaType.DATE) return OUTDATED;
+        return UNSUPPORTED;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package org.jcommons.db.column.validation;
+
+import java.util.*;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.lang.string.NamedString;
+import org.jcommons.message.*;
+
+/**
+ * Bounded store of violations that formats messages only on request.
+ *
+ * Every violation is counted per column and reason, but only the first few examples of each column are kept. So
+ * memory and time stay flat no matter how many values of a sheet violate the column definitions.
+ */
+public class ViolationLog
+  implements Validation
+{
+  /** default number of examples that are kept per column */
+  public static final int EXAMPLES = 10;
+
+  private static final String MORE = "${count} more values for ${table}.${column} are affected: ${reason}";
+
+  private final int examples;
+  private int row = -1;
+
+  private Map<MetaColumn, Integer> ids;
+  private List<MetaColumn> columns;
+  private List<int[]> counts;
+  private List<List<Example>> samples;
+
+  /** create a log that keeps the default number of examples per column */
+  public ViolationLog() {
+    this(EXAMPLES);
+  }
+
+  /**
+   * Create a log that keeps the given number of examples per column.
+   *
+   * @param examples the maximum number of violating values that are kept for each column
+   */
+  public ViolationLog(final int examples) {
+    this.examples = Math.max(0, examples);
+  }
+
+  /**
+   * Define the row of the values that are converted next.
+   *
+   * @param row the row index of the following values, negative if the row is unknown
+   * @return this to allow chaining
+   */
+  public ViolationLog at(final int row) {
+    this.row = row;
+    return this;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void report(final Violation violation, final MetaColumn meta, final CharSequence value) {
+    int id = id(meta);
+    ++counts.get(id)[violation.ordinal()];
+
+    List<Example> list = samples.get(id);
+    if (list.size() < examples) {
+      list.add(new Example(row, violation, value == null ? null : value.toString()));
+    }
+  }
+
+  /**
+   * Look up the internal index of the given column, registers new columns.
+   *
+   * @param meta the meta column, never null
+   * @return the index of the column in all internal lists
+   */
+  private int id(final MetaColumn meta) {
+    if (ids == null) {
+      ids = new IdentityHashMap<MetaColumn, Integer>();
+      columns = new ArrayList<MetaColumn>();
+      counts = new ArrayList<int[]>();
+      samples = new ArrayList<List<Example>>();
+    }
+
+    Integer id = ids.get(meta);
+    if (id == null) {
+      id = columns.size();
+      ids.put(meta, id);
+      columns.add(meta);
+      counts.add(new int[Violation.values().length]);
+      samples.add(new ArrayList<Example>(Math.min(examples, EXAMPLES)));
+    }
+    return id;
+  }
+
+  /** @return true if no violation was reported */
+  public boolean isEmpty() {
+    return getCount() == 0;
+  }
+
+  /** @return true if at least one value was lost */
+  public boolean isFault() {
+    if (ids == null) return false;
+    for (int[] count : counts) {
+      for (Violation violation : Violation.values()) {
+        if (violation.isFault() && count[violation.ordinal()] > 0) return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return the total number of reported violations */
+  public int getCount() {
+    int total = 0;
+    if (ids != null) {
+      for (MetaColumn column : columns) {
+        total += getCount(column);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @param meta the meta column we are interested in
+   * @return the number of violations reported for the given column
+   */
+  public int getCount(final MetaColumn meta) {
+    int total = 0;
+    for (Violation violation : Violation.values()) {
+      total += getCount(meta, violation);
+    }
+    return total;
+  }
+
+  /**
+   * @param meta the meta column we are interested in
+   * @param violation the reason we are interested in
+   * @return the number of violations of the given reason reported for the given column
+   */
+  public int getCount(final MetaColumn meta, final Violation violation) {
+    if (ids == null) return 0;
+    Integer id = ids.get(meta);
+    return id == null ? 0 : counts.get(id)[violation.ordinal()];
+  }
+
+  /** @return the columns for which violations were reported, never <code>null</code> */
+  public List<MetaColumn> getColumns() {
+    if (ids == null) return Collections.emptyList();
+    return Collections.unmodifiableList(columns);
+  }
+
+  /**
+   * Add all violations of the given log to this log, e.g. to merge logs of concurrent conversions.
+   *
+   * @param other the log to add, can be <code>null</code>
+   * @return this to allow chaining
+   */
+  public ViolationLog add(final ViolationLog other) {
+    if (other == null || other.ids == null) return this;
+
+    for (int index = 0; index < other.columns.size(); ++index) {
+      int id = id(other.columns.get(index));
+      int[] count = counts.get(id);
+      int[] added = other.counts.get(index);
+      for (int ordinal = 0; ordinal < count.length; ++ordinal) {
+        count[ordinal] += added[ordinal];
+      }
+
+      List<Example> list = samples.get(id);
+      for (Example example : other.samples.get(index)) {
+        if (list.size() >= examples) break;
+        list.add(example);
+      }
+    }
+    return this;
+  }
+
+  /** remove all violations */
+  public void clear() {
+    row = -1;
+    if (ids != null) {
+      ids.clear();
+      columns.clear();
+      counts.clear();
+      samples.clear();
+    }
+  }
+
+  /** @return the formatted faults and warnings for all kept examples and summaries for all others */
+  public Message getMessages() {
+    Messages messages = new Messages();
+    if (ids == null) return messages;
+
+    for (int id = 0; id < columns.size(); ++id) {
+      MetaColumn meta = columns.get(id);
+      int[] shown = new int[Violation.values().length];
+
+      for (Example example : samples.get(id)) {
+        StringBuilder text = new StringBuilder();
+        if (example.row >= 0) text.append("Row ").append(example.row + 1).append(": ");
+        text.append(example.violation.format(meta, example.value));
+        messages.add(message(example.violation, text.toString()));
+        ++shown[example.violation.ordinal()];
+      }
+
+      int[] count = counts.get(id);
+      for (Violation violation : Violation.values()) {
+        int more = count[violation.ordinal()] - shown[violation.ordinal()];
+        if (more > 0) {
+          NamedString text = NamedString.message(MORE).with("count", more).with("table", meta.getTable());
+          text.with("column", meta.getName()).with("reason", violation.name().toLowerCase());
+          messages.add(message(violation, text.toString()));
+        }
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Create the message of the respective severity.
+   *
+   * @param violation the reason of the message
+   * @param text the formatted text
+   * @return the fault or warning
+   */
+  private Message message(final Violation violation, final String text) {
+    return violation.isFault() ? new Fault(text) : new Warning(text);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return getCount() + " violations";
+  }
+
+  /** a single kept violation */
+  private static final class Example
+  {
+    private final int row;
+    private final Violation violation;
+    private final String value;
+
+    /**
+     * @param row the row of the value
+     * @param violation the reason of the violation
+     * @param value the violating value
+     */
+    private Example(final int row, final Violation violation, final String value) {
+      this.row = row;
+      this.violation = violation;
+      this.value = value;
+    }
+  }
+}
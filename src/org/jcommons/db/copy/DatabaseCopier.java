@@ -0,0 +1,479 @@
+package org.jcommons.db.copy;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.jcommons.db.load.meta.ForeignKey;
+import org.jcommons.db.load.meta.MetaTable;
+import org.jcommons.db.load.sheet.SheetSqlFactory;
+import org.jcommons.db.load.sort.DependencyGraph;
+
+/**
+ * Copies tables from one database into another without converting the values into text.
+ *
+ * The tables are copied in the order of the mandatory foreign keys of the target database, masters first, masters
+ * that are not copied must exist in the target already. Nullable foreign keys that reference a table copied later or
+ * the table itself are inserted empty and set by a second pass once all rows exist, just as the loader updates them,
+ * so tables that reference each other can be copied as well. Every table is read by a separate thread that hands over
+ * batches of typed rows through a bounded queue to the calling thread, which writes them into the target, so reading
+ * and writing overlap while the memory used is limited by the capacity of the queue. Every pass of a table is written
+ * within a single transaction that is rolled back if the table cannot be copied completely. Only the columns known in
+ * both databases are copied, the tables of the target are expected to be empty.
+ */
+public class DatabaseCopier
+{
+  private static final Log LOG = LogFactory.getLog(DatabaseCopier.class);
+
+  /** default number of rows handed over at once */
+  public static final int BATCH = 1000;
+  /** default number of batches that may wait for the writer */
+  public static final int CAPACITY = 8;
+
+  /** marks the end of the rows of a table */
+  private static final Object[][] END = new Object[0][];
+  /** marks that the rows of a table cannot be read completely */
+  private static final Object[][] ABORT = new Object[0][];
+
+  private final DataSource source;
+  private final DataSource target;
+  private int batch = BATCH;
+  private int capacity = CAPACITY;
+
+  /**
+   * Create a copier.
+   *
+   * @param source the database to read the tables from, never null
+   * @param target the database to write the tables into, never null
+   */
+  public DatabaseCopier(final DataSource source, final DataSource target) {
+    this.source = source;
+    this.target = target;
+  }
+
+  /** @return the database the tables are read from */
+  public DataSource getSource() {
+    return source;
+  }
+
+  /** @return the database the tables are written into */
+  public DataSource getTarget() {
+    return target;
+  }
+
+  /** @return the number of rows handed over and written at once */
+  public int getBatch() {
+    return batch;
+  }
+
+  /**
+   * Define the number of rows handed over from the reader to the writer and written at once.
+   *
+   * @param batch the number of rows of a batch
+   * @return this to allow chaining
+   */
+  public DatabaseCopier setBatch(final int batch) {
+    this.batch = Math.max(1, batch);
+    return this;
+  }
+
+  /** @return the number of batches that may wait for the writer */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Define the number of batches the reader may be ahead of the writer.
+   *
+   * @param capacity the capacity of the queue between reader and writer
+   * @return this to allow chaining
+   */
+  public DatabaseCopier setCapacity(final int capacity) {
+    this.capacity = Math.max(1, capacity);
+    return this;
+  }
+
+  /**
+   * Copy the given tables in the order of their foreign keys within the target database.
+   *
+   * @param tables the names of the tables to copy
+   * @return the number of rows copied per table in the sequence they were copied
+   * @throws SQLException if a table cannot be read or written
+   */
+  public Map<String, Integer> copy(final List<String> tables)
+    throws SQLException
+  {
+    Set<String> copying = new HashSet<String>();
+    for (String table : tables) {
+      copying.add(table.toUpperCase());
+    }
+
+    Map<String, Integer> copied = new LinkedHashMap<String, Integer>();
+    Map<String, List<MetaColumn>> deferred = new LinkedHashMap<String, List<MetaColumn>>();
+    Set<String> done = new HashSet<String>();
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    try {
+      for (String table : sort(tables)) {
+        long start = System.currentTimeMillis();
+        List<MetaColumn> columns = getColumns(table);
+        List<MetaColumn> later = getDeferred(table, columns, copying, done);
+        columns.removeAll(later);
+        int written = copy(table, columns, SheetSqlFactory.insert(table, columns), null, reader);
+        copied.put(table, written);
+        done.add(table.toUpperCase());
+        if (!later.isEmpty()) deferred.put(table, later);
+
+        if (LOG.isInfoEnabled()) {
+          StringBuilder log = new StringBuilder("Copied ").append(written).append(" rows of table ").append(table);
+          log.append(" within ").append(System.currentTimeMillis() - start).append(" ms.");
+          LOG.info(log.toString());
+        }
+      }
+
+      // all rows exist now, so the remaining references can be set
+      for (Map.Entry<String, List<MetaColumn>> entry : deferred.entrySet()) {
+        update(entry.getKey(), entry.getValue(), reader);
+      }
+    } finally {
+      reader.shutdownNow();
+    }
+    return copied;
+  }
+
+  /**
+   * Determine the nullable foreign key columns that cannot be inserted, as they reference rows not copied yet.
+   *
+   * @param table the name of the table
+   * @param columns the columns to copy
+   * @param copying the upper case names of all tables to copy
+   * @param done the upper case names of the tables copied already
+   * @return the columns to set after all tables are copied, empty if the table has no primary key to update it by
+   * @throws SQLException if the foreign keys cannot be retrieved
+   */
+  private List<MetaColumn> getDeferred(final String table, final List<MetaColumn> columns, final Set<String> copying,
+                                       final Set<String> done)
+    throws SQLException
+  {
+    List<MetaColumn> deferred = new ArrayList<MetaColumn>();
+    for (ForeignKey key : MetaTable.foreignKeys(target, table)) {
+      String master = key.getTable().toUpperCase();
+      if (!copying.contains(master) || done.contains(master)) continue;
+      for (MetaColumn column : columns) {
+        if (column.isNullable() && !column.isPrimary() && key.contains(column.getName())
+            && !deferred.contains(column)) {
+          deferred.add(column);
+        }
+      }
+    }
+    if (deferred.isEmpty() || !getKeys(columns).isEmpty()) return deferred;
+
+    LOG.warn("Table " + table + " has no primary key to set " + deferred + " later, rows may be rejected.");
+    return Collections.emptyList();
+  }
+
+  /**
+   * @param columns the columns of a table
+   * @return the primary key columns among them
+   */
+  private static List<MetaColumn> getKeys(final List<MetaColumn> columns) {
+    List<MetaColumn> keys = new ArrayList<MetaColumn>();
+    for (MetaColumn column : columns) {
+      if (column.isPrimary()) keys.add(column);
+    }
+    return keys;
+  }
+
+  /**
+   * Set the deferred foreign keys of a table from the source, rows without any of them are skipped.
+   *
+   * @param table the name of the table
+   * @param deferred the columns to set
+   * @param reader the thread that reads the source table
+   * @throws SQLException if the table cannot be read or written
+   */
+  private void update(final String table, final List<MetaColumn> deferred, final ExecutorService reader)
+    throws SQLException
+  {
+    long start = System.currentTimeMillis();
+    List<MetaColumn> keys = getKeys(getColumns(table));
+    List<MetaColumn> columns = new ArrayList<MetaColumn>(deferred);
+    columns.addAll(keys);
+
+    StringBuilder condition = new StringBuilder();
+    for (MetaColumn column : deferred) {
+      if (condition.length() > 0) condition.append(" or ");
+      condition.append(column.getName()).append(" is not null");
+    }
+    int written = copy(table, columns, SheetSqlFactory.update(table, deferred, keys), condition.toString(), reader);
+
+    if (LOG.isInfoEnabled()) {
+      StringBuilder log = new StringBuilder("Set the deferred references of ").append(written);
+      log.append(" rows of table ").append(table).append(" within ");
+      LOG.info(log.append(System.currentTimeMillis() - start).append(" ms.").toString());
+    }
+  }
+
+  /**
+   * Sort the tables by the mandatory foreign keys of the target database, masters first.
+   *
+   * @param tables the names of the tables to copy
+   * @return the tables in the sequence they can be copied
+   * @throws SQLException if the foreign keys cannot be retrieved
+   */
+  protected List<String> sort(final List<String> tables)
+    throws SQLException
+  {
+    Map<String, String> names = new LinkedHashMap<String, String>();
+    for (String table : tables) {
+      names.put(table.toUpperCase(), table);
+    }
+
+    DependencyGraph graph = new DependencyGraph();
+    for (String table : names.keySet()) {
+      graph.addTable(table);
+    }
+    for (String table : names.keySet()) {
+      for (String master : MetaTable.dependsMandatoryOn(target, table)) {
+        String key = master.toUpperCase();
+        if (names.containsKey(key) && !key.equals(table)) graph.addDependency(table, key);
+      }
+    }
+
+    for (List<String> cycle : graph.getCycles()) {
+      if (cycle.size() > 1) LOG.warn("Tables " + cycle + " reference each other, rows may be rejected.");
+    }
+
+    List<String> sequence = new ArrayList<String>(tables.size());
+    for (String table : graph.getSequence()) {
+      sequence.add(names.get(table));
+    }
+    return sequence;
+  }
+
+  /**
+   * Copy the given columns of a single table.
+   *
+   * @param table the name of the table
+   * @param columns the columns to read in the sequence of the statement parameters
+   * @param sql the statement that writes a row
+   * @param condition the condition of the rows to read, <code>null</code> to read all rows
+   * @param reader the thread that reads the source table
+   * @return the number of rows written
+   * @throws SQLException if the table cannot be read or written
+   */
+  private int copy(final String table, final List<MetaColumn> columns, final String sql, final String condition,
+                   final ExecutorService reader)
+    throws SQLException
+  {
+    final BlockingQueue<Object[][]> queue = new ArrayBlockingQueue<Object[][]>(capacity);
+    Future<Integer> reading = reader.submit(new Callable<Integer>() {
+      @Override
+      public Integer call()
+        throws SQLException, InterruptedException
+      {
+        int count;
+        try {
+          count = read(table, columns, condition, queue);
+        } catch (SQLException ex) {
+          queue.put(ABORT);
+          throw ex;
+        } catch (RuntimeException ex) {
+          queue.put(ABORT);
+          throw ex;
+        }
+        queue.put(END);
+        return count;
+      }
+    });
+
+    int written = 0;
+    boolean done = false;
+    try {
+      written = write(columns, sql, queue);
+      reading.get();
+      done = true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Copying table " + table + " was interrupted.");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof SQLException) throw (SQLException) ex.getCause();
+      if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+      throw new SQLException("Cannot read table " + table + ": " + ex.getCause());
+    } finally {
+      if (!done) reading.cancel(true);
+    }
+    return written;
+  }
+
+  /**
+   * Determine the columns known in both databases.
+   *
+   * @param table the name of the table
+   * @return the meta data of the target columns that exist in the source as well
+   * @throws SQLException if the table is missing in either database
+   */
+  private List<MetaColumn> getColumns(final String table)
+    throws SQLException
+  {
+    Set<String> known = new HashSet<String>();
+    for (MetaColumn column : MetaTable.getMetaData(source, table)) {
+      known.add(column.getName().toUpperCase());
+    }
+
+    List<MetaColumn> columns = new ArrayList<MetaColumn>();
+    for (MetaColumn column : MetaTable.getMetaData(target, table)) {
+      if (known.contains(column.getName().toUpperCase())) columns.add(column);
+    }
+    if (columns.isEmpty()) throw new SQLException("Table " + table + " has no columns in common to copy.");
+    return columns;
+  }
+
+  /**
+   * Read all rows of a table from the source and hand them over in batches.
+   *
+   * @param table the name of the table
+   * @param columns the columns to read
+   * @param condition the condition of the rows to read, <code>null</code> to read all rows
+   * @param queue the queue to the writer
+   * @return the number of rows read
+   * @throws SQLException if the table cannot be read
+   * @throws InterruptedException if the writer gave up
+   */
+  private int read(final String table, final List<MetaColumn> columns, final String condition,
+                   final BlockingQueue<Object[][]> queue)
+    throws SQLException, InterruptedException
+  {
+    StringBuilder sql = new StringBuilder("select ");
+    for (int index = 0; index < columns.size(); ++index) {
+      if (index > 0) sql.append(", ");
+      sql.append(columns.get(index).getName());
+    }
+    sql.append(" from ").append(table);
+    if (condition != null) sql.append(" where ").append(condition);
+
+    int count = 0;
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet result = null;
+    try {
+      connection = source.getConnection();
+      statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      statement.setFetchSize(batch);
+      result = statement.executeQuery(sql.toString());
+
+      Object[][] rows = new Object[batch][];
+      int filled = 0;
+      while (result.next()) {
+        Object[] row = new Object[columns.size()];
+        for (int column = 0; column < row.length; ++column) {
+          row[column] = read(result, column + 1, columns.get(column));
+        }
+        rows[filled++] = row;
+        if (filled == rows.length) {
+          queue.put(rows);
+          count += filled;
+          rows = new Object[batch][];
+          filled = 0;
+        }
+      }
+      if (filled > 0) {
+        queue.put(Arrays.copyOf(rows, filled));
+        count += filled;
+      }
+    } finally {
+      DbUtils.closeQuietly(connection, statement, result);
+    }
+    return count;
+  }
+
+  /**
+   * Read a single value as the object the driver provides, large objects are detached from the source connection.
+   *
+   * @param result the current row
+   * @param column the JDBC index of the column
+   * @param meta the meta data of the target column
+   * @return the value, can be <code>null</code>
+   * @throws SQLException if the value cannot be read
+   */
+  private static Object read(final ResultSet result, final int column, final MetaColumn meta)
+    throws SQLException
+  {
+    if (meta.isBlob()) return result.getBytes(column);
+    if (meta.isClob()) return result.getString(column);
+    return result.getObject(column);
+  }
+
+  /**
+   * Write the batches of the queue into the target until the end of the table within a single transaction.
+   *
+   * @param columns the columns to write in the sequence of the statement parameters
+   * @param sql the statement that writes a row
+   * @param queue the queue from the reader
+   * @return the number of rows written, -1 if the reader failed and nothing was committed
+   * @throws SQLException if the rows cannot be written
+   * @throws InterruptedException if the thread is interrupted while waiting for the reader
+   */
+  private int write(final List<MetaColumn> columns, final String sql, final BlockingQueue<Object[][]> queue)
+    throws SQLException, InterruptedException
+  {
+    int count = 0;
+    boolean autoCommit = false;
+    boolean open = false;
+    Connection connection = null;
+    PreparedStatement statement = null;
+    try {
+      connection = target.getConnection();
+      autoCommit = connection.getAutoCommit();
+      if (autoCommit) connection.setAutoCommit(false);
+      open = true;
+      statement = connection.prepareStatement(sql);
+      for (Object[][] rows = queue.take(); rows != END; rows = queue.take()) {
+        if (rows == ABORT) return -1;
+        for (Object[] row : rows) {
+          for (int column = 0; column < row.length; ++column) {
+            if (row[column] == null) {
+              statement.setNull(column + 1, columns.get(column).getSqlType());
+            } else {
+              statement.setObject(column + 1, row[column]);
+            }
+          }
+          statement.addBatch();
+        }
+        statement.executeBatch();
+        count += rows.length;
+      }
+      connection.commit();
+      open = false;
+    } catch (SQLException ex) {
+      open = false;
+      throw QueryUtils.rollback(connection, ex);
+    } finally {
+      DbUtils.closeQuietly(statement);
+      // the rows written so far must neither remain nor be committed by switching auto-commit on again
+      if (open) QueryUtils.rollback(connection, null);
+      if (autoCommit) resetAutoCommit(connection);
+      DbUtils.closeQuietly(connection);
+    }
+    return count;
+  }
+
+  /**
+   * Switch auto-commit on again after a table was written.
+   *
+   * @param connection the connection to reset, can be <code>null</code>
+   */
+  private static void resetAutoCommit(final Connection connection) {
+    try {
+      if (connection != null) connection.setAutoCommit(true);
+    } catch (SQLException ex) {
+      LOG.debug("Cannot reset auto-commit: " + ex.getMessage());
+    }
+  }
+}
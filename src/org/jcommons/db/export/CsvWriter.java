@@ -0,0 +1,249 @@
+package org.jcommons.db.export;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+
+/**
+ * Writes comma separated values through a buffered file channel.
+ *
+ * Characters are collected in a buffer and encoded in blocks into a direct byte buffer that is written to the channel,
+ * so the memory used does not depend on the size of the file. Fields are quoted only if required by their content,
+ * binary content is base64 encoded with the prefix the loader recognizes. Not thread-safe.
+ */
+class CsvWriter
+  implements Closeable
+{
+  /** size of the character and byte buffers */
+  static final int BUFFER = 1 << 16;
+
+  private static final char[] ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  private final FileOutputStream output;
+  private final FileChannel channel;
+  private final CharsetEncoder encoder;
+  private final char delimiter;
+  private final CharBuffer chars = CharBuffer.allocate(BUFFER);
+  private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER * 4);
+  private boolean first = true;
+
+  /**
+   * Create or overwrite a file.
+   *
+   * @param file the file to write, never null
+   * @param delimiter the character that separates the fields
+   * @param charset the encoding of the file
+   * @throws IOException if the file cannot be created
+   */
+  CsvWriter(final File file, final char delimiter, final Charset charset)
+    throws IOException
+  {
+    this.output = new FileOutputStream(file);
+    this.channel = output.getChannel();
+    this.delimiter = delimiter;
+    this.encoder =
+        charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /** @return the channel of the file, e.g. to append other files */
+  FileChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Write a field, which is quoted if it contains the delimiter, quotes, line breaks or surrounding blanks.
+   *
+   * @param value the value of the field, <code>null</code> or empty for an empty field
+   * @throws IOException if the file cannot be written
+   */
+  void field(final CharSequence value)
+    throws IOException
+  {
+    separate();
+    if (value == null || value.length() == 0) return;
+
+    int length = value.length();
+    boolean quote = value.charAt(0) <= ' ' || value.charAt(length - 1) <= ' ';
+    for (int index = 0; !quote && index < length; ++index) {
+      char c = value.charAt(index);
+      quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+    }
+
+    if (!quote) {
+      append(value);
+      return;
+    }
+
+    append('"');
+    for (int index = 0; index < length; ++index) {
+      char c = value.charAt(index);
+      if (c == '"') append('"');
+      append(c);
+    }
+    append('"');
+  }
+
+  /**
+   * Write a field with base64 encoded content, the stream is read in blocks and closed afterwards.
+   *
+   * @param prefix the text written in front of the encoded content, never null
+   * @param content the content to encode, <code>null</code> for an empty field
+   * @throws IOException if the content cannot be read or the file cannot be written
+   */
+  void encoded(final String prefix, final InputStream content)
+    throws IOException
+  {
+    separate();
+    if (content == null) return;
+    try {
+      append(prefix);
+      byte[] block = new byte[3 * 4096];
+      int filled = 0;
+      int read;
+      while ((read = content.read(block, filled, block.length - filled)) >= 0) {
+        filled += read;
+        if (filled < block.length) continue;
+        encode(block, filled);
+        filled = 0;
+      }
+      encode(block, filled);
+    } finally {
+      content.close();
+    }
+  }
+
+  /**
+   * Encode the given bytes, all groups are complete apart from the last one of the content.
+   *
+   * @param block the bytes to encode
+   * @param length the number of bytes to encode
+   * @throws IOException if the file cannot be written
+   */
+  private void encode(final byte[] block, final int length)
+    throws IOException
+  {
+    for (int index = 0; index < length; index += 3) {
+      int remaining = length - index;
+      int group = (block[index] & 0xFF) << 16;
+      if (remaining > 1) group |= (block[index + 1] & 0xFF) << 8;
+      if (remaining > 2) group |= block[index + 2] & 0xFF;
+
+      append(ALPHABET[(group >> 18) & 0x3F]);
+      append(ALPHABET[(group >> 12) & 0x3F]);
+      append(remaining > 1 ? ALPHABET[(group >> 6) & 0x3F] : '=');
+      append(remaining > 2 ? ALPHABET[group & 0x3F] : '=');
+    }
+  }
+
+  /**
+   * Terminate the current row.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  void endRow()
+    throws IOException
+  {
+    append('\r');
+    append('\n');
+    first = true;
+  }
+
+  /**
+   * Write the delimiter unless the field is the first of its row.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  private void separate()
+    throws IOException
+  {
+    if (!first) append(delimiter);
+    first = false;
+  }
+
+  /**
+   * @param c the character to write
+   * @throws IOException if the file cannot be written
+   */
+  private void append(final char c)
+    throws IOException
+  {
+    if (!chars.hasRemaining()) drain(false);
+    chars.put(c);
+  }
+
+  /**
+   * @param text the characters to write
+   * @throws IOException if the file cannot be written
+   */
+  private void append(final CharSequence text)
+    throws IOException
+  {
+    for (int index = 0; index < text.length(); ++index) {
+      append(text.charAt(index));
+    }
+  }
+
+  /**
+   * Encode the collected characters and write them to the channel.
+   *
+   * @param end true if no more characters follow
+   * @throws IOException if the file cannot be written
+   */
+  private void drain(final boolean end)
+    throws IOException
+  {
+    chars.flip();
+    while (true) {
+      CoderResult result = encoder.encode(chars, bytes, end);
+      write();
+      if (result.isUnderflow()) break;
+    }
+    if (end) {
+      encoder.flush(bytes);
+      write();
+    }
+    chars.compact();
+  }
+
+  /**
+   * Write the encoded bytes to the channel.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  private void write()
+    throws IOException
+  {
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+
+  /**
+   * Write all buffered characters.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  void flush()
+    throws IOException
+  {
+    drain(false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close()
+    throws IOException
+  {
+    try {
+      drain(true);
+    } finally {
+      output.close();
+    }
+  }
+}
@@ -0,0 +1,520 @@
+package org.jcommons.db.export;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.*;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.Date;
+import java.util.concurrent.*;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.converter.LobValue;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.jcommons.db.load.meta.MetaTable;
+import org.jcommons.db.query.QueryString;
+import org.jcommons.io.sheet.Book;
+import org.jcommons.io.sheet.Sheet;
+
+/**
+ * Exports tables into comma separated UTF-8 files of the same shape the loader reads, one file per table.
+ *
+ * Every table is read through a forward-only cursor with a tuned fetch size and written row by row, so no table is
+ * ever held in memory. Values are converted to text according to their meta column: dates and time stamps in ISO
+ * layout, numbers without exponent unless floating, binary content base64 encoded. Tables with a single integral
+ * primary key and more rows than a part are split into key ranges that are exported in parallel into part files,
+ * which are appended to the table file in key order afterwards.
+ */
+public class DatabaseExporter
+{
+  private static final Log LOG = LogFactory.getLog(DatabaseExporter.class);
+
+  /** default number of rows fetched from the database at once */
+  public static final int FETCH = 10000;
+  /** default number of rows of a key range exported by a single worker */
+  public static final int PART = 1000000;
+  /** maximum number of key ranges a table is split into */
+  public static final int MAX_PARTS = 1024;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final char DELIMITER = ',';
+
+  private DataSource dataSource;
+  private int workers = 1;
+  private int fetchSize = FETCH;
+  private int part = PART;
+
+  /** @return the currently used data source */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * Inject the data source to export the tables from.
+   *
+   * @param dataSource the database connection to use to read the data
+   * @return this to allow chaining
+   */
+  public DatabaseExporter setDataSource(final DataSource dataSource) {
+    this.dataSource = dataSource;
+    return this;
+  }
+
+  /** @return the number of key ranges exported at the same time */
+  public int getWorkers() {
+    return workers;
+  }
+
+  /**
+   * Define the number of key ranges exported at the same time, the data source must provide a connection for each.
+   *
+   * @param workers the number of parallel cursors, 1 to export every table through a single cursor
+   * @return this to allow chaining
+   */
+  public DatabaseExporter setWorkers(final int workers) {
+    this.workers = Math.max(1, workers);
+    return this;
+  }
+
+  /** @return the number of rows fetched from the database at once */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * Define the number of rows fetched from the database at once.
+   *
+   * @param fetchSize the hint passed to the driver, 0 to use the default of the driver
+   * @return this to allow chaining
+   */
+  public DatabaseExporter setFetchSize(final int fetchSize) {
+    this.fetchSize = Math.max(0, fetchSize);
+    return this;
+  }
+
+  /** @return the number of rows of a key range exported by a single worker */
+  public int getPart() {
+    return part;
+  }
+
+  /**
+   * Define the number of rows a table must exceed to be split into key ranges.
+   *
+   * @param part the approximate number of rows of a single key range
+   * @return this to allow chaining
+   */
+  public DatabaseExporter setPart(final int part) {
+    this.part = Math.max(1, part);
+    return this;
+  }
+
+  /**
+   * Export the tables of all sheets of the given book.
+   *
+   * @param book the book naming the tables to export
+   * @param directory the directory that receives the files, never null
+   * @return the files written in the order of the sheets
+   * @throws SQLException if a table cannot be read
+   * @throws IOException if a file cannot be written
+   */
+  public List<File> export(final Book book, final File directory)
+    throws SQLException, IOException
+  {
+    List<String> tables = new ArrayList<String>();
+    for (Sheet sheet : book.getSheets()) {
+      tables.add(sheet.getName());
+    }
+    return export(tables, directory);
+  }
+
+  /**
+   * Export the given tables one after the other.
+   *
+   * @param tables the names of the tables to export
+   * @param directory the directory that receives the files, never null
+   * @return the files written in the order of the tables
+   * @throws SQLException if a table cannot be read
+   * @throws IOException if a file cannot be written
+   */
+  public List<File> export(final List<String> tables, final File directory)
+    throws SQLException, IOException
+  {
+    List<File> files = new ArrayList<File>(tables.size());
+    ExecutorService pool = getWorkers() <= 1 ? null : Executors.newFixedThreadPool(getWorkers());
+    try {
+      for (String table : tables) {
+        files.add(export(table, directory, pool));
+      }
+    } finally {
+      if (pool != null) pool.shutdown();
+    }
+    return files;
+  }
+
+  /**
+   * Export a single table into the file <code>table.csv</code> of the given directory.
+   *
+   * @param table the name of the table to export
+   * @param directory the directory that receives the file, never null
+   * @return the file written
+   * @throws SQLException if the table cannot be read
+   * @throws IOException if the file cannot be written
+   */
+  public File export(final String table, final File directory)
+    throws SQLException, IOException
+  {
+    return export(Collections.singletonList(table), directory).get(0);
+  }
+
+  /**
+   * Export a single table, split into key ranges if possible.
+   *
+   * @param table the name of the table to export
+   * @param directory the directory that receives the file
+   * @param pool the workers that export the key ranges, <code>null</code> to export through a single cursor
+   * @return the file written
+   * @throws SQLException if the table cannot be read
+   * @throws IOException if the file cannot be written
+   */
+  private File export(final String table, final File directory, final ExecutorService pool)
+    throws SQLException, IOException
+  {
+    long start = System.currentTimeMillis();
+    List<MetaColumn> columns = MetaTable.getMetaData(getDataSource(), table);
+    File file = new File(directory, table + ".csv");
+
+    List<MetaColumn> keys = new ArrayList<MetaColumn>();
+    for (MetaColumn column : columns) {
+      if (column.isPrimary()) keys.add(column);
+    }
+
+    long[] bounds = null;
+    if (pool != null && keys.size() == 1 && keys.get(0).isIntegral()) bounds = bounds(table, keys.get(0));
+
+    CsvWriter writer = new CsvWriter(file, DELIMITER, UTF8);
+    try {
+      for (MetaColumn column : columns) {
+        writer.field(column.getName());
+      }
+      writer.endRow();
+
+      if (bounds == null) {
+        write(writer, select(table, columns, keys, null), columns, null);
+      } else {
+        writer.flush();
+        exportParts(table, columns, keys.get(0), bounds, file, writer.getChannel(), pool);
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (LOG.isInfoEnabled()) {
+      StringBuilder log = new StringBuilder("Exported table ").append(table).append(" into ").append(file);
+      if (bounds != null) log.append(" in ").append(bounds.length - 1).append(" key ranges");
+      log.append(" within ").append(System.currentTimeMillis() - start).append(" ms.");
+      LOG.info(log.toString());
+    }
+    return file;
+  }
+
+  /**
+   * Split the keys of a table into ranges of about the size of a part.
+   *
+   * @param table the name of the table
+   * @param key the single integral primary key of the table
+   * @return the lower bounds of all ranges followed by the maximum key, <code>null</code> if the table is too small
+   * @throws SQLException if the table cannot be read
+   */
+  private long[] bounds(final String table, final MetaColumn key)
+    throws SQLException
+  {
+    long rows = QueryUtils.countRows(getDataSource(), table);
+    if (rows <= part) return null;
+
+    long min;
+    long max;
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet result = null;
+    try {
+      connection = getDataSource().getConnection();
+      statement = connection.createStatement();
+      result = statement.executeQuery("select min(" + key.getName() + "), max(" + key.getName() + ") from " + table);
+      if (!result.next()) return null;
+      min = result.getLong(1);
+      max = result.getLong(2);
+    } finally {
+      DbUtils.closeQuietly(connection, statement, result);
+    }
+
+    // a span exceeding the long range cannot be split evenly
+    long span = max - min;
+    if (span < 0) return null;
+
+    int parts = (int) Math.min(MAX_PARTS, (rows + part - 1) / part);
+    long step = span / parts + 1;
+    long[] bounds = new long[parts + 1];
+    for (int index = 0; index < parts; ++index) {
+      bounds[index] = min + index * step;
+    }
+    bounds[parts] = max;
+    return bounds;
+  }
+
+  /**
+   * Export the key ranges of a table in parallel into part files and append them to the table file in key order.
+   *
+   * @param table the name of the table
+   * @param columns the columns to export
+   * @param key the single integral primary key of the table
+   * @param bounds the lower bounds of all ranges followed by the maximum key
+   * @param file the table file
+   * @param target the channel of the table file that receives the parts
+   * @param pool the workers that export the key ranges
+   * @throws SQLException if the table cannot be read
+   * @throws IOException if a file cannot be written
+   */
+  private void exportParts(final String table, final List<MetaColumn> columns, final MetaColumn key,
+                           final long[] bounds, final File file, final FileChannel target, final ExecutorService pool)
+    throws SQLException, IOException
+  {
+    final String sql = select(table, columns, Collections.singletonList(key), key);
+    final List<File> parts = new ArrayList<File>();
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    try {
+      for (int index = 0; index + 1 < bounds.length; ++index) {
+        final File partFile = new File(file.getPath() + "." + index + ".part");
+        final long[] range = {bounds[index], index + 2 < bounds.length ? bounds[index + 1] - 1 : bounds[index + 1]};
+        parts.add(partFile);
+        futures.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call()
+            throws SQLException, IOException
+          {
+            CsvWriter writer = new CsvWriter(partFile, DELIMITER, UTF8);
+            try {
+              write(writer, sql, columns, range);
+            } finally {
+              writer.close();
+            }
+            return null;
+          }
+        }));
+      }
+
+      Throwable failure = null;
+      for (int index = 0; index < futures.size(); ++index) {
+        try {
+          futures.get(index).get();
+          if (failure == null) append(parts.get(index), target);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          if (failure == null) failure = ex;
+        } catch (ExecutionException ex) {
+          if (failure == null) failure = ex.getCause();
+        }
+      }
+
+      if (failure instanceof SQLException) throw (SQLException) failure;
+      if (failure instanceof IOException) throw (IOException) failure;
+      if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+      if (failure instanceof Error) throw (Error) failure;
+      if (failure != null) throw new SQLException("Exporting table " + table + " was interrupted: " + failure);
+    } finally {
+      for (File partFile : parts) {
+        if (partFile.exists() && !partFile.delete()) LOG.warn("Cannot delete part file " + partFile);
+      }
+    }
+  }
+
+  /**
+   * Append a part file to the table file.
+   *
+   * @param part the part file
+   * @param target the channel of the table file
+   * @throws IOException if a file cannot be read or written
+   */
+  private static void append(final File part, final FileChannel target)
+    throws IOException
+  {
+    FileInputStream input = new FileInputStream(part);
+    try {
+      FileChannel source = input.getChannel();
+      long size = source.size();
+      for (long position = 0; position < size;) {
+        position += source.transferTo(position, size - position, target);
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Create the query of a table.
+   *
+   * @param table the name of the table
+   * @param columns the columns to export
+   * @param order the columns to sort by, can be empty
+   * @param range the column restricted to a key range by the parameters <code>low</code> and <code>high</code>,
+   *          <code>null</code> to read all rows
+   * @return the query
+   */
+  private static String select(final String table, final List<MetaColumn> columns, final List<MetaColumn> order,
+                               final MetaColumn range)
+  {
+    StringBuilder sql = new StringBuilder("select ");
+    for (int index = 0; index < columns.size(); ++index) {
+      if (index > 0) sql.append(", ");
+      sql.append(columns.get(index).getName());
+    }
+    sql.append(" from ").append(table);
+    if (range != null) {
+      sql.append(" where ").append(range.getName()).append(" >= :low and ").append(range.getName()).append(" <= :high");
+    }
+    for (int index = 0; index < order.size(); ++index) {
+      sql.append(index == 0 ? " order by " : ", ").append(order.get(index).getName());
+    }
+    return sql.toString();
+  }
+
+  /**
+   * Stream the rows of a query into the given writer.
+   *
+   * @param writer the writer of the file
+   * @param sql the query of the table
+   * @param columns the meta data of the columns of the query
+   * @param range the inclusive lower and upper key, <code>null</code> if the query has no parameters
+   * @throws SQLException if the table cannot be read
+   * @throws IOException if the file cannot be written
+   */
+  private void write(final CsvWriter writer, final String sql, final List<MetaColumn> columns, final long[] range)
+    throws SQLException, IOException
+  {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet result = null;
+    boolean autoCommit = true;
+    try {
+      connection = getDataSource().getConnection();
+      // some drivers only stream the rows through a cursor within a transaction
+      autoCommit = connection.getAutoCommit();
+      if (autoCommit) connection.setAutoCommit(false);
+
+      QueryString query = new QueryString(sql);
+      statement = connection.prepareStatement(query.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      statement.setFetchSize(getFetchSize());
+      if (range != null) query.with("low", range[0]).with("high", range[1]);
+      Object[] parameters = query.asRow();
+      for (int index = 0; index < parameters.length; ++index) {
+        statement.setObject(index + 1, parameters[index]);
+      }
+      result = statement.executeQuery();
+
+      Format[] formats = new Format[columns.size()];
+      for (int column = 0; column < formats.length; ++column) {
+        formats[column] = new Format(columns.get(column));
+      }
+
+      while (result.next()) {
+        for (int column = 0; column < formats.length; ++column) {
+          formats[column].write(writer, result, column + 1);
+        }
+        writer.endRow();
+      }
+    } finally {
+      DbUtils.closeQuietly(result);
+      DbUtils.closeQuietly(statement);
+      if (connection != null) {
+        try {
+          connection.rollback();
+          if (autoCommit) connection.setAutoCommit(true);
+        } catch (SQLException ex) {
+          LOG.debug("Cannot end the transaction of the export: " + ex);
+        }
+        DbUtils.closeQuietly(connection);
+      }
+    }
+  }
+
+  /**
+   * Converts the values of a single column into text, not thread-safe.
+   */
+  private static final class Format
+  {
+    private final MetaColumn meta;
+    private final boolean integral;
+    private DateFormat layout;
+
+    /**
+     * @param meta the meta data of the column
+     */
+    Format(final MetaColumn meta) {
+      this.meta = meta;
+      this.integral = meta.isIntegral() && !BigInteger.class.getName().equals(meta.getType());
+      if (meta.isTimestamp()) {
+        // the fraction is appended with all nine digits, the layout only knows milliseconds
+        layout = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+      } else if (meta.isDate()) {
+        layout = new SimpleDateFormat("yyyy-MM-dd");
+      }
+    }
+
+    /**
+     * Write the value of the column of the current row.
+     *
+     * @param writer the writer of the file
+     * @param result the current row
+     * @param column the JDBC index of the column
+     * @throws SQLException if the value cannot be read
+     * @throws IOException if the file cannot be written
+     */
+    void write(final CsvWriter writer, final ResultSet result, final int column)
+      throws SQLException, IOException
+    {
+      if (meta.isBlob()) {
+        writer.encoded(LobValue.BASE64, result.getBinaryStream(column));
+      } else if (integral) {
+        long value = result.getLong(column);
+        writer.field(result.wasNull() ? null : Long.toString(value));
+      } else if (meta.isFloating()) {
+        double value = result.getDouble(column);
+        writer.field(result.wasNull() ? null : Double.toString(value));
+      } else if (meta.isNumeric()) {
+        BigDecimal value = result.getBigDecimal(column);
+        writer.field(value == null ? null : value.toPlainString());
+      } else if (layout != null) {
+        Date value = meta.isTimestamp() ? result.getTimestamp(column) : result.getDate(column);
+        writer.field(value == null ? null : format(value));
+      } else {
+        String value = result.getString(column);
+        // texts that look like a reference to content are loaded as given only if they are escaped
+        writer.field(meta.isClob() ? LobValue.escape(value) : value);
+      }
+    }
+
+    /**
+     * @param value a date or time stamp, never null
+     * @return the value in ISO layout, time stamps with the nanoseconds in full
+     */
+    private String format(final Date value) {
+      String text = layout.format(value);
+      if (!(value instanceof Timestamp)) return text;
+
+      String nanos = Integer.toString(((Timestamp) value).getNanos());
+      StringBuilder full = new StringBuilder(text.length() + 10).append(text).append('.');
+      for (int digits = nanos.length(); digits < 9; ++digits) {
+        full.append('0');
+      }
+      return full.append(nanos).toString();
+    }
+  }
+}
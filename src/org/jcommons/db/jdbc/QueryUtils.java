@@ -1,5 +1,6 @@
 package org.jcommons.db.jdbc;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 
 import javax.sql.DataSource;
@@ -42,4 +43,24 @@ public final class QueryUtils
     }
     return count;
   }
+
+  /**
+   * Roll back the transaction of a connection after a failure without hiding the failure.
+   *
+   * The connection may be broken already, e.g. if it was chosen as the victim of a deadlock, so a failing rollback is
+   * chained to the original failure instead of being thrown.
+   *
+   * @param connection the connection to roll back, can be <code>null</code>
+   * @param failure the failure that caused the rollback, <code>null</code> if there is none
+   * @return the given failure to be thrown by the caller, the failure of the rollback if none was given
+   */
+  public static SQLException rollback(final Connection connection, final SQLException failure) {
+    try {
+      if (connection != null && !connection.getAutoCommit()) connection.rollback();
+    } catch (SQLException ex) {
+      if (failure == null) return ex;
+      failure.setNextException(ex);
+    }
+    return failure;
+  }
 }
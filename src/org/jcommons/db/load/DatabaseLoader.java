@@ -1,17 +1,26 @@
 package org.jcommons.db.load;
 
+import java.io.File;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.jcommons.db.load.sort.DependencySheetSorter;
-import org.jcommons.db.load.sort.SheetSortingStrategy;
+import org.jcommons.db.load.meta.MetaTable;
+import org.jcommons.db.load.report.LoadMetrics;
+import org.jcommons.db.load.report.LoadReport;
+import org.jcommons.db.load.sort.*;
+import org.jcommons.db.load.verify.LoadVerifier;
 import org.jcommons.io.sheet.Book;
 import org.jcommons.io.sheet.Sheet;
+import org.jcommons.message.Message;
+import org.jcommons.message.Messages;
 
 /**
  * Merges a book into the given data source.
@@ -26,6 +35,13 @@ public class DatabaseLoader
 
   private DataSource dataSource;
   private SheetSortingStrategy sheetSorter;
+  private int workers = 1;
+  private boolean verify = false;
+  private boolean columnar = false;
+  private RetryPolicy retryPolicy;
+  private File lobDirectory;
+  private LoadMetrics metrics = new LoadMetrics();
+  private Message verification = new Messages();
 
   /** @return the currently used data source */
   public DataSource getDataSource() {
@@ -43,22 +59,161 @@ public class DatabaseLoader
     return this;
   }
 
+  /** @return the number of sheets that are loaded at the same time */
+  public int getWorkers() {
+    return workers;
+  }
+
+  /** @return the number of sheets that are actually loaded at the same time with the current data source */
+  public int getParallelism() {
+    if (getWorkers() <= 1) return 1;
+
+    int capacity = Integer.MAX_VALUE;
+    DataSource source = getDataSource();
+    if (source instanceof LoadSession) {
+      capacity = ((LoadSession) source).getLimit();
+      source = ((LoadSession) source).getDataSource();
+    }
+    if (source instanceof BasicDataSource && ((BasicDataSource) source).getMaxActive() > 0) {
+      capacity = Math.min(capacity, ((BasicDataSource) source).getMaxActive());
+    }
+
+    // the calling thread keeps a connection as well, a single worker needs no other thread at all
+    int parallelism = Math.min(getWorkers(), capacity - 1);
+    return parallelism < 2 ? 1 : parallelism;
+  }
+
+  /**
+   * Define the number of sheets that are loaded at the same time.
+   *
+   * With more than one worker the sheets are loaded in parallel, the sheets on the most expensive chain of
+   * dependencies first. Every worker needs a connection of its own plus one for the calling thread, so the number of
+   * workers is reduced to the capacity of the pool if the data source is a DBCP pool or a {@link LoadSession}.
+   *
+   * @param workers the number of sheets loaded in parallel, 1 to load one sheet after the other
+   * @return this to allow chaining
+   */
+  public DatabaseLoader setWorkers(final int workers) {
+    this.workers = Math.max(1, workers);
+    return this;
+  }
+
+  /** @return true if the values of every sheet are kept in a compact columnar copy while being loaded */
+  public boolean isColumnar() {
+    return columnar;
+  }
+
+  /**
+   * Define whether the values of every sheet shall be copied into a compact columnar source before they are loaded,
+   * see {@link SheetLoader#setColumnar(boolean)}.
+   *
+   * @param columnar true to load from columnar copies, false to read the tables of the sheets directly
+   * @return this to allow chaining
+   */
+  public DatabaseLoader setColumnar(final boolean columnar) {
+    this.columnar = columnar;
+    return this;
+  }
+
+  /** @return the policy to retry batches that failed due to lock conflicts, <code>null</code> if never retried */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Define the policy to retry batches that failed due to lock conflicts, e.g. deadlocks between parallel workers.
+   *
+   * The budget of the policy is restored at the start of every book.
+   *
+   * With a policy every batch is committed on its own, so a batch that failed can be sent again without losing the
+   * batches before. A fatal failure therefore only rolls back its own batch: the batches committed before stay in the
+   * table and the sheet remains loaded in part. Without a policy every pass of a sheet is committed as a whole.
+   *
+   * @param retryPolicy the policy to use, <code>null</code> to abort the book on the first failure of a batch
+   * @return this to allow chaining
+   */
+  public DatabaseLoader setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
+  /** @return the directory large objects may be read from by file references, <code>null</code> if not allowed */
+  public File getLobDirectory() {
+    return lobDirectory;
+  }
+
+  /**
+   * Allow cells of CLOB and BLOB columns to reference files relative to the given directory, see
+   * {@link SheetLoader#setLobDirectory(File)}.
+   *
+   * @param lobDirectory the directory that contains the referenced files, <code>null</code> to reject all references
+   * @return this to allow chaining
+   */
+  public DatabaseLoader setLobDirectory(final File lobDirectory) {
+    this.lobDirectory = lobDirectory;
+    return this;
+  }
+
+  /** @return the live counters of all books loaded by this loader, never null */
+  public LoadMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Define the live counters that receive the statistics of all books loaded from now on, e.g. to share registered
+   * metrics between several loaders. Call {@link LoadMetrics#register(String)} to publish them through JMX.
+   *
+   * @param metrics the counters to use, <code>null</code> to use new counters
+   * @return this to allow chaining
+   */
+  public DatabaseLoader setMetrics(final LoadMetrics metrics) {
+    this.metrics = metrics == null ? new LoadMetrics() : metrics;
+    return this;
+  }
+
+  /** @return true if the loaded tables are verified against the loaded values afterwards */
+  public boolean isVerify() {
+    return verify;
+  }
+
+  /**
+   * Define whether the loaded tables shall be verified against the loaded values afterwards.
+   *
+   * Row counts and column aggregates of every loaded table are compared with digests taken while loading, so the
+   * tables are expected to be empty before the book is loaded.
+   *
+   * @param verify true to verify the loaded tables
+   * @return this to allow chaining
+   */
+  public DatabaseLoader setVerify(final boolean verify) {
+    this.verify = verify;
+    return this;
+  }
+
+  /** @return the mismatches found by the verification of the last loaded book, empty if none or not verified */
+  public Message getVerification() {
+    return verification;
+  }
+
   /**
    * Load the given book into the given database, either insert or update the data.
    *
    * @param book the data set to load into the database
+   * @return the rows, times and batch latencies of every pass of every sheet, empty if nothing was loaded
    * @throws SQLException if load cannot be performed
    */
-  public void load(final Book book)
+  public LoadReport load(final Book book)
     throws SQLException
   {
-    if (book == null) return;
+    verification = new Messages();
+    LoadReport report = new LoadReport(book == null ? null : book.getName(), getMetrics());
+    if (book == null) return report;
 
     if (getDataSource() == null) {
       StringBuilder log = new StringBuilder("Cannot import book ").append(defaultName(book));
       log.append("as no database connection can be established.");
       LOG.error(log.toString());
-      return;
+      return report;
     }
 
     if (LOG.isInfoEnabled()) {
@@ -67,25 +222,192 @@ public class DatabaseLoader
       LOG.info(log.toString());
     }
 
-    // simple load strategy, first load every sheet with mandatory fields, then update with the rest
-    SheetLoader loader = new SheetLoader().setDataSource(getDataSource());
-    List<Sheet> sheets = getSheets(book);
-
-    // load mandatory fields (and primary keys to ensure foreign key relationships)
-    for (Sheet sheet : sheets) {
-      loader.load(sheet);
+    int parallelism = getParallelism();
+    if (parallelism < getWorkers() && LOG.isInfoEnabled()) {
+      LOG.info("Loading " + parallelism + " instead of " + getWorkers() + " sheets in parallel to fit the pool.");
     }
 
-    // load all other data including foreign keys that can be referenced now
-    for (Sheet sheet : sheets) {
-      loader.update(sheet);
+    // all sheets share the connections of a single session, every thread keeps its connection for the whole book
+    int connections = parallelism > 1 ? parallelism + 1 : 1;
+    boolean own = !(getDataSource() instanceof LoadSession);
+    LoadSession session = own ? new LoadSession(getDataSource(), connections) : (LoadSession) getDataSource();
+    SheetLoader loader = new SheetLoader().setDataSource(session).setDigest(isVerify());
+    loader.setColumnar(isColumnar());
+    loader.setRetryPolicy(getRetryPolicy()).setReport(report).setLobDirectory(getLobDirectory());
+    if (getRetryPolicy() != null) getRetryPolicy().reset();
+    long start = System.currentTimeMillis();
+    try {
+      session.reserve(connections);
+
+      // first load every sheet with mandatory fields (and primary keys to ensure foreign key relationships), then
+      // update with the rest including optional foreign keys as soon as the referenced sheets are loaded
+      List<Sheet> sheets = getSheets(book, session);
+      loadDataflow(loader, sheets, session, parallelism);
+      session.commit();
+    } finally {
+      getSheetSorter().setDataSource(getDataSource());
+      if (LOG.isDebugEnabled()) {
+        StringBuilder log = new StringBuilder("Waited ").append(session.getWaitTime()).append(" ms to borrow ");
+        LOG.debug(log.append(session.getBorrowed()).append(" connections from the pool.").toString());
+      }
+      if (own) {
+        session.close();
+      } else {
+        session.release();
+      }
+      if (getRetryPolicy() != null && getRetryPolicy().getRetries() > 0 && LOG.isInfoEnabled()) {
+        LOG.info("Retried " + getRetryPolicy().getRetries() + " batches after lock conflicts.");
+      }
+      report.setElapsedTime(System.currentTimeMillis() - start);
+      getMetrics().addLoad(report);
     }
+    if (isVerify()) verify(loader);
 
     if (LOG.isInfoEnabled()) {
       StringBuilder log = new StringBuilder("Imported book ").append(defaultName(book));
       log.append("with ").append(book.getSheets().size()).append(" sheets into the database.");
       LOG.info(log.toString());
     }
+    if (LOG.isDebugEnabled()) LOG.debug(report.getText());
+    return report;
+  }
+
+  /**
+   * Load the sheets as a dataflow, every sheet is loaded as soon as the sheets it depends upon are loaded.
+   *
+   * The mandatory fields of a sheet are inserted as soon as its mandatory master sheets are inserted. The remaining
+   * data of a sheet is updated as soon as the sheet itself and all sheets it references are inserted, so inserts and
+   * updates overlap. With more than one worker the sheets are loaded in parallel scheduled by their estimated cost.
+   *
+   * Every pass of a sheet is committed on its own, so the rows are visible to the connections of the other workers.
+   *
+   * @param loader the loader of the single sheets
+   * @param sheets the sorted sheets to load
+   * @param session the session that owns the connections of the load
+   * @param parallelism the number of sheets loaded at the same time
+   * @throws SQLException if load cannot be performed
+   */
+  private void loadDataflow(final SheetLoader loader, final List<Sheet> sheets, final LoadSession session,
+                            final int parallelism)
+    throws SQLException
+  {
+    List<SheetCost> costs = new ArrayList<SheetCost>(sheets.size());
+    for (Sheet sheet : sheets) {
+      costs.add(SheetCost.of(session, sheet));
+    }
+
+    SheetScheduler scheduler = new SheetScheduler(sheets, getSheetSorter(), getReferences(sheets, session), costs);
+    if (LOG.isDebugEnabled()) LOG.debug("Loading sheets in sequence " + names(scheduler.getOrder()));
+
+    SheetTask insert = new SheetTask() {
+      @Override
+      public void run(final Sheet sheet)
+        throws SQLException
+      {
+        try {
+          loader.load(sheet);
+          session.commit();
+        } catch (SQLException ex) {
+          throw session.rollback(ex);
+        } finally {
+          // the workers end with the load, their connections serve the workers of the next load
+          session.release();
+        }
+      }
+    };
+    SheetTask update = new SheetTask() {
+      @Override
+      public void run(final Sheet sheet)
+        throws SQLException
+      {
+        try {
+          loader.update(sheet);
+          session.commit();
+        } catch (SQLException ex) {
+          throw session.rollback(ex);
+        } finally {
+          session.release();
+        }
+      }
+    };
+
+    if (parallelism <= 1) {
+      scheduler.run(null, 1, insert, update);
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      scheduler.run(pool, parallelism, insert, update);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Verify the loaded tables against the digests of the loader, in parallel if more than one worker is defined.
+   *
+   * @param loader the loader that took the digests
+   */
+  private void verify(final SheetLoader loader) {
+    LoadVerifier verifier = new LoadVerifier(getDataSource());
+    int parallelism = getParallelism();
+    ExecutorService pool = parallelism <= 1 ? null : Executors.newFixedThreadPool(parallelism);
+    try {
+      verification = verifier.setExecutor(pool).verify(loader.getDigests());
+    } finally {
+      if (pool != null) pool.shutdown();
+    }
+
+    if (!verification.isEmpty()) {
+      LOG.error("Verification of the loaded tables failed: " + verification.getText());
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("Verified " + loader.getDigests().size() + " loaded tables.");
+    }
+  }
+
+  /**
+   * Determine the sheets every sheet references with any of its foreign keys.
+   *
+   * @param sheets the sheets to load
+   * @param dataSource the database the sheets are loaded into
+   * @return the referenced sheets of every sheet, all sheets if the references of a sheet cannot be retrieved
+   */
+  private Map<Sheet, Collection<Sheet>> getReferences(final List<Sheet> sheets, final DataSource dataSource) {
+    Map<String, Sheet> tables = new HashMap<String, Sheet>();
+    for (Sheet sheet : sheets) {
+      tables.put(sheet.getName().toUpperCase(), sheet);
+    }
+
+    Map<Sheet, Collection<Sheet>> references = new HashMap<Sheet, Collection<Sheet>>();
+    for (Sheet sheet : sheets) {
+      try {
+        List<Sheet> referenced = new ArrayList<Sheet>();
+        for (String table : MetaTable.dependsOn(dataSource, sheet.getName())) {
+          Sheet master = tables.get(table.toUpperCase());
+          if (master != null) referenced.add(master);
+        }
+        references.put(sheet, referenced);
+      } catch (SQLException ex) {
+        // wait for all inserts, the sheet loader reports the failure in detail
+        references.put(sheet, sheets);
+      }
+    }
+    return references;
+  }
+
+  /**
+   * List the names of the given sheets for debug messages.
+   *
+   * @param sheets the sheets to list
+   * @return the names of the sheets
+   */
+  private static List<String> names(final List<Sheet> sheets) {
+    List<String> names = new ArrayList<String>(sheets.size());
+    for (Sheet sheet : sheets) {
+      names.add(sheet.getName());
+    }
+    return names;
   }
 
   /**
@@ -95,7 +417,18 @@ public class DatabaseLoader
    * @return the ordered list of sheets
    */
   protected List<Sheet> getSheets(final Book book) {
-    getSheetSorter().setDataSource(getDataSource());
+    return getSheets(book, getDataSource());
+  }
+
+  /**
+   * Return the sheets in the order they shall be loaded into the given database.
+   *
+   * @param book the book containing the sheets, never null
+   * @param dataSource the database that provides the dependencies of the sheets
+   * @return the ordered list of sheets
+   */
+  protected List<Sheet> getSheets(final Book book, final DataSource dataSource) {
+    getSheetSorter().setDataSource(dataSource);
     return getSheetSorter().sort(book.getSheets());
   }
 
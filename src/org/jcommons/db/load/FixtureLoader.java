@@ -0,0 +1,379 @@
+package org.jcommons.db.load;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.jcommons.io.sheet.Book;
+import org.jcommons.io.text.reader.csv.CsvBookReader;
+
+/**
+ * Loads fixture books into an HSQLDB database and restores them from a snapshot on every further load.
+ *
+ * The snapshot is keyed by a hash of the book files and the state of the database before the load, which covers the
+ * schema as well as rows loaded before. The first load reads and loads the book as usual and stores the statements
+ * of the script written by the HSQLDB <code>SCRIPT</code> command that were added by the load. Any further load of
+ * the same files into the same state executes these statements only, with the referential integrity checks disabled
+ * as the rows are restored in the sequence of the tables. Databases other than HSQLDB are always loaded from the
+ * book.
+ */
+public class FixtureLoader
+{
+  private static final Log LOG = LogFactory.getLog(FixtureLoader.class);
+
+  /** file name extension of the snapshots */
+  public static final String EXTENSION = ".fixture.gz";
+
+  private static final String UTF8 = "UTF-8";
+
+  private final DataSource dataSource;
+  private final File directory;
+  private DatabaseLoader loader;
+
+  /**
+   * Create a loader that keeps the snapshots in the temporary directory.
+   *
+   * @param dataSource the HSQLDB database to load the fixtures into, never null
+   */
+  public FixtureLoader(final DataSource dataSource) {
+    this(dataSource, new File(System.getProperty("java.io.tmpdir"), "jcommons-fixtures"));
+  }
+
+  /**
+   * Create a loader.
+   *
+   * @param dataSource the HSQLDB database to load the fixtures into, never null
+   * @param directory the directory that keeps the snapshots, created if missing
+   */
+  public FixtureLoader(final DataSource dataSource, final File directory) {
+    this.dataSource = dataSource;
+    this.directory = directory;
+  }
+
+  /** @return the directory that keeps the snapshots */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /** @return the loader used for the first load of a book */
+  public DatabaseLoader getLoader() {
+    if (loader == null) loader = new DatabaseLoader();
+    return loader;
+  }
+
+  /**
+   * Define the loader used for the first load of a book, e.g. to define a sheet sorting strategy.
+   *
+   * @param loader the loader to use, <code>null</code> to use a default loader
+   * @return this to allow chaining
+   */
+  public FixtureLoader setLoader(final DatabaseLoader loader) {
+    this.loader = loader;
+    return this;
+  }
+
+  /**
+   * Load the given book files, either from a snapshot or as a new book.
+   *
+   * @param files the CSV files of the book in the order they are added to the book
+   * @return true if the fixture was restored from a snapshot, false if the book was loaded
+   * @throws SQLException if the book cannot be loaded
+   * @throws IOException if the files cannot be read
+   */
+  public boolean load(final List<File> files)
+    throws SQLException, IOException
+  {
+    List<String> before = isHsqldb() ? script() : null;
+    if (before == null) {
+      loadBook(files);
+      return false;
+    }
+
+    File snapshot = new File(directory, hash(files, before) + EXTENSION);
+    if (snapshot.isFile()) {
+      long start = System.currentTimeMillis();
+      restore(read(snapshot));
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Restored fixture " + snapshot + " within " + (System.currentTimeMillis() - start) + " ms.");
+      }
+      return true;
+    }
+
+    loadBook(files);
+
+    // identical rows of tables without primary key are scripted as identical statements, so count them
+    Map<String, Integer> existing = new HashMap<String, Integer>();
+    for (String statement : before) {
+      Integer count = existing.get(statement);
+      existing.put(statement, count == null ? 1 : count + 1);
+    }
+    List<String> added = new ArrayList<String>();
+    for (String statement : script()) {
+      Integer count = existing.get(statement);
+      if (count != null && count > 1) {
+        existing.put(statement, count - 1);
+      } else if (count != null) {
+        existing.remove(statement);
+      } else if (isRestorable(statement)) {
+        added.add(statement);
+      }
+    }
+    write(snapshot, added);
+    return false;
+  }
+
+  /**
+   * Read the given files into a book and load it.
+   *
+   * @param files the CSV files of the book
+   * @throws SQLException if the book cannot be loaded
+   */
+  protected void loadBook(final List<File> files)
+    throws SQLException
+  {
+    CsvBookReader reader = new CsvBookReader();
+    for (File file : files) {
+      reader.addFile(file);
+    }
+
+    Book book = reader.read();
+    getLoader().setDataSource(dataSource).load(book);
+  }
+
+  /**
+   * @return true if the database is an HSQLDB database
+   * @throws SQLException if the database cannot be accessed
+   */
+  private boolean isHsqldb()
+    throws SQLException
+  {
+    Connection connection = dataSource.getConnection();
+    try {
+      return connection.getMetaData().getDatabaseProductName().toUpperCase().contains("HSQL");
+    } finally {
+      DbUtils.closeQuietly(connection);
+    }
+  }
+
+  /**
+   * @param statement a statement of the database script
+   * @return true if the statement restores rows or the next value of an identity column
+   */
+  private static boolean isRestorable(final String statement) {
+    String text = statement.toUpperCase();
+    return text.startsWith("INSERT INTO ") || text.startsWith("ALTER TABLE ") && text.contains(" RESTART WITH ");
+  }
+
+  /**
+   * Retrieve the script that recreates the current state of the database.
+   *
+   * @return the statements of the script in their sequence
+   * @throws SQLException if the database cannot be accessed
+   * @throws IOException if the script cannot be read
+   */
+  private List<String> script()
+    throws SQLException, IOException
+  {
+    // only a script written to a file contains the rows of the tables
+    File file = File.createTempFile("fixture", ".script");
+    if (!file.delete()) throw new IOException("Cannot prepare script file " + file);
+
+    Connection connection = null;
+    Statement statement = null;
+    try {
+      connection = dataSource.getConnection();
+      statement = connection.createStatement();
+      statement.execute("SCRIPT '" + file.getAbsolutePath().replace("'", "''") + "'");
+    } finally {
+      DbUtils.closeQuietly(statement);
+      DbUtils.closeQuietly(connection);
+    }
+
+    List<String> statements = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "ISO-8859-1"));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        statements.add(unescape(line));
+      }
+    } finally {
+      reader.close();
+      if (!file.delete()) LOG.warn("Cannot delete script file " + file);
+    }
+    return statements;
+  }
+
+  /**
+   * Decode the unicode escapes of a line of a script, which the script reader of HSQLDB decodes as well.
+   *
+   * @param line the line of the script
+   * @return the statement
+   */
+  private static String unescape(final String line) {
+    if (line.indexOf('\\') < 0) return line;
+    StringBuilder text = new StringBuilder(line.length());
+    for (int index = 0; index < line.length(); ++index) {
+      char c = line.charAt(index);
+      if (c == '\\' && index + 5 < line.length() && line.charAt(index + 1) == 'u') {
+        c = (char) Integer.parseInt(line.substring(index + 2, index + 6), 16);
+        index += 5;
+      }
+      text.append(c);
+    }
+    return text.toString();
+  }
+
+  /**
+   * Execute the statements of a snapshot within a single transaction.
+   *
+   * @param statements the statements that restore the rows
+   * @throws SQLException if the statements cannot be executed
+   */
+  private void restore(final List<String> statements)
+    throws SQLException
+  {
+    Connection connection = null;
+    Statement statement = null;
+    boolean autoCommit = true;
+    try {
+      connection = dataSource.getConnection();
+      autoCommit = connection.getAutoCommit();
+      statement = connection.createStatement();
+      statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+      SQLException failure = null;
+      try {
+        connection.setAutoCommit(false);
+        for (String sql : statements) {
+          statement.addBatch(sql);
+        }
+        statement.executeBatch();
+        connection.commit();
+      } catch (SQLException ex) {
+        failure = QueryUtils.rollback(connection, ex);
+        throw failure;
+      } finally {
+        try {
+          connection.setAutoCommit(autoCommit);
+          statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+        } catch (SQLException ex) {
+          // keep the failure of the restore, the connection is discarded anyway
+          if (failure == null) throw ex;
+          failure.setNextException(ex);
+        }
+      }
+    } finally {
+      DbUtils.closeQuietly(statement);
+      DbUtils.closeQuietly(connection);
+    }
+  }
+
+  /**
+   * Hash the contents of the files and the state of the database.
+   *
+   * @param files the CSV files of the book
+   * @param script the script of the database before the load
+   * @return the hash as hexadecimal text
+   * @throws IOException if the files cannot be read
+   */
+  private static String hash(final List<File> files, final List<String> script)
+    throws IOException
+  {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-1 is not supported", ex);
+    }
+
+    byte[] buffer = new byte[1 << 16];
+    for (File file : files) {
+      digest.update(file.getName().getBytes(UTF8));
+      digest.update((byte) 0);
+      InputStream input = new FileInputStream(file);
+      try {
+        for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+          digest.update(buffer, 0, read);
+        }
+      } finally {
+        input.close();
+      }
+    }
+    for (String statement : script) {
+      digest.update(statement.getBytes(UTF8));
+      digest.update((byte) '\n');
+    }
+
+    StringBuilder text = new StringBuilder();
+    for (byte b : digest.digest()) {
+      text.append(Character.forDigit((b >> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+    }
+    return text.toString();
+  }
+
+  /**
+   * Store the statements of a snapshot, the file appears complete or not at all.
+   *
+   * @param snapshot the file of the snapshot
+   * @param statements the statements that restore the rows
+   * @throws IOException if the file cannot be written
+   */
+  private void write(final File snapshot, final List<String> statements)
+    throws IOException
+  {
+    if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+
+    File temporary = File.createTempFile("fixture", ".tmp", directory);
+    DataOutputStream output =
+        new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temporary))));
+    try {
+      output.writeInt(statements.size());
+      for (String statement : statements) {
+        byte[] bytes = statement.getBytes(UTF8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+      }
+    } finally {
+      output.close();
+    }
+
+    if (!temporary.renameTo(snapshot)) {
+      // another process stored the same snapshot meanwhile
+      if (!temporary.delete()) LOG.warn("Cannot delete temporary snapshot " + temporary);
+    }
+  }
+
+  /**
+   * Read the statements of a snapshot.
+   *
+   * @param snapshot the file of the snapshot
+   * @return the statements that restore the rows
+   * @throws IOException if the file cannot be read
+   */
+  private static List<String> read(final File snapshot)
+    throws IOException
+  {
+    DataInputStream input =
+        new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(snapshot))));
+    try {
+      int count = input.readInt();
+      List<String> statements = new ArrayList<String>(count);
+      for (int index = 0; index < count; ++index) {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        statements.add(new String(bytes, UTF8));
+      }
+      return statements;
+    } finally {
+      input.close();
+    }
+  }
+}
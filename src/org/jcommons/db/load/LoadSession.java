@@ -0,0 +1,491 @@
+package org.jcommons.db.load;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A data source that pins a connection to every thread for the duration of a load.
+ *
+ * The session borrows a connection from the underlying data source the first time a thread asks for one, switches off
+ * auto-commit, applies the session settings and hands out the very same connection to this thread until the session is
+ * closed. Closing, committing or rolling back the handed out connection has no effect, the session owns the
+ * transaction boundaries by {@link #commit()} and {@link #rollback()}. So the sorter, the meta data layer and the
+ * loaders can be used with the session as their data source and do not borrow, validate and return a connection for
+ * every statement.
+ *
+ * At most the given number of connections is pinned, e.g. one for every worker plus one for the calling thread.
+ * Connections can be reserved up front, so no worker waits for the pool in the middle of a sheet. Further threads
+ * borrow their connections from the underlying data source as usual. A thread that is done, e.g. a worker of a pool
+ * that ends with the load, releases its connection to the next thread, so the session can serve several loads. The
+ * time spent waiting for the pool is recorded to tell whether the pool is too small for the load. Rows written through
+ * one connection are invisible to the others until they are committed, so parallel loads commit after every sheet.
+ */
+public class LoadSession
+  implements DataSource, Closeable
+{
+  private static final Log LOG = LogFactory.getLog(LoadSession.class);
+
+  /** methods of the connection that are handled by the session */
+  private static final Set<String> OWNED =
+      new HashSet<String>(Arrays.asList("close", "commit", "rollback", "setAutoCommit"));
+
+  private final DataSource dataSource;
+  private final int limit;
+  private final List<String> settings = new ArrayList<String>();
+  private final Map<Thread, Connection> pinned = new LinkedHashMap<Thread, Connection>();
+  private final List<Connection> reserved = new ArrayList<Connection>();
+  private boolean exceeded = false;
+  private int pending = 0;
+  private int borrowed = 0;
+  private long waited = 0L;
+
+  /**
+   * Create a session that pins a single connection.
+   *
+   * @param dataSource the data source to borrow the connection from, never null
+   */
+  public LoadSession(final DataSource dataSource) {
+    this(dataSource, 1);
+  }
+
+  /**
+   * Create a session.
+   *
+   * @param dataSource the data source to borrow the connections from, never null
+   * @param limit the maximum number of connections pinned at the same time
+   */
+  public LoadSession(final DataSource dataSource, final int limit) {
+    this.dataSource = dataSource;
+    this.limit = Math.max(1, limit);
+  }
+
+  /** @return the underlying data source */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /** @return the maximum number of connections pinned at the same time */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Add a statement that is executed on every connection once it is pinned, e.g. to tune the session of the database.
+   *
+   * @param sql the statement to execute, never null
+   * @return this to allow chaining
+   */
+  public LoadSession addSetting(final String sql) {
+    synchronized (pinned) {
+      settings.add(sql);
+    }
+    return this;
+  }
+
+  /** @return the number of connections currently pinned */
+  public int getPinned() {
+    synchronized (pinned) {
+      return pinned.size();
+    }
+  }
+
+  /** @return the number of connections borrowed from the underlying data source so far */
+  public int getBorrowed() {
+    synchronized (pinned) {
+      return borrowed;
+    }
+  }
+
+  /** @return the milliseconds spent waiting for connections of the underlying data source so far */
+  public long getWaitTime() {
+    synchronized (pinned) {
+      return waited / 1000000L;
+    }
+  }
+
+  /**
+   * Borrow connections up front, so the threads that use the session later on do not wait for the pool.
+   *
+   * @param count the number of connections to hold, at most the limit of the session
+   * @return this to allow chaining
+   * @throws SQLException if the connections cannot be borrowed
+   */
+  public LoadSession reserve(final int count)
+    throws SQLException
+  {
+    while (true) {
+      synchronized (pinned) {
+        if (pinned.size() + reserved.size() + pending >= Math.min(count, limit)) return this;
+        ++pending;
+      }
+      Connection connection = null;
+      try {
+        connection = borrow();
+      } finally {
+        synchronized (pinned) {
+          --pending;
+          if (connection != null) reserved.add(connection);
+        }
+      }
+    }
+  }
+
+  /**
+   * Provide the connection pinned to the calling thread, pin a new one if possible.
+   *
+   * @return the connection, closing it has no effect
+   * @throws SQLException if no connection can be borrowed
+   */
+  @Override
+  public Connection getConnection()
+    throws SQLException
+  {
+    Thread thread = Thread.currentThread();
+    boolean overflow = false;
+    synchronized (pinned) {
+      Connection connection = pinned.get(thread);
+      if (connection != null) return connection;
+      if (!reserved.isEmpty()) {
+        connection = reserved.remove(reserved.size() - 1);
+        pinned.put(thread, connection);
+        return connection;
+      }
+      if (pinned.size() + pending >= limit) {
+        if (!exceeded && LOG.isDebugEnabled()) LOG.debug("More than " + limit + " threads use the load session.");
+        exceeded = true;
+        overflow = true;
+      } else {
+        ++pending;
+      }
+    }
+    if (overflow) return dataSource.getConnection();
+
+    Connection connection = null;
+    try {
+      connection = borrow();
+    } finally {
+      synchronized (pinned) {
+        --pending;
+        if (connection != null) pinned.put(thread, connection);
+      }
+    }
+    return connection;
+  }
+
+  /**
+   * Borrow a connection from the underlying data source and set it up for the session.
+   *
+   * The caller counts the connection as pending until it publishes it, so the limit holds while the lock is released:
+   * waiting for the pool must not block the threads that already own a connection.
+   *
+   * @return the pinned connection
+   * @throws SQLException if no connection can be borrowed
+   */
+  private Connection borrow()
+    throws SQLException
+  {
+    List<String> statements;
+    synchronized (pinned) {
+      statements = new ArrayList<String>(settings);
+    }
+
+    Connection real = null;
+    long start = System.nanoTime();
+    try {
+      real = dataSource.getConnection();
+      long end = System.nanoTime();
+      synchronized (pinned) {
+        waited += end - start;
+        ++borrowed;
+      }
+
+      real.setAutoCommit(false);
+      for (String sql : statements) {
+        execute(real, sql);
+      }
+      return pin(real);
+    } catch (SQLException ex) {
+      DbUtils.closeQuietly(real);
+      throw ex;
+    }
+  }
+
+  /**
+   * Execute a session setting.
+   *
+   * @param connection the connection to set up
+   * @param sql the statement to execute
+   * @throws SQLException if the statement fails
+   */
+  private static void execute(final Connection connection, final String sql)
+    throws SQLException
+  {
+    Statement statement = connection.createStatement();
+    try {
+      statement.execute(sql);
+    } finally {
+      DbUtils.closeQuietly(statement);
+    }
+  }
+
+  /**
+   * Wrap a connection, so the users of the session cannot close it or end its transaction.
+   *
+   * @param real the borrowed connection
+   * @return the wrapped connection
+   */
+  private static Connection pin(final Connection real) {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws Throwable
+      {
+        String name = method.getName();
+        if (OWNED.contains(name)) return null;
+        if ("unwrapPinned".equals(name)) return real;
+        if ("getAutoCommit".equals(name)) return Boolean.FALSE;
+        if ("isClosed".equals(name)) return real.isClosed();
+        if ("equals".equals(name)) return proxy == args[0];
+        if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+        try {
+          return method.invoke(real, args);
+        } catch (InvocationTargetException ex) {
+          throw ex.getCause();
+        }
+      }
+    };
+    return (Connection) Proxy.newProxyInstance(LoadSession.class.getClassLoader(),
+        new Class< ? >[] {Connection.class, Pinned.class}, handler);
+  }
+
+  /**
+   * @param connection a connection handed out by the session
+   * @return the borrowed connection itself
+   */
+  private static Connection borrowed(final Connection connection) {
+    return ((Pinned) connection).unwrapPinned();
+  }
+
+  /**
+   * Commit the transaction of the calling thread.
+   *
+   * @throws SQLException if the transaction cannot be committed
+   */
+  public void commit()
+    throws SQLException
+  {
+    Connection connection;
+    synchronized (pinned) {
+      connection = pinned.get(Thread.currentThread());
+    }
+    if (connection != null) borrowed(connection).commit();
+  }
+
+  /**
+   * Roll back the transaction of the calling thread.
+   *
+   * @throws SQLException if the transaction cannot be rolled back
+   */
+  public void rollback()
+    throws SQLException
+  {
+    Connection connection;
+    synchronized (pinned) {
+      connection = pinned.get(Thread.currentThread());
+    }
+    if (connection != null) borrowed(connection).rollback();
+  }
+
+  /**
+   * Roll back the transaction of the calling thread after it failed.
+   *
+   * A failing rollback is chained to the given failure instead of being thrown, so it cannot hide the cause.
+   *
+   * @param failure the failure that caused the rollback
+   * @return the given failure to be thrown by the caller
+   */
+  public SQLException rollback(final SQLException failure) {
+    try {
+      rollback();
+    } catch (SQLException ex) {
+      failure.setNextException(ex);
+    }
+    return failure;
+  }
+
+  /**
+   * Unpin the connection of the calling thread and keep it reserved for the next thread, e.g. at the end of a task
+   * run by a pool whose threads do not outlive the load.
+   *
+   * A transaction that was not committed is rolled back, a connection that cannot be rolled back is returned to the
+   * underlying data source.
+   */
+  public void release() {
+    Connection connection;
+    synchronized (pinned) {
+      connection = pinned.remove(Thread.currentThread());
+      if (connection == null) return;
+      ++pending;
+    }
+
+    boolean usable = true;
+    try {
+      borrowed(connection).rollback();
+    } catch (SQLException ex) {
+      LOG.debug("Cannot release a connection of the load session: " + ex.getMessage());
+      DbUtils.closeQuietly(borrowed(connection));
+      usable = false;
+    } finally {
+      synchronized (pinned) {
+        --pending;
+        if (usable) reserved.add(connection);
+      }
+    }
+  }
+
+  /**
+   * Commit the transactions of all pinned connections, e.g. at the end of the load.
+   *
+   * @throws SQLException if a transaction cannot be committed
+   */
+  public void commitAll()
+    throws SQLException
+  {
+    for (Connection connection : getConnections()) {
+      borrowed(connection).commit();
+    }
+  }
+
+  /** roll back the transactions of all pinned connections, e.g. if the load failed */
+  public void rollbackAll() {
+    for (Connection connection : getConnections()) {
+      try {
+        borrowed(connection).rollback();
+      } catch (SQLException ex) {
+        LOG.warn("Cannot roll back the load session: " + ex.getMessage());
+      }
+    }
+  }
+
+  /** @return a copy of all pinned connections */
+  private List<Connection> getConnections() {
+    synchronized (pinned) {
+      return new ArrayList<Connection>(pinned.values());
+    }
+  }
+
+  /**
+   * Roll back all transactions that are not committed and return the connections to the underlying data source, the
+   * session can be used again afterwards.
+   */
+  @Override
+  public void close() {
+    List<Connection> connections;
+    synchronized (pinned) {
+      connections = new ArrayList<Connection>(pinned.values());
+      connections.addAll(reserved);
+      pinned.clear();
+      reserved.clear();
+      exceeded = false;
+    }
+
+    for (Connection connection : connections) {
+      Connection real = borrowed(connection);
+      try {
+        real.rollback();
+        real.setAutoCommit(true);
+      } catch (SQLException ex) {
+        LOG.debug("Cannot reset a connection of the load session: " + ex.getMessage());
+      }
+      DbUtils.closeQuietly(real);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Connection getConnection(final String username, final String password)
+    throws SQLException
+  {
+    return dataSource.getConnection(username, password);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PrintWriter getLogWriter()
+    throws SQLException
+  {
+    return dataSource.getLogWriter();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setLogWriter(final PrintWriter out)
+    throws SQLException
+  {
+    dataSource.setLogWriter(out);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setLoginTimeout(final int seconds)
+    throws SQLException
+  {
+    dataSource.setLoginTimeout(seconds);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getLoginTimeout()
+    throws SQLException
+  {
+    return dataSource.getLoginTimeout();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> T unwrap(final Class<T> type)
+    throws SQLException
+  {
+    if (type.isInstance(this)) return type.cast(this);
+    return dataSource.unwrap(type);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isWrapperFor(final Class< ? > type)
+    throws SQLException
+  {
+    return type.isInstance(this) || dataSource.isWrapperFor(type);
+  }
+
+  /**
+   * Required by JDBC 4.1, declared without override to compile with older versions as well.
+   *
+   * @return never
+   * @throws SQLFeatureNotSupportedException always as the session does not use java.util.logging
+   */
+  public Logger getParentLogger()
+    throws SQLFeatureNotSupportedException
+  {
+    throw new SQLFeatureNotSupportedException("The load session does not use java.util.logging");
+  }
+
+  /**
+   * Gives access to the borrowed connection behind a pinned connection.
+   */
+  private interface Pinned
+  {
+    /** @return the borrowed connection */
+    Connection unwrapPinned();
+  }
+}
@@ -0,0 +1,196 @@
+package org.jcommons.db.load;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Decides whether a failed batch is sent to the database again and how long to wait before.
+ *
+ * Deadlocks, serialization failures and lock timeouts are transient: the database rolled back the statement or the
+ * transaction of a worker because other workers held the locks, so the same batch may succeed on a fresh
+ * transaction. They are recognized by the SQLState of the exception and of all exceptions chained to it, or by the
+ * error codes of common vendors if the SQLState is not specific. All other failures are fatal.
+ *
+ * A batch is sent at most the given number of attempts. Every retry waits a random time of up to the given delay
+ * doubled with every attempt, so workers that collided do not collide again at once. All batches of a load share a
+ * budget of retries, which is restored by {@link #reset()}, so a load under permanent contention still fails.
+ */
+public class RetryPolicy
+{
+  private static final Log LOG = LogFactory.getLog(RetryPolicy.class);
+
+  /** SQLStates of lock conflicts whose class is not "40", the transaction rollback class */
+  private static final Set<String> STATES = new HashSet<String>(Arrays.asList(
+      "55P03", // PostgreSQL: lock not available
+      "57033", // DB2: deadlock or timeout without rollback
+      "HYT00", // lock or statement timeout
+      "61000")); // Oracle: deadlock or resource busy
+
+  /** vendor codes of lock conflicts */
+  private static final Set<Integer> CODES = new HashSet<Integer>(Arrays.asList(
+      8177, // Oracle: cannot serialize access
+      1205, // MySQL: lock wait timeout, SQL Server: deadlock victim
+      1213, // MySQL: deadlock found
+      1222, // SQL Server: lock request timeout
+      -911, // DB2: deadlock or timeout, rolled back
+      -913)); // DB2: deadlock or timeout, not rolled back
+
+  private final Random random = new Random();
+  private final AtomicInteger retries = new AtomicInteger();
+  private int attempts = 5;
+  private int budget = 100;
+  private long delay = 50L;
+  private long maxDelay = 2000L;
+
+  /** @return the maximum number of times a single batch is sent */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * Define how often a single batch is sent at most.
+   *
+   * @param attempts the maximum number of attempts, 1 to never retry
+   * @return this to allow chaining
+   */
+  public RetryPolicy setAttempts(final int attempts) {
+    this.attempts = Math.max(1, attempts);
+    return this;
+  }
+
+  /** @return the maximum number of retries of all batches of a load */
+  public int getBudget() {
+    return budget;
+  }
+
+  /**
+   * Define the maximum number of retries of all batches together.
+   *
+   * @param budget the maximum number of retries until the policy is reset
+   * @return this to allow chaining
+   */
+  public RetryPolicy setBudget(final int budget) {
+    this.budget = Math.max(0, budget);
+    return this;
+  }
+
+  /** @return the milliseconds waited at most before the first retry */
+  public long getDelay() {
+    return delay;
+  }
+
+  /**
+   * Define the maximum wait before the first retry, it is doubled with every further attempt.
+   *
+   * @param delay the delay in milliseconds
+   * @return this to allow chaining
+   */
+  public RetryPolicy setDelay(final long delay) {
+    this.delay = Math.max(0L, delay);
+    return this;
+  }
+
+  /** @return the milliseconds waited at most before any retry */
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Define the upper bound of the wait before a retry.
+   *
+   * @param maxDelay the maximum delay in milliseconds
+   * @return this to allow chaining
+   */
+  public RetryPolicy setMaxDelay(final long maxDelay) {
+    this.maxDelay = Math.max(0L, maxDelay);
+    return this;
+  }
+
+  /** @return the number of retries since the last reset */
+  public int getRetries() {
+    return retries.get();
+  }
+
+  /** restore the budget, e.g. before the next load */
+  public void reset() {
+    retries.set(0);
+  }
+
+  /**
+   * Check whether the given failure is caused by a lock conflict with another transaction.
+   *
+   * @param ex the failure of the database, never null
+   * @return true if the statement may succeed on a fresh transaction, false if the failure is fatal
+   */
+  public boolean isTransient(final SQLException ex) {
+    Set<Throwable> seen = new HashSet<Throwable>();
+    List<Throwable> causes = new ArrayList<Throwable>();
+    causes.add(ex);
+    for (int index = 0; index < causes.size(); ++index) {
+      Throwable cause = causes.get(index);
+      if (!seen.add(cause)) continue;
+      if (cause instanceof SQLException && isLockConflict((SQLException) cause)) return true;
+      if (cause instanceof SQLException && ((SQLException) cause).getNextException() != null) {
+        causes.add(((SQLException) cause).getNextException());
+      }
+      if (cause.getCause() != null) causes.add(cause.getCause());
+    }
+    return false;
+  }
+
+  /**
+   * @param ex a single failure of the database
+   * @return true if the failure itself denotes a lock conflict
+   */
+  private static boolean isLockConflict(final SQLException ex) {
+    if (ex instanceof SQLTransactionRollbackException) return true;
+
+    String state = ex.getSQLState();
+    if (state != null && (state.startsWith("40") || STATES.contains(state))) return true;
+    return CODES.contains(ex.getErrorCode());
+  }
+
+  /**
+   * Decide whether a batch that failed is sent again, wait before if so.
+   *
+   * @param ex the failure of the batch, never null
+   * @param attempt the number of times the batch was sent so far
+   * @return true if the batch shall be sent again, false if the failure is fatal or no retries are left
+   */
+  public boolean retry(final SQLException ex, final int attempt) {
+    if (attempt >= getAttempts() || !isTransient(ex)) return false;
+    if (retries.incrementAndGet() > getBudget()) {
+      retries.decrementAndGet();
+      LOG.warn("No retries left for a batch that failed: " + ex.getMessage());
+      return false;
+    }
+
+    long wait = backoff(attempt);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Retrying batch within " + wait + " ms after attempt " + attempt + " failed: " + ex.getMessage());
+    }
+    if (wait <= 0L) return true;
+    try {
+      Thread.sleep(wait);
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @param attempt the number of times the batch was sent so far, at least 1
+   * @return a random wait in milliseconds up to the delay doubled for every attempt but the first
+   */
+  protected long backoff(final int attempt) {
+    long limit = Math.min(getMaxDelay(), getDelay() << Math.min(attempt - 1, 30));
+    if (limit <= 0L) return 0L;
+    return (long) (random.nextDouble() * (limit + 1));
+  }
+}
@@ -1,14 +1,29 @@
 package org.jcommons.db.load;
 
-import java.sql.SQLException;
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jcommons.db.column.ColumnDataProvider;
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.jcommons.db.load.meta.ForeignKey;
 import org.jcommons.db.load.meta.MetaTable;
+import org.jcommons.db.load.report.LoadReport;
+import org.jcommons.db.load.report.PassReport;
+import org.jcommons.db.load.sheet.*;
+import org.jcommons.db.load.sort.HierarchySorter;
+import org.jcommons.db.load.verify.*;
+import org.jcommons.db.load.source.*;
 import org.jcommons.io.sheet.Sheet;
 import org.jcommons.message.Message;
 
@@ -22,6 +37,13 @@ public class SheetLoader
   private static final Log LOG = LogFactory.getLog(SheetLoader.class);
 
   private DataSource dataSource;
+  private ExecutorService executor;
+  private boolean columnar = false;
+  private final Map<Sheet, RowSource> sources = new WeakHashMap<Sheet, RowSource>();
+  private Map<String, TableDigest> digests;
+  private RetryPolicy retryPolicy;
+  private LoadReport report;
+  private File lobDirectory;
 
   /** @return the currently used data source */
   public DataSource getDataSource() {
@@ -39,6 +61,186 @@ public class SheetLoader
     return this;
   }
 
+  /** @return the executor that converts the columns of a sheet in parallel, <code>null</code> if not used */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Inject the executor that converts the columns of a sheet in parallel.
+   *
+   * @param executor the executor to use, <code>null</code> to convert all columns in the loading thread
+   * @return this to allow chaining
+   */
+  public SheetLoader setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /** @return true if the values of a sheet are kept in a compact columnar copy while being loaded */
+  public boolean isColumnar() {
+    return columnar;
+  }
+
+  /**
+   * Define whether the values of a sheet shall be copied into a compact columnar source before they are loaded.
+   *
+   * The copy is made once per sheet, shared by its insert and its update and released once the sheet is updated.
+   * The copy replaces the cells only while loading, as the table of the sheet stays reachable as long as the caller
+   * keeps the book. To keep nothing but the compact values in memory stream the file into a copy instead, e.g.
+   * <code>ColumnarSource.of(new MappedCsvSource(file))</code>, and load it by {@link #load(String, RowSource)}.
+   *
+   * @param columnar true to load from a columnar copy, false to read the table of the sheet directly
+   * @return this to allow chaining
+   */
+  public SheetLoader setColumnar(final boolean columnar) {
+    this.columnar = columnar;
+    return this;
+  }
+
+  /** @return the policy to retry batches that failed due to lock conflicts, <code>null</code> if never retried */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Define the policy to retry batches that failed due to lock conflicts with other workers, e.g. deadlocks.
+   *
+   * With a policy every batch is committed on its own, so a batch that failed can be rolled back and sent again on a
+   * fresh transaction without losing the batches before. A batch that fails for good leaves the committed batches of
+   * the pass in the table.
+   *
+   * @param retryPolicy the policy to use, <code>null</code> to fail on the first failure of a batch
+   * @return this to allow chaining
+   */
+  public SheetLoader setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
+  /** @return the report that collects the statistics of all passes, <code>null</code> if none are collected */
+  public LoadReport getReport() {
+    return report;
+  }
+
+  /**
+   * Define the report that collects rows, times and batch latencies of every pass loaded from now on.
+   *
+   * @param report the report to fill, <code>null</code> to collect no statistics
+   * @return this to allow chaining
+   */
+  public SheetLoader setReport(final LoadReport report) {
+    this.report = report;
+    return this;
+  }
+
+  /** @return the directory large objects may be read from by file references, <code>null</code> if not allowed */
+  public File getLobDirectory() {
+    return lobDirectory;
+  }
+
+  /**
+   * Allow cells of CLOB and BLOB columns to reference files with the prefix <code>file:</code>.
+   *
+   * The references must be relative to the given directory and must not leave it, other references are reported as
+   * violations. Without a directory every file reference is a violation, so a sheet cannot read arbitrary files.
+   *
+   * @param lobDirectory the directory that contains the referenced files, <code>null</code> to reject all references
+   * @return this to allow chaining
+   */
+  public SheetLoader setLobDirectory(final File lobDirectory) {
+    this.lobDirectory = lobDirectory;
+    return this;
+  }
+
+  /**
+   * Count a lookup of the meta data of a table in the report.
+   *
+   * @param hit true if the meta data was kept by the sheet, false if it is queried from the database
+   */
+  private void addMetadata(final boolean hit) {
+    LoadReport statistics = report;
+    if (statistics != null) statistics.addMetadata(hit);
+  }
+
+  /** @return true if digests of the loaded values are taken to verify the tables afterwards */
+  public boolean isDigest() {
+    return digests != null;
+  }
+
+  /**
+   * Define whether digests of the loaded values shall be taken, e.g. to verify the tables by a {@link LoadVerifier}.
+   *
+   * @param digest true to take digests of all rows and values sent to the database
+   * @return this to allow chaining
+   */
+  public SheetLoader setDigest(final boolean digest) {
+    if (!digest) {
+      digests = null;
+    } else if (digests == null) {
+      digests = new LinkedHashMap<String, TableDigest>();
+    }
+    return this;
+  }
+
+  /** @return the digests of all tables loaded so far, empty if no digests are taken */
+  public List<TableDigest> getDigests() {
+    if (digests == null) return Collections.emptyList();
+    synchronized (digests) {
+      return new ArrayList<TableDigest>(digests.values());
+    }
+  }
+
+  /**
+   * Merge the digest of a single execution into the digest of the table.
+   *
+   * @param digest the digest of the rows just loaded, never null
+   */
+  private void addDigest(final TableDigest digest) {
+    Map<String, TableDigest> all = digests;
+    if (all == null) return;
+    synchronized (all) {
+      String name = digest.getTable().toUpperCase();
+      TableDigest table = all.get(name);
+      if (table == null) {
+        all.put(name, digest);
+      } else {
+        table.add(digest);
+      }
+    }
+  }
+
+  /**
+   * Provide the values of the given sheet.
+   *
+   * @param sheet the data set to load into the database, never null
+   * @return the values of the sheet, either the columnar copy or the table of the sheet itself
+   */
+  protected RowSource getRows(final Sheet sheet) {
+    if (!isColumnar()) return new TableRowSource(sheet);
+
+    synchronized (sources) {
+      RowSource rows = sources.get(sheet);
+      if (rows == null) {
+        rows = ColumnarSource.of(sheet);
+        sources.put(sheet, rows);
+        if (LOG.isDebugEnabled()) LOG.debug("Columnar copy of sheet " + defaultName(sheet) + "keeps " + rows);
+      }
+      return rows;
+    }
+  }
+
+  /**
+   * Forget the columnar copy of the given sheet, so its values can be collected before the whole book is loaded.
+   *
+   * @param sheet the sheet that is completely loaded
+   */
+  public void release(final Sheet sheet) {
+    synchronized (sources) {
+      sources.remove(sheet);
+    }
+  }
+
   /**
    * Load the given sheet into the given database, either insert or update the data.
    *
@@ -82,9 +284,19 @@ public class SheetLoader
    * @return the quoted name of the sheet or the empty string if it has no name
    */
   private String defaultName(final Sheet sheet) {
+    return defaultName(sheet == null ? null : sheet.getName());
+  }
+
+  /**
+   * Determine the name of a table for debug messages
+   *
+   * @param name the name of the table, can be <code>null</code>
+   * @return the quoted name or the empty string if there is no name
+   */
+  private String defaultName(final String name) {
     StringBuilder text = new StringBuilder();
-    if (sheet != null && StringUtils.isNotBlank(sheet.getName())) {
-      text.append("\"").append(sheet.getName()).append("\" ");
+    if (StringUtils.isNotBlank(name)) {
+      text.append("\"").append(name).append("\" ");
     }
 
     return text.toString();
@@ -102,6 +314,7 @@ public class SheetLoader
   {
     if (StringUtils.isBlank(sheet.getName())) return;
 
+    addMetadata(sheet.getDataProvider() != null);
     if (sheet.getDataProvider() == null) {
       ColumnDataProvider dataProvider = new ColumnDataProvider();
       dataProvider.setMetaColumns(MetaTable.getMetaData(getDataSource(), sheet.getName()));
@@ -112,13 +325,7 @@ public class SheetLoader
 
     Message errors = sheet.getDataProvider().validateTable();
     if (errors.isEmpty()) {
-      if (update) {
-        // update all mandatory data with non-mandatory table data
-        // TODO : DO SOMETHING TO UPDATE DATA
-      } else {
-        // load mandatory table data
-        // TODO : DO SOMETHING TO LOAD DATA
-      }
+      loadRows(sheet.getName(), getRows(sheet), getMetaColumns(sheet), update);
     } else {
       StringBuffer log = new StringBuffer("Cannot load sheet ").append(defaultName(sheet));
       log.append(" due to the following errors: ").append(errors.getText());
@@ -126,6 +333,606 @@ public class SheetLoader
     }
   }
 
+  /**
+   * Load the rows of the given source into the given table, inserts the mandatory fields only.
+   *
+   * In contrast to {@link #load(Sheet)} the rows do not need to be read into a sheet, so they can be read straight
+   * from a file, e.g. by a {@link MappedCsvSource}.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load, the column names must match the table columns
+   * @throws SQLException if load cannot be performed
+   */
+  public void load(final String table, final RowSource rows)
+    throws SQLException
+  {
+    loadSource(table, rows, false);
+  }
+
+  /**
+   * Update the given table from the rows of the given source, updates all non-mandatory fields.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load, the column names must match the table columns
+   * @throws SQLException if load cannot be performed
+   */
+  public void update(final String table, final RowSource rows)
+    throws SQLException
+  {
+    loadSource(table, rows, true);
+  }
+
+  /**
+   * Load the rows of a large CSV file into the given table chunk by chunk, inserts the mandatory fields only.
+   *
+   * The file is split and tokenized in parallel by the reader while the chunks are converted and loaded one after the
+   * other, violations are reported with the row numbers of the whole file. Rows of tables with mandatory
+   * self-references are ordered within each chunk only, so parents must not follow their children by more than a
+   * chunk.
+   *
+   * @param table the name of the database table, never null
+   * @param reader the reader of the CSV file, the column names must match the table columns
+   * @throws SQLException if load cannot be performed
+   * @throws IOException if the file cannot be read
+   */
+  public void load(final String table, final ParallelCsvReader reader)
+    throws SQLException, IOException
+  {
+    loadChunks(table, reader, false);
+  }
+
+  /**
+   * Update the given table from the rows of a large CSV file chunk by chunk, updates all non-mandatory fields.
+   *
+   * @param table the name of the database table, never null
+   * @param reader the reader of the CSV file, the column names must match the table columns
+   * @throws SQLException if load cannot be performed
+   * @throws IOException if the file cannot be read
+   */
+  public void update(final String table, final ParallelCsvReader reader)
+    throws SQLException, IOException
+  {
+    loadChunks(table, reader, true);
+  }
+
+  /**
+   * Validate the columns of the given source and load its rows.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load
+   * @param update true if the non-mandatory fields shall be updated, false to load mandatory fields only
+   * @throws SQLException if load cannot be performed
+   */
+  private void loadSource(final String table, final RowSource rows, final boolean update)
+    throws SQLException
+  {
+    List<MetaColumn> meta = validate(table, rows.getColumns());
+    if (meta != null) loadRows(table, rows, meta, update);
+  }
+
+  /**
+   * Validate the columns of the given file once and load its chunks.
+   *
+   * @param table the name of the database table, never null
+   * @param reader the reader of the CSV file
+   * @param update true if the non-mandatory fields shall be updated, false to load mandatory fields only
+   * @throws SQLException if load cannot be performed
+   * @throws IOException if the file cannot be read
+   */
+  private void loadChunks(final String table, final ParallelCsvReader reader, final boolean update)
+    throws SQLException, IOException
+  {
+    final List<MetaColumn> meta = validate(table, reader.getColumns());
+    if (meta == null) return;
+
+    reader.read(new ChunkHandler() {
+      @Override
+      public void handle(final CsvChunk chunk)
+        throws SQLException
+      {
+        loadRows(table, chunk, meta, update);
+      }
+    });
+  }
+
+  /**
+   * Validate the given column names against the table.
+   *
+   * @param table the name of the database table, never null
+   * @param columns the column names of the rows to load
+   * @return the meta data of all columns of the table, <code>null</code> if the rows cannot be loaded
+   * @throws SQLException if the meta data cannot be retrieved
+   */
+  private List<MetaColumn> validate(final String table, final List<String> columns)
+    throws SQLException
+  {
+    if (getDataSource() == null) {
+      StringBuilder log = new StringBuilder("Cannot import table ").append(defaultName(table));
+      log.append("as no database connection can be established.");
+      LOG.error(log.toString());
+      return null;
+    }
+
+    addMetadata(false);
+    ColumnDataProvider dataProvider = new ColumnDataProvider();
+    dataProvider.setMetaColumns(MetaTable.getMetaData(getDataSource(), table));
+    dataProvider.setTable(table);
+    dataProvider.setHeaders(columns.toArray(new String[0]));
+
+    Message errors = dataProvider.validateTable();
+    if (errors.isEmpty()) return dataProvider.getMetaColumns();
+
+    StringBuffer log = new StringBuffer("Cannot load table ").append(defaultName(table));
+    log.append(" due to the following errors: ").append(errors.getText());
+    LOG.error(log.toString());
+    return null;
+  }
+
+  /**
+   * Load the given rows into the given table, either insert or update the data.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load
+   * @param meta the meta data of all columns of the table
+   * @param update true if the non-mandatory fields shall be updated, false to load mandatory fields only
+   * @throws SQLException if load cannot be performed
+   */
+  protected void loadRows(final String table, final RowSource rows, final List<MetaColumn> meta,
+                          final boolean update)
+    throws SQLException
+  {
+    List<MetaColumn> present = new ArrayList<MetaColumn>();
+    List<MetaColumn> keys = new ArrayList<MetaColumn>();
+    for (MetaColumn column : meta) {
+      if (contains(rows.getColumns(), column.getName())) {
+        present.add(column);
+        if (column.isPrimary()) keys.add(column);
+      }
+    }
+
+    for (MetaColumn column : present) {
+      if (column.isClob() || column.isBlob()) column.setLobDirectory(getLobDirectory());
+    }
+
+    List<MetaColumn> columns = new ArrayList<MetaColumn>();
+    String sql;
+    if (update) {
+      // update all mandatory data with non-mandatory table data, requires a primary key to find the rows
+      for (MetaColumn column : present) {
+        if (column.isNullable() && !column.isPrimary()) columns.add(column);
+      }
+      if (keys.isEmpty() || columns.isEmpty()) return;
+      sql = SheetSqlFactory.update(table, columns, keys);
+      columns.addAll(keys);
+    } else {
+      // load mandatory table data, everything at once if the rows cannot be updated later on
+      for (MetaColumn column : present) {
+        if (keys.isEmpty() || column.isNotNullable() || column.isPrimary()) columns.add(column);
+      }
+      if (columns.isEmpty()) return;
+      sql = SheetSqlFactory.insert(table, columns);
+
+      List<List<int[]>> references = getSelfReferences(table, rows, columns);
+      if (!references.isEmpty()) {
+        loadHierarchy(table, rows, sql, columns, references.get(0), references.get(1));
+        return;
+      }
+    }
+
+    execute(table, rows, sql, columns, update);
+  }
+
+  /**
+   * Find the mandatory foreign key constraints of a table that reference the table itself.
+   *
+   * Constraints with a nullable column need no ordering, as they are loaded in the update pass when all rows exist.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load
+   * @param columns the columns that are inserted
+   * @return the column indices of the referenced keys and of the referencing columns per constraint, empty if there
+   *         are none
+   * @throws SQLException if the meta data cannot be retrieved
+   */
+  private List<List<int[]>> getSelfReferences(final String table, final RowSource rows,
+                                              final List<MetaColumn> columns)
+    throws SQLException
+  {
+    List<int[]> keys = new ArrayList<int[]>();
+    List<int[]> parents = new ArrayList<int[]>();
+    for (ForeignKey foreign : MetaTable.foreignKeys(getDataSource(), table)) {
+      if (!table.equalsIgnoreCase(foreign.getTable())) continue;
+
+      int size = foreign.getColumns().size();
+      int[] keyIndices = new int[size];
+      int[] parentIndices = new int[size];
+      boolean mandatory = true;
+      for (int position = 0; position < size; ++position) {
+        MetaColumn column = find(columns, foreign.getColumns().get(position));
+        parentIndices[position] = indexOf(rows.getColumns(), foreign.getColumns().get(position));
+        keyIndices[position] = indexOf(rows.getColumns(), foreign.getKeys().get(position));
+        mandatory &= column != null && column.isNotNullable() && parentIndices[position] >= 0;
+        mandatory &= keyIndices[position] >= 0;
+      }
+      if (!mandatory) continue;
+      keys.add(keyIndices);
+      parents.add(parentIndices);
+    }
+    if (keys.isEmpty()) return Collections.emptyList();
+    return Arrays.asList(keys, parents);
+  }
+
+  /**
+   * Find the meta data of a column by its name.
+   *
+   * @param columns the meta data of the columns
+   * @param name the name of the column to find
+   * @return the meta data of the column, <code>null</code> if it is not part of the columns
+   */
+  private static MetaColumn find(final List<MetaColumn> columns, final String name) {
+    for (MetaColumn column : columns) {
+      if (column.getName().equalsIgnoreCase(name)) return column;
+    }
+    return null;
+  }
+
+  /**
+   * Insert the rows of a table with mandatory self-references level by level, parents before their children.
+   *
+   * Rows read from a file are copied into columnar storage first, as the levels access the rows in random order.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load
+   * @param sql the insert statement
+   * @param columns the columns that are inserted in the sequence of the statement parameters
+   * @param keys the column indices of the referenced keys of every constraint
+   * @param parents the column indices of the referencing columns of every constraint in the sequence of the keys
+   * @throws SQLException if load cannot be performed
+   */
+  private void loadHierarchy(final String table, final RowSource rows, final String sql,
+                             final List<MetaColumn> columns, final List<int[]> keys, final List<int[]> parents)
+    throws SQLException
+  {
+    RowSource source = rows instanceof MappedCsvSource ? ColumnarSource.of(rows) : rows;
+    MetaColumn[] meta = new MetaColumn[source.getColumns().size()];
+    for (MetaColumn column : columns) {
+      int index = indexOf(source.getColumns(), column.getName());
+      if (index >= 0) meta[index] = column;
+    }
+    HierarchySorter sorter = new HierarchySorter(source, keys, parents, meta);
+    List<int[]> levels = sorter.getLevels();
+
+    if (LOG.isInfoEnabled()) {
+      StringBuilder log = new StringBuilder("Table ").append(defaultName(table));
+      log.append("references itself, loading ").append(source.size()).append(" rows in ");
+      log.append(levels.size()).append(" levels.");
+      LOG.info(log.toString());
+    }
+    if (sorter.getUnresolved() > 0 && LOG.isWarnEnabled()) {
+      StringBuilder log = new StringBuilder("Table ").append(defaultName(table));
+      log.append("contains ").append(sorter.getUnresolved()).append(" rows that reference each other in a cycle.");
+      LOG.warn(log.toString());
+    }
+
+    for (int[] level : levels) {
+      execute(table, new RowSelection(source, level), sql, columns, false);
+    }
+  }
+
+  /**
+   * Find the index of a column by its name.
+   *
+   * @param names the column names of the rows to load
+   * @param name the name of the column to find
+   * @return the index of the column, -1 if it is not part of the rows
+   */
+  private static int indexOf(final List<String> names, final String name) {
+    for (int index = 0; index < names.size(); ++index) {
+      String column = names.get(index);
+      if (column != null && column.trim().equalsIgnoreCase(name)) return index;
+    }
+    return -1;
+  }
+
+  /**
+   * Retrieve the meta data of the table that corresponds to the given sheet.
+   *
+   * @param sheet the data set to load into the database, never null
+   * @return the meta data of all columns of the table
+   * @throws SQLException if the meta data cannot be retrieved
+   */
+  private List<MetaColumn> getMetaColumns(final Sheet sheet)
+    throws SQLException
+  {
+    if (sheet.getDataProvider() instanceof ColumnDataProvider) {
+      return ((ColumnDataProvider) sheet.getDataProvider()).getMetaColumns();
+    }
+    addMetadata(false);
+    return MetaTable.getMetaData(getDataSource(), sheet.getName());
+  }
+
+  /**
+   * Checks whether the given column names contain the given name ignoring the case.
+   *
+   * @param names the column names of the sheet
+   * @param name the column name to look for
+   * @return true if the sheet contains this column
+   */
+  private static boolean contains(final List<String> names, final String name) {
+    for (String column : names) {
+      if (column != null && column.trim().equalsIgnoreCase(name)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Execute the given statement for all rows of the sheet in batches of one converted chunk each.
+   *
+   * Rows that lost a mandatory or key value during conversion are skipped, all violations are logged once the sheet
+   * is done. With a retry policy every batch is committed on its own and a batch that failed due to a lock conflict is
+   * sent again in the order of its primary key.
+   *
+   * @param table the name of the database table, never null
+   * @param rows the rows to load
+   * @param sql the insert or update statement
+   * @param columns the columns in the order of the statement parameters
+   * @param update true if the statement updates rows by their primary key, false if it inserts rows
+   * @return the number of rows sent to the database
+   * @throws SQLException if the statement fails
+   */
+  protected int execute(final String table, final RowSource rows, final String sql, final List<MetaColumn> columns,
+                        final boolean update)
+    throws SQLException
+  {
+    ChunkConverter converter = new ChunkConverter(rows, columns).setExecutor(getExecutor());
+    RowChunk chunk = converter.createChunk();
+
+    // an update binds the primary key last, which was digested by the insert already
+    TableDigest digest = isDigest() ? new TableDigest(table) : null;
+    ColumnDigest[] digested = new ColumnDigest[digest == null ? 0 : columns.size()];
+    for (int index = 0; index < digested.length; ++index) {
+      MetaColumn column = columns.get(index);
+      if (!update || !column.isPrimary()) digested[index] = digest.getColumn(column);
+    }
+
+    int loaded = 0;
+    int rejected = 0;
+    int[] batch = new int[converter.getChunk()];
+    boolean autoCommit = false;
+    boolean open = false;
+    PassReport pass = getReport() == null ? null : getReport().getPass(table, update);
+    long begin = System.nanoTime();
+    if (pass != null) pass.begin();
+    Connection connection = null;
+    PreparedStatement statement = null;
+    try {
+      connection = getDataSource().getConnection();
+      if (getRetryPolicy() != null && connection.getAutoCommit()) {
+        // a batch that failed must not be committed in part
+        autoCommit = true;
+        connection.setAutoCommit(false);
+      }
+      open = true;
+      statement = connection.prepareStatement(sql);
+      for (int first = 0; first < rows.size(); first += converter.getChunk()) {
+        long start = System.nanoTime();
+        converter.convert(chunk, first, converter.getChunk());
+        long converted = System.nanoTime();
+
+        int batched = 0;
+        int skipped = 0;
+        for (int row = 0; row < chunk.size(); ++row) {
+          if (chunk.isRejected(row)) {
+            ++skipped;
+          } else {
+            chunk.bind(statement, row);
+            statement.addBatch();
+            batch[batched++] = row;
+          }
+        }
+
+        long bound = System.nanoTime();
+        if (batched > 0) {
+          int[] counts = executeBatch(connection, statement, chunk, batch, batched, pass);
+          digest(chunk, batch, counts, digested);
+        }
+        loaded += batched;
+        rejected += skipped;
+
+        if (pass != null) {
+          pass.addConversion(converted - start);
+          pass.addBind(bound - converted);
+          if (batched > 0) pass.addBatch(batched, System.nanoTime() - bound);
+          if (skipped > 0) pass.addRejected(skipped);
+        }
+      }
+      if (!connection.getAutoCommit()) connection.commit();
+      open = false;
+    } catch (SQLException ex) {
+      open = false;
+      throw QueryUtils.rollback(connection, ex);
+    } finally {
+      DbUtils.closeQuietly(statement);
+      // the rows sent so far must neither remain nor be committed by switching auto-commit on again
+      if (open) QueryUtils.rollback(connection, null);
+      if (autoCommit) resetAutoCommit(connection);
+      DbUtils.closeQuietly(connection);
+      if (pass != null) pass.end(System.nanoTime() - begin);
+    }
+
+    if (digest != null) {
+      if (!update) digest.count(loaded);
+      addDigest(digest);
+    }
+
+    ViolationLog violations = converter.getViolations();
+    if (!violations.isEmpty() && LOG.isWarnEnabled()) {
+      StringBuilder log = new StringBuilder("Table ").append(defaultName(table));
+      log.append("receives ").append(violations.getCount()).append(" invalid values, ");
+      log.append(rejected).append(" records were skipped: ").append(violations.getMessages().getText());
+      LOG.warn(log.toString());
+    }
+    return loaded;
+  }
+
+  /**
+   * Execute a batch, retry it on a fresh transaction as long as the retry policy allows.
+   *
+   * @param connection the connection of the statement
+   * @param statement the statement with all rows of the batch added
+   * @param chunk the converted rows
+   * @param batch the indices of the rows of the batch within the chunk
+   * @param size the number of rows in the batch
+   * @param pass the statistics of the pass, <code>null</code> if none are collected
+   * @return the update counts of the rows in the sequence of the batch, which is sorted by key after a retry
+   * @throws SQLException if the batch fails and is not retried
+   */
+  private int[] executeBatch(final Connection connection, final PreparedStatement statement, final RowChunk chunk,
+                             final int[] batch, final int size, final PassReport pass)
+    throws SQLException
+  {
+    RetryPolicy retry = getRetryPolicy();
+    for (int attempt = 1;; ++attempt) {
+      try {
+        int[] counts = statement.executeBatch();
+        if (retry != null) commit(connection);
+        return counts;
+      } catch (SQLException ex) {
+        if (retry == null) throw ex;
+
+        // release the locks before waiting, the rows of the batch are gone with the transaction
+        if (!rollback(connection, ex)) throw ex;
+        statement.clearBatch();
+        if (!retry.retry(ex, attempt)) throw ex;
+        if (pass != null) pass.addRetry();
+      }
+
+      // rows locked in the same order by all workers cannot form another cycle
+      if (attempt == 1) sortByKey(chunk, batch, size);
+      for (int index = 0; index < size; ++index) {
+        chunk.bind(statement, batch[index]);
+        statement.addBatch();
+      }
+    }
+  }
+
+  /**
+   * Add the rows of a batch that reached the database to the digests of their columns.
+   *
+   * An update that matches no row, e.g. of a row the insert pass rejected, leaves the table as it was, so its values
+   * must not be expected by the verification.
+   *
+   * @param chunk the converted rows
+   * @param batch the indices of the rows of the batch within the chunk
+   * @param counts the update counts of the rows of the batch
+   * @param digested the digest of every column of the chunk, <code>null</code> for the columns that are not digested
+   */
+  private static void digest(final RowChunk chunk, final int[] batch, final int[] counts,
+                             final ColumnDigest[] digested)
+  {
+    if (digested.length == 0) return;
+    for (int index = 0; index < counts.length; ++index) {
+      if (counts[index] == 0) continue;
+      for (int column = 0; column < digested.length; ++column) {
+        if (digested[column] != null) digested[column].add(chunk.getVector(column), batch[index]);
+      }
+    }
+  }
+
+  /**
+   * Sort the rows of a batch by the values of their primary key columns.
+   *
+   * @param chunk the converted rows
+   * @param batch the indices of the rows of the batch within the chunk, sorted in place
+   * @param size the number of rows in the batch
+   */
+  private static void sortByKey(final RowChunk chunk, final int[] batch, final int size) {
+    final List<ColumnVector> keys = new ArrayList<ColumnVector>();
+    for (int column = 0; column < chunk.getWidth(); ++column) {
+      if (chunk.getVector(column).getMeta().isPrimary()) keys.add(chunk.getVector(column));
+    }
+    if (keys.isEmpty()) return;
+
+    Integer[] rows = new Integer[size];
+    for (int index = 0; index < size; ++index) {
+      rows[index] = batch[index];
+    }
+    Arrays.sort(rows, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer left, final Integer right) {
+        for (ColumnVector key : keys) {
+          int result = compareValues(key.getObject(left), key.getObject(right));
+          if (result != 0) return result;
+        }
+        return left.compareTo(right);
+      }
+    });
+    for (int index = 0; index < size; ++index) {
+      batch[index] = rows[index];
+    }
+  }
+
+  /**
+   * @param left a key value, can be <code>null</code>
+   * @param right another key value, can be <code>null</code>
+   * @return the order of the values, <code>null</code> first
+   */
+  @SuppressWarnings("unchecked")
+  private static int compareValues(final Object left, final Object right) {
+    if (left == null || right == null) return left == null ? (right == null ? 0 : -1) : 1;
+    if (left instanceof Comparable && left.getClass() == right.getClass()) {
+      return ((Comparable<Object>) left).compareTo(right);
+    }
+    return String.valueOf(left).compareTo(String.valueOf(right));
+  }
+
+  /**
+   * Commit the transaction of a batch, by the session if the connection is pinned.
+   *
+   * @param connection the connection of the batch
+   * @throws SQLException if the transaction cannot be committed
+   */
+  private void commit(final Connection connection)
+    throws SQLException
+  {
+    if (getDataSource() instanceof LoadSession) ((LoadSession) getDataSource()).commit();
+    if (!connection.getAutoCommit()) connection.commit();
+  }
+
+  /**
+   * Roll back the transaction of a batch, by the session if the connection is pinned.
+   *
+   * A connection that cannot be rolled back is broken, so its failure is chained to the failure of the batch, which
+   * must not be retried then.
+   *
+   * @param connection the connection of the batch
+   * @param failure the failure of the batch
+   * @return true if the transaction was rolled back, false if the rollback failed
+   */
+  private boolean rollback(final Connection connection, final SQLException failure) {
+    try {
+      if (getDataSource() instanceof LoadSession) ((LoadSession) getDataSource()).rollback();
+      if (!connection.getAutoCommit()) connection.rollback();
+      return true;
+    } catch (SQLException ex) {
+      failure.setNextException(ex);
+      return false;
+    }
+  }
+
+  /**
+   * Switch auto-commit on again after the statement was executed with a retry policy.
+   *
+   * @param connection the connection to reset, can be <code>null</code>
+   */
+  private static void resetAutoCommit(final Connection connection) {
+    try {
+      if (connection != null) connection.setAutoCommit(true);
+    } catch (SQLException ex) {
+      LOG.debug("Cannot reset auto-commit: " + ex.getMessage());
+    }
+  }
+
   /**
    * Update the given database from the given sheet, update all data.
    *
@@ -153,7 +960,11 @@ public class SheetLoader
     }
 
     // everything else is logging, now really update the data
-    loadSheet(sheet, true);
+    try {
+      loadSheet(sheet, true);
+    } finally {
+      release(sheet);
+    }
 
     if (LOG.isInfoEnabled()) {
       StringBuilder log = new StringBuilder("Updated from sheet ").append(defaultName(sheet));
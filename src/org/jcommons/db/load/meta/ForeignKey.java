@@ -0,0 +1,82 @@
+package org.jcommons.db.load.meta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single foreign key constraint of a table with its columns in key sequence.
+ */
+public class ForeignKey
+{
+  private final String name;
+  private final String table;
+  private final List<String> columns = new ArrayList<String>();
+  private final List<String> keys = new ArrayList<String>();
+  private final List<Integer> sequence = new ArrayList<Integer>();
+
+  /**
+   * Create a foreign key without columns.
+   *
+   * @param name the name of the constraint, can be <code>null</code> if the database does not name it
+   * @param table the name of the referenced table, never null
+   */
+  public ForeignKey(final String name, final String table) {
+    this.name = name;
+    this.table = table;
+  }
+
+  /** @return the name of the constraint, can be <code>null</code> */
+  public String getName() {
+    return name;
+  }
+
+  /** @return the name of the referenced table */
+  public String getTable() {
+    return table;
+  }
+
+  /** @return the referencing columns in key sequence */
+  public List<String> getColumns() {
+    return Collections.unmodifiableList(columns);
+  }
+
+  /** @return the referenced key columns in the sequence of the referencing columns */
+  public List<String> getKeys() {
+    return Collections.unmodifiableList(keys);
+  }
+
+  /**
+   * Add a column pair at its position within the key.
+   *
+   * @param position the position of the column within the key starting with 1
+   * @param column the referencing column
+   * @param key the referenced key column
+   */
+  void add(final int position, final String column, final String key) {
+    int index = sequence.size();
+    while (index > 0 && sequence.get(index - 1) > position) {
+      --index;
+    }
+    sequence.add(index, position);
+    columns.add(index, column);
+    keys.add(index, key);
+  }
+
+  /**
+   * @param column the name of a column
+   * @return true if the column is part of this foreign key ignoring the case
+   */
+  public boolean contains(final String column) {
+    for (String name : columns) {
+      if (name.equalsIgnoreCase(column)) return true;
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return (name == null ? "" : name + " ") + columns + " references " + table + " " + keys;
+  }
+}
@@ -60,6 +60,7 @@ class MetaColumnHandler
       column.setFraction(meta.getScale(i));
       column.setNullable(ResultSetMetaData.columnNullable == meta.isNullable(i));
       column.setType(meta.getColumnClassName(i));
+      column.setSqlType(meta.getColumnType(i));
 
       if (primaryKeys.contains(column.getName())) {
         column.setPrimary(true);
@@ -67,16 +67,17 @@ public final class MetaTable
   {
     List<String> keys = new LinkedList<String>();
     Connection connection = null;
+    ResultSet primaries = null;
     try {
       connection = dataSource.getConnection();
       DatabaseMetaData meta = connection.getMetaData();
-      ResultSet primaries = meta.getPrimaryKeys(null, null, StringUtils.upperCase(tableName));
+      primaries = meta.getPrimaryKeys(null, null, StringUtils.upperCase(tableName));
 
       while (primaries.next()) {
         keys.add(primaries.getString("COLUMN_NAME"));
       }
     } finally {
-      DbUtils.closeQuietly(connection);
+      DbUtils.closeQuietly(connection, null, primaries);
     }
 
     return keys;
@@ -95,21 +96,70 @@ public final class MetaTable
   {
     Set<String> tables = new HashSet<String>();
     Connection connection = null;
+    ResultSet foreigns = null;
     try {
       connection = dataSource.getConnection();
       DatabaseMetaData meta = connection.getMetaData();
-      ResultSet foreigns = meta.getImportedKeys(null, null, StringUtils.upperCase(tableName));
+      foreigns = meta.getImportedKeys(null, null, StringUtils.upperCase(tableName));
 
       while (foreigns.next()) {
         tables.add(foreigns.getString("PKTABLE_NAME"));
       }
     } finally {
-      DbUtils.closeQuietly(connection);
+      DbUtils.closeQuietly(connection, null, foreigns);
     }
 
     return tables;
   }
 
+  /**
+   * Lists the foreign keys of the given table, every constraint with its columns in key sequence.
+   *
+   * @param dataSource the database connection to use
+   * @param tableName the table for which we want to know the foreign keys
+   * @return the foreign keys of the table, can be empty but never <code>null</code>
+   * @throws SQLException if the database cannot be accessed or the driver does not support this feature
+   */
+  public static List<ForeignKey> foreignKeys(final DataSource dataSource, final String tableName)
+    throws SQLException
+  {
+    List<ForeignKey> keys = new ArrayList<ForeignKey>();
+    Map<String, ForeignKey> named = new HashMap<String, ForeignKey>();
+    ForeignKey current = null;
+    Connection connection = null;
+    ResultSet foreigns = null;
+    try {
+      connection = dataSource.getConnection();
+      DatabaseMetaData meta = connection.getMetaData();
+      foreigns = meta.getImportedKeys(null, null, StringUtils.upperCase(tableName));
+      while (foreigns.next()) {
+        String name = foreigns.getString("FK_NAME");
+        String table = foreigns.getString("PKTABLE_NAME");
+        int position = foreigns.getInt("KEY_SEQ");
+
+        // unnamed constraints are told apart by their key sequence starting again
+        ForeignKey key;
+        if (name != null) {
+          key = named.get(table + "." + name);
+        } else {
+          boolean next = current != null && position > 1 && StringUtils.equals(current.getTable(), table);
+          key = next ? current : null;
+        }
+        if (key == null) {
+          key = new ForeignKey(name, table);
+          keys.add(key);
+          if (name != null) named.put(table + "." + name, key);
+        }
+        key.add(position, foreigns.getString("FKCOLUMN_NAME"), foreigns.getString("PKCOLUMN_NAME"));
+        current = key;
+      }
+    } finally {
+      DbUtils.closeQuietly(connection, null, foreigns);
+    }
+
+    return keys;
+  }
+
   /**
    * Determines all tables that the given table depends upon and requires data for.
    *
@@ -124,10 +174,11 @@ public final class MetaTable
     List<MetaColumn> columns = getMetaData(dataSource, tableName);
     Set<String> tables = new HashSet<String>();
     Connection connection = null;
+    ResultSet foreigns = null;
     try {
       connection = dataSource.getConnection();
       DatabaseMetaData meta = connection.getMetaData();
-      ResultSet foreigns = meta.getImportedKeys(null, null, StringUtils.upperCase(tableName));
+      foreigns = meta.getImportedKeys(null, null, StringUtils.upperCase(tableName));
       while (foreigns.next()) {
         String foreignKey = foreigns.getString("FKCOLUMN_NAME");
         MetaColumn foreignColumn = MetaColumnUtils.findByColumnName(foreignKey, columns);
@@ -137,9 +188,38 @@ public final class MetaTable
         }
       }
     } finally {
-      DbUtils.closeQuietly(connection);
+      DbUtils.closeQuietly(connection, null, foreigns);
     }
 
     return tables;
   }
+
+  /**
+   * Count the indexes of the given table including the primary key and unique constraints.
+   *
+   * @param dataSource the database connection to use
+   * @param tableName the table for which we want to know the number of indexes
+   * @return the number of indexes maintained for every inserted row
+   * @throws SQLException if the database cannot be accessed or the driver does not support this feature
+   */
+  public static int indexCount(final DataSource dataSource, final String tableName)
+    throws SQLException
+  {
+    Set<String> indexes = new HashSet<String>();
+    Connection connection = null;
+    ResultSet infos = null;
+    try {
+      connection = dataSource.getConnection();
+      DatabaseMetaData meta = connection.getMetaData();
+      infos = meta.getIndexInfo(null, null, StringUtils.upperCase(tableName), false, true);
+      while (infos.next()) {
+        String name = infos.getString("INDEX_NAME");
+        if (name != null && infos.getShort("TYPE") != DatabaseMetaData.tableIndexStatistic) indexes.add(name);
+      }
+    } finally {
+      DbUtils.closeQuietly(connection, null, infos);
+    }
+
+    return indexes.size();
+  }
 }
@@ -0,0 +1,116 @@
+package org.jcommons.db.load.report;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets of powers of two microseconds, may be recorded by many threads at the same time.
+ *
+ * Bucket 0 counts all latencies below one microsecond, bucket <code>n</code> all latencies of at least
+ * <code>2^(n-1)</code> and below <code>2^n</code> microseconds. Percentiles are therefore estimated by the upper bound
+ * of their bucket, which is precise enough to tell a slow batch from a fast one.
+ */
+public class LatencyHistogram
+{
+  /** the number of buckets, the last one counts all latencies above 2^38 microseconds */
+  public static final int BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Count a latency.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(final long nanos) {
+    long micros = Math.max(0L, nanos) / 1000L;
+    int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    total.addAndGet(Math.max(0L, nanos));
+    for (long current = max.get(); nanos > current; current = max.get()) {
+      if (max.compareAndSet(current, nanos)) break;
+    }
+  }
+
+  /**
+   * Add all latencies of another histogram.
+   *
+   * @param other the histogram to add, never null
+   */
+  public void add(final LatencyHistogram other) {
+    for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+      buckets.addAndGet(bucket, other.buckets.get(bucket));
+    }
+    count.addAndGet(other.getCount());
+    total.addAndGet(other.getTotal());
+    for (long current = max.get(); other.getMax() > current; current = max.get()) {
+      if (max.compareAndSet(current, other.getMax())) break;
+    }
+  }
+
+  /** @return the number of latencies counted */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** @return the sum of all latencies in nanoseconds */
+  public long getTotal() {
+    return total.get();
+  }
+
+  /** @return the largest latency in nanoseconds */
+  public long getMax() {
+    return max.get();
+  }
+
+  /** @return the average latency in microseconds, 0 if nothing was counted */
+  public long getMean() {
+    long counted = getCount();
+    return counted == 0 ? 0L : getTotal() / counted / 1000L;
+  }
+
+  /** @return a copy of the counts of all buckets */
+  public long[] getBuckets() {
+    long[] copy = new long[BUCKETS];
+    for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+      copy[bucket] = buckets.get(bucket);
+    }
+    return copy;
+  }
+
+  /**
+   * Estimate a percentile of the latencies.
+   *
+   * @param percent the percentage of latencies that are below the result, e.g. 99
+   * @return the upper bound of the bucket of the percentile in microseconds, 0 if nothing was counted
+   */
+  public long getPercentile(final double percent) {
+    long[] copy = getBuckets();
+    long counted = 0L;
+    for (long bucket : copy) {
+      counted += bucket;
+    }
+    if (counted == 0L) return 0L;
+
+    long rank = (long) Math.ceil(counted * Math.min(100.0, Math.max(0.0, percent)) / 100.0);
+    long seen = 0L;
+    for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+      seen += copy[bucket];
+      if (seen >= Math.max(1L, rank)) return 1L << bucket;
+    }
+    return 1L << (BUCKETS - 1);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    text.append(getCount()).append(" batches, mean ").append(getMean()).append(" us, p50 ");
+    text.append(getPercentile(50)).append(" us, p99 ").append(getPercentile(99)).append(" us, max ");
+    return text.append(getMax() / 1000L).append(" us").toString();
+  }
+}
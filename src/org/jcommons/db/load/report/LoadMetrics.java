@@ -0,0 +1,258 @@
+package org.jcommons.db.load.report;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.*;
+
+/**
+ * Live counters of all loads of a loader, published through JMX once {@link #register(String)} was called.
+ *
+ * The counters are updated by the reports of the single books while their sheets are loaded, so a monitoring console
+ * shows the progress and the stage a running load spends its time in.
+ */
+public class LoadMetrics
+  implements LoadMetricsMBean
+{
+  /** the domain of the object names of all registered metrics */
+  public static final String DOMAIN = "org.jcommons.db.load";
+
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong rows = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong conversion = new AtomicLong();
+  private final AtomicLong bind = new AtomicLong();
+  private final AtomicLong metadataHits = new AtomicLong();
+  private final AtomicLong metadataMisses = new AtomicLong();
+  private final Map<String, Integer> active = new TreeMap<String, Integer>();
+  private volatile LatencyHistogram batches = new LatencyHistogram();
+  private volatile String lastReport = "";
+  private ObjectName objectName;
+
+  /**
+   * Publish the metrics in the platform MBean server.
+   *
+   * @param name the name that distinguishes these metrics from the metrics of other loaders
+   * @return the object name the metrics are registered with
+   * @throws JMException if the metrics cannot be registered, e.g. as the name is used already
+   */
+  public synchronized ObjectName register(final String name)
+    throws JMException
+  {
+    if (objectName != null) unregister();
+    ObjectName object = new ObjectName(DOMAIN + ":type=LoadMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, object);
+    objectName = object;
+    return object;
+  }
+
+  /**
+   * Remove the metrics from the platform MBean server, nothing happens if they are not registered.
+   *
+   * @throws JMException if the metrics cannot be removed
+   */
+  public synchronized void unregister()
+    throws JMException
+  {
+    if (objectName == null) return;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } finally {
+      objectName = null;
+    }
+  }
+
+  /** @return the object name the metrics are registered with, <code>null</code> if not registered */
+  public synchronized ObjectName getObjectName() {
+    return objectName;
+  }
+
+  /**
+   * Count a loaded book.
+   *
+   * @param report the report of the book, never null
+   */
+  public void addLoad(final LoadReport report) {
+    loads.incrementAndGet();
+    lastReport = report.getText();
+  }
+
+  /**
+   * Count the time of converting values.
+   *
+   * @param nanos the nanoseconds spent
+   */
+  void addConversion(final long nanos) {
+    conversion.addAndGet(nanos);
+  }
+
+  /**
+   * Count the time of binding values.
+   *
+   * @param nanos the nanoseconds spent
+   */
+  void addBind(final long nanos) {
+    bind.addAndGet(nanos);
+  }
+
+  /**
+   * Count an executed batch.
+   *
+   * @param size the number of rows in the batch
+   * @param nanos the nanoseconds spent
+   */
+  void addBatch(final int size, final long nanos) {
+    rows.addAndGet(size);
+    batches.record(nanos);
+  }
+
+  /**
+   * Count rows that were skipped.
+   *
+   * @param count the number of rejected rows
+   */
+  void addRejected(final int count) {
+    rejected.addAndGet(count);
+  }
+
+  /** count a batch that is sent again */
+  void addRetry() {
+    retries.incrementAndGet();
+  }
+
+  /**
+   * Count a lookup of meta data.
+   *
+   * @param hit true if the meta data was kept, false if it was queried
+   */
+  void addMetadata(final boolean hit) {
+    (hit ? metadataHits : metadataMisses).incrementAndGet();
+  }
+
+  /**
+   * Mark a pass as active.
+   *
+   * @param pass the name of the pass
+   */
+  void begin(final String pass) {
+    synchronized (active) {
+      Integer count = active.get(pass);
+      active.put(pass, count == null ? 1 : count + 1);
+    }
+  }
+
+  /**
+   * Mark a pass as no longer active, once all its parts ended.
+   *
+   * @param pass the name of the pass
+   */
+  void end(final String pass) {
+    synchronized (active) {
+      Integer count = active.get(pass);
+      if (count == null || count <= 1) {
+        active.remove(pass);
+      } else {
+        active.put(pass, count - 1);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getLoads() {
+    return loads.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String[] getActivePasses() {
+    synchronized (active) {
+      return active.keySet().toArray(new String[active.size()]);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getRows() {
+    return rows.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getBatches() {
+    return batches.getCount();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getConversionTime() {
+    return conversion.get() / 1000000L;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getBindTime() {
+    return bind.get() / 1000000L;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getExecuteTime() {
+    return batches.getTotal() / 1000000L;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getBatchLatency50() {
+    return batches.getPercentile(50);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getBatchLatency99() {
+    return batches.getPercentile(99);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getMetadataHits() {
+    return metadataHits.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getMetadataMisses() {
+    return metadataMisses.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getLastReport() {
+    return lastReport;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void reset() {
+    for (AtomicLong counter : Arrays.asList(loads, rows, rejected, retries, conversion, bind, metadataHits,
+        metadataMisses)) {
+      counter.set(0L);
+    }
+    batches = new LatencyHistogram();
+    lastReport = "";
+  }
+}
@@ -0,0 +1,52 @@
+package org.jcommons.db.load.report;
+
+/**
+ * The management interface of {@link LoadMetrics}, all counters are totals since the start or the last reset.
+ */
+public interface LoadMetricsMBean
+{
+  /** @return the number of books loaded so far */
+  long getLoads();
+
+  /** @return the passes currently loading, e.g. "ORDERS (insert)" */
+  String[] getActivePasses();
+
+  /** @return the number of rows sent to the database */
+  long getRows();
+
+  /** @return the number of rows skipped as they lost a mandatory or key value during conversion */
+  long getRejected();
+
+  /** @return the number of executed batches */
+  long getBatches();
+
+  /** @return the number of batches sent again after a lock conflict */
+  long getRetries();
+
+  /** @return the milliseconds spent converting values */
+  long getConversionTime();
+
+  /** @return the milliseconds spent binding values */
+  long getBindTime();
+
+  /** @return the milliseconds spent executing batches */
+  long getExecuteTime();
+
+  /** @return the estimated median latency of a batch in microseconds */
+  long getBatchLatency50();
+
+  /** @return the estimated 99th percentile latency of a batch in microseconds */
+  long getBatchLatency99();
+
+  /** @return the number of meta data lookups answered without the database */
+  long getMetadataHits();
+
+  /** @return the number of meta data lookups that queried the database */
+  long getMetadataMisses();
+
+  /** @return the summary of the last loaded book, empty if none */
+  String getLastReport();
+
+  /** set all counters to zero */
+  void reset();
+}
@@ -0,0 +1,196 @@
+package org.jcommons.db.load.report;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of loading a book, returned by the loader and collected while the sheets are loaded.
+ *
+ * Every table has a {@link PassReport} for its insert and one for its update, once these passes sent rows. The passes
+ * are listed in the sequence they started, {@link #getSlowest()} names the pass that took the longest.
+ *
+ * Loads with a retry policy commit every batch on its own, so after a failed load the rows counted for the batches
+ * before the failure remain in the table.
+ */
+public class LoadReport
+{
+  private final String name;
+  private final LoadMetrics metrics;
+  private final Map<String, PassReport> passes = new LinkedHashMap<String, PassReport>();
+  private final AtomicLong metadataHits = new AtomicLong();
+  private final AtomicLong metadataMisses = new AtomicLong();
+  private long elapsed = 0L;
+
+  /**
+   * Create a report that is not published.
+   *
+   * @param name the name of the book, can be <code>null</code>
+   */
+  public LoadReport(final String name) {
+    this(name, null);
+  }
+
+  /**
+   * Create a report.
+   *
+   * @param name the name of the book, can be <code>null</code>
+   * @param metrics the live metrics that receive all counters as well, <code>null</code> if not published
+   */
+  public LoadReport(final String name, final LoadMetrics metrics) {
+    this.name = name;
+    this.metrics = metrics;
+  }
+
+  /** @return the name of the book */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Provide the statistics of a pass, create them if the pass was not seen so far.
+   *
+   * @param table the name of the table, never null
+   * @param update true for the update pass, false for the insert pass
+   * @return the statistics of the pass, never null
+   */
+  public PassReport getPass(final String table, final boolean update) {
+    String key = key(table, update);
+    synchronized (passes) {
+      PassReport pass = passes.get(key);
+      if (pass == null) {
+        pass = new PassReport(table, update, metrics);
+        passes.put(key, pass);
+      }
+      return pass;
+    }
+  }
+
+  /**
+   * @param table the name of the table
+   * @param update true for the update pass, false for the insert pass
+   * @return the key of the pass ignoring the case of the table name
+   */
+  private static String key(final String table, final boolean update) {
+    return table.toUpperCase() + (update ? "/U" : "/I");
+  }
+
+  /** @return the statistics of all passes in the sequence they started */
+  public List<PassReport> getPasses() {
+    synchronized (passes) {
+      return new ArrayList<PassReport>(passes.values());
+    }
+  }
+
+  /** @return the pass that took the longest, <code>null</code> if nothing was loaded */
+  public PassReport getSlowest() {
+    PassReport slowest = null;
+    for (PassReport pass : getPasses()) {
+      if (slowest == null || pass.getElapsedTime() > slowest.getElapsedTime()) slowest = pass;
+    }
+    return slowest;
+  }
+
+  /**
+   * @param table the name of the table
+   * @return the number of rows inserted into the table
+   */
+  public long getRows(final String table) {
+    synchronized (passes) {
+      PassReport pass = passes.get(key(table, false));
+      return pass == null ? 0L : pass.getRows();
+    }
+  }
+
+  /** @return the number of rows sent to the database by all passes */
+  public long getRows() {
+    long rows = 0L;
+    for (PassReport pass : getPasses()) {
+      rows += pass.getRows();
+    }
+    return rows;
+  }
+
+  /** @return the number of rows skipped by all passes */
+  public long getRejected() {
+    long rejected = 0L;
+    for (PassReport pass : getPasses()) {
+      rejected += pass.getRejected();
+    }
+    return rejected;
+  }
+
+  /** @return the number of batches sent again by all passes */
+  public long getRetries() {
+    long retries = 0L;
+    for (PassReport pass : getPasses()) {
+      retries += pass.getRetries();
+    }
+    return retries;
+  }
+
+  /** @return the latencies of the batches of all passes */
+  public LatencyHistogram getBatches() {
+    LatencyHistogram batches = new LatencyHistogram();
+    for (PassReport pass : getPasses()) {
+      batches.add(pass.getBatches());
+    }
+    return batches;
+  }
+
+  /**
+   * Count a lookup of the meta data of a table.
+   *
+   * @param hit true if the meta data was kept by the sheet, false if it was queried from the database
+   */
+  public void addMetadata(final boolean hit) {
+    (hit ? metadataHits : metadataMisses).incrementAndGet();
+    if (metrics != null) metrics.addMetadata(hit);
+  }
+
+  /** @return the number of meta data lookups answered without the database */
+  public long getMetadataHits() {
+    return metadataHits.get();
+  }
+
+  /** @return the number of meta data lookups that queried the database */
+  public long getMetadataMisses() {
+    return metadataMisses.get();
+  }
+
+  /** @return the milliseconds the whole book took */
+  public synchronized long getElapsedTime() {
+    return elapsed;
+  }
+
+  /**
+   * Define the time the whole book took.
+   *
+   * @param elapsed the elapsed time in milliseconds
+   */
+  public synchronized void setElapsedTime(final long elapsed) {
+    this.elapsed = elapsed;
+  }
+
+  /** @return a summary of the load with one line per pass */
+  public String getText() {
+    StringBuilder text = new StringBuilder("Book");
+    if (name != null) text.append(" \"").append(name).append("\"");
+    text.append(": ").append(getRows()).append(" rows, ").append(getRejected()).append(" rejected, ");
+    text.append(getRetries()).append(" retries within ").append(getElapsedTime()).append(" ms, meta data ");
+    text.append(getMetadataHits()).append(" hits ").append(getMetadataMisses()).append(" misses");
+    for (PassReport pass : getPasses()) {
+      text.append("\n  ").append(pass).append(": ").append(pass.getRows()).append(" rows, ");
+      text.append(pass.getRejected()).append(" rejected, ").append(pass.getThroughput()).append(" rows/s, convert ");
+      text.append(pass.getConversionTime()).append(" ms, bind ").append(pass.getBindTime()).append(" ms, execute ");
+      text.append(pass.getExecuteTime()).append(" ms, ").append(pass.getBatches());
+      if (pass.getRetries() > 0) text.append(", ").append(pass.getRetries()).append(" retries");
+    }
+    return text.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return getText();
+  }
+}
@@ -0,0 +1,163 @@
+package org.jcommons.db.load.report;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a single pass of a table, that is either the insert of its mandatory fields or the update of the
+ * remaining fields.
+ *
+ * Times are summed over all threads that loaded parts of the pass, so the conversion, bind and execute times tell
+ * which stage dominates the pass, while the elapsed time determines the throughput.
+ */
+public class PassReport
+{
+  private final String table;
+  private final boolean update;
+  private final LoadMetrics metrics;
+
+  private final AtomicLong rows = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong conversion = new AtomicLong();
+  private final AtomicLong bind = new AtomicLong();
+  private final AtomicLong elapsed = new AtomicLong();
+  private final LatencyHistogram batches = new LatencyHistogram();
+
+  /**
+   * Create the statistics of a pass.
+   *
+   * @param table the name of the table, never null
+   * @param update true for the update pass, false for the insert pass
+   * @param metrics the live metrics that receive all counters as well, <code>null</code> if not published
+   */
+  public PassReport(final String table, final boolean update, final LoadMetrics metrics) {
+    this.table = table;
+    this.update = update;
+    this.metrics = metrics;
+  }
+
+  /** @return the name of the table */
+  public String getTable() {
+    return table;
+  }
+
+  /** @return true for the update pass, false for the insert pass */
+  public boolean isUpdate() {
+    return update;
+  }
+
+  /** @return the number of rows sent to the database */
+  public long getRows() {
+    return rows.get();
+  }
+
+  /** @return the number of rows skipped as they lost a mandatory or key value during conversion */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  /** @return the number of batches sent again after a lock conflict */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /** @return the milliseconds spent converting the values */
+  public long getConversionTime() {
+    return conversion.get() / 1000000L;
+  }
+
+  /** @return the milliseconds spent binding the values to the statement */
+  public long getBindTime() {
+    return bind.get() / 1000000L;
+  }
+
+  /** @return the milliseconds spent executing batches including retries */
+  public long getExecuteTime() {
+    return batches.getTotal() / 1000000L;
+  }
+
+  /** @return the milliseconds the pass took */
+  public long getElapsedTime() {
+    return elapsed.get() / 1000000L;
+  }
+
+  /** @return the latencies of all executed batches */
+  public LatencyHistogram getBatches() {
+    return batches;
+  }
+
+  /** @return the rows sent to the database per second */
+  public long getThroughput() {
+    long nanos = elapsed.get();
+    return nanos <= 0L ? 0L : (long) (getRows() * 1000000000.0 / nanos);
+  }
+
+  /**
+   * Count the time of converting a chunk.
+   *
+   * @param nanos the nanoseconds spent
+   */
+  public void addConversion(final long nanos) {
+    conversion.addAndGet(nanos);
+    if (metrics != null) metrics.addConversion(nanos);
+  }
+
+  /**
+   * Count the time of binding the rows of a batch.
+   *
+   * @param nanos the nanoseconds spent
+   */
+  public void addBind(final long nanos) {
+    bind.addAndGet(nanos);
+    if (metrics != null) metrics.addBind(nanos);
+  }
+
+  /**
+   * Count an executed batch.
+   *
+   * @param size the number of rows in the batch
+   * @param nanos the nanoseconds spent including all retries
+   */
+  public void addBatch(final int size, final long nanos) {
+    rows.addAndGet(size);
+    batches.record(nanos);
+    if (metrics != null) metrics.addBatch(size, nanos);
+  }
+
+  /**
+   * Count rows that were skipped.
+   *
+   * @param count the number of rejected rows
+   */
+  public void addRejected(final int count) {
+    rejected.addAndGet(count);
+    if (metrics != null) metrics.addRejected(count);
+  }
+
+  /** count a batch that is sent again */
+  public void addRetry() {
+    retries.incrementAndGet();
+    if (metrics != null) metrics.addRetry();
+  }
+
+  /** mark the start of loading a part of the pass */
+  public void begin() {
+    if (metrics != null) metrics.begin(toString());
+  }
+
+  /**
+   * Mark the end of loading a part of the pass.
+   *
+   * @param nanos the nanoseconds the part took
+   */
+  public void end(final long nanos) {
+    elapsed.addAndGet(nanos);
+    if (metrics != null) metrics.end(toString());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return table + (update ? " (update)" : " (insert)");
+  }
+}
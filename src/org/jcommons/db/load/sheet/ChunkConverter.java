@@ -0,0 +1,328 @@
+package org.jcommons.db.load.sheet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.MetaType;
+import org.jcommons.db.column.converter.*;
+import org.jcommons.db.column.validation.Validation;
+import org.jcommons.db.column.validation.Violation;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.jcommons.db.load.source.RowSource;
+
+/**
+ * Converts blocks of rows of a sheet one column at a time into typed column vectors.
+ *
+ * Every column is converted by a single loop that calls the same converter for all rows of the block, so the
+ * converter call site stays monomorphic and the values of one column are processed close together. If an executor is
+ * given the columns of a block are converted in parallel, each column by one task with its own violation log that is
+ * merged once the block is done.
+ *
+ * Text, date and time stamp columns additionally remember the conversion results of repeated raw values, which pays
+ * off for the many dimension like columns with only a few distinct values. Number columns are parsed without
+ * creating objects anyway, so they are not remembered.
+ */
+public class ChunkConverter
+{
+  /** default number of rows converted at once */
+  public static final int CHUNK = 4096;
+
+  private final RowSource source;
+  private final MetaColumn[] columns;
+  private final int[] indices;
+  private final ToPrimitive[] converters;
+  private final ViolationLog[] logs;
+  private final ConversionMemo[] memos;
+  private final ViolationLog violations = new ViolationLog();
+  private final int chunk;
+  private ExecutorService executor;
+
+  /**
+   * Create a converter for the given columns that converts the default number of rows at once.
+   *
+   * @param source the plain values of the sheet, never null
+   * @param columns the meta data of the columns to convert in the order of the statement parameters, never null
+   */
+  public ChunkConverter(final RowSource source, final List<MetaColumn> columns) {
+    this(source, columns, CHUNK);
+  }
+
+  /**
+   * Create a converter for the given columns.
+   *
+   * @param source the plain values of the sheet, never null
+   * @param columns the meta data of the columns to convert in the order of the statement parameters, never null
+   * @param chunk the maximum number of rows converted at once
+   */
+  public ChunkConverter(final RowSource source, final List<MetaColumn> columns, final int chunk) {
+    this.source = source;
+    this.chunk = Math.max(1, chunk);
+    this.columns = columns.toArray(new MetaColumn[columns.size()]);
+    this.indices = new int[this.columns.length];
+    this.converters = new ToPrimitive[this.columns.length];
+    this.logs = new ViolationLog[this.columns.length];
+    this.memos = new ConversionMemo[this.columns.length];
+
+    List<String> names = source.getColumns();
+    for (int column = 0; column < this.columns.length; ++column) {
+      indices[column] = indexOf(names, this.columns[column].getName());
+      converters[column] = ValueFactory.createPrimitive(this.columns[column]);
+      logs[column] = new ViolationLog();
+      if (isMemorable(this.columns[column])) memos[column] = new ConversionMemo();
+    }
+  }
+
+  /**
+   * Checks whether the conversion results of a column are worth to be remembered.
+   *
+   * @param meta the meta column data, never null
+   * @return true for text, date and time stamp columns
+   */
+  private static boolean isMemorable(final MetaColumn meta) {
+    MetaType type = meta.getMetaType();
+    return type == MetaType.STRING || type == MetaType.DATE || type == MetaType.TIMESTAMP;
+  }
+
+  /**
+   * Look up the column index of the given column name ignoring the case.
+   *
+   * @param names the column names of the source
+   * @param name the column name to find
+   * @return the index of the column or -1 if the source does not contain the column
+   */
+  private static int indexOf(final List<String> names, final String name) {
+    for (int index = 0; index < names.size(); ++index) {
+      if (names.get(index) != null && names.get(index).trim().equalsIgnoreCase(name)) return index;
+    }
+    return -1;
+  }
+
+  /** @return the executor that converts the columns in parallel, <code>null</code> if converted sequentially */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Inject the executor that converts the columns of a block in parallel.
+   *
+   * @param executor the executor to use, <code>null</code> to convert all columns in the calling thread
+   * @return this to allow chaining
+   */
+  public ChunkConverter setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /** @return the maximum number of rows converted at once */
+  public int getChunk() {
+    return chunk;
+  }
+
+  /** @return all violations found so far */
+  public ViolationLog getViolations() {
+    return violations;
+  }
+
+  /**
+   * @param column the column index in the order of the statement parameters
+   * @return the primitive converter used for this column or <code>null</code> if converted into objects
+   */
+  public ToPrimitive getConverter(final int column) {
+    return converters[column];
+  }
+
+  /**
+   * @param column the column index in the order of the statement parameters
+   * @return the memo of conversion results of this column or <code>null</code> if the column is not remembered
+   */
+  public ConversionMemo getMemo(final int column) {
+    return memos[column];
+  }
+
+  /** @return an empty chunk that can hold the converted values of one block */
+  public RowChunk createChunk() {
+    List<MetaColumn> list = new ArrayList<MetaColumn>(columns.length);
+    for (MetaColumn meta : columns) {
+      list.add(meta);
+    }
+    return new RowChunk(list, chunk);
+  }
+
+  /**
+   * Convert a block of rows into the given chunk.
+   *
+   * @param target the chunk to receive the converted values, created by {@link #createChunk()}
+   * @param first the index of the first row to convert
+   * @param count the number of rows to convert, at most the chunk size
+   */
+  public void convert(final RowChunk target, final int first, final int count) {
+    int size = Math.max(0, Math.min(count, Math.min(chunk, source.size() - first)));
+    target.reset(first, size);
+    source.prepare(first, first + size);
+
+    if (executor == null || columns.length < 2) {
+      for (int column = 0; column < columns.length; ++column) {
+        convertColumn(column, target);
+      }
+    } else {
+      List<Future<?>> tasks = new ArrayList<Future<?>>(columns.length);
+      for (int column = 0; column < columns.length; ++column) {
+        tasks.add(executor.submit(new ColumnTask(column, target)));
+      }
+      await(tasks);
+    }
+
+    for (ViolationLog log : logs) {
+      if (!log.isEmpty()) {
+        violations.add(log);
+        log.clear();
+      }
+    }
+  }
+
+  /**
+   * Wait until all column tasks are done.
+   *
+   * @param tasks the submitted column tasks
+   */
+  private static void await(final List<Future<?>> tasks) {
+    try {
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException ex) {
+      for (Future<?> task : tasks) {
+        task.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Conversion of columns was interrupted", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+      if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+      throw new IllegalStateException("Conversion of columns failed", ex.getCause());
+    }
+  }
+
+  /**
+   * Convert all values of a single column of the current block.
+   *
+   * @param column the column index in the order of the statement parameters
+   * @param target the chunk to receive the converted values
+   */
+  private void convertColumn(final int column, final RowChunk target) {
+    MetaColumn meta = columns[column];
+    ColumnVector vector = target.getVector(column);
+    ViolationLog log = logs[column];
+    int index = indices[column];
+    int first = target.getFirst();
+    int size = target.size();
+
+    ToPrimitive converter = converters[column];
+    ConversionMemo memo = memos[column];
+    if (converter != null) {
+      PrimitiveValue value = new PrimitiveValue();
+      for (int row = 0; row < size; ++row) {
+        CharSequence text = index < 0 ? null : source.getValue(index, first + row);
+        if (recall(memo, text, vector, row, log.at(source.getRowNumber(first + row)), meta)) continue;
+
+        int status = converter.valueOf(meta, text, 0, text == null ? 0 : text.length(), value);
+        vector.set(row, value);
+        Violation violation = Violation.ofStatus(status, meta);
+        boolean fault = ValueFactory.isFault(status);
+        if (violation != null) log.report(violation, meta, text);
+        if (fault) vector.fault(row);
+        if (text != null && memo != null && memo.isEnabled()) memo.put(text, value.toObject(), violation, fault);
+      }
+    } else {
+      Outcome outcome = new Outcome(log);
+      for (int row = 0; row < size; ++row) {
+        CharSequence text = index < 0 ? null : source.getValue(index, first + row);
+        if (recall(memo, text, vector, row, log.at(source.getRowNumber(first + row)), meta)) continue;
+
+        String plain = text == null ? null : text.toString();
+        outcome.violation = null;
+        Object value = ValueFactory.valueOf(meta, plain, outcome);
+        vector.setObject(row, value);
+        boolean fault = value == null && (meta.isNotNullable() || (plain != null && plain.trim().length() > 0));
+        if (fault) vector.fault(row);
+        if (text != null && memo != null && memo.isEnabled()) memo.put(text, value, outcome.violation, fault);
+      }
+    }
+  }
+
+  /**
+   * Take over the remembered conversion result of a repeated raw value.
+   *
+   * @param memo the memo of the column, can be <code>null</code>
+   * @param text the raw value, can be <code>null</code>
+   * @param vector the vector to receive the converted value
+   * @param row the row index within the chunk
+   * @param log receives the remembered violation
+   * @param meta the meta column data
+   * @return true if the value was remembered, false if it must be converted
+   */
+  private static boolean recall(final ConversionMemo memo, final CharSequence text, final ColumnVector vector,
+                                final int row, final Validation log, final MetaColumn meta)
+  {
+    if (memo == null || text == null) return false;
+
+    int slot = memo.find(text);
+    if (slot < 0) return false;
+
+    vector.setObject(row, memo.getValue(slot));
+    if (memo.isFault(slot)) vector.fault(row);
+    if (memo.getViolation(slot) != null) log.report(memo.getViolation(slot), meta, text);
+    return true;
+  }
+
+  /** forwards the violations of the general conversion and keeps the last one to be remembered */
+  private static class Outcome
+    implements Validation
+  {
+    private final Validation target;
+    private Violation violation;
+
+    /**
+     * Create the forwarding validation.
+     *
+     * @param target receives all violations
+     */
+    Outcome(final Validation target) {
+      this.target = target;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void report(final Violation reason, final MetaColumn meta, final CharSequence value) {
+      violation = reason;
+      target.report(reason, meta, value);
+    }
+  }
+
+  /** converts a single column of the current block */
+  private class ColumnTask
+    implements Runnable
+  {
+    private final int column;
+    private final RowChunk target;
+
+    /**
+     * Create the task.
+     *
+     * @param column the column index in the order of the statement parameters
+     * @param target the chunk to receive the converted values
+     */
+    ColumnTask(final int column, final RowChunk target) {
+      this.column = column;
+      this.target = target;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      convertColumn(column, target);
+    }
+  }
+}
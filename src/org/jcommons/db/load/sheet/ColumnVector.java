@@ -0,0 +1,241 @@
+package org.jcommons.db.load.sheet;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.converter.Bindable;
+import org.jcommons.db.column.converter.PrimitiveValue;
+
+/**
+ * Typed storage for the converted values of one column within a chunk of rows.
+ *
+ * Numbers are kept in primitive arrays, <code>null</code> values and lost values are tracked in bitmaps. The arrays
+ * are allocated on first use of the respective kind of value and are reused for all following chunks.
+ */
+public class ColumnVector
+{
+  private final MetaColumn meta;
+  private final int capacity;
+  private final long[] nulls;
+  private final long[] faults;
+  private final byte[] kinds;
+
+  private long[] longs;
+  private byte[] scales;
+  private double[] doubles;
+  private Object[] objects;
+
+  /**
+   * Create a vector for the given column.
+   *
+   * @param meta the meta column data of the converted values, never null
+   * @param capacity the maximum number of rows in a chunk
+   */
+  public ColumnVector(final MetaColumn meta, final int capacity) {
+    this.meta = meta;
+    this.capacity = capacity;
+    this.nulls = new long[(capacity + 63) >>> 6];
+    this.faults = new long[nulls.length];
+    this.kinds = new byte[capacity];
+  }
+
+  /** @return the meta column data of the converted values */
+  public MetaColumn getMeta() {
+    return meta;
+  }
+
+  /** @return the maximum number of rows in a chunk */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** forget all values of the previous chunk */
+  public void clear() {
+    Arrays.fill(nulls, 0L);
+    Arrays.fill(faults, 0L);
+    if (objects != null) Arrays.fill(objects, null);
+  }
+
+  /**
+   * Store a converted value.
+   *
+   * @param row the row index within the chunk
+   * @param value the converted value, never null
+   */
+  public void set(final int row, final PrimitiveValue value) {
+    int kind = value.getKind();
+    kinds[row] = (byte) kind;
+    switch (kind) {
+      case PrimitiveValue.LONG:
+        longs()[row] = value.getLong();
+        break;
+      case PrimitiveValue.DECIMAL:
+        longs()[row] = value.getLong();
+        scales()[row] = (byte) value.getScale();
+        break;
+      case PrimitiveValue.DOUBLE:
+        doubles()[row] = value.getDouble();
+        break;
+      case PrimitiveValue.OBJECT:
+        objects()[row] = value.toObject();
+        break;
+      default:
+        nulls[row >>> 6] |= 1L << row;
+    }
+  }
+
+  /**
+   * Store a value that was converted into an object.
+   *
+   * @param row the row index within the chunk
+   * @param value the converted value, can be <code>null</code>
+   */
+  public void setObject(final int row, final Object value) {
+    if (value == null) {
+      kinds[row] = PrimitiveValue.NULL;
+      nulls[row >>> 6] |= 1L << row;
+    } else {
+      kinds[row] = PrimitiveValue.OBJECT;
+      objects()[row] = value;
+    }
+  }
+
+  /**
+   * Mark the value of the given row as lost, that is it was given or required but could not be converted.
+   *
+   * @param row the row index within the chunk
+   */
+  public void fault(final int row) {
+    faults[row >>> 6] |= 1L << row;
+  }
+
+  /**
+   * @param row the row index within the chunk
+   * @return true if the value of the given row is <code>null</code>
+   */
+  public boolean isNull(final int row) {
+    return (nulls[row >>> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * @param row the row index within the chunk
+   * @return true if the value of the given row was lost during conversion
+   */
+  public boolean isFault(final int row) {
+    return (faults[row >>> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * @param row the row index within the chunk
+   * @return the kind of the value as defined in {@link PrimitiveValue}
+   */
+  public int getKind(final int row) {
+    return isNull(row) ? PrimitiveValue.NULL : kinds[row];
+  }
+
+  /**
+   * @param row the row index within the chunk
+   * @return the whole number, or the unscaled value of a fixed point number
+   */
+  public long getLong(final int row) {
+    return longs[row];
+  }
+
+  /**
+   * @param row the row index within the chunk
+   * @return the scale of a fixed point number
+   */
+  public int getScale(final int row) {
+    return scales[row];
+  }
+
+  /**
+   * @param row the row index within the chunk
+   * @return the floating point number
+   */
+  public double getDouble(final int row) {
+    return doubles[row];
+  }
+
+  /**
+   * Retrieve a value as object, creates wrappers for primitive values.
+   *
+   * @param row the row index within the chunk
+   * @return the converted value or <code>null</code>
+   */
+  public Object getObject(final int row) {
+    if (isNull(row)) return null;
+    switch (kinds[row]) {
+      case PrimitiveValue.LONG:
+        return Long.valueOf(longs[row]);
+      case PrimitiveValue.DECIMAL:
+        return BigDecimal.valueOf(longs[row], scales[row]);
+      case PrimitiveValue.DOUBLE:
+        return Double.valueOf(doubles[row]);
+      default:
+        return objects[row];
+    }
+  }
+
+  /**
+   * Bind the value of the given row to the given statement using the most specific setter.
+   *
+   * @param statement the statement to bind the value to, never null
+   * @param index the JDBC parameter index starting with 1
+   * @param row the row index within the chunk
+   * @throws SQLException if the value cannot be bound
+   */
+  public void bind(final PreparedStatement statement, final int index, final int row)
+    throws SQLException
+  {
+    if (isNull(row)) {
+      statement.setNull(index, meta.getSqlType());
+      return;
+    }
+
+    switch (kinds[row]) {
+      case PrimitiveValue.LONG:
+        statement.setLong(index, longs[row]);
+        break;
+      case PrimitiveValue.DECIMAL:
+        statement.setBigDecimal(index, BigDecimal.valueOf(longs[row], scales[row]));
+        break;
+      case PrimitiveValue.DOUBLE:
+        statement.setDouble(index, doubles[row]);
+        break;
+      default:
+        if (objects[row] instanceof Bindable) {
+          ((Bindable) objects[row]).bind(statement, index);
+        } else {
+          statement.setObject(index, objects[row]);
+        }
+    }
+  }
+
+  /** @return the storage of whole numbers and unscaled fixed point numbers */
+  private long[] longs() {
+    if (longs == null) longs = new long[capacity];
+    return longs;
+  }
+
+  /** @return the storage of the scales of fixed point numbers */
+  private byte[] scales() {
+    if (scales == null) scales = new byte[capacity];
+    return scales;
+  }
+
+  /** @return the storage of floating point numbers */
+  private double[] doubles() {
+    if (doubles == null) doubles = new double[capacity];
+    return doubles;
+  }
+
+  /** @return the storage of all other values */
+  private Object[] objects() {
+    if (objects == null) objects = new Object[capacity];
+    return objects;
+  }
+}
@@ -1,11 +1,21 @@
 package org.jcommons.db.load.sheet;
 
 import static org.apache.commons.lang.StringUtils.defaultString;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.*;
 
 import org.jcommons.db.column.Column;
 import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.converter.PrimitiveValue;
+import org.jcommons.db.column.converter.ToPrimitive;
+import org.jcommons.db.column.converter.ValueFactory;
+import org.jcommons.db.column.validation.Validation;
+import org.jcommons.db.column.validation.Violation;
+import org.jcommons.db.load.source.RowSource;
+import org.jcommons.db.query.QueryString;
 import org.jcommons.io.sheet.Sheet;
 
 /**
@@ -17,6 +27,17 @@ public class QueryParameter
 {
   private Map<String, Set<Integer>> indices;
   private Map<String, MetaColumn> columns;
+  private Map<String, ToPrimitive> converters;
+  private final PrimitiveValue primitive = new PrimitiveValue();
+  private Collection<String> resolved;
+  private Binding[] bindings;
+
+  /** create an empty mapping */
+  public QueryParameter() {
+    indices = new HashMap<String, Set<Integer>>();
+    columns = new HashMap<String, MetaColumn>();
+    converters = new HashMap<String, ToPrimitive>();
+  }
 
   /**
    * Add a mapping from meta column to index.
@@ -26,10 +47,15 @@ public class QueryParameter
    */
   public void add(final MetaColumn column, final Integer index) {
     String key = key(column);
+    bindings = null;
 
     // add look-up for meta-columns
     MetaColumn meta = columns.get(key);
-    if (meta == null) columns.put(key, meta);
+    if (meta == null) {
+      columns.put(key, column);
+      ToPrimitive converter = ValueFactory.createPrimitive(column);
+      if (converter != null) converters.put(key, converter);
+    }
 
     // add index to existing indices
     Set<Integer> positions = indices.get(key);
@@ -40,6 +66,18 @@ public class QueryParameter
     positions.add(index);
   }
 
+  /**
+   * Add mappings from meta column to all positions of the parameter of the same name within the given query.
+   *
+   * @param column the meta column to map, never <code>null</code>
+   * @param query the compiled query with named parameters, never <code>null</code>
+   */
+  public void add(final MetaColumn column, final QueryString query) {
+    for (int position : query.getPositions(column.getName())) {
+      add(column, position);
+    }
+  }
+
   /**
    * Converts the given row of the sheet into an object array of query parameters.
    *
@@ -49,16 +87,18 @@ public class QueryParameter
    */
   public Object[] row(final Sheet sheet, final int row) {
     Object[] data = new Object[size()];
+    Binding[] parameters = resolve(sheet.getTable().getColumns());
+    int index = 0;
     for (String columnName : sheet.getTable().getColumns()) {
-      Set<Integer> positions = indices.get(columnName.toLowerCase());
-      if (positions != null && !positions.isEmpty()) {
+      Binding binding = parameters[index++];
+      if (binding != null) {
         Column column = new Column();
-        column.setMeta(columns.get(columnName.toLowerCase()));
+        column.setMeta(binding.meta);
         column.setValue(sheet.getTable().getValue(columnName, row));
 
-        for (Integer position : positions) {
+        for (int position : binding.positions) {
           // TODO : Log error messages
-          data[position] = column.getObject();
+          data[position - 1] = column.getObject();
         }
       }
     }
@@ -66,6 +106,133 @@ public class QueryParameter
     return data;
   }
 
+  /**
+   * Binds the given row of the sheet directly to the parameters of the given statement.
+   *
+   * Numeric values are parsed and bound as primitives, only <code>null</code> and fixed point values create objects.
+   * Dates and time stamps are parsed using the layout inferred for the respective column.
+   *
+   * @param statement the prepared statement for the query of this query parameter
+   * @param sheet the corresponding sheet for this query parameter
+   * @param row the row index to be bound
+   * @param validation receives the violations of all values that cannot be converted as given
+   * @return true if all values could be converted, false if at least one value was lost
+   * @throws SQLException if the values cannot be bound to the statement
+   */
+  public boolean bind(final PreparedStatement statement, final Sheet sheet, final int row,
+                      final Validation validation)
+    throws SQLException
+  {
+    boolean valid = true;
+    Binding[] parameters = resolve(sheet.getTable().getColumns());
+    int index = 0;
+    for (String columnName : sheet.getTable().getColumns()) {
+      Binding binding = parameters[index++];
+      if (binding != null) valid &= bind(statement, binding, sheet.getTable().getValue(columnName, row), validation);
+    }
+    return valid;
+  }
+
+  /**
+   * Binds the given row of a row source directly to the parameters of the given statement.
+   *
+   * Values are handed over to the converters as given by the source, so values of columnar sources are only copied
+   * into strings if they cannot be converted into primitives.
+   *
+   * @param statement the prepared statement for the query of this query parameter
+   * @param source the values to bind
+   * @param row the row index to be bound
+   * @param validation receives the violations of all values that cannot be converted as given
+   * @return true if all values could be converted, false if at least one value was lost
+   * @throws SQLException if the values cannot be bound to the statement
+   */
+  public boolean bind(final PreparedStatement statement, final RowSource source, final int row,
+                      final Validation validation)
+    throws SQLException
+  {
+    boolean valid = true;
+    Binding[] parameters = resolve(source.getColumns());
+    for (int column = 0; column < parameters.length; ++column) {
+      if (parameters[column] != null) {
+        valid &= bind(statement, parameters[column], source.getValue(column, row), validation);
+      }
+    }
+    return valid;
+  }
+
+  /**
+   * Converts a single value and binds it to all parameters of its column.
+   *
+   * @param statement the prepared statement for the query of this query parameter
+   * @param binding the parameters of the column of the value
+   * @param value the plain value, can be <code>null</code>
+   * @param validation receives the violations of the value if it cannot be converted as given
+   * @return true if the value could be converted, false if the value was lost
+   * @throws SQLException if the value cannot be bound to the statement
+   */
+  private boolean bind(final PreparedStatement statement, final Binding binding, final CharSequence value,
+                       final Validation validation)
+    throws SQLException
+  {
+    boolean valid = true;
+    MetaColumn meta = binding.meta;
+    ToPrimitive converter = binding.converter;
+
+    if (converter == null) {
+      String text = value == null ? null : value.toString();
+      primitive.setObject(ValueFactory.valueOf(meta, text, validation));
+      if (primitive.isNull() && (isNotBlank(text) || meta.isNotNullable())) valid = false;
+    } else {
+      int status = converter.valueOf(meta, value, 0, value == null ? 0 : value.length(), primitive);
+      Violation violation = Violation.ofStatus(status, meta);
+      if (violation != null) validation.report(violation, meta, value);
+      if (ValueFactory.isFault(status)) valid = false;
+    }
+
+    for (int position : binding.positions) {
+      primitive.bind(statement, position, meta.getSqlType());
+    }
+    return valid;
+  }
+
+  /**
+   * Look up the parameters of the given columns once, so the values of every row are bound without normalizing and
+   * looking up their column names again.
+   *
+   * The result is kept as long as columns of the same names are given and no mapping is added.
+   *
+   * @param names the names of the columns of the source in their sequence
+   * @return the parameters of every column, <code>null</code> for the columns that are no parameters
+   */
+  private Binding[] resolve(final Collection<String> names) {
+    if (bindings != null && (names == resolved || names.equals(resolved))) return bindings;
+
+    Binding[] parameters = new Binding[names.size()];
+    int index = 0;
+    for (String columnName : names) {
+      // header names are matched without surrounding blanks, like the loader does
+      String key = defaultString(columnName).trim().toLowerCase();
+      Set<Integer> positions = indices.get(key);
+      if (positions != null && !positions.isEmpty()) {
+        parameters[index] = new Binding(columns.get(key), converters.get(key), positions);
+      }
+      ++index;
+    }
+    resolved = names;
+    bindings = parameters;
+    return parameters;
+  }
+
+  /**
+   * Retrieve the converter that is used to bind the values of the given column.
+   *
+   * @param columnName the case insensitive column name
+   * @return the converter of that column, e.g. to report the inferred date layout, <code>null</code> if there is none
+   */
+  public ToPrimitive getConverter(final String columnName) {
+    return converters.get(defaultString(columnName).toLowerCase());
+  }
+
   public Object[][] rows(final Sheet sheet) {
     // TODO : convert complete sheet to object array
     return null;
@@ -81,6 +248,31 @@ public class QueryParameter
     return defaultString(column.getName()).toLowerCase();
   }
 
+  /**
+   * The parameters of a single column of the source.
+   */
+  private static final class Binding
+  {
+    private final MetaColumn meta;
+    private final ToPrimitive converter;
+    private final int[] positions;
+
+    /**
+     * @param meta the meta data of the column
+     * @param converter the converter of the column, <code>null</code> if it has none
+     * @param positions the JDBC parameter indices of the column
+     */
+    Binding(final MetaColumn meta, final ToPrimitive converter, final Set<Integer> positions) {
+      this.meta = meta;
+      this.converter = converter;
+      this.positions = new int[positions.size()];
+      int index = 0;
+      for (Integer position : positions) {
+        this.positions[index++] = position;
+      }
+    }
+  }
+
   /**
    * Calculates the size of a row for the given indices.
    *
@@ -0,0 +1,102 @@
+package org.jcommons.db.load.sheet;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.jcommons.db.column.MetaColumn;
+
+/**
+ * A block of consecutive rows converted into one typed vector per column.
+ *
+ * The vectors are kept in the order of the statement parameters, so the vector with index <code>i</code> binds
+ * the JDBC parameter <code>i + 1</code>.
+ */
+public class RowChunk
+{
+  private final ColumnVector[] vectors;
+  private final boolean[] mandatory;
+  private int first;
+  private int size;
+
+  /**
+   * Create an empty chunk.
+   *
+   * @param columns the meta data of the columns in the order of the statement parameters, never null
+   * @param capacity the maximum number of rows of the chunk
+   */
+  public RowChunk(final List<MetaColumn> columns, final int capacity) {
+    vectors = new ColumnVector[columns.size()];
+    mandatory = new boolean[columns.size()];
+    for (int index = 0; index < vectors.length; ++index) {
+      MetaColumn meta = columns.get(index);
+      vectors[index] = new ColumnVector(meta, capacity);
+      mandatory[index] = meta.isNotNullable() || meta.isPrimary();
+    }
+  }
+
+  /**
+   * Prepare the chunk for the next block of rows.
+   *
+   * @param first the index of the first row of the block within the sheet
+   * @param size the number of rows of the block
+   */
+  public void reset(final int first, final int size) {
+    this.first = first;
+    this.size = size;
+    for (ColumnVector vector : vectors) {
+      vector.clear();
+    }
+  }
+
+  /** @return the index of the first row of this chunk within the sheet */
+  public int getFirst() {
+    return first;
+  }
+
+  /** @return the number of rows in this chunk */
+  public int size() {
+    return size;
+  }
+
+  /** @return the number of columns in this chunk */
+  public int getWidth() {
+    return vectors.length;
+  }
+
+  /**
+   * @param column the column index in the order of the statement parameters
+   * @return the converted values of the column
+   */
+  public ColumnVector getVector(final int column) {
+    return vectors[column];
+  }
+
+  /**
+   * Checks whether a row must not be loaded as a mandatory or key value was lost during conversion.
+   *
+   * @param row the row index within the chunk
+   * @return true if the row must be skipped
+   */
+  public boolean isRejected(final int row) {
+    for (int index = 0; index < vectors.length; ++index) {
+      if (mandatory[index] && vectors[index].isFault(row)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Bind all values of the given row to the statement.
+   *
+   * @param statement the statement to bind the values to, never null
+   * @param row the row index within the chunk
+   * @throws SQLException if a value cannot be bound
+   */
+  public void bind(final PreparedStatement statement, final int row)
+    throws SQLException
+  {
+    for (int index = 0; index < vectors.length; ++index) {
+      vectors[index].bind(statement, index + 1, row);
+    }
+  }
+}
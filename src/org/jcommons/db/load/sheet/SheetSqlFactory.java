@@ -1,5 +1,10 @@
 package org.jcommons.db.load.sheet;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.query.QueryString;
 import org.jcommons.io.sheet.Sheet;
 
 /**
@@ -20,10 +25,106 @@ public class SheetSqlFactory
    * @return the respective SQL command as a prepared statement
    */
   public static String insert(final Sheet sheet) {
-    StringBuffer sql = new StringBuffer();
-    sql.append("insert into ").append(sheet.getName()).append(" (");
+    List<String> columns = new ArrayList<String>();
+    for (String column : sheet.getTable().getColumns()) {
+      columns.add(column.trim());
+    }
+    return insertQuery(sheet.getName(), columns).getSql();
+  }
 
-    return sql.toString();
+  /**
+   * Create SQL command to insert the given columns into the given database table.
+   *
+   * @param table the name of the database table
+   * @param columns the columns to insert in the order of the statement parameters
+   * @return the respective SQL command as a prepared statement
+   */
+  public static String insert(final String table, final List<MetaColumn> columns) {
+    return insertQuery(table, names(columns)).getSql();
+  }
+
+  /**
+   * Create the query to insert the given columns into the given database table, every value is bound to the
+   * parameter named like its column.
+   *
+   * @param table the name of the database table
+   * @param columns the names of the columns to insert in the order of the statement parameters
+   * @return the query with one named parameter per column
+   */
+  public static QueryString insertQuery(final String table, final List<String> columns) {
+    StringBuilder sql = new StringBuilder();
+    sql.append("insert into ").append(table).append(" (");
+    for (int index = 0; index < columns.size(); ++index) {
+      if (index > 0) sql.append(", ");
+      sql.append(columns.get(index));
+    }
+
+    sql.append(") values (");
+    for (int index = 0; index < columns.size(); ++index) {
+      if (index > 0) sql.append(", ");
+      sql.append(parameter(columns.get(index)));
+    }
+    sql.append(")");
+    return new QueryString(sql.toString());
+  }
+
+  /**
+   * Create SQL command to update the given columns of the rows identified by the given key columns.
+   *
+   * The statement parameters are the values in the given order followed by the keys in the given order.
+   *
+   * @param table the name of the database table
+   * @param values the columns to update
+   * @param keys the columns that identify a row
+   * @return the respective SQL command as a prepared statement
+   */
+  public static String update(final String table, final List<MetaColumn> values, final List<MetaColumn> keys) {
+    return updateQuery(table, names(values), names(keys)).getSql();
+  }
+
+  /**
+   * Create the query to update the given columns of the rows identified by the given key columns, every value is
+   * bound to the parameter named like its column.
+   *
+   * @param table the name of the database table
+   * @param values the names of the columns to update
+   * @param keys the names of the columns that identify a row, must not be part of the values
+   * @return the query with one named parameter per column, the values before the keys
+   */
+  public static QueryString updateQuery(final String table, final List<String> values, final List<String> keys) {
+    StringBuilder sql = new StringBuilder();
+    sql.append("update ").append(table).append(" set ");
+    for (int index = 0; index < values.size(); ++index) {
+      if (index > 0) sql.append(", ");
+      sql.append(values.get(index)).append(" = ").append(parameter(values.get(index)));
+    }
+
+    sql.append(" where ");
+    for (int index = 0; index < keys.size(); ++index) {
+      if (index > 0) sql.append(" and ");
+      sql.append(keys.get(index)).append(" = ").append(parameter(keys.get(index)));
+    }
+    return new QueryString(sql.toString());
+  }
+
+  /**
+   * @param column the name of a column
+   * @return the named parameter of the column, written as <code>${name}</code> to allow any column name
+   */
+  private static String parameter(final String column) {
+    return "${" + column + "}";
+  }
+
+  /**
+   * @param columns the meta data of columns
+   * @return the names of the columns in the same order
+   */
+  private static List<String> names(final List<MetaColumn> columns) {
+    List<String> names = new ArrayList<String>(columns.size());
+    for (MetaColumn column : columns) {
+      names.add(column.getName());
+    }
+    return names;
   }
 
   /**
@@ -0,0 +1,283 @@
+package org.jcommons.db.load.sort;
+
+import java.util.*;
+
+/**
+ * Directed graph of tables and the master tables they depend upon.
+ *
+ * Tables that depend on each other, directly or over other tables, form a cycle and are treated as a single node
+ * when the levels are determined. The levels are computed by counting the unresolved masters of every node and
+ * releasing a node as soon as its count drops to zero, so the effort grows linear with the number of tables and
+ * dependencies. Tables within a level keep the order they were added in.
+ */
+public class DependencyGraph
+{
+  private final Map<String, Integer> index = new HashMap<String, Integer>();
+  private final List<String> tables = new ArrayList<String>();
+  private final List<Set<Integer>> masters = new ArrayList<Set<Integer>>();
+
+  private int[] components;
+  private int count;
+
+  /**
+   * Add a table to the graph, adding the same table again has no effect.
+   *
+   * @param table the name of the table, never null
+   * @return this to allow chaining
+   */
+  public DependencyGraph addTable(final String table) {
+    if (!index.containsKey(table)) {
+      index.put(table, tables.size());
+      tables.add(table);
+      masters.add(new LinkedHashSet<Integer>());
+      components = null;
+    }
+    return this;
+  }
+
+  /**
+   * Record that the given table requires the data of the master table to be loaded first.
+   *
+   * @param table the name of the dependent table, never null
+   * @param master the name of the referenced table, never null
+   * @return this to allow chaining
+   */
+  public DependencyGraph addDependency(final String table, final String master) {
+    addTable(table);
+    addTable(master);
+    masters.get(index.get(table)).add(index.get(master));
+    components = null;
+    return this;
+  }
+
+  /**
+   * @param table the name of the table
+   * @return true if the table is part of the graph
+   */
+  public boolean contains(final String table) {
+    return index.containsKey(table);
+  }
+
+  /**
+   * List the tables the given table depends upon directly, leaving out tables of its own cycle.
+   *
+   * @param table the name of the table
+   * @return the names of the master tables, can be empty but never null
+   */
+  public List<String> getMasters(final String table) {
+    Integer node = index.get(table);
+    if (node == null) return Collections.emptyList();
+
+    int[] component = getComponents();
+    List<String> names = new ArrayList<String>();
+    for (int master : masters.get(node)) {
+      if (component[master] != component[node]) names.add(tables.get(master));
+    }
+    return names;
+  }
+
+  /** @return the number of tables in the graph */
+  public int size() {
+    return tables.size();
+  }
+
+  /**
+   * Group the tables into levels, a table depends only on tables of earlier levels or on tables of the same cycle.
+   *
+   * @return the tables level by level, can be empty but never null
+   */
+  public List<List<String>> getLevels() {
+    int[] component = getComponents();
+
+    // count the masters of every cycle resp. table and remember who is waiting for it
+    int[] pending = new int[count];
+    List<List<Integer>> waiting = new ArrayList<List<Integer>>(count);
+    List<List<Integer>> members = new ArrayList<List<Integer>>(count);
+    for (int node = 0; node < count; ++node) {
+      waiting.add(new ArrayList<Integer>(2));
+      members.add(new ArrayList<Integer>(1));
+    }
+
+    Set<Long> edges = new HashSet<Long>();
+    for (int table = 0; table < tables.size(); ++table) {
+      members.get(component[table]).add(table);
+      for (int master : masters.get(table)) {
+        int from = component[master];
+        int to = component[table];
+        if (from != to && edges.add(((long) from << 32) | to)) {
+          waiting.get(from).add(to);
+          ++pending[to];
+        }
+      }
+    }
+
+    // the first table of every node defines the order within a level
+    List<Integer> ready = new ArrayList<Integer>();
+    boolean[] seen = new boolean[count];
+    for (int table = 0; table < tables.size(); ++table) {
+      int node = component[table];
+      if (!seen[node] && pending[node] == 0) ready.add(node);
+      seen[node] = true;
+    }
+
+    List<List<String>> levels = new ArrayList<List<String>>();
+    while (!ready.isEmpty()) {
+      Collections.sort(ready, new FirstMember(members));
+      List<String> level = new ArrayList<String>();
+      List<Integer> next = new ArrayList<Integer>();
+      for (int node : ready) {
+        for (int table : members.get(node)) {
+          level.add(tables.get(table));
+        }
+        for (int dependent : waiting.get(node)) {
+          if (--pending[dependent] == 0) next.add(dependent);
+        }
+      }
+      levels.add(level);
+      ready = next;
+    }
+    return levels;
+  }
+
+  /** @return the tables in an order they can be loaded, cycles are kept together */
+  public List<String> getSequence() {
+    List<String> sequence = new ArrayList<String>(tables.size());
+    for (List<String> level : getLevels()) {
+      sequence.addAll(level);
+    }
+    return sequence;
+  }
+
+  /**
+   * List the groups of tables that depend on each other, including tables that depend on themselves.
+   *
+   * @return the tables of every cycle in the order they were added, can be empty but never null
+   */
+  public List<List<String>> getCycles() {
+    int[] component = getComponents();
+    Map<Integer, List<String>> cycles = new LinkedHashMap<Integer, List<String>>();
+    int[] sizes = new int[count];
+    for (int table = 0; table < tables.size(); ++table) {
+      ++sizes[component[table]];
+    }
+
+    for (int table = 0; table < tables.size(); ++table) {
+      int node = component[table];
+      if (sizes[node] > 1 || masters.get(table).contains(table)) {
+        List<String> cycle = cycles.get(node);
+        if (cycle == null) {
+          cycle = new ArrayList<String>();
+          cycles.put(node, cycle);
+        }
+        cycle.add(tables.get(table));
+      }
+    }
+    return new ArrayList<List<String>>(cycles.values());
+  }
+
+  /**
+   * Assign every table to its strongly connected component using Tarjan's algorithm.
+   *
+   * The depth first search keeps its own stack, so long chains of dependencies cannot overflow the thread stack.
+   *
+   * @return the component of every table
+   */
+  private int[] getComponents() {
+    if (components != null) return components;
+
+    int size = tables.size();
+    int[][] edges = new int[size][];
+    for (int table = 0; table < size; ++table) {
+      Set<Integer> targets = masters.get(table);
+      edges[table] = new int[targets.size()];
+      int position = 0;
+      for (int master : targets) {
+        edges[table][position++] = master;
+      }
+    }
+
+    int[] component = new int[size];
+    int[] number = new int[size];
+    int[] low = new int[size];
+    int[] next = new int[size];
+    boolean[] open = new boolean[size];
+    int[] stack = new int[size];
+    int[] calls = new int[size];
+    int depth = 0;
+    int top = 0;
+    int counter = 0;
+    count = 0;
+
+    for (int root = 0; root < size; ++root) {
+      if (number[root] != 0) continue;
+      calls[depth++] = root;
+      number[root] = ++counter;
+      low[root] = counter;
+      stack[top++] = root;
+      open[root] = true;
+
+      while (depth > 0) {
+        int node = calls[depth - 1];
+        if (next[node] < edges[node].length) {
+          int master = edges[node][next[node]++];
+          if (number[master] == 0) {
+            calls[depth++] = master;
+            number[master] = ++counter;
+            low[master] = counter;
+            stack[top++] = master;
+            open[master] = true;
+          } else if (open[master]) {
+            low[node] = Math.min(low[node], number[master]);
+          }
+          continue;
+        }
+
+        --depth;
+        if (low[node] == number[node]) {
+          int member;
+          do {
+            member = stack[--top];
+            open[member] = false;
+            component[member] = count;
+          } while (member != node);
+          ++count;
+        }
+        if (depth > 0) {
+          int caller = calls[depth - 1];
+          low[caller] = Math.min(low[caller], low[node]);
+        }
+      }
+    }
+
+    components = component;
+    return components;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return getLevels().toString();
+  }
+
+  /** orders the components by their first table */
+  private static class FirstMember
+    implements Comparator<Integer>
+  {
+    private final List<List<Integer>> members;
+
+    /**
+     * Create the comparator.
+     *
+     * @param members the tables of every component in the order they were added
+     */
+    FirstMember(final List<List<Integer>> members) {
+      this.members = members;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int compare(final Integer left, final Integer right) {
+      return members.get(left).get(0).compareTo(members.get(right).get(0));
+    }
+  }
+}
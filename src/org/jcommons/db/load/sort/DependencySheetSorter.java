@@ -15,8 +15,11 @@ import org.jcommons.message.*;
 /**
  * A sorting strategy that lists the sheets in the order they depend upon.
  *
- * Can cope with cycle references but you need to lock at the error messages to know whether you can really load the
- * sheets.
+ * Only mandatory foreign keys are taken into account, as the sheets are loaded first with all non-nullable fields
+ * (which include primary keys and mandatory foreign keys) and then again with the remaining data including optional
+ * foreign keys. Sheets whose master tables are not provided are removed. Sheets that depend mandatorily on each other
+ * cannot be loaded one after the other, they are reported as fault but kept together in the same level. Sheets that
+ * reference themselves are not affected, as their rows are ordered when loaded.
  *
  * @author Thorsten Goeckeler
  */
@@ -24,150 +27,153 @@ public class DependencySheetSorter
   implements SheetSortingStrategy
 {
   private final Message errors = new Messages();
+  private final Map<Sheet, Collection<Sheet>> masters = new HashMap<Sheet, Collection<Sheet>>();
   private DataSource dataSource;
 
   private static final String CANNOT_ACCESS_TABLE =
       "Cannot access table \"${table}\" to load the respective sheet due to: ${exception}.";
   private static final String DEPENDS_ON = "Table \"${table}\" depends on table \"${master}\" which is not provided.";
   private static final String DEPENDED_ON = "Table \"${table}\" depends on removed table \"${master}\".";
+  private static final String CYCLE = "Tables ${tables} depend mandatorily on each other and cannot be loaded.";
 
   /** {@inheritDoc} */
   @Override
   public List<Sheet> sort(final List<Sheet> sheets) {
+    List<Sheet> sortedSheets = new ArrayList<Sheet>();
+    for (List<Sheet> level : levels(sheets)) {
+      sortedSheets.addAll(level);
+    }
+    return sortedSheets;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<List<Sheet>> levels(final List<Sheet> sheets) {
     errors.clear();
+    masters.clear();
     if (sheets == null) return Collections.emptyList();
 
-    Map<String, Set<String>> dependends = new HashMap<String, Set<String>>();
-    Map<String, Set<String>> required = new HashMap<String, Set<String>>();
+    Map<String, Sheet> map = new LinkedHashMap<String, Sheet>();
+    for (Sheet sheet : sheets) {
+      map.put(sheet.getName().toUpperCase(), sheet);
+    }
 
-    getDependencies(sheets, dependends, required);
-    Set<String> removed = getTablesWithoutMaster(sheets, required);
-    removeTablesWithoutMaster(dependends, required, removed);
+    Map<String, Set<String>> required = getDependencies(sheets);
+    removeTablesWithoutMaster(required);
 
     // now we have only those tables left for which all dependencies can be resolved
-    return sort(sheets, required, dependends);
-  }
-
-  /**
-   * Sort the list of sheets in a sequence that allow them to be loaded.
-   *
-   * May remove sheets that cannot be loaded because their dependencies are missing.
-   *
-   * @param sheets the original list of sheets, never <code>null</code>
-   * @param required the map of tables and their required master tables
-   * @param dependends the map of tables and the tables they depend on
-   * @return the sorted list of sheets that can be loaded in that sequence
-   */
-  private List<Sheet> sort(final List<Sheet> sheets, final Map<String, Set<String>> required,
-                           final Map<String, Set<String>> dependends)
-  {
-    List<String> sequence = new LinkedList<String>();
-
-    // the algorithm is simple, as we assume that the sheets are loaded first with all non-nullable fields (which
-    // include primary keys and mandatory foreign keys) and then again with the remaining data including optional
-    // foreign keys. If those keys are missing, there was no corresponding entry in the respective sheet.
-
-    // while (there is a table entry in the required map)
-    //   add all table entries to the list which require no other table
-    //   remove these tables from the table map
-    //   remove these tables in all requirement lists
-
-    List<String> removed = new LinkedList<String>();
-    while (!required.keySet().isEmpty()) {
-      removed.clear();
-      // add all tables that require no other table
-      for (String table : required.keySet()) {
-        if (required.get(table).isEmpty()) {
-          // no remaining master tables, it is safe to load this table
-          sequence.add(table);
-          removed.add(table);
-        }
-      }
-
-      // remove these tables from the table mappings
-      for (String table : removed) {
-        required.remove(table);
-      }
-
-      // now remove them from the remaining requirements lists
-      for (String table : required.keySet()) {
-        // works only if all tables are written in upper case
-        required.get(table).removeAll(removed);
+    DependencyGraph graph = new DependencyGraph();
+    for (String table : required.keySet()) {
+      graph.addTable(table);
+    }
+    for (Map.Entry<String, Set<String>> entry : required.entrySet()) {
+      for (String master : entry.getValue()) {
+        if (!master.equals(entry.getKey())) graph.addDependency(entry.getKey(), master);
       }
     }
-    removed = null;
 
-    // finally match the table list with the sheets
-    List<Sheet> sortedSheets = new LinkedList<Sheet>();
-    Map<String, Sheet> map = new HashMap<String, Sheet>();
-    for (Sheet sheet : sheets) {
-      map.put(sheet.getName().toUpperCase(), sheet);
+    for (List<String> cycle : graph.getCycles()) {
+      errors.add(new Fault(message(CYCLE).with("tables", cycle.toString()).toString()));
     }
 
-    for (String table : sequence) {
-      Sheet sheet = map.get(table);
-      // actually all sheets should be mapped, just a bit of paranoia at work
-      if (sheet != null) sortedSheets.add(sheet);
+    // finally match the table levels with the sheets
+    List<List<Sheet>> levels = new ArrayList<List<Sheet>>();
+    for (List<String> tables : graph.getLevels()) {
+      List<Sheet> level = new ArrayList<Sheet>(tables.size());
+      for (String table : tables) {
+        Sheet sheet = map.get(table);
+        level.add(sheet);
+
+        List<Sheet> loadedBefore = new ArrayList<Sheet>();
+        for (String master : graph.getMasters(table)) {
+          loadedBefore.add(map.get(master));
+        }
+        masters.put(sheet, loadedBefore);
+      }
+      levels.add(level);
     }
-
-    return sortedSheets;
+    return levels;
   }
 
-  private void removeTablesWithoutMaster(final Map<String, Set<String>> dependends,
-                                         final Map<String, Set<String>> required, final Set<String> removed)
-  {
-    // now remove those tables and check if we must remove more dependent ones until the list is empty
-    while (!removed.isEmpty()) {
-      for (String table : removed) {
-        dependends.remove(table.toUpperCase());
-        required.remove(table.toUpperCase());
-      }
+  /** {@inheritDoc} */
+  @Override
+  public Collection<Sheet> getMasters(final Sheet sheet) {
+    Collection<Sheet> required = masters.get(sheet);
+    if (required == null) return Collections.emptyList();
+    return required;
+  }
 
-      removed.clear();
-      for (String table : required.keySet()) {
-        for (String requires : required.get(table)) {
-          if (!required.containsKey(requires)) {
-            NamedString text = message(DEPENDED_ON).with("table", table);
-            text.with("master", requires);
-            errors.add(new Fault(text.toString()));
-            removed.add(requires);
+  /**
+   * Remove all tables whose master tables are not provided, and in turn all tables that depend on removed ones.
+   *
+   * @param required the map of tables and their required master tables, all keys in upper case
+   */
+  private void removeTablesWithoutMaster(final Map<String, Set<String>> required) {
+    Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+    LinkedList<String> removed = new LinkedList<String>();
+    Set<String> done = new HashSet<String>();
+
+    for (Map.Entry<String, Set<String>> entry : required.entrySet()) {
+      for (String master : entry.getValue()) {
+        if (master.equals(entry.getKey())) {
+          // self-references are resolved by ordering the rows of the sheet
+          continue;
+        } else if (required.containsKey(master)) {
+          List<String> tables = dependents.get(master);
+          if (tables == null) {
+            tables = new ArrayList<String>();
+            dependents.put(master, tables);
           }
+          tables.add(entry.getKey());
+        } else {
+          NamedString text = message(DEPENDS_ON).with("table", entry.getKey());
+          text.with("master", master);
+          errors.add(new Fault(text.toString()));
+          if (done.add(entry.getKey())) removed.add(entry.getKey());
         }
       }
     }
-  }
 
-  private Set<String> getTablesWithoutMaster(final List<Sheet> sheets, final Map<String, Set<String>> required) {
-    // check for tables that must be present
-    Set<String> removed = new HashSet<String>();
-    for (Sheet sheet : sheets) {
-      for (String requires : required.get(sheet.getName().toUpperCase())) {
-        if (!required.containsKey(requires)) {
-          NamedString text = message(DEPENDS_ON).with("table", sheet.getName().toUpperCase());
-          text.with("master", requires);
+    // now remove those tables and all tables depending on them
+    while (!removed.isEmpty()) {
+      String master = removed.removeFirst();
+      required.remove(master);
+      List<String> tables = dependents.get(master);
+      if (tables == null) continue;
+
+      for (String table : tables) {
+        if (done.add(table)) {
+          NamedString text = message(DEPENDED_ON).with("table", table);
+          text.with("master", master);
           errors.add(new Fault(text.toString()));
-          removed.add(requires);
+          removed.add(table);
         }
       }
     }
-    return removed;
   }
 
-  private void getDependencies(final List<Sheet> sheets, final Map<String, Set<String>> dependends,
-                               final Map<String, Set<String>> mandatory)
-  {
+  /**
+   * Retrieve the mandatory master tables of all sheets, sheets whose tables cannot be accessed are left out.
+   *
+   * @param sheets the sheets to be loaded, never null
+   * @return the map of tables in upper case and their required master tables in the order of the sheets
+   */
+  private Map<String, Set<String>> getDependencies(final List<Sheet> sheets) {
+    Map<String, Set<String>> mandatory = new LinkedHashMap<String, Set<String>>();
     for (Sheet sheet : sheets) {
       try {
-        dependends.put(sheet.getName().toUpperCase(), MetaTable.dependsOn(getDataSource(), sheet.getName()));
-        mandatory.put(sheet.getName().toUpperCase(), MetaTable.dependsMandatoryOn(getDataSource(), sheet.getName()));
+        Set<String> masters = new LinkedHashSet<String>();
+        for (String master : MetaTable.dependsMandatoryOn(getDataSource(), sheet.getName())) {
+          masters.add(master.toUpperCase());
+        }
+        mandatory.put(sheet.getName().toUpperCase(), masters);
       } catch (SQLException ex) {
         NamedString text = message(CANNOT_ACCESS_TABLE);
         text.with("table", sheet.getName()).with("exception", ex.getMessage());
         errors.add(new Fault(text.toString()));
-        dependends.remove(sheet.getName().toUpperCase());
-        mandatory.remove(sheet.getName().toUpperCase());
       }
     }
+    return mandatory;
   }
 
   /** {@inheritDoc} */
@@ -0,0 +1,199 @@
+package org.jcommons.db.load.sort;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.converter.ValueFactory;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.jcommons.db.load.source.RowSource;
+
+/**
+ * Sorts the rows of a self-referencing table into levels, so that every row is loaded after the rows it references.
+ *
+ * Every foreign key constraint of the table that references the table itself contributes one edge per row, from the
+ * row holding the referenced key to the referencing row, and the rows are sorted topologically on the union of these
+ * edges. The keys of every row are collected once, then the rows are released level by level starting with the rows
+ * that reference no other row of the source. A reference is ignored if it is empty, points to the row itself or to a
+ * key that is not part of the source and thus must exist in the database already. Rows that reference each other in
+ * a cycle cannot be ordered, they form the last level and will most likely be rejected by the database.
+ *
+ * Keys and references are compared by their values converted like they are loaded, so <code>01</code> references
+ * the key <code>1</code> of a numeric column. Columns without meta data are compared by their trimmed text.
+ */
+public class HierarchySorter
+{
+  private static final int WINDOW = 4096;
+
+  private final List<int[]> levels = new ArrayList<int[]>();
+  private int unresolved;
+
+  /**
+   * Sort the rows of the given source by a single self-reference compared by text.
+   *
+   * @param rows the rows to sort, never null
+   * @param keys the column indices of the referenced key within the source, never empty
+   * @param references the column indices of the referencing columns in the same sequence as the keys
+   */
+  public HierarchySorter(final RowSource rows, final int[] keys, final int[] references) {
+    this(rows, Collections.singletonList(keys), Collections.singletonList(references), null);
+  }
+
+  /**
+   * Sort the rows of the given source by all its self-references.
+   *
+   * @param rows the rows to sort, never null
+   * @param keys the column indices of the referenced key of every constraint, never empty
+   * @param references the column indices of the referencing columns of every constraint in the sequence of the keys
+   * @param columns the meta data of the columns of the source to convert the values, <code>null</code> or elements
+   *          that are <code>null</code> to compare by the trimmed text
+   */
+  public HierarchySorter(final RowSource rows, final List<int[]> keys, final List<int[]> references,
+                         final MetaColumn[] columns)
+  {
+    int size = rows.size();
+    int constraints = keys.size();
+
+    // constraints that reference the same key share its index
+    List<Map<Object, Integer>> indices = new ArrayList<Map<Object, Integer>>(constraints);
+    Map<String, Map<Object, Integer>> shared = new HashMap<String, Map<Object, Integer>>();
+    for (int[] key : keys) {
+      Map<Object, Integer> index = shared.get(Arrays.toString(key));
+      if (index == null) {
+        index = new HashMap<Object, Integer>(size * 4 / 3 + 1);
+        shared.put(Arrays.toString(key), index);
+      }
+      indices.add(index);
+    }
+    Object[][] parents = new Object[constraints][size];
+
+    ViolationLog violations = new ViolationLog(0);
+    for (int first = 0; first < size; first += WINDOW) {
+      int last = Math.min(size, first + WINDOW);
+      rows.prepare(first, last);
+      for (int row = first; row < last; ++row) {
+        for (int constraint = 0; constraint < constraints; ++constraint) {
+          Map<Object, Integer> index = indices.get(constraint);
+          Object key = key(rows, columns, keys.get(constraint), row, violations);
+          if (key != null && !index.containsKey(key)) index.put(key, row);
+          parents[constraint][row] = key(rows, columns, references.get(constraint), row, violations);
+        }
+      }
+    }
+
+    // link every row to the rows referencing it, one edge per constraint
+    int[] head = new int[size];
+    int[] target = new int[size * constraints];
+    int[] next = new int[size * constraints];
+    int[] pending = new int[size];
+    Arrays.fill(head, -1);
+    int edges = 0;
+    for (int constraint = 0; constraint < constraints; ++constraint) {
+      Map<Object, Integer> index = indices.get(constraint);
+      for (int row = 0; row < size; ++row) {
+        Object reference = parents[constraint][row];
+        Integer parent = reference == null ? null : index.get(reference);
+        if (parent == null || parent.intValue() == row) continue;
+        target[edges] = row;
+        next[edges] = head[parent];
+        head[parent] = edges++;
+        ++pending[row];
+      }
+    }
+
+    int[] level = new int[size];
+    int count = 0;
+    for (int row = 0; row < size; ++row) {
+      if (pending[row] == 0) level[count++] = row;
+    }
+
+    int sorted = 0;
+    boolean[] done = new boolean[size];
+    while (count > 0) {
+      int[] current = Arrays.copyOf(level, count);
+      Arrays.sort(current);
+      levels.add(current);
+      sorted += count;
+
+      count = 0;
+      for (int row : current) {
+        done[row] = true;
+        for (int edge = head[row]; edge >= 0; edge = next[edge]) {
+          if (--pending[target[edge]] == 0) level[count++] = target[edge];
+        }
+      }
+    }
+
+    unresolved = size - sorted;
+    if (unresolved > 0) {
+      int[] cyclic = new int[unresolved];
+      int position = 0;
+      for (int row = 0; row < size; ++row) {
+        if (!done[row]) cyclic[position++] = row;
+      }
+      levels.add(cyclic);
+    }
+  }
+
+  /**
+   * Combine the values of the given columns of a row.
+   *
+   * @param rows the source of the values
+   * @param meta the meta data of the columns of the source, can be <code>null</code>
+   * @param columns the column indices to combine
+   * @param row the row index
+   * @param violations collects the failures of the conversion, cleared for every value
+   * @return the single value or the list of values, <code>null</code> if any of the values is empty
+   */
+  private static Object key(final RowSource rows, final MetaColumn[] meta, final int[] columns, final int row,
+                            final ViolationLog violations)
+  {
+    if (columns.length == 1) return value(rows, meta, columns[0], row, violations);
+
+    List<Object> key = new ArrayList<Object>(columns.length);
+    for (int column : columns) {
+      Object value = value(rows, meta, column, row, violations);
+      if (value == null) return null;
+      key.add(value);
+    }
+    return key;
+  }
+
+  /**
+   * Convert a single value the way it is loaded, so equal keys are equal regardless of their text.
+   *
+   * @param rows the source of the values
+   * @param meta the meta data of the columns of the source, can be <code>null</code>
+   * @param column the column index
+   * @param row the row index
+   * @param violations collects the failures of the conversion, cleared for every value
+   * @return the converted value, the trimmed text if it was lost by the conversion, <code>null</code> if it is empty
+   */
+  private static Object value(final RowSource rows, final MetaColumn[] meta, final int column, final int row,
+                              final ViolationLog violations)
+  {
+    CharSequence value = rows.getValue(column, row);
+    String text = value == null ? "" : value.toString().trim();
+    if (text.length() == 0) return null;
+    if (meta == null || column >= meta.length || meta[column] == null) return text;
+
+    violations.clear();
+    Object converted = ValueFactory.valueOf(meta[column], text, violations);
+    if (converted == null || violations.isFault()) return text;
+    if (!(converted instanceof Number)) return converted;
+
+    // numbers of different types and scales reference each other as long as their values are equal
+    BigDecimal number = converted instanceof BigDecimal ? (BigDecimal) converted : new BigDecimal(converted.toString());
+    return number.signum() == 0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+  }
+
+  /** @return the row indices level by level, every level in ascending order, can be empty but never null */
+  public List<int[]> getLevels() {
+    return levels;
+  }
+
+  /** @return the number of rows that reference each other in a cycle and are collected in the last level */
+  public int getUnresolved() {
+    return unresolved;
+  }
+}
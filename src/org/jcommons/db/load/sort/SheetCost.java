@@ -0,0 +1,92 @@
+package org.jcommons.db.load.sort;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.jcommons.db.load.meta.MetaTable;
+import org.jcommons.io.sheet.Sheet;
+
+/**
+ * Estimated effort to load a sheet, used to schedule large sheets as early as possible.
+ *
+ * Loading time grows with the number of rows times the values bound per row plus the indexes maintained per row. The
+ * estimate is a relative figure without a unit, it is only compared to the estimates of other sheets.
+ */
+public class SheetCost
+{
+  /** the effort to maintain a single index entry compared to binding a single value */
+  public static final int INDEX_WEIGHT = 4;
+  /** the fixed effort of every sheet, e.g. to retrieve its meta data and to prepare the statements */
+  public static final long OVERHEAD = 1000L;
+
+  private final int rows;
+  private final int columns;
+  private final int indexes;
+
+  /**
+   * Create an estimate.
+   *
+   * @param rows the number of rows of the sheet
+   * @param columns the number of columns of the sheet
+   * @param indexes the number of indexes of the table
+   */
+  public SheetCost(final int rows, final int columns, final int indexes) {
+    this.rows = rows;
+    this.columns = columns;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Estimate the effort to load the given sheet.
+   *
+   * @param dataSource the database connection used to count the indexes, <code>null</code> to ignore indexes
+   * @param sheet the sheet to load, never null
+   * @return the estimated effort, never null
+   */
+  public static SheetCost of(final DataSource dataSource, final Sheet sheet) {
+    int rows = 0;
+    int columns = 0;
+    if (sheet.getTable() != null) {
+      rows = sheet.getTable().size();
+      if (sheet.getTable().getColumns() != null) columns = sheet.getTable().getColumns().size();
+    }
+
+    int indexes = 0;
+    if (dataSource != null) {
+      try {
+        indexes = MetaTable.indexCount(dataSource, sheet.getName());
+      } catch (SQLException ex) {
+        // the sheet will not load either, the number of rows serves well enough
+        indexes = 0;
+      }
+    }
+    return new SheetCost(rows, columns, indexes);
+  }
+
+  /** @return the number of rows of the sheet */
+  public int getRows() {
+    return rows;
+  }
+
+  /** @return the number of columns of the sheet */
+  public int getColumns() {
+    return columns;
+  }
+
+  /** @return the number of indexes of the table */
+  public int getIndexes() {
+    return indexes;
+  }
+
+  /** @return the estimated effort to load the sheet */
+  public long getCost() {
+    return OVERHEAD + (long) rows * (columns + INDEX_WEIGHT * indexes);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return rows + " rows, " + columns + " columns, " + indexes + " indexes: " + getCost();
+  }
+}
@@ -0,0 +1,299 @@
+package org.jcommons.db.load.sort;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jcommons.io.sheet.Sheet;
+
+/**
+ * Runs a task for every sheet on a pool of workers, a sheet is started as soon as all of its masters are done.
+ *
+ * Whenever a worker is free the ready sheet with the longest remaining chain of dependent work is started first,
+ * that is the sheet with the highest sum of its own estimated cost and the costs along the most expensive path of
+ * sheets depending on it. Sheets with the same rank are started longest job first. So a large sheet at the start of a
+ * long chain does not wait for small sheets of the same level, which usually keeps the critical path short.
+ *
+ * Optionally every sheet runs a second pass, e.g. to update the optional foreign keys. The second pass of a sheet is
+ * ready as soon as the first pass of the sheet itself and of all sheets it references are done, so both passes
+ * overlap without waiting for each other at a global barrier.
+ */
+public class SheetScheduler
+{
+  private final List<Sheet> sheets;
+  private final int passes;
+  private final long[] costs;
+  private final long[] ranks;
+  private final int[] masterCount;
+  private final List<List<Integer>> dependents;
+
+  /**
+   * Create the schedule of a single pass.
+   *
+   * @param sheets the sheets to process, masters must be listed before their dependent sheets
+   * @param sorter the strategy that sorted the sheets and knows their masters, <code>null</code> if the sheets do not
+   *          depend on each other
+   * @param costs the estimated cost of every sheet in the sequence of the sheets
+   */
+  public SheetScheduler(final List<Sheet> sheets, final SheetSortingStrategy sorter, final List<SheetCost> costs) {
+    this(sheets, sorter, null, costs);
+  }
+
+  /**
+   * Create the schedule of two passes, the second pass of a sheet follows the first pass of the sheets it references.
+   *
+   * @param sheets the sheets to process, masters must be listed before their dependent sheets
+   * @param sorter the strategy that sorted the sheets and knows their masters, <code>null</code> if the first passes
+   *          do not depend on each other
+   * @param references the sheets every sheet references in its second pass, <code>null</code> for a single pass
+   * @param costs the estimated cost of every sheet in the sequence of the sheets
+   */
+  public SheetScheduler(final List<Sheet> sheets, final SheetSortingStrategy sorter,
+                        final Map<Sheet, ? extends Collection<Sheet>> references, final List<SheetCost> costs)
+  {
+    this.sheets = new ArrayList<Sheet>(sheets);
+    this.passes = references == null ? 1 : 2;
+    int size = sheets.size();
+    int nodes = size * passes;
+    this.costs = new long[nodes];
+    this.ranks = new long[nodes];
+    this.masterCount = new int[nodes];
+    this.dependents = new ArrayList<List<Integer>>(nodes);
+
+    Map<Sheet, Integer> index = new IdentityHashMap<Sheet, Integer>();
+    for (int position = 0; position < size; ++position) {
+      index.put(sheets.get(position), position);
+    }
+    for (int node = 0; node < nodes; ++node) {
+      dependents.add(new ArrayList<Integer>(2));
+      this.costs[node] = costs.get(node % size).getCost();
+    }
+
+    if (sorter != null) {
+      for (int position = 0; position < size; ++position) {
+        for (Sheet master : sorter.getMasters(sheets.get(position))) {
+          Integer from = index.get(master);
+          if (from != null && from.intValue() != position) link(from, position);
+        }
+      }
+    }
+
+    if (references != null) {
+      for (int position = 0; position < size; ++position) {
+        link(position, size + position);
+        Collection<Sheet> referenced = references.get(sheets.get(position));
+        if (referenced == null) continue;
+        for (Sheet master : referenced) {
+          Integer from = index.get(master);
+          if (from != null && from.intValue() != position) link(from, size + position);
+        }
+      }
+    }
+
+    // dependent nodes are listed later, so their ranks are known when walking backwards
+    for (int node = nodes - 1; node >= 0; --node) {
+      long longest = 0;
+      for (int dependent : dependents.get(node)) {
+        longest = Math.max(longest, ranks[dependent]);
+      }
+      ranks[node] = this.costs[node] + longest;
+    }
+  }
+
+  /**
+   * Record that a node must wait for another one.
+   *
+   * @param master the node that must be done first
+   * @param dependent the node that waits for the master
+   */
+  private void link(final int master, final int dependent) {
+    dependents.get(master).add(dependent);
+    ++masterCount[dependent];
+  }
+
+  /** @return the number of passes run for every sheet */
+  public int getPasses() {
+    return passes;
+  }
+
+  /**
+   * @param sheet one of the scheduled sheets
+   * @return the estimated cost of the first pass of the sheet and the most expensive chain of work depending on it,
+   *         0 if unknown
+   */
+  public long getRank(final Sheet sheet) {
+    for (int position = 0; position < sheets.size(); ++position) {
+      if (sheets.get(position) == sheet) return ranks[position];
+    }
+    return 0;
+  }
+
+  /** @return the sheets in the sequence they are started by a single worker, once for every pass */
+  public List<Sheet> getOrder() {
+    List<Sheet> order = new ArrayList<Sheet>(ranks.length);
+    int[] pending = masterCount.clone();
+    PriorityQueue<Integer> ready = createQueue(pending);
+    while (!ready.isEmpty()) {
+      int node = ready.poll();
+      order.add(sheets.get(node % sheets.size()));
+      release(node, pending, ready);
+    }
+    return order;
+  }
+
+  /**
+   * Run the task for all sheets of a single pass schedule.
+   *
+   * If a task fails no further sheets are started, the running ones are awaited and the first failure is thrown.
+   *
+   * @param executor the workers to run the tasks, <code>null</code> to run them in the calling thread
+   * @param parallel the maximum number of sheets processed at the same time
+   * @param task the work to do for every sheet, never null
+   * @throws SQLException if any of the tasks fails
+   */
+  public void run(final ExecutorService executor, final int parallel, final SheetTask task)
+    throws SQLException
+  {
+    if (passes != 1) throw new IllegalStateException("Schedule requires a task for each of " + passes + " passes");
+    run(executor, parallel, new SheetTask[] {task});
+  }
+
+  /**
+   * Run both passes for all sheets of a two pass schedule.
+   *
+   * If a task fails no further sheets are started, the running ones are awaited and the first failure is thrown.
+   *
+   * @param executor the workers to run the tasks, <code>null</code> to run them in the calling thread
+   * @param parallel the maximum number of tasks processed at the same time
+   * @param first the work of the first pass for every sheet, never null
+   * @param second the work of the second pass for every sheet, never null
+   * @throws SQLException if any of the tasks fails
+   */
+  public void run(final ExecutorService executor, final int parallel, final SheetTask first, final SheetTask second)
+    throws SQLException
+  {
+    if (passes != 2) throw new IllegalStateException("Schedule has a single pass only");
+    run(executor, parallel, new SheetTask[] {first, second});
+  }
+
+  /**
+   * Run the tasks of all passes.
+   *
+   * @param executor the workers to run the tasks, <code>null</code> to run them in the calling thread
+   * @param parallel the maximum number of tasks processed at the same time
+   * @param tasks the work to do for every sheet by pass
+   * @throws SQLException if any of the tasks fails
+   */
+  private void run(final ExecutorService executor, final int parallel, final SheetTask[] tasks)
+    throws SQLException
+  {
+    int[] pending = masterCount.clone();
+    PriorityQueue<Integer> ready = createQueue(pending);
+    int size = sheets.size();
+
+    if (executor == null || parallel <= 1) {
+      while (!ready.isEmpty()) {
+        int node = ready.poll();
+        tasks[node / size].run(sheets.get(node % size));
+        release(node, pending, ready);
+      }
+      return;
+    }
+
+    CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+    Throwable failure = null;
+    int running = 0;
+    while (running > 0 || (failure == null && !ready.isEmpty())) {
+      while (failure == null && running < parallel && !ready.isEmpty()) {
+        int node = ready.poll();
+        completion.submit(new Job(tasks[node / size], node));
+        ++running;
+      }
+
+      try {
+        Future<Integer> done = completion.take();
+        --running;
+        release(done.get(), pending, ready);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        if (failure == null) failure = ex;
+        break;
+      } catch (ExecutionException ex) {
+        if (failure == null) failure = ex.getCause();
+      }
+    }
+
+    if (failure instanceof SQLException) throw (SQLException) failure;
+    if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+    if (failure instanceof Error) throw (Error) failure;
+    if (failure != null) throw new SQLException("Loading the sheets was interrupted: " + failure);
+  }
+
+  /**
+   * Create the queue of sheets that are ready to be started.
+   *
+   * @param pending the number of unfinished masters of every sheet and pass
+   * @return the queue that returns the sheet with the highest rank first, filled with all sheets without masters
+   */
+  private PriorityQueue<Integer> createQueue(final int[] pending) {
+    PriorityQueue<Integer> ready = new PriorityQueue<Integer>(Math.max(1, pending.length), new Priority());
+    for (int node = 0; node < pending.length; ++node) {
+      if (pending[node] == 0) ready.add(node);
+    }
+    return ready;
+  }
+
+  /**
+   * Mark a sheet as done and queue all dependent sheets whose masters are done.
+   *
+   * @param node the index of the finished sheet and pass
+   * @param pending the number of unfinished masters of every sheet and pass
+   * @param ready the queue of sheets that are ready to be started
+   */
+  private void release(final int node, final int[] pending, final PriorityQueue<Integer> ready) {
+    for (int dependent : dependents.get(node)) {
+      if (--pending[dependent] == 0) ready.add(dependent);
+    }
+  }
+
+  /** prefers the longest chain, then the largest sheet, then the sorted sequence */
+  private class Priority
+    implements Comparator<Integer>
+  {
+    /** {@inheritDoc} */
+    @Override
+    public int compare(final Integer left, final Integer right) {
+      if (ranks[left] != ranks[right]) return ranks[left] > ranks[right] ? -1 : 1;
+      if (costs[left] != costs[right]) return costs[left] > costs[right] ? -1 : 1;
+      return left.compareTo(right);
+    }
+  }
+
+  /** runs the task of a single pass of a sheet on a worker */
+  private class Job
+    implements Callable<Integer>
+  {
+    private final SheetTask task;
+    private final int node;
+
+    /**
+     * Create the job.
+     *
+     * @param task the work to do
+     * @param node the index of the sheet and pass to process
+     */
+    Job(final SheetTask task, final int node) {
+      this.task = task;
+      this.node = node;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Integer call()
+      throws SQLException
+    {
+      task.run(sheets.get(node % sheets.size()));
+      return node;
+    }
+  }
+}
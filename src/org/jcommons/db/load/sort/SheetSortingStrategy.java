@@ -1,5 +1,6 @@
 package org.jcommons.db.load.sort;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.sql.DataSource;
@@ -22,6 +23,24 @@ public interface SheetSortingStrategy
    */
   List<Sheet> sort(final List<Sheet> sheets);
 
+  /**
+   * Group the sheets into levels, so that a sheet depends only on sheets of earlier levels.
+   *
+   * The sheets within a level can be loaded in any order or at the same time.
+   *
+   * @param sheets the sheets to be loaded
+   * @return the sorted levels of sheets, the concatenation of all levels equals the sorted list of sheets
+   */
+  List<List<Sheet>> levels(final List<Sheet> sheets);
+
+  /**
+   * List the sheets that must be loaded before the given sheet, as determined by the last sort.
+   *
+   * @param sheet one of the sheets of the last sort
+   * @return the sheets the given sheet depends upon, can be empty but never null
+   */
+  Collection<Sheet> getMasters(final Sheet sheet);
+
   /** @return the validation messages for this sheet sequence */
   Message validate();
 
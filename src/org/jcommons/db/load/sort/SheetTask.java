@@ -0,0 +1,20 @@
+package org.jcommons.db.load.sort;
+
+import java.sql.SQLException;
+
+import org.jcommons.io.sheet.Sheet;
+
+/**
+ * The work performed for a single sheet when the sheets are scheduled, e.g. to load or to update it.
+ */
+public interface SheetTask
+{
+  /**
+   * Process the given sheet, may be called by several threads at the same time for different sheets.
+   *
+   * @param sheet the sheet to process, never null
+   * @throws SQLException if the sheet cannot be processed
+   */
+  void run(Sheet sheet)
+    throws SQLException;
+}
@@ -1,7 +1,6 @@
 package org.jcommons.db.load.sort;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 import javax.sql.DataSource;
 
@@ -10,7 +9,7 @@ import org.jcommons.message.Message;
 import org.jcommons.message.Messages;
 
 /**
- * A simple sorting strategy that does not sort but returns the same sheets.
+ * A simple sorting strategy that does not sort but returns the same sheets, every sheet forms a level of its own.
  *
  * @author Thorsten Goeckeler
  */
@@ -18,12 +17,41 @@ public class SimpleSheetSorter
   implements SheetSortingStrategy
 {
   private static Message errors = new Messages();
+  private final Map<Sheet, Sheet> previous = new HashMap<Sheet, Sheet>();
 
   /** {@inheritDoc} */
   @Override
   public List<Sheet> sort(final List<Sheet> sheets) {
-    if (sheets == null) return Collections.emptyList();
-    return sheets;
+    List<Sheet> sortedSheets = new ArrayList<Sheet>();
+    for (List<Sheet> level : levels(sheets)) {
+      sortedSheets.addAll(level);
+    }
+    return sortedSheets;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<List<Sheet>> levels(final List<Sheet> sheets) {
+    // nothing is known about the dependencies, so the given sequence must be kept
+    List<List<Sheet>> levels = new ArrayList<List<Sheet>>();
+    previous.clear();
+    if (sheets == null) return levels;
+
+    Sheet last = null;
+    for (Sheet sheet : sheets) {
+      levels.add(Collections.singletonList(sheet));
+      if (last != null) previous.put(sheet, last);
+      last = sheet;
+    }
+    return levels;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Collection<Sheet> getMasters(final Sheet sheet) {
+    Sheet master = previous.get(sheet);
+    if (master == null) return Collections.emptyList();
+    return Collections.singletonList(master);
   }
 
   /** {@inheritDoc} */
@@ -0,0 +1,55 @@
+package org.jcommons.db.load.source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Character sequence view on a region of ASCII encoded bytes of a buffer that does not copy the bytes.
+ */
+public final class BufferSlice
+  implements CharSequence
+{
+  private final ByteBuffer buffer;
+  private final int start;
+  private final int end;
+
+  /**
+   * Create a view on the given region, the buffer is only read by absolute index.
+   *
+   * @param buffer the encoded characters, never null
+   * @param start the index of the first byte
+   * @param end the index after the last byte
+   */
+  public BufferSlice(final ByteBuffer buffer, final int start, final int end) {
+    this.buffer = buffer;
+    this.start = start;
+    this.end = end;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int length() {
+    return end - start;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public char charAt(final int index) {
+    return (char) (buffer.get(start + index) & 0xff);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence subSequence(final int from, final int to) {
+    return new BufferSlice(buffer, start + from, start + to);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    char[] chars = new char[end - start];
+    for (int index = 0; index < chars.length; ++index) {
+      chars[index] = (char) (buffer.get(start + index) & 0xff);
+    }
+    return new String(chars);
+  }
+}
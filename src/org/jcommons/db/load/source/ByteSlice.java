@@ -0,0 +1,53 @@
+package org.jcommons.db.load.source;
+
+/**
+ * Character sequence view on a region of ISO-8859-1 encoded bytes that does not copy the bytes.
+ */
+public final class ByteSlice
+  implements CharSequence
+{
+  private final byte[] bytes;
+  private final int start;
+  private final int end;
+
+  /**
+   * Create a view on the given region.
+   *
+   * @param bytes the encoded characters, never null
+   * @param start the index of the first byte
+   * @param end the index after the last byte
+   */
+  public ByteSlice(final byte[] bytes, final int start, final int end) {
+    this.bytes = bytes;
+    this.start = start;
+    this.end = end;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int length() {
+    return end - start;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public char charAt(final int index) {
+    return (char) (bytes[start + index] & 0xff);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence subSequence(final int from, final int to) {
+    return new ByteSlice(bytes, start + from, start + to);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    char[] chars = new char[end - start];
+    for (int index = 0; index < chars.length; ++index) {
+      chars[index] = (char) (bytes[start + index] & 0xff);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,18 @@
+package org.jcommons.db.load.source;
+
+import java.sql.SQLException;
+
+/**
+ * Receives the chunks of a CSV file that is read in parallel.
+ */
+public interface ChunkHandler
+{
+  /**
+   * Process a chunk, called by the reading thread one chunk after the other.
+   *
+   * @param chunk the tokenized rows of a part of the file, never null
+   * @throws SQLException if the chunk cannot be loaded
+   */
+  void handle(CsvChunk chunk)
+    throws SQLException;
+}
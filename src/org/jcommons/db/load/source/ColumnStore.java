@@ -0,0 +1,218 @@
+package org.jcommons.db.load.source;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact storage of the values of a single column.
+ *
+ * Values start out dictionary encoded, every row only keeps the int code of its value. Once the column turns out to
+ * have too many distinct values all values are moved into an arena that stores the characters back to back with one
+ * offset per row. The arena keeps one byte per character as long as all characters fit into ISO-8859-1. In both
+ * cases <code>null</code> values are only tracked in a bitmap.
+ */
+public final class ColumnStore
+{
+  /** default maximum number of distinct values of a dictionary encoded column */
+  public static final int DICTIONARY = 65536;
+  /** number of rows after which a column with mostly distinct values is moved into the arena */
+  private static final int PROBATION = 1024;
+
+  private final int limit;
+  private int size = 0;
+  private long[] nulls = new long[16];
+
+  // dictionary encoding
+  private Map<String, Integer> lookup = new HashMap<String, Integer>();
+  private String[] words = new String[16];
+  private int[] codes = new int[256];
+
+  // arena encoding
+  private byte[] narrow;
+  private char[] wide;
+  private int used = 0;
+  private int[] offsets;
+
+  /** create a store with the default dictionary limit */
+  public ColumnStore() {
+    this(DICTIONARY);
+  }
+
+  /**
+   * Create a store.
+   *
+   * @param limit the maximum number of distinct values that are dictionary encoded
+   */
+  public ColumnStore(final int limit) {
+    this.limit = Math.max(1, limit);
+  }
+
+  /** @return the number of stored values */
+  public int size() {
+    return size;
+  }
+
+  /** @return true if the values are dictionary encoded */
+  public boolean isDictionary() {
+    return codes != null;
+  }
+
+  /** @return the number of distinct values of a dictionary encoded column, -1 if the values are stored in the arena */
+  public int getCardinality() {
+    return isDictionary() ? lookup == null ? words.length : lookup.size() : -1;
+  }
+
+  /**
+   * Append a value.
+   *
+   * @param value the value to append, can be <code>null</code>
+   */
+  public void add(final CharSequence value) {
+    if (size == nulls.length << 6) nulls = Arrays.copyOf(nulls, nulls.length << 1);
+    if (value == null) nulls[size >>> 6] |= 1L << size;
+
+    if (isDictionary()) {
+      encode(value == null ? "" : value);
+      if (lookup.size() > limit || (size == PROBATION && lookup.size() > PROBATION / 2)) toArena();
+    } else {
+      append(value == null ? "" : value);
+    }
+  }
+
+  /**
+   * Append the dictionary code of a value.
+   *
+   * @param value the value to append, never null
+   */
+  private void encode(final CharSequence value) {
+    String word = value.toString();
+    Integer code = lookup.get(word);
+    if (code == null) {
+      code = lookup.size();
+      lookup.put(word, code);
+      if (code == words.length) words = Arrays.copyOf(words, words.length << 1);
+      words[code] = word;
+    }
+
+    if (size == codes.length) codes = Arrays.copyOf(codes, codes.length << 1);
+    codes[size++] = code;
+  }
+
+  /** move all dictionary encoded values into the arena */
+  private void toArena() {
+    int count = size;
+    int[] previous = codes;
+    String[] dictionary = words;
+
+    codes = null;
+    words = null;
+    lookup = null;
+    offsets = new int[Math.max(256, count + 1)];
+    narrow = new byte[Math.max(1024, count * 8)];
+    size = 0;
+
+    for (int row = 0; row < count; ++row) {
+      append(dictionary[previous[row]]);
+    }
+  }
+
+  /**
+   * Append the characters of a value to the arena.
+   *
+   * @param value the value to append, never null
+   */
+  private void append(final CharSequence value) {
+    int length = value.length();
+    if (narrow != null) {
+      for (int index = 0; index < length; ++index) {
+        if (value.charAt(index) > 0xff) {
+          widen();
+          break;
+        }
+      }
+    }
+
+    ensure(used + length);
+    if (narrow != null) {
+      for (int index = 0; index < length; ++index) {
+        narrow[used++] = (byte) value.charAt(index);
+      }
+    } else {
+      for (int index = 0; index < length; ++index) {
+        wide[used++] = value.charAt(index);
+      }
+    }
+
+    if (size + 1 >= offsets.length) offsets = Arrays.copyOf(offsets, offsets.length << 1);
+    offsets[++size] = used;
+  }
+
+  /** switch the arena to two bytes per character */
+  private void widen() {
+    wide = new char[narrow.length];
+    for (int index = 0; index < used; ++index) {
+      wide[index] = (char) (narrow[index] & 0xff);
+    }
+    narrow = null;
+  }
+
+  /**
+   * Grow the arena if necessary.
+   *
+   * @param capacity the required number of characters
+   */
+  private void ensure(final int capacity) {
+    int length = narrow != null ? narrow.length : wide.length;
+    if (capacity <= length) return;
+
+    int grown = Math.max(capacity, length + (length >> 1));
+    if (narrow != null) {
+      narrow = Arrays.copyOf(narrow, grown);
+    } else {
+      wide = Arrays.copyOf(wide, grown);
+    }
+  }
+
+  /** release all spare capacity once all values are appended */
+  public void seal() {
+    nulls = Arrays.copyOf(nulls, (size + 63) >>> 6);
+    if (isDictionary()) {
+      codes = Arrays.copyOf(codes, size);
+      words = Arrays.copyOf(words, lookup.size());
+      lookup = null;
+    } else {
+      offsets = Arrays.copyOf(offsets, size + 1);
+      if (narrow != null) narrow = Arrays.copyOf(narrow, used);
+      if (wide != null) wide = Arrays.copyOf(wide, used);
+    }
+  }
+
+  /**
+   * Retrieve a value.
+   *
+   * @param row the row index starting with 0
+   * @return the value or <code>null</code>, values of the arena are returned as views without copying
+   */
+  public CharSequence get(final int row) {
+    if ((nulls[row >>> 6] & (1L << row)) != 0) return null;
+    if (isDictionary()) return words[codes[row]];
+    if (narrow != null) return new ByteSlice(narrow, offsets[row], offsets[row + 1]);
+    return CharBuffer.wrap(wide, offsets[row], offsets[row + 1] - offsets[row]);
+  }
+
+  /** @return the approximate number of bytes used by the stored values */
+  public long getMemorySize() {
+    long bytes = nulls.length * 8L;
+    if (isDictionary()) {
+      bytes += codes.length * 4L;
+      for (String word : words) {
+        if (word != null) bytes += 40 + word.length() * 2L;
+      }
+    } else {
+      bytes += offsets.length * 4L + (narrow != null ? narrow.length : wide.length * 2L);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,186 @@
+package org.jcommons.db.load.source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jcommons.io.sheet.Sheet;
+
+/**
+ * Row source that keeps the values column by column in compact stores instead of one string per cell.
+ *
+ * Columns with few distinct values are dictionary encoded, all others are packed into a character arena. Use the
+ * {@link Builder} to stream rows into the source while they are read, so the plain rows never have to be held at
+ * once. The source cannot be changed once it is built and can be read concurrently.
+ */
+public class ColumnarSource
+  implements RowSource
+{
+  private final List<String> columns;
+  private final ColumnStore[] stores;
+  private final int size;
+
+  /**
+   * Create the source from the filled stores.
+   *
+   * @param columns the column names
+   * @param stores the values of the columns in the same order
+   * @param size the number of rows
+   */
+  protected ColumnarSource(final List<String> columns, final ColumnStore[] stores, final int size) {
+    this.columns = Collections.unmodifiableList(new ArrayList<String>(columns));
+    this.stores = stores;
+    this.size = size;
+  }
+
+  /**
+   * Copy all values of the given source.
+   *
+   * @param source the source to copy, never null
+   * @return the columnar copy of the source
+   */
+  public static ColumnarSource of(final RowSource source) {
+    Builder builder = new Builder(source.getColumns());
+    CharSequence[] row = new CharSequence[source.getColumns().size()];
+    for (int index = 0; index < source.size(); ++index) {
+      for (int column = 0; column < row.length; ++column) {
+        row[column] = source.getValue(column, index);
+      }
+      builder.add(row);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Copy all values of the table of the given sheet.
+   *
+   * @param sheet the sheet to copy, never null
+   * @return the columnar copy of the sheet
+   */
+  public static ColumnarSource of(final Sheet sheet) {
+    return of(new TableRowSource(sheet));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRowNumber(final int row) {
+    return row;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void prepare(final int from, final int to) {
+    // all values are kept in memory already
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence getValue(final int column, final int row) {
+    return stores[column].get(row);
+  }
+
+  /**
+   * @param column the column index starting with 0
+   * @return the store that keeps the values of this column
+   */
+  public ColumnStore getStore(final int column) {
+    return stores[column];
+  }
+
+  /** @return the approximate number of bytes used by all values */
+  public long getMemorySize() {
+    long bytes = 0;
+    for (ColumnStore store : stores) {
+      bytes += store.getMemorySize();
+    }
+    return bytes;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    text.append(size).append(" rows, ").append(getMemorySize() >> 10).append(" KB: ");
+    for (int column = 0; column < stores.length; ++column) {
+      if (column > 0) text.append(", ");
+      text.append(columns.get(column));
+      int cardinality = stores[column].getCardinality();
+      text.append(cardinality < 0 ? " (arena)" : " (" + cardinality + " distinct)");
+    }
+    return text.toString();
+  }
+
+  /** streams rows into a new columnar source */
+  public static class Builder
+  {
+    private final List<String> columns;
+    private final ColumnStore[] stores;
+    private int size = 0;
+
+    /**
+     * Create an empty builder.
+     *
+     * @param columns the column names of the source, never null
+     */
+    public Builder(final List<String> columns) {
+      this.columns = new ArrayList<String>(columns);
+      this.stores = new ColumnStore[columns.size()];
+      for (int column = 0; column < stores.length; ++column) {
+        stores[column] = new ColumnStore();
+      }
+    }
+
+    /**
+     * Append a row, the values are copied so the given array can be reused.
+     *
+     * @param row the values in the order of the columns, missing values are <code>null</code>
+     * @return this to allow chaining
+     */
+    public Builder add(final CharSequence[] row) {
+      for (int column = 0; column < stores.length; ++column) {
+        stores[column].add(column < row.length ? row[column] : null);
+      }
+      ++size;
+      return this;
+    }
+
+    /**
+     * Append a row, the values are copied so the given list can be reused.
+     *
+     * @param row the values in the order of the columns, missing values are <code>null</code>
+     * @return this to allow chaining
+     */
+    public Builder add(final List<? extends CharSequence> row) {
+      for (int column = 0; column < stores.length; ++column) {
+        stores[column].add(column < row.size() ? row.get(column) : null);
+      }
+      ++size;
+      return this;
+    }
+
+    /** @return the number of rows added so far */
+    public int size() {
+      return size;
+    }
+
+    /** @return the source with all rows added so far, the builder must not be used afterwards */
+    public ColumnarSource build() {
+      for (ColumnStore store : stores) {
+        store.seal();
+      }
+      return new ColumnarSource(columns, stores, size);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.jcommons.db.load.source;
+
+import java.util.List;
+
+/**
+ * A consecutive part of a CSV file that was tokenized on its own.
+ *
+ * The rows of a chunk are addressed starting with 0, {@link #getRowNumber(int)} tells the number of a row within
+ * the whole file, so violations can be reported with their original row number.
+ */
+public class CsvChunk
+  implements RowSource
+{
+  private final List<String> columns;
+  private final CsvTokens tokens;
+  private final int index;
+  private final int firstRow;
+
+  /**
+   * Create a chunk.
+   *
+   * @param columns the column names of the file
+   * @param tokens the tokenized rows of this chunk
+   * @param index the sequence number of this chunk within the file
+   * @param firstRow the number of the first row of this chunk within the file
+   */
+  CsvChunk(final List<String> columns, final CsvTokens tokens, final int index, final int firstRow) {
+    this.columns = columns;
+    this.tokens = tokens;
+    this.index = index;
+    this.firstRow = firstRow;
+  }
+
+  /** @return the number of the first row of this chunk within the file */
+  public int getFirstRow() {
+    return firstRow;
+  }
+
+  /** @return the sequence number of this chunk within the file starting with 0 */
+  public int getIndex() {
+    return index;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    return tokens.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRowNumber(final int row) {
+    return firstRow + row;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void prepare(final int from, final int to) {
+    // the whole chunk is tokenized already
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence getValue(final int column, final int row) {
+    return tokens.get(column, row);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return "chunk " + index + " with rows " + firstRow + " to " + (firstRow + size() - 1);
+  }
+}
@@ -0,0 +1,82 @@
+package org.jcommons.db.load.source;
+
+/**
+ * Finds the record boundaries of CSV data byte by byte following the same rules as {@link CsvTokens}.
+ *
+ * A quote only opens a quoted field at the start of a field, blanks before it are ignored. Within a quoted field two
+ * quotes are an escaped quote and line breaks are part of the field. Quotes within unquoted fields and after the
+ * closing quote are plain characters. Both carriage return and line feed end a record outside of quoted fields, so
+ * CRLF ends a record followed by an empty line that is skipped.
+ *
+ * The transitions are looked up in a table per delimiter, so a scanner can be shared by concurrent scans.
+ */
+final class CsvScanner
+{
+  /** at the start of a field */
+  static final int START = 0;
+  /** within an unquoted field or after the closing quote of a quoted field */
+  static final int PLAIN = 1;
+  /** within a quoted field */
+  static final int QUOTED = 2;
+  /** after a quote within a quoted field, either the closing quote or the first of an escaped quote */
+  static final int CLOSING = 3;
+  /** the number of states */
+  static final int STATES = 4;
+
+  /** flag of a step that ends a record, the state after it is {@link #START} */
+  static final int BREAK = 4;
+  /** mask of the state within a step */
+  static final int STATE = 3;
+
+  private final byte[] steps = new byte[STATES << 8];
+
+  /**
+   * Create the transition table.
+   *
+   * @param delimiter the character that separates the fields, must be an ASCII character
+   */
+  CsvScanner(final char delimiter) {
+    for (int state = 0; state < STATES; ++state) {
+      for (int value = 0; value < 256; ++value) {
+        steps[(state << 8) | value] = (byte) step(state, (byte) value, delimiter);
+      }
+    }
+  }
+
+  /**
+   * Compute a single transition.
+   *
+   * @param state the current state
+   * @param b the next byte
+   * @param delimiter the character that separates the fields
+   * @return the next state, combined with {@link #BREAK} if the byte ends a record
+   */
+  private static int step(final int state, final byte b, final char delimiter) {
+    if (state == QUOTED) return b == '"' ? CLOSING : QUOTED;
+    if (b == '\n' || b == '\r') return START | BREAK;
+    if (state == CLOSING && b == '"') return QUOTED;
+    if (state == START && (b == ' ' || b == '\t')) return START;
+    if (b == delimiter) return START;
+    if (state == START && b == '"') return QUOTED;
+    return PLAIN;
+  }
+
+  /**
+   * Look up the transition for the next byte.
+   *
+   * @param state the current state
+   * @param b the next byte
+   * @return the next state, combined with {@link #BREAK} if the byte ends a record
+   */
+  int next(final int state, final byte b) {
+    return steps[(state << 8) | (b & 0xFF)];
+  }
+
+  /**
+   * @param b a byte that is not part of a quoted field
+   * @return true if the byte belongs to the content of a record, false if it is part of a line break
+   */
+  static boolean isContent(final byte b) {
+    return b != '\n' && b != '\r';
+  }
+}
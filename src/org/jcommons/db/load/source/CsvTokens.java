@@ -0,0 +1,211 @@
+package org.jcommons.db.load.source;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A range of CSV rows tokenized into the positions of their fields within a byte buffer.
+ *
+ * Unquoted fields are trimmed, empty lines are skipped. Fields are returned as views on the buffer unless they contain
+ * escaped quotes or non-ASCII bytes. Once created the tokens can be read concurrently.
+ */
+final class CsvTokens
+{
+  /** the field is a view on the bytes */
+  private static final byte PLAIN = 0;
+  /** the field must be decoded */
+  private static final byte ENCODED = 1;
+  /** the field contains escaped quotes and must be decoded */
+  private static final byte ESCAPED = 2;
+
+  private final ByteBuffer buffer;
+  private final Charset charset;
+  private final int first;
+  private final int count;
+  private final int width;
+  private final int[] positions;
+  private final byte[] flags;
+
+  /**
+   * Create the tokens.
+   *
+   * @param buffer the bytes of the rows
+   * @param charset the encoding of the bytes
+   * @param first the index of the first row
+   * @param count the number of rows
+   * @param width the number of fields per row
+   * @param positions the start and end of each field, -1 for missing fields
+   * @param flags whether the fields must be decoded
+   */
+  private CsvTokens(final ByteBuffer buffer, final Charset charset, final int first, final int count, final int width,
+                    final int[] positions, final byte[] flags)
+  {
+    this.buffer = buffer;
+    this.charset = charset;
+    this.first = first;
+    this.count = count;
+    this.width = width;
+    this.positions = positions;
+    this.flags = flags;
+  }
+
+  /**
+   * Tokenize a number of rows from the start of the given buffer.
+   *
+   * @param buffer the bytes of the rows, read by absolute index only
+   * @param charset the encoding of the bytes, must be compatible to ASCII
+   * @param delimiter the character that separates the fields, must be an ASCII character
+   * @param first the index of the first row, used to address the rows later on
+   * @param count the maximum number of rows to tokenize, fewer rows are tokenized if the buffer ends before
+   * @param width the number of fields per row, {@link Integer#MAX_VALUE} to take the width of a single header row
+   * @return the tokenized rows
+   */
+  static CsvTokens tokenize(final ByteBuffer buffer, final Charset charset, final char delimiter, final int first,
+                            final int count, final int width)
+  {
+    int limit = buffer.limit();
+
+    List<int[]> bounds = new ArrayList<int[]>();
+    int fields = width == Integer.MAX_VALUE ? 0 : width;
+    int[] positions = new int[Math.max(1, count * fields * 2)];
+    byte[] flags = new byte[Math.max(1, count * fields)];
+    Arrays.fill(positions, -1);
+
+    int position = 0;
+    int row = 0;
+    while (row < count) {
+      // skip empty lines
+      while (position < limit && (buffer.get(position) == '\n' || buffer.get(position) == '\r')) ++position;
+      if (position >= limit) break;
+
+      int column = 0;
+      boolean more = true;
+      while (more) {
+        int start;
+        int stop;
+        byte flag = PLAIN;
+        while (position < limit && isBlank(buffer.get(position))) ++position;
+
+        if (position < limit && buffer.get(position) == '"') {
+          start = ++position;
+          while (position < limit) {
+            byte b = buffer.get(position);
+            if (b == '"') {
+              if (position + 1 < limit && buffer.get(position + 1) == '"') {
+                flag = ESCAPED;
+                position += 2;
+                continue;
+              }
+              break;
+            }
+            if (b < 0 && flag == PLAIN) flag = ENCODED;
+            ++position;
+          }
+          stop = position;
+          if (position < limit) ++position;
+          while (position < limit && !isEnd(buffer.get(position), delimiter)) ++position;
+        } else {
+          start = position;
+          while (position < limit && !isEnd(buffer.get(position), delimiter)) {
+            if (buffer.get(position) < 0) flag = ENCODED;
+            ++position;
+          }
+          stop = position;
+          while (stop > start && isBlank(buffer.get(stop - 1))) --stop;
+        }
+
+        if (width == Integer.MAX_VALUE) {
+          bounds.add(new int[] {start, stop, flag});
+        } else if (column < fields) {
+          int slot = row * fields + column;
+          positions[slot * 2] = start;
+          positions[slot * 2 + 1] = stop;
+          flags[slot] = flag;
+        }
+        ++column;
+
+        more = position < limit && buffer.get(position) == delimiter;
+        if (more) ++position;
+      }
+      ++row;
+
+      // skip the line break
+      if (position < limit && buffer.get(position) == '\r') ++position;
+      if (position < limit && buffer.get(position) == '\n') ++position;
+    }
+
+    if (width == Integer.MAX_VALUE) {
+      fields = bounds.size();
+      positions = new int[Math.max(1, fields * 2)];
+      flags = new byte[Math.max(1, fields)];
+      for (int column = 0; column < fields; ++column) {
+        positions[column * 2] = bounds.get(column)[0];
+        positions[column * 2 + 1] = bounds.get(column)[1];
+        flags[column] = (byte) bounds.get(column)[2];
+      }
+    }
+
+    return new CsvTokens(buffer, charset, first, row, fields, positions, flags);
+  }
+
+  /**
+   * @param b the byte to inspect
+   * @param delimiter the character that separates the fields
+   * @return true if the byte ends a field
+   */
+  private static boolean isEnd(final byte b, final char delimiter) {
+    return b == delimiter || b == '\n' || b == '\r';
+  }
+
+  /**
+   * @param b the byte to inspect
+   * @return true if the byte is a blank that is trimmed from unquoted fields
+   */
+  private static boolean isBlank(final byte b) {
+    return b == ' ' || b == '\t';
+  }
+
+  /** @return the number of tokenized rows */
+  int size() {
+    return count;
+  }
+
+  /** @return the number of fields per row */
+  int width() {
+    return width;
+  }
+
+  /**
+   * @param row the row index
+   * @return true if the row is tokenized
+   */
+  boolean contains(final int row) {
+    return row >= first && row < first + count;
+  }
+
+  /**
+   * Retrieve a field.
+   *
+   * @param column the column index
+   * @param row the row index
+   * @return the field or <code>null</code> if the row has not enough fields
+   */
+  CharSequence get(final int column, final int row) {
+    int slot = (row - first) * width + column;
+    int start = positions[slot * 2];
+    if (start < 0) return null;
+    int stop = positions[slot * 2 + 1];
+
+    if (flags[slot] == PLAIN) return new BufferSlice(buffer, start, stop);
+
+    byte[] bytes = new byte[stop - start];
+    for (int index = 0; index < bytes.length; ++index) {
+      bytes[index] = buffer.get(start + index);
+    }
+    String value = new String(bytes, charset);
+    return flags[slot] == ESCAPED ? value.replace("\"\"", "\"") : value;
+  }
+}
@@ -0,0 +1,264 @@
+package org.jcommons.db.load.source;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Row source that reads a CSV file through a memory mapped buffer without copying the fields into strings.
+ *
+ * On creation the file is scanned once to count the rows and to remember the offset of every 128th row. Reading
+ * a range of rows maps just this part of the file and tokenizes it at once. Fields are returned as views on the
+ * mapped bytes and unquoted fields are trimmed while they are tokenized. Only fields with escaped quotes or
+ * non-ASCII characters are decoded into strings. The first row holds the column names and empty lines are skipped.
+ * Rows are found by the same rules as fields are tokenized, see {@link CsvScanner}.
+ *
+ * A source keeps the file open until it is closed. It can be read concurrently.
+ */
+public class MappedCsvSource
+  implements RowSource, Closeable
+{
+  /** default number of rows between two remembered row offsets */
+  public static final int STRIDE = 128;
+  /** default number of rows tokenized at once if the rows were not prepared */
+  public static final int WINDOW = 4096;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int SEGMENT = 1 << 28;
+
+  private final File file;
+  private final char delimiter;
+  private final Charset charset;
+  private final RandomAccessFile input;
+  private final FileChannel channel;
+
+  private final List<String> columns;
+  private long[] offsets = new long[64];
+  private long end;
+  private int size = 0;
+
+  private volatile CsvTokens window;
+
+  /**
+   * Open a comma separated UTF-8 encoded file.
+   *
+   * @param file the file to read, never null
+   * @throws IOException if the file cannot be read
+   */
+  public MappedCsvSource(final File file)
+    throws IOException
+  {
+    this(file, ',', UTF8);
+  }
+
+  /**
+   * Open a CSV file.
+   *
+   * @param file the file to read, never null
+   * @param delimiter the character that separates the fields, must be an ASCII character
+   * @param charset the encoding of the file, must be compatible to ASCII
+   * @throws IOException if the file cannot be read
+   */
+  public MappedCsvSource(final File file, final char delimiter, final Charset charset)
+    throws IOException
+  {
+    this.file = file;
+    this.delimiter = delimiter;
+    this.charset = charset;
+    this.input = new RandomAccessFile(file, "r");
+    this.channel = input.getChannel();
+
+    try {
+      long start = index();
+      CsvTokens header = tokenize(-1, start, end, 1, Integer.MAX_VALUE);
+      List<String> names = new ArrayList<String>();
+      for (int column = 0; column < header.width(); ++column) {
+        CharSequence name = header.get(column, -1);
+        names.add(name == null ? "" : name.toString().trim());
+      }
+      columns = Collections.unmodifiableList(names);
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /** @return the file that is read */
+  public File getFile() {
+    return file;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRowNumber(final int row) {
+    return row;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void prepare(final int from, final int to) {
+    if (from >= to || from < 0 || from >= size) return;
+
+    CsvTokens current = window;
+    if (current != null && current.contains(from) && current.contains(to - 1)) return;
+    window = load(from, to - from);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence getValue(final int column, final int row) {
+    CsvTokens current = window;
+    if (current == null || !current.contains(row)) {
+      current = load(row, WINDOW);
+      window = current;
+    }
+    return current.get(column, row);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close()
+    throws IOException
+  {
+    window = null;
+    input.close();
+  }
+
+  /**
+   * Scan the whole file once, count the rows and remember the offset of every row at a stride.
+   *
+   * @return the offset of the header row
+   * @throws IOException if the file cannot be read
+   */
+  private long index()
+    throws IOException
+  {
+    long length = channel.size();
+    long header = -1;
+    CsvScanner scanner = new CsvScanner(delimiter);
+    int state = CsvScanner.START;
+    boolean empty = true;
+    long start = 0;
+    int rows = -1;
+
+    for (long base = 0; base < length; base += SEGMENT) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(SEGMENT, length - base));
+      int limit = buffer.limit();
+      int position = 0;
+
+      // skip the byte order mark
+      if (base == 0 && limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+          && buffer.get(2) == (byte) 0xBF) {
+        position = 3;
+        start = 3;
+      }
+
+      for (; position < limit; ++position) {
+        byte b = buffer.get(position);
+        int step = scanner.next(state, b);
+        state = step & CsvScanner.STATE;
+        if (step >= CsvScanner.BREAK) {
+          if (!empty) {
+            if (rows < 0) {
+              header = start;
+            } else {
+              remember(rows, start);
+            }
+            ++rows;
+          }
+          empty = true;
+          start = base + position + 1;
+        } else if (CsvScanner.isContent(b)) {
+          empty = false;
+        }
+      }
+    }
+
+    if (!empty) {
+      if (rows < 0) {
+        header = start;
+      } else {
+        remember(rows, start);
+      }
+      ++rows;
+    }
+
+    if (header < 0) throw new IOException("CSV file " + file + " has no header");
+    end = length;
+    size = Math.max(0, rows);
+    return header;
+  }
+
+  /**
+   * Remember the offset of a row if it is at the stride.
+   *
+   * @param row the row index
+   * @param offset the offset of the first byte of the row
+   */
+  private void remember(final int row, final long offset) {
+    if (row % STRIDE != 0) return;
+    int slot = row / STRIDE;
+    if (slot == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length << 1);
+    offsets[slot] = offset;
+  }
+
+  /**
+   * Map and tokenize a range of rows.
+   *
+   * @param from the first row to read
+   * @param count the number of rows to read
+   * @return the tokenized rows
+   */
+  private CsvTokens load(final int from, final int count) {
+    if (from < 0 || from >= size) throw new IndexOutOfBoundsException("Row " + from + " of " + size);
+
+    int first = from - from % STRIDE;
+    int last = Math.min(size, from + Math.max(1, count));
+    int next = (last + STRIDE - 1) / STRIDE;
+    long stop = next * STRIDE < size ? offsets[next] : end;
+    try {
+      return tokenize(first, offsets[first / STRIDE], stop, last - first, columns.size());
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot read " + file, ex);
+    }
+  }
+
+  /**
+   * Tokenize a number of rows starting at the given offset.
+   *
+   * @param first the index of the first row, -1 for the header
+   * @param offset the offset of the first row in the file
+   * @param until the offset after the last row in the file
+   * @param count the number of rows to tokenize
+   * @param width the number of fields per row, unlimited for the header
+   * @return the tokenized rows
+   * @throws IOException if the file cannot be mapped
+   */
+  private CsvTokens tokenize(final int first, final long offset, final long until, final int count, final int width)
+    throws IOException
+  {
+    long length = Math.min(until - offset, Integer.MAX_VALUE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    return CsvTokens.tokenize(buffer, charset, delimiter, first, count, width);
+  }
+}
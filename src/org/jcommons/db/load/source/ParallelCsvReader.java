@@ -0,0 +1,489 @@
+package org.jcommons.db.load.source;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads a single large CSV file in parallel by splitting it into byte ranges.
+ *
+ * A first parallel pass scans every range once and records, for every state of the {@link CsvScanner} the range may
+ * start in, where its first record ends, how many records end within it and in which state it ends. Walking the
+ * ranges in order then resolves the state at every range start, which gives exact record boundaries and the number
+ * of the first row of every chunk without reading anything twice. A second parallel pass tokenizes the chunks, which are
+ * handed over to a {@link ChunkHandler} either in file order or as soon as they are ready.
+ *
+ * The first row of the file holds the column names and empty lines are skipped, just as in {@link MappedCsvSource}.
+ */
+public class ParallelCsvReader
+  implements Closeable
+{
+  /** default number of bytes per range */
+  public static final long RANGE = 16L << 20;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File file;
+  private final char delimiter;
+  private final Charset charset;
+  private final RandomAccessFile input;
+  private final FileChannel channel;
+  private final List<String> columns;
+  private final long start;
+  private final long end;
+  private final CsvScanner scanner;
+
+  private ExecutorService executor;
+  private long range = RANGE;
+  private boolean ordered = true;
+
+  /**
+   * Open a comma separated UTF-8 encoded file.
+   *
+   * @param file the file to read, never null
+   * @throws IOException if the file cannot be read
+   */
+  public ParallelCsvReader(final File file)
+    throws IOException
+  {
+    this(file, ',', UTF8);
+  }
+
+  /**
+   * Open a CSV file and read its header.
+   *
+   * @param file the file to read, never null
+   * @param delimiter the character that separates the fields, must be an ASCII character
+   * @param charset the encoding of the file, must be compatible to ASCII
+   * @throws IOException if the file cannot be read
+   */
+  public ParallelCsvReader(final File file, final char delimiter, final Charset charset)
+    throws IOException
+  {
+    this.file = file;
+    this.delimiter = delimiter;
+    this.charset = charset;
+    this.input = new RandomAccessFile(file, "r");
+    this.channel = input.getChannel();
+    this.scanner = new CsvScanner(delimiter);
+
+    try {
+      end = channel.size();
+      long[] row = findHeader(skipMark());
+      start = row[1];
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, row[0], row[1] - row[0]);
+      CsvTokens header = CsvTokens.tokenize(buffer, charset, delimiter, 0, 1, Integer.MAX_VALUE);
+
+      List<String> names = new ArrayList<String>();
+      for (int column = 0; column < header.width(); ++column) {
+        CharSequence name = header.get(column, 0);
+        names.add(name == null ? "" : name.toString().trim());
+      }
+      columns = Collections.unmodifiableList(names);
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * @return the offset after the byte order mark if there is one
+   * @throws IOException if the file cannot be read
+   */
+  private long skipMark()
+    throws IOException
+  {
+    if (end < 3) return 0;
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 3);
+    boolean mark = buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF;
+    return mark ? 3 : 0;
+  }
+
+  /**
+   * Find the header row, which is the first non-empty row.
+   *
+   * @param first the offset after the byte order mark
+   * @return the offset of the header row and the offset after its line break
+   * @throws IOException if the file cannot be read or has no header
+   */
+  private long[] findHeader(final long first)
+    throws IOException
+  {
+    long header = first;
+    int state = CsvScanner.START;
+    boolean empty = true;
+    for (long base = first; base < end; base += RANGE) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(RANGE, end - base));
+      for (int position = 0; position < buffer.limit(); ++position) {
+        byte b = buffer.get(position);
+        int step = scanner.next(state, b);
+        state = step & CsvScanner.STATE;
+        if (step >= CsvScanner.BREAK) {
+          if (!empty) return new long[] {header, base + position + 1};
+          header = base + position + 1;
+        } else if (CsvScanner.isContent(b)) {
+          empty = false;
+        }
+      }
+    }
+
+    if (empty) throw new IOException("CSV file " + file + " has no header");
+    return new long[] {header, end};
+  }
+
+  /** @return the file that is read */
+  public File getFile() {
+    return file;
+  }
+
+  /** @return the column names of the file */
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /** @return the executor that scans and tokenizes the ranges, <code>null</code> to read in the calling thread */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Inject the executor that scans and tokenizes the ranges in parallel.
+   *
+   * @param executor the executor to use, <code>null</code> to read in the calling thread
+   * @return this to allow chaining
+   */
+  public ParallelCsvReader setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /** @return the number of bytes per range */
+  public long getRange() {
+    return range;
+  }
+
+  /**
+   * Define the size of the ranges, which is also the approximate size of the chunks.
+   *
+   * @param range the number of bytes per range, at most 1GB
+   * @return this to allow chaining
+   */
+  public ParallelCsvReader setRange(final long range) {
+    this.range = Math.max(1, Math.min(range, 1L << 30));
+    return this;
+  }
+
+  /** @return true if the chunks are handed over in file order */
+  public boolean isOrdered() {
+    return ordered;
+  }
+
+  /**
+   * Define whether the chunks are handed over in file order or as soon as they are tokenized.
+   *
+   * @param ordered true to keep the file order, false to hand over chunks as soon as they are ready
+   * @return this to allow chaining
+   */
+  public ParallelCsvReader setOrdered(final boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * Read the whole file and hand over all chunks.
+   *
+   * @param handler receives the chunks in the calling thread, never null
+   * @return the number of rows read
+   * @throws IOException if the file cannot be read
+   * @throws SQLException if the handler fails
+   */
+  public int read(final ChunkHandler handler)
+    throws IOException, SQLException
+  {
+    List<long[]> chunks = split(scan());
+    int rows = 0;
+    if (executor == null) {
+      for (int index = 0; index < chunks.size(); ++index) {
+        CsvChunk chunk = tokenize(chunks.get(index), index);
+        handler.handle(chunk);
+        rows += chunk.size();
+      }
+      return rows;
+    }
+
+    // keep a limited number of chunks in flight, so memory does not depend on the file size
+    int window = 2 * Math.max(2, Runtime.getRuntime().availableProcessors());
+    CompletionService<CsvChunk> completion = new ExecutorCompletionService<CsvChunk>(executor);
+    LinkedList<Future<CsvChunk>> pending = new LinkedList<Future<CsvChunk>>();
+    int submitted = 0;
+    try {
+      while (submitted < chunks.size() && pending.size() < window) {
+        pending.add(completion.submit(new Tokenizer(chunks.get(submitted), submitted)));
+        ++submitted;
+      }
+
+      while (!pending.isEmpty()) {
+        CsvChunk chunk;
+        if (ordered) {
+          chunk = get(pending.removeFirst());
+        } else {
+          Future<CsvChunk> done = take(completion);
+          pending.remove(done);
+          chunk = get(done);
+        }
+
+        if (submitted < chunks.size()) {
+          pending.add(completion.submit(new Tokenizer(chunks.get(submitted), submitted)));
+          ++submitted;
+        }
+
+        handler.handle(chunk);
+        rows += chunk.size();
+      }
+    } finally {
+      for (Future<CsvChunk> future : pending) {
+        future.cancel(true);
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Scan all ranges of the file for all possible scanner states at their start.
+   *
+   * @return the scan result of every range in file order
+   * @throws IOException if the file cannot be read
+   */
+  private List<Scan> scan()
+    throws IOException
+  {
+    List<Scan> scans = new ArrayList<Scan>();
+    for (long base = start; base < end; base += range) {
+      scans.add(new Scan(base, Math.min(base + range, end)));
+    }
+
+    if (executor == null) {
+      for (Scan scan : scans) {
+        scan.call();
+      }
+    } else {
+      List<Future<Scan>> futures = new ArrayList<Future<Scan>>();
+      for (Scan scan : scans) {
+        futures.add(executor.submit(scan));
+      }
+      for (Future<Scan> future : futures) {
+        get(future);
+      }
+    }
+    return scans;
+  }
+
+  /**
+   * Resolve the scanner state at the start of every range and derive the chunks.
+   *
+   * Every chunk ends after the first record that ends within the following range, ranges without any record end are
+   * merged into the previous chunk.
+   *
+   * @param scans the scan results of all ranges in file order
+   * @return the start offset, end offset, number of the first row and number of rows of every chunk
+   */
+  private List<long[]> split(final List<Scan> scans) {
+    List<long[]> chunks = new ArrayList<long[]>();
+    long from = start;
+    long firstRow = 0;
+    long rows = 0;
+    boolean pending = false;
+    int state = CsvScanner.START;
+
+    for (int index = 0; index < scans.size(); ++index) {
+      Scan scan = scans.get(index);
+      if (scan.breaks[state] < 0) {
+        pending |= scan.tails[state];
+      } else if (index == 0) {
+        rows = (scan.heads[state] ? 1 : 0) + scan.rows[state];
+        pending = scan.tails[state];
+      } else {
+        if (pending || scan.heads[state]) ++rows;
+        if (rows > 0) chunks.add(new long[] {from, scan.breaks[state] + 1, firstRow, rows});
+        firstRow += rows;
+        from = scan.breaks[state] + 1;
+        rows = scan.rows[state];
+        pending = scan.tails[state];
+      }
+      state = scan.exits[state];
+    }
+
+    if (pending) ++rows;
+    if (rows > 0) chunks.add(new long[] {from, end, firstRow, rows});
+    return chunks;
+  }
+
+  /**
+   * Tokenize a chunk.
+   *
+   * @param chunk the start offset, end offset, number of the first row and number of rows of the chunk
+   * @param index the sequence number of the chunk
+   * @return the tokenized chunk
+   * @throws IOException if the file cannot be read
+   */
+  private CsvChunk tokenize(final long[] chunk, final int index)
+    throws IOException
+  {
+    long length = chunk[1] - chunk[0];
+    if (length > Integer.MAX_VALUE) throw new IOException("Record at row " + chunk[2] + " exceeds 2GB in " + file);
+
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], length);
+    CsvTokens tokens = CsvTokens.tokenize(buffer, charset, delimiter, 0, (int) chunk[3], columns.size());
+    if (tokens.size() != chunk[3]) {
+      throw new IOException("Expected " + chunk[3] + " rows but found " + tokens.size() + " in chunk " + index);
+    }
+    return new CsvChunk(columns, tokens, index, (int) chunk[2]);
+  }
+
+  /**
+   * Wait for a task and unwrap its failure.
+   *
+   * @param <T> the result type of the task
+   * @param future the task to wait for
+   * @return the result of the task
+   * @throws IOException if the task failed to read the file
+   */
+  private static <T> T get(final Future<T> future)
+    throws IOException
+  {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Reading was interrupted");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+      if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+      if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  /**
+   * Wait for the next finished task.
+   *
+   * @param completion the service the tasks were submitted to
+   * @return the finished task
+   * @throws IOException if waiting was interrupted
+   */
+  private static Future<CsvChunk> take(final CompletionService<CsvChunk> completion)
+    throws IOException
+  {
+    try {
+      return completion.take();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Reading was interrupted");
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close()
+    throws IOException
+  {
+    input.close();
+  }
+
+  /** scans a range for every scanner state at its start, the arrays are indexed by the state at the start */
+  private class Scan
+    implements Callable<Scan>
+  {
+    private final long from;
+    private final long to;
+
+    /** the state at the end of the range */
+    private final int[] exits = new int[CsvScanner.STATES];
+    /** the offset of the first line break outside of quotes, -1 if none */
+    private final long[] breaks = new long[CsvScanner.STATES];
+    /** the number of non-empty records that end after the first line break */
+    private final long[] rows = new long[CsvScanner.STATES];
+    /** true if the record that ends at the first line break has content within this range */
+    private final boolean[] heads = new boolean[CsvScanner.STATES];
+    /** true if the record that is open at the end of the range has content within this range */
+    private final boolean[] tails = new boolean[CsvScanner.STATES];
+
+    /**
+     * Create the scan.
+     *
+     * @param from the offset of the first byte of the range
+     * @param to the offset after the last byte of the range
+     */
+    Scan(final long from, final long to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Scan call()
+      throws IOException
+    {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+      int limit = buffer.limit();
+      int[] states = {CsvScanner.START, CsvScanner.PLAIN, CsvScanner.QUOTED, CsvScanner.CLOSING};
+      Arrays.fill(breaks, -1);
+
+      for (int position = 0; position < limit; ++position) {
+        byte b = buffer.get(position);
+        boolean content = CsvScanner.isContent(b);
+        for (int start = 0; start < states.length; ++start) {
+          int step = scanner.next(states[start], b);
+          states[start] = step & CsvScanner.STATE;
+          if (step < CsvScanner.BREAK) {
+            tails[start] |= content;
+          } else if (breaks[start] < 0) {
+            breaks[start] = from + position;
+            heads[start] = tails[start];
+            tails[start] = false;
+          } else {
+            if (tails[start]) ++rows[start];
+            tails[start] = false;
+          }
+        }
+      }
+
+      System.arraycopy(states, 0, exits, 0, states.length);
+      return this;
+    }
+  }
+
+  /** tokenizes a single chunk */
+  private class Tokenizer
+    implements Callable<CsvChunk>
+  {
+    private final long[] chunk;
+    private final int index;
+
+    /**
+     * Create the task.
+     *
+     * @param chunk the start offset, end offset, number of the first row and number of rows of the chunk
+     * @param index the sequence number of the chunk
+     */
+    Tokenizer(final long[] chunk, final int index) {
+      this.chunk = chunk;
+      this.index = index;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CsvChunk call()
+      throws IOException
+    {
+      return tokenize(chunk, index);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package org.jcommons.db.load.source;
+
+import java.util.List;
+
+/**
+ * A view on selected rows of another source in a given order.
+ *
+ * The rows are read straight from the underlying source, which should allow fast random access, e.g. a
+ * {@link ColumnarSource} or a {@link TableRowSource}. Violations are still reported with the original row numbers.
+ */
+public class RowSelection
+  implements RowSource
+{
+  private final RowSource source;
+  private final int[] rows;
+
+  /**
+   * Create the view.
+   *
+   * @param source the source to read the rows from, never null
+   * @param rows the indices of the selected rows within the source in the order they shall be read, never null
+   */
+  public RowSelection(final RowSource source, final int[] rows) {
+    this.source = source;
+    this.rows = rows;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<String> getColumns() {
+    return source.getColumns();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    return rows.length;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRowNumber(final int row) {
+    return source.getRowNumber(rows[row]);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence getValue(final int column, final int row) {
+    return source.getValue(column, rows[row]);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void prepare(final int from, final int to) {
+    // the selected rows are scattered, so the source is read row by row
+  }
+}
@@ -0,0 +1,45 @@
+package org.jcommons.db.load.source;
+
+import java.util.List;
+
+/**
+ * Random access to the plain values of a sheet by column and row index.
+ *
+ * Implementations must allow concurrent reads of different columns, as sheets are converted one column at a time.
+ */
+public interface RowSource
+{
+  /** @return the column names in the order of their column index, never <code>null</code> */
+  List<String> getColumns();
+
+  /** @return the number of rows */
+  int size();
+
+  /**
+   * Map a row index to the number of the row within the original data, e.g. if this source is part of a larger file
+   * or a selection of rows in a different order.
+   *
+   * @param row the row index starting with 0
+   * @return the row number used to report violations, starting with 0
+   */
+  int getRowNumber(final int row);
+
+  /**
+   * Retrieve a single plain value.
+   *
+   * @param column the column index starting with 0
+   * @param row the row index starting with 0
+   * @return the plain value, <code>null</code> if the value is not given
+   */
+  CharSequence getValue(final int column, final int row);
+
+  /**
+   * Announce that the given rows are read next, e.g. to read or tokenize them at once.
+   *
+   * Rows outside of the announced range can still be read, but may be slower to access.
+   *
+   * @param from the index of the first row that is read next
+   * @param to the index after the last row that is read next
+   */
+  void prepare(final int from, final int to);
+}
@@ -0,0 +1,56 @@
+package org.jcommons.db.load.source;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcommons.io.sheet.Sheet;
+
+/**
+ * Row source that reads the values from the table of a sheet.
+ */
+public class TableRowSource
+  implements RowSource
+{
+  private final Sheet sheet;
+  private final List<String> columns;
+
+  /**
+   * Create a row source for the given sheet.
+   *
+   * @param sheet the sheet to read the values from, never null
+   */
+  public TableRowSource(final Sheet sheet) {
+    this.sheet = sheet;
+    this.columns = new ArrayList<String>(sheet.getTable().getColumns());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    return sheet.getTable().size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRowNumber(final int row) {
+    return row;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void prepare(final int from, final int to) {
+    // all values are kept in memory already
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence getValue(final int column, final int row) {
+    return sheet.getTable().getValue(columns.get(column), row);
+  }
+}
@@ -0,0 +1,265 @@
+package org.jcommons.db.load.verify;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.converter.PrimitiveValue;
+import org.jcommons.db.load.sheet.ColumnVector;
+
+/**
+ * Order independent summary of the values loaded into a single column.
+ *
+ * Every column counts its non-null values. Depending on the type the values are summed up exactly, summed up as
+ * floating point numbers, their characters are summed up or their range is kept. All of these figures can be computed
+ * by plain SQL aggregates as well, so the loaded values can be verified without reading them back.
+ *
+ * Lengths and ranges miss values that changed within the same length or within the range, so the hash codes of texts
+ * and dates are summed up in addition. This checksum has no portable SQL aggregate, it is compared with the values
+ * read back from the database by {@link LoadVerifier#setContent(boolean)}.
+ */
+public class ColumnDigest
+{
+  /** only the non-null values are counted */
+  public static final int COUNT = 0;
+  /** whole and fixed point numbers are summed up exactly */
+  public static final int SUM = 1;
+  /** floating point numbers are summed up approximately */
+  public static final int FLOATING = 2;
+  /** the characters of variable length text are summed up */
+  public static final int LENGTH = 3;
+  /** the smallest and largest date or time stamp are kept */
+  public static final int RANGE = 4;
+
+  private final MetaColumn meta;
+  private final int kind;
+
+  private long count;
+  private long integral;
+  private BigDecimal decimal;
+  private double real;
+  private long length;
+  private Date min;
+  private Date max;
+  private long checksum;
+
+  /**
+   * Create an empty digest.
+   *
+   * @param meta the meta data of the column, never null
+   */
+  public ColumnDigest(final MetaColumn meta) {
+    this.meta = meta;
+    this.kind = kindOf(meta);
+  }
+
+  /**
+   * Determine which summary is kept for a column.
+   *
+   * @param meta the meta data of the column, never null
+   * @return the kind of digest as defined above
+   */
+  public static int kindOf(final MetaColumn meta) {
+    if (meta.isClob() || meta.isBlob()) return COUNT;
+    if (meta.isFloating()) return FLOATING;
+    if (meta.isNumeric()) return SUM;
+    if (meta.isDate() || meta.isTimestamp()) return RANGE;
+
+    // fixed length text is padded by the database, so only variable length text is measured
+    int sqlType = meta.getSqlType();
+    if (sqlType == Types.VARCHAR || sqlType == Types.NVARCHAR) return LENGTH;
+    return COUNT;
+  }
+
+  /**
+   * Add a converted value.
+   *
+   * @param vector the converted values of a chunk
+   * @param row the row index within the chunk
+   */
+  public void add(final ColumnVector vector, final int row) {
+    int type = vector.getKind(row);
+    if (type == PrimitiveValue.NULL) return;
+    ++count;
+
+    switch (kind) {
+      case SUM:
+        if (type == PrimitiveValue.LONG) {
+          addLong(vector.getLong(row));
+        } else if (type == PrimitiveValue.DECIMAL) {
+          addDecimal(BigDecimal.valueOf(vector.getLong(row), vector.getScale(row)));
+        } else if (type == PrimitiveValue.DOUBLE) {
+          addDecimal(BigDecimal.valueOf(vector.getDouble(row)));
+        } else {
+          Object value = vector.getObject(row);
+          if (value instanceof Number) addDecimal(new BigDecimal(value.toString()));
+        }
+        break;
+      case FLOATING:
+        if (type == PrimitiveValue.DOUBLE) {
+          real += vector.getDouble(row);
+        } else {
+          Object value = vector.getObject(row);
+          if (value instanceof Number) real += ((Number) value).doubleValue();
+        }
+        break;
+      case LENGTH:
+        String text = String.valueOf(vector.getObject(row));
+        length += text.length();
+        checksum += hash(text);
+        break;
+      case RANGE:
+        Object value = vector.getObject(row);
+        if (value instanceof Date) addDate((Date) value);
+        checksum += hash(value);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Add a whole number, switches to exact decimal arithmetic on overflow.
+   *
+   * @param value the number to add
+   */
+  private void addLong(final long value) {
+    long sum = integral + value;
+    if (((integral ^ sum) & (value ^ sum)) < 0) {
+      addDecimal(BigDecimal.valueOf(value));
+    } else {
+      integral = sum;
+    }
+  }
+
+  /**
+   * Add a fixed point number.
+   *
+   * @param value the number to add, never null
+   */
+  private void addDecimal(final BigDecimal value) {
+    decimal = decimal == null ? value : decimal.add(value);
+  }
+
+  /**
+   * Widen the range of dates.
+   *
+   * @param value the date to include, never null
+   */
+  private void addDate(final Date value) {
+    if (min == null || value.getTime() < min.getTime()) min = value;
+    if (max == null || value.getTime() > max.getTime()) max = value;
+  }
+
+  /**
+   * Compute the hash code of a single value that is summed up into the checksum.
+   *
+   * Texts are hashed by their characters and dates by their instant including the nanoseconds of time stamps, so a
+   * value read back from the database yields the same hash code as the value that was loaded. The hash code is spread
+   * over all bits, so that changes of several values are unlikely to cancel out in the sum.
+   *
+   * @param value the loaded or read value, <code>null</code> is not summed up
+   * @return the hash code of the value, 0 for <code>null</code>
+   */
+  public static long hash(final Object value) {
+    if (value == null) return 0L;
+
+    long hash;
+    if (value instanceof Timestamp) {
+      hash = ((Timestamp) value).getTime() / 1000L * 1000000000L + ((Timestamp) value).getNanos();
+    } else if (value instanceof Date) {
+      hash = ((Date) value).getTime() * 1000000L;
+    } else {
+      hash = value.toString().hashCode();
+    }
+    hash *= 0x9E3779B97F4A7C15L;
+    return hash ^ (hash >>> 29);
+  }
+
+  /**
+   * Merge the summary of another part of the same column.
+   *
+   * @param other the digest to merge, never null
+   */
+  public void add(final ColumnDigest other) {
+    count += other.count;
+    addLong(other.integral);
+    if (other.decimal != null) addDecimal(other.decimal);
+    real += other.real;
+    length += other.length;
+    if (other.min != null) addDate(other.min);
+    if (other.max != null) addDate(other.max);
+    checksum += other.checksum;
+  }
+
+  /** @return the meta data of the column */
+  public MetaColumn getMeta() {
+    return meta;
+  }
+
+  /** @return the kind of digest as defined above */
+  public int getKind() {
+    return kind;
+  }
+
+  /** @return the number of non-null values */
+  public long getCount() {
+    return count;
+  }
+
+  /** @return the exact sum of all numbers */
+  public BigDecimal getSum() {
+    BigDecimal sum = BigDecimal.valueOf(integral);
+    return decimal == null ? sum : sum.add(decimal);
+  }
+
+  /** @return the approximate sum of all floating point numbers */
+  public double getReal() {
+    return real;
+  }
+
+  /** @return the total number of characters */
+  public long getLength() {
+    return length;
+  }
+
+  /** @return the smallest date or <code>null</code> if there is none */
+  public Date getMin() {
+    return min;
+  }
+
+  /** @return the largest date or <code>null</code> if there is none */
+  public Date getMax() {
+    return max;
+  }
+
+  /** @return the sum of the hash codes of all texts or dates, 0 for other kinds of digest */
+  public long getChecksum() {
+    return checksum;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder(meta.getName()).append(": ").append(count).append(" values");
+    switch (kind) {
+      case SUM:
+        text.append(", sum ").append(getSum().toPlainString());
+        break;
+      case FLOATING:
+        text.append(", sum ").append(real);
+        break;
+      case LENGTH:
+        text.append(", ").append(length).append(" characters");
+        break;
+      case RANGE:
+        text.append(", from ").append(min).append(" to ").append(max);
+        break;
+      default:
+        break;
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,428 @@
+package org.jcommons.db.load.verify;
+
+import static org.jcommons.lang.string.NamedString.message;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+import java.util.concurrent.*;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jcommons.lang.string.NamedString;
+import org.jcommons.message.*;
+
+/**
+ * Verifies loaded tables by comparing their row counts and column aggregates with the digests taken while loading.
+ *
+ * Every table is verified by a single aggregate query, the tables are verified in parallel if an executor is given.
+ * If the database does not know the length function the query is repeated with counts only. The comparison assumes
+ * that the tables were empty before the load.
+ *
+ * The aggregates cannot see every change. Variable length texts are only compared by their total number of
+ * characters and dates only by their smallest and largest value, so a text changed within the same length or a date
+ * changed within the range passes. Large objects, fixed length texts and all other types are only counted. Enable
+ * {@link #setContent(boolean)} to compare texts and dates by the checksum of their values read back as well. No
+ * column aggregate notices values that were swapped between rows.
+ */
+public class LoadVerifier
+{
+  private static final Log LOG = LogFactory.getLog(LoadVerifier.class);
+
+  /** default SQL function that returns the number of characters of a text */
+  public static final String LENGTH = "LENGTH";
+  /** relative deviation tolerated for sums of floating point numbers */
+  public static final double TOLERANCE = 1e-9;
+
+  private static final String ROWS = "Table \"${table}\" contains ${actual} rows but ${expected} rows were loaded.";
+  private static final String VALUES =
+      "Column ${table}.${column} contains ${actual} values but ${expected} values were loaded.";
+  private static final String SUM = "Column ${table}.${column} sums up to ${actual} but ${expected} were loaded.";
+  private static final String CHARACTERS =
+      "Column ${table}.${column} contains ${actual} characters but ${expected} characters were loaded.";
+  private static final String RANGE = "Column ${table}.${column} ranges from ${actual} but ${expected} were loaded.";
+  private static final String CONTENT =
+      "Column ${table}.${column} contains other values than were loaded, checksum ${actual} instead of ${expected}.";
+  private static final String CANNOT_VERIFY = "Cannot verify table \"${table}\" due to: ${exception}.";
+
+  private final DataSource dataSource;
+  private ExecutorService executor;
+  private String length = LENGTH;
+  private boolean content = false;
+
+  /**
+   * Create a verifier.
+   *
+   * @param dataSource the database the tables were loaded into, never null
+   */
+  public LoadVerifier(final DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /** @return the executor that verifies the tables in parallel, <code>null</code> to verify in the calling thread */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Inject the executor that verifies the tables in parallel.
+   *
+   * @param executor the executor to use, <code>null</code> to verify one table after the other
+   * @return this to allow chaining
+   */
+  public LoadVerifier setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /** @return the SQL function that returns the number of characters of a text, <code>null</code> if unsupported */
+  public String getLengthFunction() {
+    return length;
+  }
+
+  /**
+   * Define the SQL function of the database dialect that returns the number of characters of a text.
+   *
+   * @param length the name of the function, e.g. <code>LEN</code> or <code>CHAR_LENGTH</code>, <code>null</code> to
+   *          count texts only
+   * @return this to allow chaining
+   */
+  public LoadVerifier setLengthFunction(final String length) {
+    this.length = length;
+    return this;
+  }
+
+  /** @return true if texts and dates are read back to compare the checksums of their values */
+  public boolean isContent() {
+    return content;
+  }
+
+  /**
+   * Define whether texts and dates shall be read back to compare the checksums of their values, see
+   * {@link ColumnDigest#hash(Object)}.
+   *
+   * This reads all texts and dates of every table once more, but notices values changed within the same length or
+   * range as well.
+   *
+   * @param content true to compare the checksums of texts and dates, false to compare the aggregates only
+   * @return this to allow chaining
+   */
+  public LoadVerifier setContent(final boolean content) {
+    this.content = content;
+    return this;
+  }
+
+  /**
+   * Verify all given tables.
+   *
+   * @param digests the digests taken while loading the tables
+   * @return a fault for every mismatch, empty if all tables match
+   */
+  public Message verify(final Collection<TableDigest> digests) {
+    Message errors = new Messages();
+    if (executor == null) {
+      for (TableDigest digest : digests) {
+        for (Message error : verify(digest)) {
+          errors.add(error);
+        }
+      }
+      return errors;
+    }
+
+    List<Future<List<Message>>> futures = new ArrayList<Future<List<Message>>>();
+    for (final TableDigest digest : digests) {
+      futures.add(executor.submit(new Callable<List<Message>>() {
+        @Override
+        public List<Message> call() {
+          return verify(digest);
+        }
+      }));
+    }
+
+    Iterator<TableDigest> tables = digests.iterator();
+    for (Future<List<Message>> future : futures) {
+      String table = tables.next().getTable();
+      try {
+        for (Message error : future.get()) {
+          errors.add(error);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        errors.add(cannotVerify(table, ex));
+      } catch (ExecutionException ex) {
+        errors.add(cannotVerify(table, ex.getCause()));
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Verify a single table.
+   *
+   * @param digest the digest taken while loading the table, never null
+   * @return a fault for every mismatch, empty if the table matches
+   */
+  public List<Message> verify(final TableDigest digest) {
+    List<ColumnDigest> columns = digest.getColumns();
+    List<Message> errors = null;
+    try {
+      errors = compare(digest, columns, query(digest.getTable(), columns, length));
+    } catch (SQLException ex) {
+      if (length == null) return Collections.singletonList(cannotVerify(digest.getTable(), ex));
+      if (LOG.isDebugEnabled()) LOG.debug("Verifying table " + digest.getTable() + " without lengths: " + ex);
+    }
+
+    try {
+      if (errors == null) errors = compare(digest, columns, query(digest.getTable(), columns, null));
+      if (content) errors.addAll(compareContent(digest.getTable(), columns));
+      return errors;
+    } catch (SQLException ex) {
+      return Collections.singletonList(cannotVerify(digest.getTable(), ex));
+    }
+  }
+
+  /**
+   * Read back the texts and dates of a table and compare the checksums of their values with the digests.
+   *
+   * @param table the name of the table
+   * @param columns the digests of the loaded columns
+   * @return a fault for every column whose checksum differs
+   * @throws SQLException if the table cannot be read
+   */
+  private List<Message> compareContent(final String table, final List<ColumnDigest> columns)
+    throws SQLException
+  {
+    List<ColumnDigest> hashed = new ArrayList<ColumnDigest>();
+    StringBuilder sql = new StringBuilder();
+    for (ColumnDigest column : columns) {
+      if (column.getKind() != ColumnDigest.LENGTH && column.getKind() != ColumnDigest.RANGE) continue;
+      sql.append(hashed.isEmpty() ? "select " : ", ").append(column.getMeta().getName());
+      hashed.add(column);
+    }
+    if (hashed.isEmpty()) return Collections.emptyList();
+
+    long[] checksums = new long[hashed.size()];
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet result = null;
+    try {
+      connection = dataSource.getConnection();
+      statement = connection.createStatement();
+      result = statement.executeQuery(sql.append(" from ").append(table).toString());
+      while (result.next()) {
+        for (int index = 0; index < checksums.length; ++index) {
+          checksums[index] += ColumnDigest.hash(result.getObject(index + 1));
+        }
+      }
+    } finally {
+      DbUtils.closeQuietly(connection, statement, result);
+    }
+
+    List<Message> errors = new ArrayList<Message>();
+    for (int index = 0; index < checksums.length; ++index) {
+      ColumnDigest column = hashed.get(index);
+      if (checksums[index] != column.getChecksum()) {
+        errors.add(fault(CONTENT, table, column.getMeta().getName(), checksums[index], column.getChecksum()));
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Create the aggregate query of a table.
+   *
+   * @param table the name of the table
+   * @param columns the digests of the loaded columns
+   * @param function the length function, <code>null</code> to count texts only
+   * @return the query that returns all aggregates in a single row
+   */
+  static String toSql(final String table, final List<ColumnDigest> columns, final String function) {
+    StringBuilder sql = new StringBuilder("select count(*)");
+    for (ColumnDigest column : columns) {
+      String name = column.getMeta().getName();
+      sql.append(", count(").append(name).append(")");
+      switch (column.getKind()) {
+        case ColumnDigest.SUM:
+        case ColumnDigest.FLOATING:
+          sql.append(", sum(").append(name).append(")");
+          break;
+        case ColumnDigest.LENGTH:
+          if (function != null) sql.append(", sum(").append(function).append("(").append(name).append("))");
+          break;
+        case ColumnDigest.RANGE:
+          sql.append(", min(").append(name).append("), max(").append(name).append(")");
+          break;
+        default:
+          break;
+      }
+    }
+    return sql.append(" from ").append(table).toString();
+  }
+
+  /**
+   * Run the aggregate query of a table.
+   *
+   * @param table the name of the table
+   * @param columns the digests of the loaded columns
+   * @param function the length function, <code>null</code> to count texts only
+   * @return the aggregates in the sequence of the query
+   * @throws SQLException if the query fails
+   */
+  private Object[] query(final String table, final List<ColumnDigest> columns, final String function)
+    throws SQLException
+  {
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet result = null;
+    try {
+      connection = dataSource.getConnection();
+      statement = connection.createStatement();
+      result = statement.executeQuery(toSql(table, columns, function));
+      result.next();
+      Object[] values = new Object[result.getMetaData().getColumnCount()];
+      for (int index = 0; index < values.length; ++index) {
+        values[index] = result.getObject(index + 1);
+      }
+      return values;
+    } finally {
+      DbUtils.closeQuietly(connection, statement, result);
+    }
+  }
+
+  /**
+   * Compare the aggregates of the database with the digest.
+   *
+   * @param digest the digest of the table
+   * @param columns the digests of the loaded columns in the sequence of the query
+   * @param values the aggregates of the database
+   * @return a fault for every mismatch
+   */
+  private List<Message> compare(final TableDigest digest, final List<ColumnDigest> columns, final Object[] values) {
+    List<Message> errors = new ArrayList<Message>();
+    String table = digest.getTable();
+    boolean lengths = values.length > 1 + countColumns(columns, false);
+
+    int index = 0;
+    long rows = toLong(values[index++]);
+    if (rows != digest.getRows()) errors.add(fault(ROWS, table, null, rows, digest.getRows()));
+
+    for (ColumnDigest column : columns) {
+      String name = column.getMeta().getName();
+      long count = toLong(values[index++]);
+      if (count != column.getCount()) errors.add(fault(VALUES, table, name, count, column.getCount()));
+
+      switch (column.getKind()) {
+        case ColumnDigest.SUM:
+          BigDecimal sum = toDecimal(values[index++]);
+          if (sum.compareTo(column.getSum()) != 0) {
+            errors.add(fault(SUM, table, name, sum.toPlainString(), column.getSum().toPlainString()));
+          }
+          break;
+        case ColumnDigest.FLOATING:
+          double real = toDecimal(values[index++]).doubleValue();
+          double scale = Math.max(1.0, Math.max(Math.abs(real), Math.abs(column.getReal())));
+          if (Math.abs(real - column.getReal()) > TOLERANCE * scale) {
+            errors.add(fault(SUM, table, name, real, column.getReal()));
+          }
+          break;
+        case ColumnDigest.LENGTH:
+          if (!lengths) break;
+          long characters = toLong(values[index++]);
+          if (characters != column.getLength()) {
+            errors.add(fault(CHARACTERS, table, name, characters, column.getLength()));
+          }
+          break;
+        case ColumnDigest.RANGE:
+          Object min = values[index++];
+          Object max = values[index++];
+          if (!sameTime(min, column.getMin()) || !sameTime(max, column.getMax())) {
+            errors.add(fault(RANGE, table, name, min + " to " + max, column.getMin() + " to " + column.getMax()));
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Count the aggregates of the columns apart from the total row count.
+   *
+   * @param columns the digests of the loaded columns
+   * @param lengths true to count the length aggregates as well
+   * @return the number of aggregates
+   */
+  private static int countColumns(final List<ColumnDigest> columns, final boolean lengths) {
+    int count = 0;
+    for (ColumnDigest column : columns) {
+      ++count;
+      int kind = column.getKind();
+      if (kind == ColumnDigest.SUM || kind == ColumnDigest.FLOATING) ++count;
+      if (kind == ColumnDigest.RANGE) count += 2;
+      if (kind == ColumnDigest.LENGTH && lengths) ++count;
+    }
+    return count;
+  }
+
+  /**
+   * @param value an aggregate of the database
+   * @return the aggregate as whole number, 0 for <code>null</code>
+   */
+  private static long toLong(final Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : 0L;
+  }
+
+  /**
+   * @param value an aggregate of the database
+   * @return the aggregate as exact number, 0 for <code>null</code>
+   */
+  private static BigDecimal toDecimal(final Object value) {
+    if (value instanceof BigDecimal) return (BigDecimal) value;
+    if (value == null) return BigDecimal.ZERO;
+    return new BigDecimal(value.toString());
+  }
+
+  /**
+   * @param actual the date returned by the database
+   * @param expected the date that was loaded
+   * @return true if both are <code>null</code> or denote the same instant
+   */
+  private static boolean sameTime(final Object actual, final Date expected) {
+    if (actual == null || expected == null) return actual == null && expected == null;
+    return actual instanceof Date && ((Date) actual).getTime() == expected.getTime();
+  }
+
+  /**
+   * Create a fault for a mismatch.
+   *
+   * @param text the message template
+   * @param table the name of the table
+   * @param column the name of the column, <code>null</code> for the table itself
+   * @param actual the figure found in the database
+   * @param expected the figure of the digest
+   * @return the fault
+   */
+  private static Message fault(final String text, final String table, final String column, final Object actual,
+                               final Object expected)
+  {
+    NamedString error = message(text).with("table", table).with("column", column);
+    error.with("actual", String.valueOf(actual)).with("expected", String.valueOf(expected));
+    return new Fault(error.toString());
+  }
+
+  /**
+   * Create a fault for a table that cannot be verified.
+   *
+   * @param table the name of the table
+   * @param cause the reason
+   * @return the fault
+   */
+  private static Message cannotVerify(final String table, final Throwable cause) {
+    return new Fault(message(CANNOT_VERIFY).with("table", table).with("exception", cause.getMessage()).toString());
+  }
+}
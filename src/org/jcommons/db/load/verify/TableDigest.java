@@ -0,0 +1,82 @@
+package org.jcommons.db.load.verify;
+
+import java.util.*;
+
+import org.jcommons.db.column.MetaColumn;
+
+/**
+ * Order independent summary of all rows and values loaded into a single table.
+ */
+public class TableDigest
+{
+  private final String table;
+  private final Map<String, ColumnDigest> columns = new LinkedHashMap<String, ColumnDigest>();
+  private long rows;
+
+  /**
+   * Create an empty digest.
+   *
+   * @param table the name of the table, never null
+   */
+  public TableDigest(final String table) {
+    this.table = table;
+  }
+
+  /** @return the name of the table */
+  public String getTable() {
+    return table;
+  }
+
+  /** @return the number of inserted rows */
+  public synchronized long getRows() {
+    return rows;
+  }
+
+  /**
+   * Count inserted rows.
+   *
+   * @param count the number of rows inserted additionally
+   */
+  public synchronized void count(final long count) {
+    rows += count;
+  }
+
+  /**
+   * Retrieve the digest of a column, creates an empty one on first access.
+   *
+   * @param meta the meta data of the column, never null
+   * @return the digest of the column, never null
+   */
+  public synchronized ColumnDigest getColumn(final MetaColumn meta) {
+    String name = meta.getName().toUpperCase();
+    ColumnDigest column = columns.get(name);
+    if (column == null) {
+      column = new ColumnDigest(meta);
+      columns.put(name, column);
+    }
+    return column;
+  }
+
+  /** @return the digests of all loaded columns */
+  public synchronized List<ColumnDigest> getColumns() {
+    return new ArrayList<ColumnDigest>(columns.values());
+  }
+
+  /**
+   * Merge the summary of another part of the same table.
+   *
+   * @param other the digest to merge, never null
+   */
+  public synchronized void add(final TableDigest other) {
+    rows += other.getRows();
+    for (ColumnDigest column : other.getColumns()) {
+      getColumn(column.getMeta()).add(column);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized String toString() {
+    return table + " with " + rows + " rows " + columns.values();
+  }
+}
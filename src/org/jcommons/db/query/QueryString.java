@@ -1,6 +1,7 @@
 package org.jcommons.db.query;
 
 import java.io.Serializable;
+import java.util.*;
 
 /**
  * A query with named parameters that can be used as a prepared statement.
@@ -37,10 +38,306 @@ import java.io.Serializable;
  *   db.query(query.getSql(), query.header(headers).map(translate).with(values).asArray(), ...);
  * </pre>
  *
+ * Parameters are given either as <code>:name</code> or as <code>${name}</code> and are matched ignoring the case. A
+ * parameter may be used more than once, text literals, quoted identifiers and comments are left untouched, as are
+ * casts like <code>::integer</code>. Plain <code>?</code> parameters are kept and count as unnamed parameters.
+ *
+ * The query is parsed once into positional JDBC syntax, the compiled form is shared by all instances of the same query
+ * via a bounded cache of the most recently used queries. The values bound by an instance are not shared, so an instance
+ * must not be used by several threads at the same time.
+ *
  * @author Thorsten Goeckeler
  */
 public class QueryString
   implements Serializable
 {
   private static final long serialVersionUID = -4350007400588806587L;
+
+  /** maximum number of compiled queries kept in the cache */
+  public static final int CACHE = 256;
+
+  private static final int[] NONE = new int[0];
+
+  private static final Map<String, Compiled> COMPILED = new LinkedHashMap<String, Compiled>(CACHE, 0.75f, true) {
+    private static final long serialVersionUID = 8925314478162205398L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, Compiled> eldest) {
+      return size() > CACHE;
+    }
+  };
+
+  private final Compiled compiled;
+  private final Object[] values;
+  private String[] headers;
+  private Map<String, String> translate;
+  private Object[][] rows;
+
+  /**
+   * Create a query with named parameters.
+   *
+   * @param query the query with named parameters, never null
+   */
+  public QueryString(final String query) {
+    this.compiled = compile(query);
+    this.values = new Object[compiled.count];
+  }
+
+  /**
+   * Look up the compiled form of the given query, parse it if it is not cached yet.
+   *
+   * @param query the query with named parameters, never null
+   * @return the compiled query, never null
+   */
+  private static Compiled compile(final String query) {
+    synchronized (COMPILED) {
+      Compiled cached = COMPILED.get(query);
+      if (cached != null) return cached;
+    }
+
+    // parsing happens outside the lock, a query parsed twice at the same time yields the same result
+    Compiled parsed = new Compiled(query);
+    synchronized (COMPILED) {
+      COMPILED.put(query, parsed);
+    }
+    return parsed;
+  }
+
+  /** @return the original query with named parameters */
+  public String getQuery() {
+    return compiled.query;
+  }
+
+  /** @return the query with positional parameters to be used as prepared statement */
+  public String getSql() {
+    return compiled.sql;
+  }
+
+  /** @return the number of positional parameters of the prepared statement */
+  public int size() {
+    return compiled.count;
+  }
+
+  /** @return the names of all parameters in lower case in the order of their first occurrence */
+  public List<String> getParameters() {
+    return compiled.names;
+  }
+
+  /**
+   * Look up the positions of a named parameter within the prepared statement.
+   *
+   * @param name the case insensitive name of the parameter
+   * @return the JDBC parameter indices starting with 1, empty if the query has no such parameter
+   */
+  public int[] getPositions(final String name) {
+    int[] positions = name == null ? null : compiled.positions.get(name.toLowerCase());
+    return positions == null ? NONE : positions.clone();
+  }
+
+  /**
+   * Bind a value to all occurrences of the given parameter.
+   *
+   * @param name the case insensitive name of the parameter
+   * @param value the value to bind, can be <code>null</code>
+   * @return this to allow chaining
+   * @throws IllegalArgumentException if the query has no such parameter
+   */
+  public QueryString with(final String name, final Object value) {
+    int[] positions = name == null ? null : compiled.positions.get(name.toLowerCase());
+    if (positions == null) throw new IllegalArgumentException("Query has no parameter \"" + name + "\": " + getQuery());
+    for (int position : positions) {
+      values[position - 1] = value;
+    }
+    return this;
+  }
+
+  /**
+   * Bind all values of the given map to the parameters of the same name, entries the query does not use are ignored.
+   *
+   * @param parameters the values mapped by their case insensitive parameter names
+   * @return this to allow chaining
+   */
+  public QueryString with(final Map<String, ?> parameters) {
+    if (parameters == null) return this;
+    for (Map.Entry<String, ?> entry : parameters.entrySet()) {
+      if (entry.getKey() == null) continue;
+      int[] positions = compiled.positions.get(entry.getKey().toLowerCase());
+      if (positions == null) continue;
+      for (int position : positions) {
+        values[position - 1] = entry.getValue();
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Define the column names of the rows given by {@link #with(Object[][])}.
+   *
+   * @param columns the column names, <code>null</code> if the rows contain the parameters in the order of
+   *          {@link #getParameters()}
+   * @return this to allow chaining
+   */
+  public QueryString header(final String... columns) {
+    this.headers = columns;
+    return this;
+  }
+
+  /**
+   * Define the parameter names of columns that are not named like the parameters.
+   *
+   * @param translation the parameter names mapped by their column names, <code>null</code> for none
+   * @return this to allow chaining
+   */
+  public QueryString map(final Map<String, String> translation) {
+    this.translate = translation;
+    return this;
+  }
+
+  /**
+   * Bind several rows of values to execute the query as a batch.
+   *
+   * @param data the values of every row in the order of the header
+   * @return this to allow chaining
+   */
+  public QueryString with(final Object[][] data) {
+    this.rows = data;
+    return this;
+  }
+
+  /** @return the values of all parameters bound by name to be used for a single execution */
+  public Object[] asRow() {
+    return values.clone();
+  }
+
+  /**
+   * Create the parameters of every row given by {@link #with(Object[][])}.
+   *
+   * Parameters that do not occur in the header keep the values bound by name.
+   *
+   * @return the values of all parameters of every row to be used for a batch execution, empty if no rows are given
+   */
+  public Object[][] asArray() {
+    if (rows == null) return new Object[0][];
+
+    int[][] targets = targets();
+    Object[][] batch = new Object[rows.length][];
+    for (int row = 0; row < rows.length; ++row) {
+      Object[] parameters = values.clone();
+      Object[] data = rows[row];
+      for (int column = 0; data != null && column < data.length && column < targets.length; ++column) {
+        for (int position : targets[column]) {
+          parameters[position - 1] = data[column];
+        }
+      }
+      batch[row] = parameters;
+    }
+    return batch;
+  }
+
+  /** @return the parameter positions of every column of the rows, empty for columns the query does not use */
+  private int[][] targets() {
+    List<String> columns = headers == null ? compiled.names : Arrays.asList(headers);
+    int[][] targets = new int[columns.size()][];
+    for (int column = 0; column < targets.length; ++column) {
+      String name = columns.get(column);
+      if (name != null && translate != null && translate.containsKey(name)) name = translate.get(name);
+      int[] positions = name == null ? null : compiled.positions.get(name.trim().toLowerCase());
+      targets[column] = positions == null ? NONE : positions;
+    }
+    return targets;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return getSql();
+  }
+
+  /**
+   * The parsed form of a query, immutable and thus shared by all instances of the same query.
+   */
+  private static final class Compiled
+    implements Serializable
+  {
+    private static final long serialVersionUID = 2213649757406164357L;
+
+    private final String query;
+    private final String sql;
+    private final int count;
+    private final List<String> names;
+    private final Map<String, int[]> positions;
+
+    /**
+     * Parse the given query.
+     *
+     * @param query the query with named parameters, never null
+     */
+    Compiled(final String query) {
+      this.query = query;
+      Map<String, List<Integer>> found = new LinkedHashMap<String, List<Integer>>();
+      StringBuilder text = new StringBuilder(query.length());
+      int parameters = 0;
+
+      int length = query.length();
+      int index = 0;
+      while (index < length) {
+        char current = query.charAt(index);
+        char next = index + 1 < length ? query.charAt(index + 1) : '\u0000';
+        int end = index + 1;
+        String name = null;
+
+        if (current == '\'' || current == '"') {
+          end = query.indexOf(current, index + 1);
+          end = end < 0 ? length : end + 1;
+        } else if (current == '-' && next == '-') {
+          end = query.indexOf('\n', index);
+          end = end < 0 ? length : end + 1;
+        } else if (current == '/' && next == '*') {
+          end = query.indexOf("*/", index + 2);
+          end = end < 0 ? length : end + 2;
+        } else if (current == ':' && next == ':') {
+          end = index + 2;
+        } else if (current == ':' && (Character.isLetter(next) || next == '_')) {
+          end = index + 2;
+          while (end < length && (Character.isLetterOrDigit(query.charAt(end)) || query.charAt(end) == '_')) ++end;
+          name = query.substring(index + 1, end);
+        } else if (current == '$' && next == '{') {
+          int close = query.indexOf('}', index + 2);
+          if (close > index + 2) {
+            end = close + 1;
+            name = query.substring(index + 2, close).trim();
+          }
+        } else if (current == '?') {
+          ++parameters;
+        }
+
+        if (name == null) {
+          text.append(query, index, end);
+        } else {
+          String key = name.toLowerCase();
+          List<Integer> list = found.get(key);
+          if (list == null) {
+            list = new ArrayList<Integer>(1);
+            found.put(key, list);
+          }
+          list.add(++parameters);
+          text.append('?');
+        }
+        index = end;
+      }
+
+      this.sql = text.toString();
+      this.count = parameters;
+      this.names = Collections.unmodifiableList(new ArrayList<String>(found.keySet()));
+      Map<String, int[]> indices = new HashMap<String, int[]>();
+      for (Map.Entry<String, List<Integer>> entry : found.entrySet()) {
+        int[] list = new int[entry.getValue().size()];
+        for (int position = 0; position < list.length; ++position) {
+          list[position] = entry.getValue().get(position);
+        }
+        indices.put(entry.getKey(), list);
+      }
+      this.positions = Collections.unmodifiableMap(indices);
+    }
+  }
 }
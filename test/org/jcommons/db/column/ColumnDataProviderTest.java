@@ -0,0 +1,69 @@
+package org.jcommons.db.column;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.jcommons.message.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that plain values are converted to the types of the table columns they are mapped to.
+ */
+public class ColumnDataProviderTest
+{
+  private ColumnDataProvider provider;
+
+  private static MetaColumn column(final String name, final Class< ? > type, final int sqlType, final int size) {
+    MetaColumn meta = new MetaColumn();
+    meta.setTable("STAFF");
+    meta.setName(name);
+    meta.setType(type.getName());
+    meta.setSqlType(sqlType);
+    meta.setNullable(!"ID".equals(name));
+    meta.setSize(size);
+    meta.setFraction(sqlType == Types.DECIMAL ? 2 : 0);
+    return meta;
+  }
+
+  /** define a provider for staff with a mandatory id, a name and a salary */
+  @Before
+  public void setUp() {
+    provider = new ColumnDataProvider();
+    provider.setTable("STAFF");
+    provider.setHeaders(new String[] {"id", "name", "salary"});
+    provider.setMetaColumns(Arrays.asList(column("ID", Long.class, Types.BIGINT, 19),
+        column("NAME", String.class, Types.VARCHAR, 8), column("SALARY", BigDecimal.class, Types.DECIMAL, 8)));
+  }
+
+  /** test that the values are converted to the type of their column regardless of the case of the header */
+  @Test
+  public void testConvert() {
+    provider.setValues(new String[] {"7", "Smith", "1000.50"});
+    assertEquals(7L, provider.getValueAt(0));
+    assertEquals("Smith", provider.getValue("NAME"));
+    assertEquals(new BigDecimal("1000.50"), provider.getValue("Salary"));
+    assertNull(provider.getValueAt(3));
+    assertFalse(provider.validate().isError());
+  }
+
+  /** test that violations are reported for the values that were converted since the values were set */
+  @Test
+  public void testViolations() {
+    provider.setValues(new String[] {"seven", "Smith", "1000.50"});
+    assertNull(provider.getValueAt(0));
+    Message messages = provider.validate();
+    assertTrue(messages.isError());
+    assertTrue(messages.getText(), messages.getText().contains("\"seven\" is not a valid number for STAFF.ID"));
+
+    provider.setValues(new String[] {"8", "Jones", "2000"});
+    assertEquals(8L, provider.getValueAt(0));
+    assertFalse(provider.validate().isError());
+  }
+}
@@ -0,0 +1,141 @@
+package org.jcommons.db.column.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jcommons.db.column.validation.Violation;
+import org.junit.Test;
+
+/**
+ * Checks that conversion results are remembered for repeated values only.
+ */
+public class ConversionMemoTest
+{
+  /**
+   * Look up a value and remember it as its own conversion result if it is not known yet.
+   *
+   * @param memo the memo to use
+   * @param text the raw value
+   * @return true if the value was known
+   */
+  private static boolean convert(final ConversionMemo memo, final String text) {
+    if (memo.find(text) >= 0) return true;
+    memo.put(text, text, null, false);
+    return false;
+  }
+
+  /** test that a hit returns the value, the violation and the fault remembered for the same content */
+  @Test
+  public void testHit() {
+    ConversionMemo memo = new ConversionMemo(16, 100);
+    assertEquals(-1, memo.find("1000.255"));
+    memo.put("1000.255", 1000.26, Violation.ROUNDED, true);
+    memo.put("12", 12L, null, false);
+    assertEquals(2, memo.size());
+
+    int slot = memo.find(new StringBuilder("1000.255"));
+    assertTrue(slot >= 0);
+    assertEquals(1000.26, memo.getValue(slot));
+    assertEquals(Violation.ROUNDED, memo.getViolation(slot));
+    assertTrue(memo.isFault(slot));
+
+    slot = memo.find("12");
+    assertEquals(12L, memo.getValue(slot));
+    assertNull(memo.getViolation(slot));
+    assertFalse(memo.isFault(slot));
+
+    assertEquals(-1, memo.find("1000.25"));
+    assertEquals(4, memo.getLookups());
+    assertEquals(2, memo.getHits());
+  }
+
+  /** test that a column with more than a quarter of distinct values is dropped after the probation */
+  @Test
+  public void testHighCardinality() {
+    ConversionMemo low = new ConversionMemo(1000, 100);
+    ConversionMemo high = new ConversionMemo(1000, 100);
+    for (int row = 0; row < 99; ++row) {
+      convert(low, "code " + row % 10);
+      convert(high, "key " + row);
+    }
+    assertTrue(high.isEnabled());
+    assertEquals(99, high.size());
+
+    // the lookup that ends the probation judges the cardinality
+    convert(low, "code 9");
+    assertFalse(convert(high, "key 99"));
+    assertTrue(low.isEnabled());
+    assertFalse(high.isEnabled());
+    assertEquals(0, high.size());
+
+    // a dropped memo neither finds nor remembers anything
+    high.put("key 0", "key 0", null, false);
+    assertEquals(-1, high.find("key 0"));
+    assertEquals(0, high.size());
+    assertEquals(100, high.getLookups());
+  }
+
+  /** test that a memo that is full before the end of the probation is dropped */
+  @Test
+  public void testFullDuringProbation() {
+    ConversionMemo memo = new ConversionMemo(8, 100);
+    for (int row = 0; row < 8; ++row) {
+      convert(memo, "value " + row);
+    }
+    assertTrue(memo.isEnabled());
+    assertEquals(8, memo.size());
+
+    convert(memo, "value 8");
+    assertFalse(memo.isEnabled());
+    assertEquals(0, memo.size());
+  }
+
+  /** test that the memo is dropped as soon as less than half of the lookups of a window are hits */
+  @Test
+  public void testWindow() {
+    ConversionMemo steady = new ConversionMemo(64, 8);
+    ConversionMemo drifting = new ConversionMemo(64, 8);
+    for (int row = 0; row < 8; ++row) {
+      convert(steady, "a");
+      convert(drifting, "a");
+    }
+    assertTrue(drifting.isEnabled());
+
+    // every other value repeats within the next window, the drifting column turns distinct
+    for (int row = 0; row < 8; ++row) {
+      convert(steady, row % 2 == 0 ? "a" : "b " + row);
+      convert(drifting, "b " + row);
+    }
+    assertTrue(steady.isEnabled());
+    assertFalse(drifting.isEnabled());
+  }
+
+  /** test that values of the same hash code are chained and found by their content */
+  @Test
+  public void testCollisions() {
+    // "Aa" and "BB" share their hash code, so do all their combinations of the same length
+    String[] texts = {"AaAa", "AaBB", "BBAa", "BBBB"};
+    assertEquals(texts[0].hashCode(), texts[3].hashCode());
+
+    ConversionMemo memo = new ConversionMemo(16, 100);
+    memo.put(texts[0], 0, null, false);
+    assertEquals(-1, memo.find(texts[3]));
+    for (int index = 1; index < texts.length; ++index) {
+      memo.put(texts[index], index, null, index % 2 == 0);
+    }
+
+    Set<Integer> slots = new HashSet<Integer>();
+    for (int index = 0; index < texts.length; ++index) {
+      int slot = memo.find(texts[index]);
+      assertTrue(slots.add(slot));
+      assertEquals(index, memo.getValue(slot));
+      assertEquals(index > 0 && index % 2 == 0, memo.isFault(slot));
+    }
+    assertEquals(-1, memo.find("AaAaAa"));
+  }
+}
@@ -0,0 +1,114 @@
+package org.jcommons.db.column.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks that date layouts are inferred from sample values.
+ */
+public class DateLayoutTest
+{
+  private final int[] fields = new int[DateLayout.FIELDS];
+
+  private DateLayout infer(final String... samples) {
+    DateLayout layout = DateLayout.infer(Arrays.asList(samples));
+    assertNotNull(layout);
+    return layout;
+  }
+
+  private boolean parse(final DateLayout layout, final String value) {
+    return layout.parse(value, 0, value.length(), fields);
+  }
+
+  /** test the common layouts */
+  @Test
+  public void testInfer() {
+    assertEquals("yyyy-MM-dd", infer("2010-05-19", "1999-12-31").toString());
+    assertEquals("dd.MM.yyyy HH:mm", infer("19.05.2010 09:30", "1.1.2000 10:00").toString());
+    assertEquals("MM/dd/yyyy", infer("05/19/2010", "12/01/2010").toString());
+    assertEquals("dd/MM/yyyy", infer("05/12/2010", "19/05/2010").toString());
+    assertEquals("yyyyMMdd", infer("20100519").toString());
+    assertEquals("yyyy-MM-dd HH:mm:ss.SSS", infer("2010-05-19 09:30:52.123", "2010-05-19 09:30:52.1").toString());
+
+    // no prevailing layout
+    assertNull(DateLayout.infer(Arrays.asList("2010-05-19", "19.05.2010", "05/19/2010")));
+  }
+
+  /** test parsing with a compiled layout */
+  @Test
+  public void testParse() {
+    DateLayout layout = infer("19.05.2010 09:30:52", "01.01.2000 10:00:00");
+    assertTrue(layout.hasTime());
+
+    assertTrue(parse(layout, "2.7.1996 10:35:00"));
+    assertEquals(1996, fields[DateLayout.YEAR]);
+    assertEquals(7, fields[DateLayout.MONTH]);
+    assertEquals(2, fields[DateLayout.DAY]);
+    assertEquals(10, fields[DateLayout.HOUR]);
+    assertEquals(35, fields[DateLayout.MINUTE]);
+
+    assertFalse(parse(layout, "1996-07-02 10:35:00"));
+    assertFalse(parse(layout, "30.02.1996 10:35:00"));
+    assertFalse(parse(layout, "02.07.1996 25:35:00"));
+    assertTrue(parse(layout, "29.02.1996 10:35:00"));
+    assertFalse(parse(layout, "29.02.1997 10:35:00"));
+  }
+
+  /** test that the order of day and month is only trusted if a sample proves it */
+  @Test
+  public void testAmbiguous() {
+    DateLayout layout = infer("05/04/2010", "12/01/2010");
+    assertEquals("MM/dd/yyyy", layout.toString());
+    assertTrue(layout.isAmbiguous());
+    assertFalse(layout.confirm().isAmbiguous());
+    assertEquals("dd/MM/yyyy", layout.swap().toString());
+    assertFalse(layout.swap().isAmbiguous());
+
+    assertFalse(infer("05/19/2010", "12/01/2010").isAmbiguous());
+    assertNull(infer("2010-05-19").swap());
+
+    // days beyond 12 in both places contradict each other
+    assertNull(DateLayout.infer(Arrays.asList("05/19/2010", "19/05/2010")));
+  }
+
+  /** test time stamps with a zone designator */
+  @Test
+  public void testZone() {
+    DateLayout layout = infer("2010-05-19T09:30:52Z", "2010-05-19T10:00:00Z");
+    assertTrue(layout.isZoned());
+    assertTrue(parse(layout, "2010-05-19T09:30:52Z"));
+    assertEquals(0, fields[DateLayout.OFFSET]);
+    assertEquals(52, fields[DateLayout.SECOND]);
+    assertFalse(parse(layout, "2010-05-19T09:30:52"));
+
+    layout = infer("2010-05-19 09:30:52+02:00", "2010-05-19 10:00:00-05:30");
+    assertTrue(parse(layout, "2010-05-19 09:30:52-05:30"));
+    assertEquals(-330, fields[DateLayout.OFFSET]);
+    assertTrue(parse(layout, "2010-05-19 09:30:52+0100"));
+    assertEquals(60, fields[DateLayout.OFFSET]);
+    assertTrue(parse(layout, "2010-05-19 09:30:52+01"));
+    assertEquals(60, fields[DateLayout.OFFSET]);
+    assertFalse(parse(layout, "2010-05-19 09:30:52+01:75"));
+
+    // the day of a date is no offset
+    layout = infer("2010-05-19", "2010-05-20");
+    assertFalse(layout.isZoned());
+    assertTrue(parse(layout, "2010-05-19"));
+    assertEquals(DateLayout.NO_OFFSET, fields[DateLayout.OFFSET]);
+  }
+
+  /** test the calculation of days since the epoch */
+  @Test
+  public void testEpochDay() {
+    assertEquals(0L, DateLayout.toEpochDay(1970, 1, 1));
+    assertEquals(14748L, DateLayout.toEpochDay(2010, 5, 19));
+    assertEquals(-1L, DateLayout.toEpochDay(1969, 12, 31));
+  }
+}
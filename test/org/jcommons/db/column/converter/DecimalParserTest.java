@@ -0,0 +1,89 @@
+package org.jcommons.db.column.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+/**
+ * Checks that fixed point numbers are validated against precision and scale.
+ */
+public class DecimalParserTest
+{
+  private final PrimitiveValue value = new PrimitiveValue();
+
+  private int parse(final DecimalParser parser, final String text, final int precision, final int scale) {
+    return parser.parse(text, 0, text.length(), precision, scale, value);
+  }
+
+  /** test values of a decimal(6,2) column like the salary in our test tables */
+  @Test
+  public void testSalary() {
+    DecimalParser parser = new DecimalParser();
+
+    assertEquals(ToPrimitive.OK, parse(parser, "1000.25", 6, 2));
+    assertEquals(PrimitiveValue.DECIMAL, value.getKind());
+    assertEquals(100025L, value.getLong());
+    assertEquals(2, value.getScale());
+
+    assertEquals(ToPrimitive.OK, parse(parser, "0012.50", 6, 2));
+    assertEquals(new BigDecimal("12.50"), value.toObject());
+
+    assertEquals(ToPrimitive.OK, parse(parser, "1e2", 6, 2));
+    assertEquals(0, new BigDecimal("100").compareTo((BigDecimal) value.toObject()));
+
+    assertEquals(ToPrimitive.ROUNDED, parse(parser, "1000.255", 6, 2));
+    assertEquals(new BigDecimal("1000.26"), value.toObject());
+
+    assertEquals(ToPrimitive.ROUNDED, parse(parser, "-0.005", 6, 2));
+    assertEquals(new BigDecimal("-0.01"), value.toObject());
+
+    assertEquals(ToPrimitive.OVERFLOW, parse(parser, "12345.6", 6, 2));
+    assertTrue(value.isNull());
+
+    // rounding must not push the value beyond its precision
+    assertEquals(ToPrimitive.OVERFLOW, parse(parser, "9999.995", 6, 2));
+    assertTrue(value.isNull());
+
+    assertEquals(ToPrimitive.INVALID, parse(parser, ".", 6, 2));
+    assertTrue(value.isNull());
+  }
+
+  /** test that rounding can be left to the database */
+  @Test
+  public void testNoRounding() {
+    DecimalParser parser = new DecimalParser(false);
+
+    assertEquals(ToPrimitive.ROUNDED, parse(parser, "1000.255", 6, 2));
+    assertEquals(new BigDecimal("1000.255"), value.toObject());
+  }
+
+  /** test that all fraction digits are kept if the scale of the column is unknown */
+  @Test
+  public void testUnknownScale() {
+    DecimalParser parser = new DecimalParser();
+
+    assertEquals(ToPrimitive.OK, parse(parser, "0.25", 0, DecimalParser.UNKNOWN_SCALE));
+    assertEquals(new BigDecimal("0.25"), value.toObject());
+
+    assertEquals(ToPrimitive.OK, parse(parser, "1.0375", 6, DecimalParser.UNKNOWN_SCALE));
+    assertEquals(new BigDecimal("1.0375"), value.toObject());
+
+    assertEquals(ToPrimitive.OK, parse(parser, "12345678901234567890.1234", 0, DecimalParser.UNKNOWN_SCALE));
+    assertEquals(new BigDecimal("12345678901234567890.1234"), value.toObject());
+
+    assertEquals(ToPrimitive.OVERFLOW, parse(parser, "1234567.5", 6, DecimalParser.UNKNOWN_SCALE));
+  }
+
+  /** test values that do not fit into a long */
+  @Test
+  public void testLarge() {
+    DecimalParser parser = new DecimalParser();
+
+    assertEquals(ToPrimitive.OK, parse(parser, "12345678901234567890.1", 0, 2));
+    assertEquals(PrimitiveValue.OBJECT, value.getKind());
+    assertEquals(new BigDecimal("12345678901234567890.1"), value.toObject());
+  }
+}
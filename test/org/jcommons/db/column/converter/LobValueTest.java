@@ -0,0 +1,150 @@
+package org.jcommons.db.column.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.*;
+import java.sql.Types;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.validation.Violation;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.junit.Test;
+
+/**
+ * Checks that large objects are read from their references.
+ */
+public class LobValueTest
+{
+  private String read(final InputStream stream)
+    throws IOException
+  {
+    StringBuilder text = new StringBuilder();
+    for (int c = stream.read(); c >= 0; c = stream.read()) {
+      text.append((char) c);
+    }
+    return text.toString();
+  }
+
+  private String read(final Reader reader)
+    throws IOException
+  {
+    StringBuilder text = new StringBuilder();
+    for (int c = reader.read(); c >= 0; c = reader.read()) {
+      text.append((char) c);
+    }
+    return text.toString();
+  }
+
+  /** test decoding base64 content while reading */
+  @Test
+  public void testBase64()
+    throws IOException
+  {
+    assertEquals("ABCDEF", read(new Base64InputStream("QUJD\r\nREVG", 0, 10)));
+    assertEquals("Hello", read(new Base64InputStream("SGVsbG8=", 0, 8)));
+    assertEquals(5L, Base64InputStream.decodedLength("SGVsbG8=", 0, 8));
+    assertEquals(-1L, Base64InputStream.decodedLength("SG!k", 0, 4));
+  }
+
+  /** test the different kinds of cell values */
+  @Test
+  public void testReferences()
+    throws IOException
+  {
+    LobValue encoded = LobValue.of("base64:SGVsbG8gV29ybGQ=", true);
+    assertTrue(encoded.isReadable());
+    assertNull(encoded.getFile());
+    assertEquals(11L, encoded.length());
+    assertEquals("Hello World", read(encoded.openStream()));
+
+    LobValue text = LobValue.of("<xml>content</xml>", false);
+    assertEquals(18L, text.length());
+    assertEquals("<xml>content</xml>", read(text.openReader()));
+
+    LobValue missing = LobValue.of("FILE:does/not/exist.xml", false, new File("."));
+    assertEquals("exist.xml", missing.getFile().getName());
+    assertTrue(missing.isAllowed());
+    assertFalse(missing.isReadable());
+    assertFalse(LobValue.of("base64:SG!k", true).isReadable());
+  }
+
+  /** test that files are only read below the given directory */
+  @Test
+  public void testFileReferences()
+    throws IOException
+  {
+    File directory = File.createTempFile("lob", "");
+    assertTrue(directory.delete() && directory.mkdir());
+    File nested = new File(directory, "nested");
+    assertTrue(nested.mkdir());
+    File content = new File(nested, "content.txt");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(content), "UTF-8");
+    writer.write("referenced");
+    writer.close();
+    try {
+      LobValue relative = LobValue.of("file:nested/content.txt", false, directory);
+      assertTrue(relative.isReadable());
+      assertEquals(10L, relative.length());
+      assertEquals("referenced", read(relative.openReader()));
+
+      // file references are not followed unless a directory is given
+      LobValue disabled = LobValue.of("file:nested/content.txt", false);
+      assertFalse(disabled.isAllowed());
+      assertFalse(disabled.isReadable());
+      assertNull(disabled.getFile());
+
+      assertFalse(LobValue.of("file:" + content.getAbsolutePath(), false, directory).isAllowed());
+      assertFalse(LobValue.of("file:/etc/passwd", false, directory).isAllowed());
+      assertFalse(LobValue.of("file:nested/../../" + directory.getName() + "/nested/content.txt", false, directory)
+          .isAllowed());
+      assertFalse(LobValue.of("file:..\\secret.txt", false, nested).isAllowed());
+      assertFalse(LobValue.of("file:", false, directory).isAllowed());
+    } finally {
+      assertTrue(content.delete() && nested.delete() && directory.delete());
+    }
+  }
+
+  /** test that file references are reported as violations of the column unless allowed */
+  @Test
+  public void testForbidden() {
+    MetaColumn meta = new MetaColumn();
+    meta.setName("CONTENT");
+    meta.setTable("DOCUMENT");
+    meta.setSqlType(Types.CLOB);
+    ViolationLog violations = new ViolationLog();
+    assertNull(new ToClob().valueOf(meta, "file:../../etc/passwd", violations));
+    assertEquals(1, violations.getCount(meta, Violation.FORBIDDEN));
+
+    meta.setLobDirectory(new File("."));
+    assertNull(new ToClob().valueOf(meta, "file:does/not/exist.xml", violations));
+    assertEquals(1, violations.getCount(meta, Violation.UNREADABLE));
+  }
+
+  /** test that content starting with a prefix literally is escaped */
+  @Test
+  public void testEscape()
+    throws IOException
+  {
+    LobValue file = LobValue.of("\\file:/etc/passwd", false);
+    assertTrue(file.isAllowed());
+    assertNull(file.getFile());
+    assertEquals(16L, file.length());
+    assertEquals("file:/etc/passwd", read(file.openReader()));
+
+    LobValue encoded = LobValue.of("\\BASE64:text", true);
+    assertEquals(11L, encoded.length());
+    assertEquals("BASE64:text", read(encoded.openStream()));
+
+    assertEquals("\\file:x", read(LobValue.of("\\\\file:x", false).openReader()));
+    assertEquals("\\\\server\\share", read(LobValue.of("\\\\server\\share", false).openReader()));
+
+    assertEquals("\\file:x", LobValue.escape("file:x"));
+    assertEquals("\\\\base64:x", LobValue.escape("\\base64:x"));
+    assertEquals("\\\\server", LobValue.escape("\\\\server"));
+    assertEquals("text", LobValue.escape("text"));
+    assertNull(LobValue.escape(null));
+  }
+}
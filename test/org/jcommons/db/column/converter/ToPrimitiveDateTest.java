@@ -0,0 +1,112 @@
+package org.jcommons.db.column.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.TimeZone;
+
+import org.jcommons.db.column.MetaColumn;
+import org.junit.Test;
+
+/**
+ * Checks that dates are parsed by the inferred layout only as long as the values agree with it.
+ */
+public class ToPrimitiveDateTest
+{
+  private static final long JULY_FIRST = 1341100800000L;
+
+  private final PrimitiveValue value = new PrimitiveValue();
+
+  private MetaColumn column(final Class<?> type) {
+    MetaColumn meta = new MetaColumn();
+    meta.setTable("TAG");
+    meta.setName("CREATED");
+    meta.setType(type.getName());
+    meta.setNullable(true);
+    return meta;
+  }
+
+  private void sample(final ToPrimitive converter, final MetaColumn meta, final String text) {
+    converter.valueOf(meta, text, 0, text.length(), value);
+  }
+
+  private long convert(final ToPrimitive converter, final MetaColumn meta, final String text) {
+    assertEquals(ToPrimitive.OK, converter.valueOf(meta, text, 0, text.length(), value));
+    return ((java.util.Date) value.toObject()).getTime();
+  }
+
+  /** test that a guessed order of day and month is only used once a value proves it */
+  @Test
+  public void testAmbiguous() {
+    MetaColumn meta = column(java.sql.Date.class);
+    ToPrimitiveDate converter = new ToPrimitiveDate(2);
+    sample(converter, meta, "05/04/2012");
+    sample(converter, meta, "03/02/2012");
+    assertTrue(converter.getLayout().isAmbiguous());
+
+    sample(converter, meta, "07/08/2012");
+    assertEquals(0, converter.getCompiled());
+
+    // the day beyond 12 proves the other order
+    convert(converter, meta, "25/03/2012");
+    assertEquals(1, converter.getCompiled());
+    assertEquals("dd/MM/yyyy", converter.getLayout().toString());
+    assertEquals(java.sql.Date.valueOf("2012-08-07").getTime(), convert(converter, meta, "07/08/2012"));
+    assertEquals(2, converter.getCompiled());
+  }
+
+  /** test that a value contradicting a proven order drops the layout */
+  @Test
+  public void testContradicted() {
+    MetaColumn meta = column(java.sql.Date.class);
+    ToPrimitiveDate converter = new ToPrimitiveDate(2);
+    sample(converter, meta, "25.03.2012");
+    sample(converter, meta, "13.01.2012");
+    assertFalse(converter.getLayout().isAmbiguous());
+
+    convert(converter, meta, "01.02.2012");
+    assertEquals(1, converter.getCompiled());
+
+    sample(converter, meta, "03.25.2012");
+    assertTrue(converter.isContradicted());
+    assertNull(converter.getLayout());
+    assertEquals(1, converter.getCompiled());
+  }
+
+  /** test that time stamps are converted at the offset of their zone designator */
+  @Test
+  public void testZone() {
+    MetaColumn meta = column(Timestamp.class);
+    ToPrimitiveDate converter = new ToPrimitiveDate(2);
+    sample(converter, meta, "2012-06-30T12:34:56Z");
+    sample(converter, meta, "2012-06-30T12:00:00Z");
+    assertEquals(JULY_FIRST, convert(converter, meta, "2012-07-01T00:00:00Z"));
+
+    converter = new ToPrimitiveDate(2);
+    sample(converter, meta, "2012-06-30 12:34:56.5+02:00");
+    sample(converter, meta, "2012-06-30 12:00:00.25-05:00");
+    assertEquals(JULY_FIRST + 250, convert(converter, meta, "2012-06-30 19:00:00.25-05:00"));
+    assertEquals(250000000, ((Timestamp) value.toObject()).getNanos());
+    assertEquals(1, converter.getCompiled());
+  }
+
+  /** test that a date is the local day of the instant given with an offset */
+  @Test
+  public void testZonedDate() {
+    TimeZone local = TimeZone.getDefault();
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    try {
+      MetaColumn meta = column(java.sql.Date.class);
+      ToPrimitiveDate converter = new ToPrimitiveDate(2);
+      sample(converter, meta, "2012-06-30T12:34:56-05:00");
+      sample(converter, meta, "2012-06-30T12:00:00-05:00");
+      assertEquals(JULY_FIRST, convert(converter, meta, "2012-06-30T23:30:00-05:00"));
+      assertEquals(1, converter.getCompiled());
+    } finally {
+      TimeZone.setDefault(local);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.jcommons.db.column.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+
+import org.jcommons.db.column.MetaColumn;
+import org.junit.Test;
+
+/**
+ * Checks that numbers are parsed into primitives without detours.
+ */
+public class ToPrimitiveNumberTest
+{
+  private final ToPrimitive converter = new ToPrimitiveNumber();
+  private final PrimitiveValue value = new PrimitiveValue();
+
+  private MetaColumn column(final String type, final int precision, final boolean nullable) {
+    MetaColumn meta = new MetaColumn();
+    meta.setTable("TAG");
+    meta.setName("VALUE");
+    meta.setType(type);
+    meta.setPrecision(precision);
+    meta.setNullable(nullable);
+    return meta;
+  }
+
+  private int convert(final MetaColumn meta, final String text) {
+    return converter.valueOf(meta, text, 0, text.length(), value);
+  }
+
+  /** test whole numbers */
+  @Test
+  public void testIntegral() {
+    MetaColumn age = column("java.lang.Integer", 10, true);
+
+    assertEquals(ToPrimitive.OK, convert(age, " 42 "));
+    assertEquals(PrimitiveValue.LONG, value.getKind());
+    assertEquals(42L, value.getLong());
+
+    assertEquals(ToPrimitive.OK, convert(age, "-7"));
+    assertEquals(-7L, value.getLong());
+
+    assertEquals(ToPrimitive.ROUNDED, convert(age, "12.5"));
+    assertEquals(13L, value.getLong());
+
+    assertEquals(ToPrimitive.OK, convert(age, "1e3"));
+    assertEquals(1000L, value.getLong());
+
+    assertEquals(ToPrimitive.OVERFLOW, convert(age, "12345678901"));
+    assertTrue(value.isNull());
+
+    assertEquals(ToPrimitive.INVALID, convert(age, "de"));
+    assertTrue(value.isNull());
+  }
+
+  /** test that whole numbers beyond the range of narrow integer columns overflow although their digits fit */
+  @Test
+  public void testIntegralRange() {
+    MetaColumn age = column("java.lang.Integer", 10, true);
+    age.setSqlType(Types.INTEGER);
+
+    assertEquals(ToPrimitive.OK, convert(age, "2147483647"));
+    assertEquals(Integer.MAX_VALUE, value.getLong());
+    assertEquals(ToPrimitive.OK, convert(age, "-2147483648"));
+
+    assertEquals(ToPrimitive.OVERFLOW, convert(age, "9999999999"));
+    assertTrue(value.isNull());
+    assertEquals(ToPrimitive.OVERFLOW, convert(age, "2147483647.5"));
+    assertTrue(value.isNull());
+
+    MetaColumn rank = column("java.lang.Short", 5, true);
+    rank.setSqlType(Types.SMALLINT);
+    assertEquals(ToPrimitive.OK, convert(rank, "-32768"));
+    assertEquals(ToPrimitive.OVERFLOW, convert(rank, "32768"));
+
+    MetaColumn flag = column("java.lang.Byte", 3, true);
+    flag.setSqlType(Types.TINYINT);
+    assertEquals(ToPrimitive.OK, convert(flag, "255"));
+    assertEquals(ToPrimitive.OVERFLOW, convert(flag, "256"));
+
+    // wide columns are bound by their precision only
+    MetaColumn id = column("java.lang.Long", 19, true);
+    id.setSqlType(Types.BIGINT);
+    assertEquals(ToPrimitive.OK, convert(id, "9999999999"));
+    assertEquals(9999999999L, value.getLong());
+  }
+
+  /** test floating point and fixed point numbers */
+  @Test
+  public void testFraction() {
+    MetaColumn factor = column("java.lang.Double", 17, true);
+    assertEquals(ToPrimitive.OK, convert(factor, "2345.20"));
+    assertEquals(PrimitiveValue.DOUBLE, value.getKind());
+    assertEquals(2345.20, value.getDouble(), 0.0);
+
+    MetaColumn salary = column("java.math.BigDecimal", 6, true);
+    salary.setFraction(2);
+    assertEquals(ToPrimitive.OK, convert(salary, "1000.25"));
+    assertEquals(PrimitiveValue.DECIMAL, value.getKind());
+    assertEquals(100025L, value.getLong());
+    assertEquals(2, value.getScale());
+    assertEquals(new BigDecimal("1000.25"), value.toObject());
+
+    assertEquals(ToPrimitive.ROUNDED, convert(salary, "1000.255"));
+    assertEquals(new BigDecimal("1000.26"), value.toObject());
+    assertEquals(ToPrimitive.OVERFLOW, convert(salary, "12345.6"));
+    assertTrue(value.isNull());
+
+    // a column without a known scale keeps the fraction as given
+    MetaColumn rate = column("java.math.BigDecimal", 10, true);
+    assertEquals(ToPrimitive.OK, convert(rate, "0.0425"));
+    assertEquals(new BigDecimal("0.0425"), value.toObject());
+    assertEquals(ToPrimitive.OK, convert(rate, "12.50"));
+    assertEquals(new BigDecimal("12.50"), value.toObject());
+  }
+
+  /** test empty and mandatory values */
+  @Test
+  public void testEmpty() {
+    assertEquals(ToPrimitive.EMPTY, convert(column("java.lang.Integer", 10, true), "  "));
+    assertTrue(value.isNull());
+    assertEquals(ToPrimitive.REQUIRED, convert(column("java.lang.Integer", 10, false), ""));
+    assertTrue(value.isNull());
+  }
+}
@@ -0,0 +1,152 @@
+package org.jcommons.db.column.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jcommons.db.column.MetaColumn;
+import org.junit.Test;
+
+/**
+ * Checks that violations are counted per column and reason while only a few examples are kept.
+ */
+public class ViolationLogTest
+{
+  private final MetaColumn name = column("NAME");
+  private final MetaColumn salary = column("SALARY");
+
+  private static MetaColumn column(final String name) {
+    MetaColumn meta = new MetaColumn();
+    meta.setTable("STAFF");
+    meta.setName(name);
+    meta.setSize(8);
+    meta.setFraction(2);
+    return meta;
+  }
+
+  /**
+   * Report the same violation for the given number of rows.
+   *
+   * @param log the log to report to
+   * @param violation the reason
+   * @param meta the column of the values
+   * @param count the number of rows, starting with row 0
+   */
+  private static void report(final ViolationLog log, final Violation violation, final MetaColumn meta,
+                             final int count)
+  {
+    for (int row = 0; row < count; ++row) {
+      log.at(row).report(violation, meta, "value " + row);
+    }
+  }
+
+  /** test that only the given number of examples is kept per column while all violations are counted */
+  @Test
+  public void testExamples() {
+    ViolationLog log = new ViolationLog(2);
+    report(log, Violation.REQUIRED, name, 5);
+    report(log, Violation.OVERFLOW, salary, 1);
+
+    assertEquals(6, log.getCount());
+    assertEquals(5, log.getCount(name));
+    assertEquals(5, log.getCount(name, Violation.REQUIRED));
+    assertEquals(0, log.getCount(name, Violation.OVERFLOW));
+    assertEquals(Arrays.asList(name, salary), log.getColumns());
+
+    // two examples and a summary for the names, a single example for the salary
+    List<String> texts = log.getMessages().getTexts();
+    assertEquals(4, texts.size());
+    assertTrue(texts.get(0), texts.get(0).startsWith("Row 1: "));
+    assertTrue(texts.get(1), texts.get(1).startsWith("Row 2: "));
+    assertEquals("3 more values for STAFF.NAME are affected: required", texts.get(2));
+    assertTrue(texts.get(3), texts.get(3).contains("\"value 0\" is too large for STAFF.SALARY"));
+  }
+
+  /** test that the summaries count the values of every reason that are not shown as examples */
+  @Test
+  public void testSummaries() {
+    ViolationLog log = new ViolationLog(3);
+    report(log, Violation.ROUNDED, salary, 2);
+    report(log, Violation.OVERFLOW, salary, 4);
+    report(log, Violation.OUTNUMBERED, salary, 7);
+
+    List<String> texts = log.getMessages().getTexts();
+    // the examples are taken from the first reported values, the summaries follow in the order of the reasons
+    assertEquals(5, texts.size());
+    assertEquals("7 more values for STAFF.SALARY are affected: outnumbered", texts.get(3));
+    assertEquals("3 more values for STAFF.SALARY are affected: overflow", texts.get(4));
+
+    // a log without examples only summarizes
+    log = new ViolationLog(0);
+    report(log, Violation.TRUNCATED, name, 3);
+    assertEquals(Arrays.asList("3 more values for STAFF.NAME are affected: truncated"),
+        log.getMessages().getTexts());
+  }
+
+  /** test that merged logs add up their counts and keep the examples within the limit */
+  @Test
+  public void testAdd() {
+    ViolationLog log = new ViolationLog(2);
+    report(log, Violation.REQUIRED, name, 1);
+
+    ViolationLog other = new ViolationLog(2);
+    report(other, Violation.REQUIRED, name, 3);
+    report(other, Violation.ROUNDED, salary, 1);
+
+    assertSame(log, log.add(other).add(null));
+    assertEquals(4, log.getCount(name, Violation.REQUIRED));
+    assertEquals(1, log.getCount(salary, Violation.ROUNDED));
+    assertEquals(Arrays.asList(name, salary), log.getColumns());
+    assertEquals(4, other.getCount());
+
+    List<String> texts = log.getMessages().getTexts();
+    assertEquals(4, texts.size());
+    assertEquals("2 more values for STAFF.NAME are affected: required", texts.get(2));
+
+    // merging an empty log changes nothing
+    log.add(new ViolationLog());
+    assertEquals(5, log.getCount());
+  }
+
+  /** test that only lost values count as fault, altered values are warnings */
+  @Test
+  public void testFault() {
+    ViolationLog log = new ViolationLog();
+    assertFalse(log.isFault());
+    assertTrue(log.isEmpty());
+
+    report(log, Violation.ROUNDED, salary, 2);
+    report(log, Violation.TRUNCATED, name, 1);
+    assertFalse(log.isEmpty());
+    assertFalse(log.isFault());
+
+    report(log, Violation.REQUIRED, name, 1);
+    assertTrue(log.isFault());
+  }
+
+  /** test that a cleared log forgets all columns, counts and examples */
+  @Test
+  public void testClear() {
+    ViolationLog log = new ViolationLog(2);
+    log.clear();
+    assertTrue(log.isEmpty());
+
+    report(log, Violation.REQUIRED, name, 3);
+    log.clear();
+    assertTrue(log.isEmpty());
+    assertFalse(log.isFault());
+    assertEquals(0, log.getCount(name));
+    assertTrue(log.getColumns().isEmpty());
+    assertTrue(log.getMessages().isEmpty());
+
+    // the row is forgotten as well, examples are kept again up to the limit
+    log.report(Violation.OVERFLOW, salary, "1e12");
+    List<String> texts = log.getMessages().getTexts();
+    assertEquals(1, texts.size());
+    assertFalse(texts.get(0), texts.get(0).startsWith("Row"));
+  }
+}
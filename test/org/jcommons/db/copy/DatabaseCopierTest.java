@@ -0,0 +1,202 @@
+package org.jcommons.db.copy;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.ArrayHandler;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.junit.*;
+
+/**
+ * Checks that tables are copied between two databases in the order of their foreign keys.
+ */
+public class DatabaseCopierTest
+{
+  private static final String[] CREATE_SQL = {
+      "create table country ( code char(2) not null primary key, name varchar(40) not null )",
+      "create table city ( id integer not null primary key, name varchar(40) not null,"
+          + " country char(2) not null, area decimal(8,2), founded date, logo varbinary(16),"
+          + " constraint fk_city_country foreign key (country) references country (code) )"};
+  private static final String[] DROP_SQL = {"drop table city", "drop table country"};
+
+  private static final int CITIES = 2500;
+
+  /**
+   * setup both databases and fill the source
+   *
+   * @throws SQLException if the tables cannot be created
+   */
+  @BeforeClass
+  public static void createTables()
+    throws SQLException
+  {
+    for (DataSource dbms : Arrays.asList(source(), target())) {
+      for (String sql : CREATE_SQL) {
+        new QueryRunner(dbms).update(sql);
+      }
+    }
+
+    QueryRunner db = new QueryRunner(source());
+    db.update("insert into country values ('de', 'Germany')");
+    db.update("insert into country values ('fr', 'France')");
+    for (int city = 1; city <= CITIES; ++city) {
+      db.update("insert into city values (?, ?, ?, ?, ?, ?)", city, "city " + city, city % 2 == 0 ? "de" : "fr",
+          city % 3 == 0 ? null : new BigDecimal(city + ".75"), Date.valueOf("1200-01-01"), new byte[] {1, 2, 3});
+    }
+  }
+
+  /**
+   * tear down both databases
+   *
+   * @throws SQLException if the tables cannot be dropped
+   */
+  @AfterClass
+  public static void dropTables()
+    throws SQLException
+  {
+    for (DataSource dbms : Arrays.asList(source(), target())) {
+      for (String sql : DROP_SQL) {
+        new QueryRunner(dbms).update(sql);
+      }
+    }
+  }
+
+  /** @return the database to copy from */
+  private static DataSource source() {
+    return createMemoryDataSource("copy_source");
+  }
+
+  /** @return the database to copy into */
+  private static DataSource target() {
+    return createMemoryDataSource("copy_target");
+  }
+
+  /**
+   * test that masters are copied first and all values arrive unchanged
+   *
+   * @throws SQLException if the tables cannot be copied
+   */
+  @Test
+  public void testCopy()
+    throws SQLException
+  {
+    DatabaseCopier copier = new DatabaseCopier(source(), target()).setBatch(100).setCapacity(2);
+    List<String> tables = Arrays.asList("city", "country");
+    assertEquals(Arrays.asList("country", "city"), copier.sort(tables));
+
+    Map<String, Integer> copied = copier.copy(tables);
+    assertEquals(Arrays.asList("country", "city"), Arrays.asList(copied.keySet().toArray()));
+    assertEquals(Integer.valueOf(CITIES), copied.get("city"));
+    assertEquals(2, QueryUtils.countRows(target(), "country"));
+    assertEquals(CITIES, QueryUtils.countRows(target(), "city"));
+
+    Object[] city = new QueryRunner(target()).query("select * from city where id = 7", new ArrayHandler());
+    assertEquals("city 7", city[1]);
+    assertEquals("fr", city[2]);
+    assertEquals(new BigDecimal("7.75"), city[3]);
+    assertEquals(Date.valueOf("1200-01-01"), city[4]);
+    assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) city[5]);
+  }
+
+  /**
+   * test that tables referencing each other by nullable foreign keys are copied completely
+   *
+   * @throws SQLException if the tables cannot be copied
+   */
+  @Test
+  public void testCycle()
+    throws SQLException
+  {
+    String[] create = {
+        "create table department ( id integer not null primary key, name varchar(40) not null, head integer )",
+        "create table employee ( id integer not null primary key, name varchar(40) not null,"
+            + " department integer not null, manager integer,"
+            + " constraint fk_employee_department foreign key (department) references department (id),"
+            + " constraint fk_employee_manager foreign key (manager) references employee (id) )",
+        "alter table department add constraint fk_department_head foreign key (head) references employee (id)"};
+    String[] drop = {"alter table department drop constraint fk_department_head", "drop table employee",
+        "drop table department"};
+    for (DataSource dbms : Arrays.asList(source(), target())) {
+      for (String sql : create) {
+        new QueryRunner(dbms).update(sql);
+      }
+    }
+
+    try {
+      QueryRunner db = new QueryRunner(source());
+      db.update("insert into department values (1, 'sales', null)");
+      db.update("insert into department values (2, 'research', null)");
+      for (int index = 0; index < 250; ++index) {
+        // managers have higher numbers than their staff
+        int employee = (index + 239) % 250 + 1;
+        db.update("insert into employee values (?, ?, ?, ?)", employee, "employee " + employee, 1 + employee % 2,
+            employee < 240 ? Integer.valueOf(240 + employee % 10) : null);
+      }
+      db.update("update department set head = 241 where id = 1");
+
+      DatabaseCopier copier = new DatabaseCopier(source(), target()).setBatch(100);
+      List<String> tables = Arrays.asList("employee", "department");
+      assertEquals(Arrays.asList("department", "employee"), copier.sort(tables));
+      Map<String, Integer> copied = copier.copy(tables);
+      assertEquals(Integer.valueOf(250), copied.get("employee"));
+
+      QueryRunner copy = new QueryRunner(target());
+      assertEquals(241, ((Number) copy.query("select head from department where id = 1", new ArrayHandler())[0])
+          .intValue());
+      assertNull(copy.query("select head from department where id = 2", new ArrayHandler())[0]);
+      assertEquals(247, ((Number) copy.query("select manager from employee where id = 7", new ArrayHandler())[0])
+          .intValue());
+      assertNull(copy.query("select manager from employee where id = 245", new ArrayHandler())[0]);
+    } finally {
+      for (DataSource dbms : Arrays.asList(source(), target())) {
+        for (String sql : drop) {
+          new QueryRunner(dbms).update(sql);
+        }
+      }
+    }
+  }
+
+  /**
+   * test that a table that cannot be written completely is rolled back
+   *
+   * @throws SQLException if the tables cannot be created
+   */
+  @Test
+  public void testRollback()
+    throws SQLException
+  {
+    new QueryRunner(source()).update("create table tag ( id integer not null primary key, name varchar(40) )");
+    new QueryRunner(target()).update("create table tag ( id integer not null primary key, name varchar(40),"
+        + " constraint uk_tag_name unique (name) )");
+    try {
+      QueryRunner db = new QueryRunner(source());
+      for (int tag = 1; tag <= 250; ++tag) {
+        db.update("insert into tag values (?, ?)", tag, tag == 180 ? "tag 1" : "tag " + tag);
+      }
+
+      try {
+        new DatabaseCopier(source(), target()).setBatch(100).copy(Arrays.asList("tag"));
+        fail("The duplicate name must be rejected.");
+      } catch (SQLException ex) {
+        // the second batch fails after the first one was sent already
+      }
+      assertEquals(0, QueryUtils.countRows(target(), "tag"));
+    } finally {
+      new QueryRunner(source()).update("drop table tag");
+      new QueryRunner(target()).update("drop table tag");
+    }
+  }
+}
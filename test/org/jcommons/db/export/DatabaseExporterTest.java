@@ -0,0 +1,159 @@
+package org.jcommons.db.export;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.dbutils.QueryRunner;
+import org.jcommons.db.load.source.ParallelCsvReader;
+import org.junit.*;
+
+/**
+ * Checks that tables are exported into files the loader can read, sequentially and in key ranges alike.
+ */
+public class DatabaseExporterTest
+{
+  private static final String CREATE_SQL =
+      "create table ledger ( id integer not null primary key, name varchar(40) not null, amount decimal(10,2),"
+          + " rate double, booked date, changed timestamp )";
+  private static final String DROP_SQL = "drop table ledger";
+  private static final String INSERT_SQL = "insert into ledger values (?, ?, ?, ?, ?, ?)";
+  private static final int ROWS = 1000;
+
+  private File directory;
+
+  /**
+   * setup database
+   *
+   * @throws SQLException if table cannot be created or filled
+   */
+  @BeforeClass
+  public static void createTable()
+    throws SQLException
+  {
+    DataSource dbms = createMemoryDataSource();
+    new QueryRunner(dbms).update(CREATE_SQL);
+
+    Connection connection = dbms.getConnection();
+    try {
+      PreparedStatement statement = connection.prepareStatement(INSERT_SQL);
+      for (int row = 1; row <= ROWS; ++row) {
+        statement.setInt(1, row * 7);
+        statement.setString(2, row == 1 ? "Smith, \"Jr.\"" : "name " + row);
+        statement.setBigDecimal(3, row % 10 == 0 ? null : new java.math.BigDecimal(row + ".25"));
+        statement.setDouble(4, row / 8.0);
+        statement.setDate(5, Date.valueOf("2011-03-" + (10 + row % 18)));
+        String changed = row == 1 ? "2011-03-01 10:30:15.123456789" : "2011-03-01 10:30:15.5";
+        statement.setTimestamp(6, Timestamp.valueOf(changed));
+        statement.addBatch();
+      }
+      statement.executeBatch();
+      DbUtils.closeQuietly(statement);
+    } finally {
+      DbUtils.closeQuietly(connection);
+    }
+  }
+
+  /**
+   * tear down database
+   *
+   * @throws SQLException if table cannot be dropped
+   */
+  @AfterClass
+  public static void dropTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update(DROP_SQL);
+  }
+
+  /**
+   * create a directory for the exported files
+   *
+   * @throws IOException if the directory cannot be created
+   */
+  @Before
+  public void createDirectory()
+    throws IOException
+  {
+    directory = File.createTempFile("export", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  /** remove the exported files */
+  @After
+  public void deleteDirectory() {
+    for (File file : directory.listFiles()) {
+      assertTrue(file.delete());
+    }
+    assertTrue(directory.delete());
+  }
+
+  /**
+   * test that the values are converted into the layout the loader reads
+   *
+   * @throws Exception if the table cannot be exported
+   */
+  @Test
+  public void testExport()
+    throws Exception
+  {
+    File file = new DatabaseExporter().setDataSource(createMemoryDataSource()).export("ledger", directory);
+    List<String> lines = readLines(file);
+    assertEquals(ROWS + 1, lines.size());
+    assertEquals("ID,NAME,AMOUNT,RATE,BOOKED,CHANGED", lines.get(0));
+    assertEquals("7,\"Smith, \"\"Jr.\"\"\",1.25,0.125,2011-03-11,2011-03-01 10:30:15.123456789", lines.get(1));
+    assertEquals("70,name 10,,1.25,2011-03-20,2011-03-01 10:30:15.500000000", lines.get(10));
+
+    ParallelCsvReader reader = new ParallelCsvReader(file);
+    try {
+      assertEquals(6, reader.getColumns().size());
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * test that key ranges exported in parallel yield the same file
+   *
+   * @throws Exception if the table cannot be exported
+   */
+  @Test
+  public void testParts()
+    throws Exception
+  {
+    DataSource dbms = createMemoryDataSource();
+    List<String> sequential = readLines(new DatabaseExporter().setDataSource(dbms).export("ledger", directory));
+    File file = new DatabaseExporter().setDataSource(dbms).setWorkers(3).setPart(90).export("ledger", directory);
+
+    assertEquals(sequential, readLines(file));
+    assertEquals(1, directory.listFiles().length);
+  }
+
+  /**
+   * @param file the file to read
+   * @return all lines of the file
+   * @throws IOException if the file cannot be read
+   */
+  private static List<String> readLines(final File file)
+    throws IOException
+  {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+}
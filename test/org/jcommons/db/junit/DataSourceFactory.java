@@ -1,5 +1,8 @@
 package org.jcommons.db.junit;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.sql.DataSource;
 
 import org.apache.commons.dbcp.BasicDataSource;
@@ -12,6 +15,7 @@ import org.apache.commons.dbcp.BasicDataSource;
 public final class DataSourceFactory
 {
   private static DataSource dataSource;
+  private static final Map<String, DataSource> named = new HashMap<String, DataSource>();
 
   /** hide sole constructor */
   private DataSourceFactory() {
@@ -29,4 +33,24 @@ public final class DataSourceFactory
     }
     return dataSource;
   }
+
+  /**
+   * Create a separate in-memory database, e.g. to copy data between two databases.
+   *
+   * @param name the name of the database, the default database is named <code>junit</code>
+   * @return a reference to the named in-memory database, the same for the same name
+   */
+  public static synchronized DataSource createMemoryDataSource(final String name) {
+    DataSource source = named.get(name);
+    if (source == null) {
+      BasicDataSource basicDataSource = new BasicDataSource();
+      basicDataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+      basicDataSource.setUrl("jdbc:hsqldb:mem:" + name);
+      basicDataSource.setUsername("sa");
+      basicDataSource.setPassword("");
+      source = basicDataSource;
+      named.put(name, source);
+    }
+    return source;
+  }
 }
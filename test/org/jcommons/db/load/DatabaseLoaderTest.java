@@ -11,6 +11,7 @@ import java.io.File;
 import java.sql.SQLException;
 import java.util.*;
 
+import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.dbutils.QueryRunner;
 import org.jcommons.db.column.ColumnDataProvider;
 import org.jcommons.db.jdbc.QueryUtils;
@@ -110,6 +111,22 @@ public class DatabaseLoaderTest
     assertEquals(6, QueryUtils.countRows(createMemoryDataSource(), "role_names"));
   }
 
+  /** test that the workers are limited to the connections of the pool */
+  @Test
+  public void testParallelism() {
+    BasicDataSource pool = new BasicDataSource();
+    pool.setMaxActive(8);
+
+    DatabaseLoader load = new DatabaseLoader().setDataSource(pool);
+    assertEquals(1, load.getParallelism());
+    assertEquals(4, load.setWorkers(4).getParallelism());
+    assertEquals(7, load.setWorkers(16).getParallelism());
+    assertEquals(5, load.setDataSource(new LoadSession(pool, 6)).getParallelism());
+
+    pool.setMaxActive(2);
+    assertEquals(1, load.setDataSource(pool).getParallelism());
+  }
+
   /**
    * test that invalid files are recognized
    *
@@ -0,0 +1,170 @@
+package org.jcommons.db.load;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.jcommons.lang.clazz.ClassUtils.getPackagePath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.*;
+import java.sql.SQLException;
+import java.util.*;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.junit.*;
+
+/**
+ * Checks that a fixture book is restored from its snapshot once it was loaded.
+ */
+public class FixtureLoaderTest
+{
+  private static final String ROOT = getPackagePath(FixtureLoaderTest.class, "./test");
+  private static final List<String> TABLES = Arrays.asList("language", "roles");
+
+  private File directory;
+
+  /** @return the database that receives the fixtures */
+  private static DataSource dbms() {
+    return createMemoryDataSource("fixture");
+  }
+
+  /**
+   * setup database
+   *
+   * @throws SQLException if table cannot be created
+   */
+  @BeforeClass
+  public static void createTables()
+    throws SQLException
+  {
+    QueryRunner query = new QueryRunner(dbms());
+    query.update("create table language ( language_id integer not null, name varchar(40) not null )");
+    query.update("create table roles ( role_id integer not null, name varchar(40) not null )");
+  }
+
+  /**
+   * tear down database
+   *
+   * @throws SQLException if table cannot be dropped
+   */
+  @AfterClass
+  public static void dropTables()
+    throws SQLException
+  {
+    QueryRunner query = new QueryRunner(dbms());
+    for (String table : TABLES) {
+      query.update("drop table " + table);
+    }
+  }
+
+  /**
+   * create a directory for the snapshots
+   *
+   * @throws IOException if the directory cannot be created
+   */
+  @Before
+  public void createDirectory()
+    throws IOException
+  {
+    directory = File.createTempFile("fixtures", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  /** remove the snapshots */
+  @After
+  public void deleteDirectory() {
+    for (File file : directory.listFiles()) {
+      assertTrue(file.delete());
+    }
+    assertTrue(directory.delete());
+  }
+
+  /**
+   * test that the second load of the same files is restored from the snapshot
+   *
+   * @throws Exception if the fixture cannot be loaded
+   */
+  @Test
+  public void testRestore()
+    throws Exception
+  {
+    List<File> files = new ArrayList<File>();
+    for (String table : TABLES) {
+      files.add(new File(ROOT, table + ".csv"));
+    }
+
+    FixtureLoader loader = new FixtureLoader(dbms(), directory);
+    assertFalse(loader.load(files));
+    assertEquals(1, directory.listFiles().length);
+    clearTables();
+
+    assertTrue(loader.load(files));
+    assertEquals(2, QueryUtils.countRows(dbms(), "language"));
+    assertEquals(3, QueryUtils.countRows(dbms(), "roles"));
+    clearTables();
+
+    // other files yield another snapshot
+    assertFalse(loader.load(files.subList(0, 1)));
+    assertEquals(2, directory.listFiles().length);
+    clearTables();
+  }
+
+  /**
+   * test that identical rows, which are scripted as identical statements, are all restored
+   *
+   * @throws Exception if the fixture cannot be loaded
+   */
+  @Test
+  public void testDuplicateRows()
+    throws Exception
+  {
+    // the book is only hashed, the rows are inserted by the loader
+    File book = new File(directory, "language.csv");
+    Writer output = new OutputStreamWriter(new FileOutputStream(book), "UTF-8");
+    try {
+      output.write("language_id,name\n");
+    } finally {
+      output.close();
+    }
+    List<File> files = Arrays.asList(book);
+    QueryRunner query = new QueryRunner(dbms());
+    query.update("insert into language values ( 1, 'English' )");
+
+    FixtureLoader loader = new FixtureLoader(dbms(), directory) {
+      @Override
+      protected void loadBook(final List<File> files)
+        throws SQLException
+      {
+        QueryRunner query = new QueryRunner(dbms());
+        query.update("insert into language values ( 1, 'English' )");
+        query.update("insert into language values ( 1, 'English' )");
+        query.update("insert into language values ( 2, 'German' )");
+      }
+    };
+    assertFalse(loader.load(files));
+    assertEquals(4, QueryUtils.countRows(dbms(), "language"));
+    clearTables();
+
+    query.update("insert into language values ( 1, 'English' )");
+    assertTrue(loader.load(files));
+    assertEquals(4, QueryUtils.countRows(dbms(), "language"));
+    clearTables();
+  }
+
+  /**
+   * remove all rows, so the database is in the state before the load again
+   *
+   * @throws SQLException if the tables cannot be cleared
+   */
+  private static void clearTables()
+    throws SQLException
+  {
+    QueryRunner query = new QueryRunner(dbms());
+    for (String table : TABLES) {
+      query.update("delete from " + table);
+    }
+  }
+}
@@ -0,0 +1,336 @@
+package org.jcommons.db.load;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbutils.QueryRunner;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.jcommons.db.load.source.ColumnarSource;
+import org.jcommons.io.sheet.Book;
+import org.jcommons.io.text.reader.csv.CsvBookReader;
+import org.junit.*;
+
+/**
+ * Checks that a load session keeps its connections and owns their transactions.
+ */
+public class LoadSessionTest
+{
+  /**
+   * setup database
+   *
+   * @throws SQLException if table cannot be created
+   */
+  @BeforeClass
+  public static void createTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update("create table pinned ( id integer not null primary key )");
+  }
+
+  /**
+   * tear down database
+   *
+   * @throws SQLException if table cannot be dropped
+   */
+  @AfterClass
+  public static void dropTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update("drop table pinned");
+  }
+
+  /**
+   * clear the table so all tests start with nothing
+   *
+   * @throws SQLException if table cannot be cleared
+   */
+  @Before
+  public void clearTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update("delete from pinned");
+  }
+
+  /**
+   * test that every thread keeps its connection until the session is closed
+   *
+   * @throws Exception if the database cannot be accessed
+   */
+  @Test
+  public void testPinning()
+    throws Exception
+  {
+    BasicDataSource pool = (BasicDataSource) createMemoryDataSource();
+    final LoadSession session = new LoadSession(pool, 2);
+    try {
+      Connection connection = session.getConnection();
+      connection.close();
+      assertSame(connection, session.getConnection());
+      assertFalse(connection.isClosed());
+      assertEquals(1, pool.getNumActive());
+
+      ExecutorService worker = Executors.newSingleThreadExecutor();
+      try {
+        Connection other = worker.submit(new Callable<Connection>() {
+          @Override
+          public Connection call()
+            throws SQLException
+          {
+            return session.getConnection();
+          }
+        }).get();
+        assertNotSame(connection, other);
+        assertEquals(2, session.getPinned());
+      } finally {
+        worker.shutdown();
+      }
+    } finally {
+      session.close();
+    }
+    assertEquals(0, pool.getNumActive());
+  }
+
+  /**
+   * test that reserved connections are borrowed up front and handed out to the threads later on
+   *
+   * @throws SQLException if the database cannot be accessed
+   */
+  @Test
+  public void testReserve()
+    throws SQLException
+  {
+    BasicDataSource pool = (BasicDataSource) createMemoryDataSource();
+    LoadSession session = new LoadSession(pool, 3).reserve(5);
+    try {
+      assertEquals(3, pool.getNumActive());
+      assertEquals(3, session.getBorrowed());
+      assertEquals(0, session.getPinned());
+
+      session.getConnection();
+      assertEquals(1, session.getPinned());
+      assertEquals(3, session.getBorrowed());
+      assertTrue(session.getWaitTime() >= 0);
+    } finally {
+      session.close();
+    }
+    assertEquals(0, pool.getNumActive());
+  }
+
+  /**
+   * test that a thread waiting for the pool does not block the threads that use the session meanwhile
+   *
+   * @throws Exception if the database cannot be accessed
+   */
+  @Test
+  public void testWaitOutsideLock()
+    throws Exception
+  {
+    final BasicDataSource pool = (BasicDataSource) createMemoryDataSource();
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    DataSource slow = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class< ? >[] {DataSource.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable
+          {
+            if ("getConnection".equals(method.getName()) && entered.getCount() > 0) {
+              entered.countDown();
+              release.await();
+            }
+            return method.invoke(pool, args);
+          }
+        });
+
+    final LoadSession session = new LoadSession(slow, 2);
+    ExecutorService workers = Executors.newFixedThreadPool(2);
+    try {
+      Callable<Connection> borrow = new Callable<Connection>() {
+        @Override
+        public Connection call()
+          throws SQLException
+        {
+          return session.getConnection();
+        }
+      };
+      Future<Connection> waiting = workers.submit(borrow);
+      assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+      Connection other = workers.submit(borrow).get(5, TimeUnit.SECONDS);
+      assertEquals(1, session.getPinned());
+
+      release.countDown();
+      assertNotSame(other, waiting.get(5, TimeUnit.SECONDS));
+      assertEquals(2, session.getPinned());
+      assertEquals(2, session.getBorrowed());
+    } finally {
+      release.countDown();
+      workers.shutdown();
+      session.close();
+    }
+    assertEquals(0, pool.getNumActive());
+  }
+
+  /**
+   * test that released connections are reused by the threads of the next pool instead of the dead threads keeping them
+   *
+   * @throws Exception if the database cannot be accessed
+   */
+  @Test
+  public void testRelease()
+    throws Exception
+  {
+    BasicDataSource pool = (BasicDataSource) createMemoryDataSource();
+    final LoadSession session = new LoadSession(pool, 2).reserve(2);
+    try {
+      Callable<Connection> task = new Callable<Connection>() {
+        @Override
+        public Connection call()
+          throws SQLException
+        {
+          try {
+            return session.getConnection();
+          } finally {
+            session.release();
+          }
+        }
+      };
+      for (int round = 0; round < 2; ++round) {
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        try {
+          Future<Connection> first = workers.submit(task);
+          Future<Connection> second = workers.submit(task);
+          first.get();
+          second.get();
+        } finally {
+          workers.shutdown();
+        }
+        assertEquals(0, session.getPinned());
+        assertEquals(2, session.getBorrowed());
+      }
+
+      // a released connection is pinned again by the next thread
+      session.getConnection();
+      assertEquals(1, session.getPinned());
+      assertEquals(2, session.getBorrowed());
+    } finally {
+      session.close();
+    }
+    assertEquals(0, pool.getNumActive());
+  }
+
+  /**
+   * test that two books loaded in parallel through the same session keep their rows and leave no connection pinned
+   *
+   * @throws Exception if the books cannot be loaded
+   */
+  @Test
+  public void testTwoBooks()
+    throws Exception
+  {
+    BasicDataSource pool = (BasicDataSource) createMemoryDataSource();
+    LoadSession session = new LoadSession(pool, 3);
+    File directory = File.createTempFile("books", "");
+    assertTrue(directory.delete() && directory.mkdir());
+    try {
+      DatabaseLoader loader = new DatabaseLoader().setDataSource(session).setWorkers(2);
+      loader.load(book(directory, "1", "2"));
+      assertEquals(0, session.getPinned());
+      int borrowed = session.getBorrowed();
+
+      loader.load(book(directory, "3", "4", "5"));
+      assertEquals(0, session.getPinned());
+      assertEquals(borrowed, session.getBorrowed());
+    } finally {
+      session.close();
+      for (File file : directory.listFiles()) {
+        assertTrue(file.delete());
+      }
+      assertTrue(directory.delete());
+    }
+    assertEquals(5, QueryUtils.countRows(createMemoryDataSource(), "pinned"));
+    assertEquals(0, pool.getNumActive());
+  }
+
+  /**
+   * Write a book of a single sheet for the pinned table.
+   *
+   * @param directory the directory of the CSV file
+   * @param keys the keys of the rows
+   * @return the book read from the file
+   * @throws IOException if the file cannot be written
+   */
+  private static Book book(final File directory, final String... keys)
+    throws IOException
+  {
+    File file = new File(directory, "pinned.csv");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write("id\n");
+      for (String key : keys) {
+        writer.write(key + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+    CsvBookReader reader = new CsvBookReader();
+    reader.addFile(file);
+    return reader.read();
+  }
+
+  /**
+   * test that the loaders cannot commit and the rows are kept only if the session commits
+   *
+   * @throws SQLException if the rows cannot be loaded
+   */
+  @Test
+  public void testTransaction()
+    throws SQLException
+  {
+    LoadSession session = new LoadSession(createMemoryDataSource());
+    try {
+      load(session, "1", "2");
+      session.rollback();
+      assertEquals(0, QueryUtils.countRows(createMemoryDataSource(), "pinned"));
+
+      load(session, "3", "4", "5");
+      session.commit();
+    } finally {
+      session.close();
+    }
+    assertEquals(3, QueryUtils.countRows(createMemoryDataSource(), "pinned"));
+  }
+
+  /**
+   * Load the given keys through the session.
+   *
+   * @param session the session to load the rows with
+   * @param keys the keys of the rows
+   * @throws SQLException if the rows cannot be loaded
+   */
+  private static void load(final LoadSession session, final String... keys)
+    throws SQLException
+  {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id"));
+    for (String key : keys) {
+      builder.add(new CharSequence[] {key});
+    }
+    new SheetLoader().setDataSource(session).load("pinned", builder.build());
+  }
+}
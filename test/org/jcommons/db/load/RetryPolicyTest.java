@@ -0,0 +1,187 @@
+package org.jcommons.db.load;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.jcommons.db.jdbc.QueryUtils;
+import org.jcommons.db.load.source.ColumnarSource;
+import org.junit.*;
+
+/**
+ * Checks that batches failing due to lock conflicts are retried and all other failures are not.
+ */
+public class RetryPolicyTest
+{
+  /**
+   * setup database
+   *
+   * @throws SQLException if table cannot be created
+   */
+  @BeforeClass
+  public static void createTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update("create table retried ( id integer not null primary key )");
+  }
+
+  /**
+   * tear down database
+   *
+   * @throws SQLException if table cannot be dropped
+   */
+  @AfterClass
+  public static void dropTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update("drop table retried");
+  }
+
+  /** test that deadlocks and lock timeouts are transient and constraint violations are not */
+  @Test
+  public void testTransient() {
+    RetryPolicy policy = new RetryPolicy();
+    assertTrue(policy.isTransient(new SQLException("serialization failure", "40001")));
+    assertTrue(policy.isTransient(new SQLException("deadlock detected", "40P01")));
+    assertTrue(policy.isTransient(new SQLException("lock wait timeout", "HY000", 1205)));
+    assertTrue(policy.isTransient(new SQLTransactionRollbackException("deadlock")));
+    assertFalse(policy.isTransient(new SQLException("unique constraint", "23505")));
+    assertFalse(policy.isTransient(new SQLException("no state")));
+
+    BatchUpdateException batch = new BatchUpdateException("batch failed", new int[0]);
+    batch.setNextException(new SQLException("deadlock found", "40001", 1213));
+    assertTrue(policy.isTransient(batch));
+  }
+
+  /** test that a batch is retried up to the attempts and all batches share the budget */
+  @Test
+  public void testBudget() {
+    RetryPolicy policy = new RetryPolicy().setAttempts(3).setBudget(3).setDelay(0L);
+    SQLException deadlock = new SQLException("deadlock", "40001");
+    assertTrue(policy.retry(deadlock, 1));
+    assertTrue(policy.retry(deadlock, 2));
+    assertFalse(policy.retry(deadlock, 3));
+    assertFalse(policy.retry(new SQLException("unique constraint", "23505"), 1));
+    assertEquals(2, policy.getRetries());
+
+    assertTrue(policy.retry(deadlock, 1));
+    assertFalse(policy.retry(deadlock, 1));
+    assertEquals(3, policy.getRetries());
+
+    policy.reset();
+    assertTrue(policy.retry(deadlock, 1));
+  }
+
+  /** test that the wait is random but bounded by the doubled delay */
+  @Test
+  public void testBackoff() {
+    RetryPolicy policy = new RetryPolicy().setDelay(10L).setMaxDelay(30L);
+    for (int round = 0; round < 100; ++round) {
+      assertTrue(policy.backoff(1) <= 10L);
+      assertTrue(policy.backoff(2) <= 20L);
+      assertTrue(policy.backoff(10) <= 30L);
+      assertTrue(policy.backoff(10) >= 0L);
+    }
+  }
+
+  /**
+   * test that a batch failing once is sent again without losing or duplicating rows
+   *
+   * @throws SQLException if the rows cannot be loaded
+   */
+  @Test
+  public void testRetryBatch()
+    throws SQLException
+  {
+    AtomicInteger failures = new AtomicInteger(1);
+    RetryPolicy policy = new RetryPolicy().setDelay(0L);
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id"));
+    for (int key = 50; key > 0; --key) {
+      builder.add(new CharSequence[] {String.valueOf(key)});
+    }
+
+    DataSource failing = failing(createMemoryDataSource(), failures);
+    new SheetLoader().setDataSource(failing).setRetryPolicy(policy).load("retried", builder.build());
+    assertEquals(0, failures.get());
+    assertEquals(1, policy.getRetries());
+    assertEquals(50, QueryUtils.countRows(createMemoryDataSource(), "retried"));
+  }
+
+  /**
+   * Wrap a data source, so its statements fail like a deadlock victim before they execute their batch.
+   *
+   * @param dataSource the data source to wrap
+   * @param failures the number of batches to fail
+   * @return the wrapped data source
+   */
+  private static DataSource failing(final DataSource dataSource, final AtomicInteger failures) {
+    return (DataSource) wrap(DataSource.class, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws Throwable
+      {
+        Object result = invokeReal(dataSource, method, args);
+        if (!(result instanceof Connection)) return result;
+        final Connection connection = (Connection) result;
+        return wrap(Connection.class, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable
+          {
+            Object result = invokeReal(connection, method, args);
+            if (!(result instanceof PreparedStatement)) return result;
+            final PreparedStatement statement = (PreparedStatement) result;
+            return wrap(PreparedStatement.class, new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable
+              {
+                if ("executeBatch".equals(method.getName()) && failures.get() > 0) {
+                  failures.decrementAndGet();
+                  statement.clearBatch();
+                  throw new SQLTransactionRollbackException("deadlock", "40001");
+                }
+                return invokeReal(statement, method, args);
+              }
+            });
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * @param type the interface to implement
+   * @param handler the handler of all calls
+   * @return the proxy
+   */
+  private static Object wrap(final Class< ? > type, final InvocationHandler handler) {
+    return Proxy.newProxyInstance(RetryPolicyTest.class.getClassLoader(), new Class< ? >[] {type}, handler);
+  }
+
+  /**
+   * @param real the wrapped object
+   * @param method the called method
+   * @param args the arguments of the call
+   * @return the result of the call
+   * @throws Throwable the failure of the call
+   */
+  private static Object invokeReal(final Object real, final Method method, final Object[] args)
+    throws Throwable
+  {
+    try {
+      return method.invoke(real, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package org.jcommons.db.load.report;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.jcommons.db.load.SheetLoader;
+import org.jcommons.db.load.source.ColumnarSource;
+import org.junit.*;
+
+/**
+ * Checks that the statistics of every pass are collected and published through JMX.
+ */
+public class LoadReportTest
+{
+  private static final String CREATE_SQL =
+      "create table reported ( id integer not null primary key, name varchar(20) not null, remark varchar(20) )";
+  private static final String DROP_SQL = "drop table reported";
+
+  /**
+   * setup database
+   *
+   * @throws SQLException if table cannot be created
+   */
+  @BeforeClass
+  public static void createTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update(CREATE_SQL);
+  }
+
+  /**
+   * tear down database
+   *
+   * @throws SQLException if table cannot be dropped
+   */
+  @AfterClass
+  public static void dropTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update(DROP_SQL);
+  }
+
+  /** test that percentiles are estimated by the upper bound of their bucket */
+  @Test
+  public void testHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0L, histogram.getPercentile(99));
+    for (int batch = 0; batch < 99; ++batch) {
+      histogram.record(3000L);
+    }
+    histogram.record(1000000L);
+
+    assertEquals(100L, histogram.getCount());
+    assertEquals(4L, histogram.getPercentile(50));
+    assertEquals(4L, histogram.getPercentile(99));
+    assertEquals(1024L, histogram.getPercentile(100));
+    assertEquals(1000000L, histogram.getMax());
+  }
+
+  /**
+   * test that both passes of a table report their rows, batches and rejected rows
+   *
+   * @throws Exception if the rows cannot be loaded or the metrics cannot be read
+   */
+  @Test
+  public void testReport()
+    throws Exception
+  {
+    new QueryRunner(createMemoryDataSource()).update("delete from reported");
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id", "name", "remark"));
+    builder.add(new CharSequence[] {"1", "one", "first"});
+    builder.add(new CharSequence[] {"2", "two", null});
+    builder.add(new CharSequence[] {"x", "three", "lost key"});
+    ColumnarSource rows = builder.build();
+
+    LoadMetrics metrics = new LoadMetrics();
+    LoadReport report = new LoadReport("book", metrics);
+    SheetLoader loader = new SheetLoader().setDataSource(createMemoryDataSource()).setReport(report);
+    loader.load("reported", rows);
+    loader.update("reported", rows);
+    metrics.addLoad(report);
+
+    assertEquals(2, report.getPasses().size());
+    PassReport insert = report.getPass("REPORTED", false);
+    assertEquals(2L, insert.getRows());
+    assertEquals(1L, insert.getRejected());
+    assertEquals(1L, insert.getBatches().getCount());
+    assertEquals(2L, report.getRows("reported"));
+    assertEquals(4L, report.getRows());
+    assertEquals(2L, report.getMetadataMisses());
+    assertTrue(report.getText().contains("reported (update): 2 rows"));
+
+    ObjectName name = metrics.register("report test");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals(4L, server.getAttribute(name, "Rows"));
+      assertEquals(2L, server.getAttribute(name, "Batches"));
+      assertEquals(0, ((String[]) server.getAttribute(name, "ActivePasses")).length);
+      assertEquals(report.getText(), server.getAttribute(name, "LastReport"));
+    } finally {
+      metrics.unregister();
+    }
+    assertEquals(null, metrics.getObjectName());
+  }
+
+  /**
+   * test that metrics cannot be registered twice with the same name
+   *
+   * @throws JMException if the first metrics cannot be registered
+   */
+  @Test
+  public void testDuplicateName()
+    throws JMException
+  {
+    LoadMetrics metrics = new LoadMetrics();
+    metrics.register("duplicate");
+    try {
+      new LoadMetrics().register("duplicate");
+      fail("Metrics registered twice with the same name");
+    } catch (InstanceAlreadyExistsException ex) {
+      assertTrue(ex.getMessage().contains("duplicate"));
+    } finally {
+      metrics.unregister();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package org.jcommons.db.load.sheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.load.source.RowSource;
+import org.junit.Test;
+
+/**
+ * Checks that blocks of rows are converted column by column.
+ */
+public class ChunkConverterTest
+{
+  private static final int ROWS = 10;
+
+  private final RowSource source = new RowSource() {
+    @Override
+    public List<String> getColumns() {
+      return Arrays.asList("id", "amount", "name");
+    }
+
+    @Override
+    public int size() {
+      return ROWS;
+    }
+
+    @Override
+    public int getRowNumber(final int row) {
+      return row;
+    }
+
+    @Override
+    public void prepare(final int from, final int to) {
+      // nothing to prepare
+    }
+
+    @Override
+    public CharSequence getValue(final int column, final int row) {
+      if (column == 0) return row == 5 ? "five" : String.valueOf(row);
+      if (column == 1) return row % 3 == 0 ? "" : row + ".25";
+      return "name " + row;
+    }
+  };
+
+  private MetaColumn column(final String name, final String type, final int sqlType, final boolean primary) {
+    MetaColumn meta = new MetaColumn();
+    meta.setName(name.toUpperCase());
+    meta.setTable("AMOUNTS");
+    meta.setType(type);
+    meta.setSqlType(sqlType);
+    meta.setPrimary(primary);
+    meta.setNullable(!primary);
+    meta.setPrecision(10);
+    meta.setFraction(2);
+    meta.setSize(20);
+    return meta;
+  }
+
+  private List<MetaColumn> columns() {
+    return Arrays.asList(column("id", Long.class.getName(), Types.BIGINT, true),
+                         column("amount", BigDecimal.class.getName(), Types.DECIMAL, false),
+                         column("name", String.class.getName(), Types.VARCHAR, false));
+  }
+
+  private void check(final ChunkConverter converter) {
+    RowChunk chunk = converter.createChunk();
+    converter.convert(chunk, 4, 4);
+    assertEquals(4, chunk.getFirst());
+    assertEquals(4, chunk.size());
+
+    assertEquals(Long.valueOf(4), chunk.getVector(0).getObject(0));
+    assertEquals(new BigDecimal("4.25"), chunk.getVector(1).getObject(0));
+    assertEquals("name 4", chunk.getVector(2).getObject(0));
+
+    // row 5 lost its key, row 6 has no amount
+    assertTrue(chunk.isRejected(1));
+    assertFalse(chunk.isRejected(2));
+    assertTrue(chunk.getVector(1).isNull(2));
+    assertNull(chunk.getVector(1).getObject(2));
+    assertEquals(1, converter.getViolations().getCount());
+
+    // the last chunk of the sheet is shorter
+    converter.convert(chunk, 8, 4);
+    assertEquals(2, chunk.size());
+    assertFalse(chunk.isRejected(0));
+    assertEquals(new BigDecimal("8.25"), chunk.getVector(1).getObject(0));
+  }
+
+  /** test converting in the calling thread */
+  @Test
+  public void testConvert() {
+    check(new ChunkConverter(source, columns(), 4));
+  }
+
+  /** test converting the columns in parallel */
+  @Test
+  public void testConvertParallel() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      check(new ChunkConverter(source, columns(), 4).setExecutor(executor));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.jcommons.db.load.sheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.column.validation.ViolationLog;
+import org.jcommons.db.load.source.ColumnarSource;
+import org.jcommons.db.load.source.RowSource;
+import org.junit.Test;
+
+/**
+ * Checks that the values of a row are bound to all parameters of their column regardless of the case of its name.
+ */
+public class QueryParameterTest
+{
+  private final Map<Integer, Object> bound = new TreeMap<Integer, Object>();
+
+  private final PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+      QueryParameterTest.class.getClassLoader(), new Class< ? >[] {PreparedStatement.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().startsWith("set")) {
+            bound.put((Integer) args[0], "setNull".equals(method.getName()) ? null : args[1]);
+          }
+          return null;
+        }
+      });
+
+  private static MetaColumn column(final String name, final String type, final int sqlType) {
+    MetaColumn meta = new MetaColumn();
+    meta.setName(name);
+    meta.setTable("STAFF");
+    meta.setType(type);
+    meta.setSqlType(sqlType);
+    meta.setNullable(true);
+    meta.setSize(20);
+    return meta;
+  }
+
+  private static RowSource source() {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("Name", "id", "extra"));
+    builder.add(new CharSequence[] {"Smith", "7", "ignored"});
+    builder.add(new CharSequence[] {"Jones", "8", "ignored"});
+    return builder.build();
+  }
+
+  /**
+   * test that every parameter of a column receives its value and unknown columns are skipped
+   *
+   * @throws SQLException never
+   */
+  @Test
+  public void testBind()
+    throws SQLException
+  {
+    QueryParameter parameter = new QueryParameter();
+    MetaColumn id = column("ID", Integer.class.getName(), Types.INTEGER);
+    parameter.add(id, 1);
+    parameter.add(column("NAME", String.class.getName(), Types.VARCHAR), 2);
+    parameter.add(id, 3);
+
+    RowSource source = source();
+    assertTrue(parameter.bind(statement, source, 0, new ViolationLog()));
+    assertEquals("[7, Smith, 7]", bound.values().toString());
+
+    bound.clear();
+    assertTrue(parameter.bind(statement, source, 1, new ViolationLog()));
+    assertEquals("[8, Jones, 8]", bound.values().toString());
+  }
+
+  /**
+   * test that header names are matched without their surrounding blanks
+   *
+   * @throws SQLException never
+   */
+  @Test
+  public void testBlankHeaders()
+    throws SQLException
+  {
+    QueryParameter parameter = new QueryParameter();
+    parameter.add(column("NAME", String.class.getName(), Types.VARCHAR), 1);
+    parameter.add(column("ID", Integer.class.getName(), Types.INTEGER), 2);
+
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList(" Name", "id "));
+    builder.add(new CharSequence[] {"Smith", "7"});
+    assertTrue(parameter.bind(statement, builder.build(), 0, new ViolationLog()));
+    assertEquals("[Smith, 7]", bound.values().toString());
+  }
+
+  /**
+   * test that a mapping added after binding is honored by the next row
+   *
+   * @throws SQLException never
+   */
+  @Test
+  public void testAddAfterBind()
+    throws SQLException
+  {
+    QueryParameter parameter = new QueryParameter();
+    parameter.add(column("ID", Integer.class.getName(), Types.INTEGER), 1);
+
+    RowSource source = source();
+    assertTrue(parameter.bind(statement, source, 0, new ViolationLog()));
+    assertEquals(Collections.singleton(1), bound.keySet());
+
+    parameter.add(column("EXTRA", String.class.getName(), Types.VARCHAR), 2);
+    bound.clear();
+    assertTrue(parameter.bind(statement, source, 1, new ViolationLog()));
+    assertEquals("[8, ignored]", bound.values().toString());
+    assertFalse(bound.containsKey(3));
+  }
+}
@@ -0,0 +1,34 @@
+package org.jcommons.db.load.sheet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.jcommons.db.query.QueryString;
+import org.junit.Test;
+
+/**
+ * Checks that the statements bind every value to the parameter named like its column.
+ */
+public class SheetSqlFactoryTest
+{
+  /** test the parameters of an insert */
+  @Test
+  public void testInsert() {
+    QueryString query = SheetSqlFactory.insertQuery("staff", Arrays.asList("ID", "NAME"));
+    assertEquals("insert into staff (ID, NAME) values (?, ?)", query.getSql());
+    assertArrayEquals(new int[] {1}, query.getPositions("id"));
+    assertArrayEquals(new int[] {2}, query.getPositions("name"));
+    assertArrayEquals(new Object[] {7, "Smith"}, query.with("name", "Smith").with("id", 7).asRow());
+  }
+
+  /** test the parameters of an update, the values before the keys */
+  @Test
+  public void testUpdate() {
+    QueryString query = SheetSqlFactory.updateQuery("staff", Arrays.asList("NAME", "MANAGER"), Arrays.asList("ID"));
+    assertEquals("update staff set NAME = ?, MANAGER = ? where ID = ?", query.getSql());
+    assertEquals(Arrays.asList("name", "manager", "id"), query.getParameters());
+    assertArrayEquals(new int[] {3}, query.getPositions("ID"));
+  }
+}
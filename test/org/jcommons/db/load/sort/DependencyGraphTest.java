@@ -0,0 +1,71 @@
+package org.jcommons.db.load.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that tables are grouped into dependency levels and cycles are detected.
+ */
+public class DependencyGraphTest
+{
+  /** test levels of a diamond shaped dependency */
+  @Test
+  public void testLevels() {
+    DependencyGraph graph = new DependencyGraph();
+    graph.addTable("ORDERS").addTable("ITEM").addTable("CUSTOMER").addTable("PRODUCT");
+    graph.addDependency("ITEM", "ORDERS").addDependency("ITEM", "PRODUCT");
+    graph.addDependency("ORDERS", "CUSTOMER");
+
+    List<List<String>> levels = graph.getLevels();
+    assertEquals(3, levels.size());
+    assertEquals(Arrays.asList("CUSTOMER", "PRODUCT"), levels.get(0));
+    assertEquals(Arrays.asList("ORDERS"), levels.get(1));
+    assertEquals(Arrays.asList("ITEM"), levels.get(2));
+    assertEquals(Arrays.asList("CUSTOMER", "PRODUCT", "ORDERS", "ITEM"), graph.getSequence());
+    assertTrue(graph.getCycles().isEmpty());
+  }
+
+  /** test that tables depending on each other are kept together and reported */
+  @Test
+  public void testCycles() {
+    DependencyGraph graph = new DependencyGraph();
+    graph.addTable("A").addTable("B").addTable("C").addTable("D").addTable("E");
+    graph.addDependency("B", "A").addDependency("C", "B").addDependency("B", "C");
+    graph.addDependency("D", "C").addDependency("E", "E");
+
+    List<List<String>> levels = graph.getLevels();
+    assertEquals(3, levels.size());
+    assertEquals(Arrays.asList("A", "E"), levels.get(0));
+    assertEquals(Arrays.asList("B", "C"), levels.get(1));
+    assertEquals(Arrays.asList("D"), levels.get(2));
+
+    List<List<String>> cycles = graph.getCycles();
+    assertEquals(2, cycles.size());
+    assertEquals(Arrays.asList("B", "C"), cycles.get(0));
+    assertEquals(Arrays.asList("E"), cycles.get(1));
+  }
+
+  /** test that large graphs and long chains are sorted without exhausting the stack */
+  @Test
+  public void testLargeGraph() {
+    DependencyGraph graph = new DependencyGraph();
+    int tables = 5000;
+    for (int table = tables - 1; table >= 0; --table) {
+      graph.addTable("T" + table);
+      if (table > 0) graph.addDependency("T" + table, "T" + (table - 1));
+      if (table > 10) graph.addDependency("T" + table, "T" + (table / 2));
+    }
+
+    List<List<String>> levels = graph.getLevels();
+
+    assertEquals(tables, levels.size());
+    assertEquals("T0", levels.get(0).get(0));
+    assertEquals("T4999", levels.get(tables - 1).get(0));
+    assertTrue(graph.getCycles().isEmpty());
+  }
+}
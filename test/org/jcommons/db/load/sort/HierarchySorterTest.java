@@ -0,0 +1,113 @@
+package org.jcommons.db.load.sort;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jcommons.db.column.MetaColumn;
+import org.jcommons.db.load.source.ColumnarSource;
+import org.junit.Test;
+
+/**
+ * Checks that the rows of a self-referencing table are loaded after the rows they reference.
+ */
+public class HierarchySorterTest
+{
+  /** test a hierarchy given with children before their parents */
+  @Test
+  public void testLevels() {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id", "name", "manager"));
+    builder.add(new CharSequence[] {"4", "developer", "3"});
+    builder.add(new CharSequence[] {"3", "lead", " 2 "});
+    builder.add(new CharSequence[] {"2", "manager", "1"});
+    builder.add(new CharSequence[] {"1", "chief", "1"});
+    builder.add(new CharSequence[] {"5", "tester", "3"});
+    builder.add(new CharSequence[] {"6", "external", "99"});
+    builder.add(new CharSequence[] {"7", "intern", null});
+
+    HierarchySorter sorter = new HierarchySorter(builder.build(), new int[] {0}, new int[] {2});
+    List<int[]> levels = sorter.getLevels();
+    assertEquals(0, sorter.getUnresolved());
+    assertEquals(4, levels.size());
+    assertArrayEquals(new int[] {3, 5, 6}, levels.get(0));
+    assertArrayEquals(new int[] {2}, levels.get(1));
+    assertArrayEquals(new int[] {1}, levels.get(2));
+    assertArrayEquals(new int[] {0, 4}, levels.get(3));
+  }
+
+  /** test that a row follows the rows referenced by all its constraints */
+  @Test
+  public void testConstraints() {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id", "manager", "mentor"));
+    builder.add(new CharSequence[] {"3", "1", "2"});
+    builder.add(new CharSequence[] {"2", "1", "1"});
+    builder.add(new CharSequence[] {"1", "1", "1"});
+    builder.add(new CharSequence[] {"4", "2", "3"});
+
+    List<int[]> keys = Arrays.asList(new int[] {0}, new int[] {0});
+    List<int[]> references = Arrays.asList(new int[] {1}, new int[] {2});
+    HierarchySorter sorter = new HierarchySorter(builder.build(), keys, references, null);
+    List<int[]> levels = sorter.getLevels();
+    assertEquals(0, sorter.getUnresolved());
+    assertEquals(4, levels.size());
+    assertArrayEquals(new int[] {2}, levels.get(0));
+    assertArrayEquals(new int[] {1}, levels.get(1));
+    assertArrayEquals(new int[] {0}, levels.get(2));
+    assertArrayEquals(new int[] {3}, levels.get(3));
+  }
+
+  /** test that keys and references are compared by their numeric values */
+  @Test
+  public void testConvertedKeys() {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id", "parent"));
+    builder.add(new CharSequence[] {"2", "01"});
+    builder.add(new CharSequence[] {"1", "1"});
+    builder.add(new CharSequence[] {"3", "2.0"});
+    ColumnarSource source = builder.build();
+
+    MetaColumn id = new MetaColumn();
+    id.setName("id");
+    id.setType(Integer.class.getName());
+    id.setSqlType(Types.INTEGER);
+    MetaColumn parent = new MetaColumn();
+    parent.setName("parent");
+    parent.setType(java.math.BigDecimal.class.getName());
+    parent.setSqlType(Types.DECIMAL);
+    parent.setPrecision(10);
+    parent.setFraction(1);
+
+    List<int[]> keys = Collections.singletonList(new int[] {0});
+    List<int[]> references = Collections.singletonList(new int[] {1});
+    HierarchySorter sorter = new HierarchySorter(source, keys, references, new MetaColumn[] {id, parent});
+    List<int[]> levels = sorter.getLevels();
+    assertEquals(3, levels.size());
+    assertArrayEquals(new int[] {1}, levels.get(0));
+    assertArrayEquals(new int[] {0}, levels.get(1));
+    assertArrayEquals(new int[] {2}, levels.get(2));
+
+    // compared by text the references find no parents
+    assertEquals(1, new HierarchySorter(source, new int[] {0}, new int[] {1}).getLevels().size());
+  }
+
+  /** test that rows referencing each other are collected in the last level */
+  @Test
+  public void testCycle() {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id", "parent"));
+    builder.add(new CharSequence[] {"a", "b"});
+    builder.add(new CharSequence[] {"b", "a"});
+    builder.add(new CharSequence[] {"c", null});
+    builder.add(new CharSequence[] {"d", "c"});
+
+    HierarchySorter sorter = new HierarchySorter(builder.build(), new int[] {0}, new int[] {1});
+    List<int[]> levels = sorter.getLevels();
+    assertEquals(2, sorter.getUnresolved());
+    assertEquals(3, levels.size());
+    assertArrayEquals(new int[] {2}, levels.get(0));
+    assertArrayEquals(new int[] {3}, levels.get(1));
+    assertArrayEquals(new int[] {0, 1}, levels.get(2));
+  }
+}
@@ -0,0 +1,170 @@
+package org.jcommons.db.load.sort;
+
+import static org.jcommons.lang.clazz.ClassUtils.getPackagePath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import org.jcommons.db.load.DatabaseLoaderTest;
+import org.jcommons.io.sheet.Book;
+import org.jcommons.io.sheet.Sheet;
+import org.jcommons.io.text.reader.csv.CsvBookReader;
+import org.jcommons.message.Message;
+import org.jcommons.message.Messages;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that sheets on the most expensive chain of dependencies are started first.
+ */
+public class SheetSchedulerTest
+{
+  private static final String ROOT = getPackagePath(DatabaseLoaderTest.class, "./test");
+
+  private Sheet language;
+  private Sheet roles;
+  private Sheet roleName;
+  private List<Sheet> sheets;
+  private List<SheetCost> costs;
+
+  /** the role names depend on the roles only */
+  private final SheetSortingStrategy sorter = new SheetSortingStrategy() {
+    @Override
+    public List<Sheet> sort(final List<Sheet> list) {
+      return list;
+    }
+
+    @Override
+    public List<List<Sheet>> levels(final List<Sheet> list) {
+      return Collections.singletonList(list);
+    }
+
+    @Override
+    public Collection<Sheet> getMasters(final Sheet sheet) {
+      if (sheet == roleName) return Collections.singletonList(roles);
+      return Collections.emptyList();
+    }
+
+    @Override
+    public Message validate() {
+      return new Messages();
+    }
+
+    @Override
+    public DataSource getDataSource() {
+      return null;
+    }
+
+    @Override
+    public void setDataSource(final DataSource dataSource) {
+      // no database required
+    }
+  };
+
+  /** read the sheets and assign costs, the role names are by far the most expensive sheet */
+  @Before
+  public void readSheets() {
+    CsvBookReader reader = new CsvBookReader();
+    for (String table : Arrays.asList("language", "roles", "role_name")) {
+      reader.addFile(new File(ROOT, table + ".csv"));
+    }
+
+    Book book = reader.read();
+    language = book.getSheet("language");
+    roles = book.getSheet("roles");
+    roleName = book.getSheet("role_name");
+    sheets = Arrays.asList(language, roles, roleName);
+    costs = Arrays.asList(new SheetCost(1000, 2, 1), new SheetCost(10, 2, 1), new SheetCost(100000, 3, 2));
+  }
+
+  /** test that the critical path decides the sequence and not the size of the single sheet */
+  @Test
+  public void testOrder() {
+    SheetScheduler scheduler = new SheetScheduler(sheets, sorter, costs);
+    assertEquals(Arrays.asList(roles, roleName, language), scheduler.getOrder());
+    assertTrue(scheduler.getRank(roles) > scheduler.getRank(language));
+
+    // without dependencies the largest sheet comes first
+    scheduler = new SheetScheduler(sheets, null, costs);
+    assertEquals(Arrays.asList(roleName, language, roles), scheduler.getOrder());
+  }
+
+  /** test that the second pass of a sheet waits for the first pass of the sheets it references only */
+  @Test
+  public void testPasses() {
+    Map<Sheet, List<Sheet>> references = new HashMap<Sheet, List<Sheet>>();
+    references.put(roleName, Arrays.asList(roles, language));
+
+    SheetScheduler scheduler = new SheetScheduler(sheets, sorter, references, costs);
+    assertEquals(2, scheduler.getPasses());
+
+    List<Sheet> order = scheduler.getOrder();
+    assertEquals(6, order.size());
+    assertEquals(Arrays.asList(roles, roleName, language, roleName, language, roles), order);
+  }
+
+  /**
+   * test that a sheet is started only after its masters are done
+   *
+   * @throws SQLException if a task fails
+   */
+  @Test
+  public void testRun()
+    throws SQLException
+  {
+    final List<Sheet> done = Collections.synchronizedList(new ArrayList<Sheet>());
+    ExecutorService workers = Executors.newFixedThreadPool(2);
+    try {
+      new SheetScheduler(sheets, sorter, costs).run(workers, 2, new SheetTask() {
+        @Override
+        public void run(final Sheet sheet) {
+          if (sheet == roleName) assertTrue(done.contains(roles));
+          done.add(sheet);
+        }
+      });
+    } finally {
+      workers.shutdown();
+    }
+
+    assertEquals(3, done.size());
+    assertTrue(done.indexOf(roles) < done.indexOf(roleName));
+  }
+
+  /**
+   * test that the sheets of a simple sorter are loaded in the sequence of the book regardless of their costs
+   *
+   * @throws SQLException if a task fails
+   */
+  @Test
+  public void testBookOrder()
+    throws SQLException
+  {
+    SimpleSheetSorter simple = new SimpleSheetSorter();
+    List<Sheet> sorted = simple.sort(sheets);
+    assertEquals(sheets, sorted);
+
+    SheetScheduler scheduler = new SheetScheduler(sorted, simple, costs);
+    assertEquals(sheets, scheduler.getOrder());
+
+    final List<Sheet> done = Collections.synchronizedList(new ArrayList<Sheet>());
+    ExecutorService workers = Executors.newFixedThreadPool(3);
+    try {
+      scheduler.run(workers, 3, new SheetTask() {
+        @Override
+        public void run(final Sheet sheet) {
+          done.add(sheet);
+        }
+      });
+    } finally {
+      workers.shutdown();
+    }
+    assertEquals(sheets, done);
+  }
+}
@@ -0,0 +1,41 @@
+package org.jcommons.db.load.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks that values survive the columnar storage.
+ */
+public class ColumnarSourceTest
+{
+  private static final int ROWS = 5000;
+
+  /** test dictionary and arena encoded columns */
+  @Test
+  public void testStorage() {
+    ColumnarSource.Builder builder = new ColumnarSource.Builder(Arrays.asList("id", "language", "name"));
+    for (int row = 0; row < ROWS; ++row) {
+      String name = row % 7 == 0 ? null : row == 4000 ? "\u20ac " + row : "name " + row;
+      builder.add(new CharSequence[] {String.valueOf(row), row % 2 == 0 ? "de" : "en", name});
+    }
+
+    ColumnarSource source = builder.build();
+    assertEquals(ROWS, source.size());
+    assertTrue(source.getStore(1).isDictionary());
+    assertEquals(2, source.getStore(1).getCardinality());
+    assertFalse(source.getStore(0).isDictionary());
+
+    assertEquals("123", source.getValue(0, 123).toString());
+    assertEquals("en", source.getValue(1, 123).toString());
+    assertEquals("name 123", source.getValue(2, 123).toString());
+    assertNull(source.getValue(2, 700));
+    assertEquals("\u20ac 4000", source.getValue(2, 4000).toString());
+    assertEquals("name 4999", source.getValue(2, 4999).toString());
+  }
+}
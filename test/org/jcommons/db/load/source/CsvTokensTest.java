@@ -0,0 +1,71 @@
+package org.jcommons.db.load.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Checks the tokenizing of CSV rows within a buffer.
+ */
+public class CsvTokensTest
+{
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Tokenize the given rows.
+   *
+   * @param content the rows
+   * @param count the number of rows to tokenize
+   * @param width the number of fields per row
+   * @return the tokens
+   * @throws UnsupportedEncodingException never
+   */
+  private static CsvTokens tokenize(final String content, final int count, final int width)
+    throws UnsupportedEncodingException
+  {
+    return CsvTokens.tokenize(ByteBuffer.wrap(content.getBytes("UTF-8")), UTF8, ',', 0, count, width);
+  }
+
+  /**
+   * @param tokens the tokens to read
+   * @param column the column index
+   * @param row the row index
+   * @return the field as string, <code>null</code> if missing
+   */
+  private static String get(final CsvTokens tokens, final int column, final int row) {
+    CharSequence value = tokens.get(column, row);
+    return value == null ? null : value.toString();
+  }
+
+  /** test quotes at the start of fields and within fields */
+  @Test
+  public void testQuotes()
+    throws UnsupportedEncodingException
+  {
+    CsvTokens tokens = tokenize("5\" disk, \"a \"\"b\"\"\" ,\"x\"y,\"\u20ac\"\n", 1, 4);
+    assertEquals(1, tokens.size());
+    assertEquals("5\" disk", get(tokens, 0, 0));
+    assertEquals("a \"b\"", get(tokens, 1, 0));
+    assertEquals("x", get(tokens, 2, 0));
+    assertEquals("\u20ac", get(tokens, 3, 0));
+  }
+
+  /** test line breaks within quoted fields, CRLF and empty lines */
+  @Test
+  public void testLines()
+    throws UnsupportedEncodingException
+  {
+    CsvTokens tokens = tokenize("\r\n1,\"a\r\nb\"\r\n\r\n2\r\n 3 , c ", 5, 2);
+    assertEquals(3, tokens.size());
+    assertEquals("a\r\nb", get(tokens, 1, 0));
+    assertEquals("2", get(tokens, 0, 1));
+    assertNull(tokens.get(1, 1));
+    assertEquals("3", get(tokens, 0, 2));
+    assertEquals("c", get(tokens, 1, 2));
+  }
+}
@@ -0,0 +1,136 @@
+package org.jcommons.db.load.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks that the rows of a mapped CSV file are found by the same rules as their fields are tokenized.
+ */
+public class MappedCsvSourceTest
+{
+  /**
+   * Write a temporary CSV file.
+   *
+   * @param content the content of the file
+   * @return the file, deleted on exit
+   * @throws IOException if the file cannot be written
+   */
+  static File write(final String content)
+    throws IOException
+  {
+    File file = File.createTempFile("mapped", ".csv");
+    file.deleteOnExit();
+    OutputStream output = new FileOutputStream(file);
+    try {
+      output.write(content.getBytes("UTF-8"));
+    } finally {
+      output.close();
+    }
+    return file;
+  }
+
+  /**
+   * Read a field as text.
+   *
+   * @param source the source to read
+   * @param column the column index
+   * @param row the row index
+   * @return the field as string, <code>null</code> if missing
+   */
+  private static String get(final RowSource source, final int column, final int row) {
+    CharSequence value = source.getValue(column, row);
+    return value == null ? null : value.toString();
+  }
+
+  /** test that quotes within unquoted fields do not shift the rows that follow */
+  @Test
+  public void testEmbeddedQuotes()
+    throws IOException
+  {
+    StringBuilder content = new StringBuilder("id,name\n1,5\" disk\n2,\"a \"\"b\"\" c\"\n3,x\"y\"z\n");
+    content.append("4,\"closed\" and more\n");
+    for (int row = 5; row <= 400; ++row) {
+      content.append(row).append(",name ").append(row).append('\n');
+    }
+
+    MappedCsvSource source = new MappedCsvSource(write(content.toString()));
+    try {
+      assertEquals(Arrays.asList("id", "name"), source.getColumns());
+      assertEquals(400, source.size());
+      assertEquals("5\" disk", get(source, 1, 0));
+      assertEquals("a \"b\" c", get(source, 1, 1));
+      assertEquals("x\"y\"z", get(source, 1, 2));
+      assertEquals("closed", get(source, 1, 3));
+      assertEquals("300", get(source, 0, 299));
+      assertEquals("name 400", get(source, 1, 399));
+    } finally {
+      source.close();
+    }
+  }
+
+  /** test that line breaks within quoted fields are kept */
+  @Test
+  public void testQuotedNewlines()
+    throws IOException
+  {
+    MappedCsvSource source = new MappedCsvSource(write("id,text\n1,\"first\nsecond\"\n2,  \"a,\r\nb\"\n3,last\n"));
+    try {
+      assertEquals(3, source.size());
+      assertEquals("first\nsecond", get(source, 1, 0));
+      assertEquals("a,\r\nb", get(source, 1, 1));
+      assertEquals("3", get(source, 0, 2));
+      assertEquals("last", get(source, 1, 2));
+    } finally {
+      source.close();
+    }
+  }
+
+  /** test CRLF line breaks and empty lines */
+  @Test
+  public void testCrlf()
+    throws IOException
+  {
+    MappedCsvSource source = new MappedCsvSource(write("\r\nid,name\r\n1,one\r\n\r\n2,two\r\n3,\r\n"));
+    try {
+      assertEquals(Arrays.asList("id", "name"), source.getColumns());
+      assertEquals(3, source.size());
+      assertEquals("one", get(source, 1, 0));
+      assertEquals("2", get(source, 0, 1));
+      assertEquals("two", get(source, 1, 1));
+      assertEquals("", get(source, 1, 2));
+    } finally {
+      source.close();
+    }
+  }
+
+  /** test that the last row is read without a trailing line break */
+  @Test
+  public void testMissingTrailingNewline()
+    throws IOException
+  {
+    MappedCsvSource source = new MappedCsvSource(write("id,name\n1,one\n2,\"two\""));
+    try {
+      assertEquals(2, source.size());
+      assertEquals("two", get(source, 1, 1));
+    } finally {
+      source.close();
+    }
+
+    source = new MappedCsvSource(write("id,name\n1"));
+    try {
+      assertEquals(1, source.size());
+      assertEquals("1", get(source, 0, 0));
+      assertNull(source.getValue(1, 0));
+    } finally {
+      source.close();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package org.jcommons.db.load.source;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Checks that files split at arbitrary byte offsets are read exactly like a whole file.
+ */
+public class ParallelCsvReaderTest
+{
+  private static final String CONTENT = "id,name,note\r\n"
+      + "1,\"quoted, with\nline break\",5\" disk\r\n"
+      + "2,\"escaped \"\"quote\"\"\n\",\"x\"y\n"
+      + "\n"
+      + "3,  \"a\r\nb\"  ,plain\n"
+      + "4,x\"y\"z,\"\"\"\"\n"
+      + "5,last,\"no line break\"";
+
+  private static final List<String> EXPECTED = Arrays.asList(
+      "0:1|quoted, with\nline break|5\" disk",
+      "1:2|escaped \"quote\"\n|x",
+      "2:3|a\r\nb|plain",
+      "3:4|x\"y\"z|\"",
+      "4:5|last|no line break");
+
+  /**
+   * Read the whole file.
+   *
+   * @param reader the reader of the file
+   * @return every row as its number followed by its fields
+   * @throws IOException if the file cannot be read
+   * @throws SQLException never
+   */
+  private static List<String> read(final ParallelCsvReader reader)
+    throws IOException, SQLException
+  {
+    final List<String> rows = new ArrayList<String>();
+    reader.read(new ChunkHandler() {
+      @Override
+      public void handle(final CsvChunk chunk) {
+        for (int row = 0; row < chunk.size(); ++row) {
+          StringBuilder text = new StringBuilder().append(chunk.getRowNumber(row)).append(':');
+          for (int column = 0; column < chunk.getColumns().size(); ++column) {
+            if (column > 0) text.append('|');
+            text.append(chunk.getValue(column, row));
+          }
+          rows.add(text.toString());
+        }
+      }
+    });
+    return rows;
+  }
+
+  /** test that every range size, so every chunk boundary, gives the same rows */
+  @Test
+  public void testRanges()
+    throws IOException, SQLException
+  {
+    File file = MappedCsvSourceTest.write(CONTENT);
+    for (int range = 1; range <= CONTENT.length(); ++range) {
+      ParallelCsvReader reader = new ParallelCsvReader(file).setRange(range);
+      try {
+        assertEquals(Arrays.asList("id", "name", "note"), reader.getColumns());
+        assertEquals("range " + range, EXPECTED, read(reader));
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /** test that a stray quote does not move the split points into fields when read in parallel */
+  @Test
+  public void testStrayQuote()
+    throws IOException, SQLException
+  {
+    StringBuilder content = new StringBuilder("id,size\n");
+    List<String> expected = new ArrayList<String>();
+    for (int row = 0; row < 1000; ++row) {
+      content.append(row).append(',').append(row).append(row % 3 == 0 ? "\" disk\n" : " disk\n");
+      expected.add(row + ":" + row + "|" + row + (row % 3 == 0 ? "\" disk" : " disk"));
+    }
+
+    File file = MappedCsvSourceTest.write(content.toString());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int range : new int[] {5, 64, 333, 4096}) {
+        ParallelCsvReader reader = new ParallelCsvReader(file).setRange(range).setExecutor(executor);
+        try {
+          assertEquals("range " + range, expected, read(reader));
+        } finally {
+          reader.close();
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package org.jcommons.db.load.verify;
+
+import static org.jcommons.db.junit.DataSourceFactory.createMemoryDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.jcommons.db.load.SheetLoader;
+import org.jcommons.db.load.source.ColumnarSource;
+import org.jcommons.message.Message;
+import org.junit.*;
+
+/**
+ * Checks that loaded tables are verified by their row counts and column aggregates.
+ */
+public class LoadVerifierTest
+{
+  private static final String CREATE_SQL =
+      "create table staff ( id integer not null primary key, name varchar(20) not null, salary decimal(8,2),"
+          + " rating double, hired date )";
+  private static final String DROP_SQL = "drop table staff";
+  private static final String DELETE_SQL = "delete from staff";
+
+  private SheetLoader loader;
+
+  /**
+   * setup database
+   *
+   * @throws SQLException if table cannot be created
+   */
+  @BeforeClass
+  public static void createTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update(CREATE_SQL);
+  }
+
+  /**
+   * tear down database
+   *
+   * @throws SQLException if table cannot be dropped
+   */
+  @AfterClass
+  public static void dropTable()
+    throws SQLException
+  {
+    new QueryRunner(createMemoryDataSource()).update(DROP_SQL);
+  }
+
+  /**
+   * load the same rows into the empty table before every test
+   *
+   * @throws SQLException if the table cannot be loaded
+   */
+  @Before
+  public void loadTable()
+    throws SQLException
+  {
+    DataSource dbms = createMemoryDataSource();
+    new QueryRunner(dbms).update(DELETE_SQL);
+
+    ColumnarSource.Builder builder =
+        new ColumnarSource.Builder(Arrays.asList("id", "name", "salary", "rating", "hired"));
+    builder.add(new CharSequence[] {"1", "Anna", "1200.50", "0.5", "2010-01-15"});
+    builder.add(new CharSequence[] {"2", "Bert", "980.25", null, "2012-06-01"});
+    builder.add(new CharSequence[] {"3", "Carla", null, "1.25", "2011-02-01"});
+
+    ColumnarSource rows = builder.build();
+    loader = new SheetLoader().setDataSource(dbms).setDigest(true);
+    loader.load("staff", rows);
+    loader.update("staff", rows);
+  }
+
+  /** test that an untouched table matches its digest */
+  @Test
+  public void testMatch() {
+    List<TableDigest> digests = loader.getDigests();
+    assertEquals(1, digests.size());
+    assertEquals(3, digests.get(0).getRows());
+
+    Message errors = new LoadVerifier(createMemoryDataSource()).verify(digests);
+    assertTrue(errors.getText(), errors.isEmpty());
+  }
+
+  /**
+   * test that altered values and missing rows are detected
+   *
+   * @throws SQLException if the table cannot be altered
+   */
+  @Test
+  public void testMismatch()
+    throws SQLException
+  {
+    DataSource dbms = createMemoryDataSource();
+    new QueryRunner(dbms).update("update staff set salary = 1200.51 where id = 1");
+    List<Message> errors = new LoadVerifier(dbms).verify(loader.getDigests().get(0));
+    assertEquals(1, errors.size());
+
+    new QueryRunner(dbms).update("delete from staff where id = 3");
+    errors = new LoadVerifier(dbms).verify(loader.getDigests().get(0));
+    assertTrue(errors.size() > 1);
+  }
+
+  /**
+   * test that texts and dates changed within their length and range are only detected by their checksums
+   *
+   * @throws SQLException if the table cannot be altered
+   */
+  @Test
+  public void testContent()
+    throws SQLException
+  {
+    DataSource dbms = createMemoryDataSource();
+    LoadVerifier verifier = new LoadVerifier(dbms).setContent(true);
+    assertTrue(verifier.verify(loader.getDigests().get(0)).isEmpty());
+
+    new QueryRunner(dbms).update("update staff set name = 'Bart' where id = 2");
+    new QueryRunner(dbms).update("update staff set hired = '2011-03-01' where id = 3");
+    assertTrue(new LoadVerifier(dbms).verify(loader.getDigests().get(0)).isEmpty());
+    assertEquals(2, verifier.verify(loader.getDigests().get(0)).size());
+  }
+
+  /**
+   * test that the values of a row rejected by the insert pass are not expected although its update converts
+   *
+   * @throws SQLException if the table cannot be loaded
+   */
+  @Test
+  public void testRejectedRow()
+    throws SQLException
+  {
+    DataSource dbms = createMemoryDataSource();
+    new QueryRunner(dbms).update(DELETE_SQL);
+
+    ColumnarSource.Builder builder =
+        new ColumnarSource.Builder(Arrays.asList("id", "name", "salary", "rating", "hired"));
+    builder.add(new CharSequence[] {"1", "Anna", "1200.50", "0.5", "2010-01-15"});
+    builder.add(new CharSequence[] {"4", null, "2500.00", "2.5", "2013-04-01"});
+    ColumnarSource rows = builder.build();
+
+    SheetLoader rejecting = new SheetLoader().setDataSource(dbms).setDigest(true);
+    rejecting.load("staff", rows);
+    rejecting.update("staff", rows);
+    assertEquals(1, rejecting.getDigests().get(0).getRows());
+
+    List<Message> errors = new LoadVerifier(dbms).setContent(true).verify(rejecting.getDigests().get(0));
+    assertTrue(errors.toString(), errors.isEmpty());
+  }
+}
@@ -0,0 +1,56 @@
+package org.jcommons.db.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.junit.Test;
+
+/**
+ * Checks that named parameters are compiled into positional parameters and bound by their names.
+ */
+public class QueryStringTest
+{
+  private static final String QUERY =
+      "select name, ':skip', \"${skip}\" from customer -- :skip\n"
+          + " where customer_id = :customer and (name like ${search} or alias like :Search) and age::integer > ?";
+
+  /** test the positional form of the query */
+  @Test
+  public void testCompile() {
+    QueryString query = new QueryString(QUERY);
+    assertEquals("select name, ':skip', \"${skip}\" from customer -- :skip\n"
+        + " where customer_id = ? and (name like ? or alias like ?) and age::integer > ?", query.getSql());
+    assertEquals(4, query.size());
+    assertEquals(Arrays.asList("customer", "search"), query.getParameters());
+    assertArrayEquals(new int[] {2, 3}, query.getPositions("SEARCH"));
+    assertEquals(0, query.getPositions("skip").length);
+  }
+
+  /** test binding a single row by name and by map */
+  @Test
+  public void testRow() {
+    QueryString query = new QueryString(QUERY);
+    assertArrayEquals(new Object[] {7, "%motor%", "%motor%", null},
+        query.with("customer", 7).with("search", "%motor%").asRow());
+
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("Customer", 8);
+    values.put("unused", "ignored");
+    assertArrayEquals(new Object[] {8, "%motor%", "%motor%", null}, query.with(values).asRow());
+  }
+
+  /** test binding several rows by header and translation */
+  @Test
+  public void testArray() {
+    Map<String, String> translate = new HashMap<String, String>();
+    translate.put("id", "customer");
+
+    QueryString query = new QueryString("update customer set name = :name where customer_id = :customer");
+    Object[][] rows = query.header("name", "id").map(translate).with(new Object[][] { {"a", 1}, {"b", 2}}).asArray();
+    assertEquals(2, rows.length);
+    assertArrayEquals(new Object[] {"a", 1}, rows[0]);
+    assertArrayEquals(new Object[] {"b", 2}, rows[1]);
+  }
+}